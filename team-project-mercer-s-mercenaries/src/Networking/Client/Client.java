@@ -1,18 +1,32 @@
 package Networking.Client;
 
+import Networking.Protocol.Message;
+import Networking.Protocol.MessageCodec;
+import Networking.Protocol.Opcode;
+import Networking.Protocol.Session;
 import view_controller.BoardGUI;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 
 public class Client {
 
     private DatagramSocket socket;
 
     private static final int SERVER_PORT = 8000; // send to server
+    private static final int DISCONNECT_WAIT_MILLIS = 500; // How long to wait for the server to acknowledge leaving
 
     final BoardGUI gui;
     final InetAddress address;
+    final Session session = new Session(); // Resends what the server doesn't acknowledge, and orders what it sends
+    private final ByteBuffer outgoing = ByteBuffer.allocate(MessageCodec.MAX_SIZE); // Reused for every message sent
+    private final DatagramPacket packet;
+    private boolean offline; // If the server has been reported offline
+    private boolean leaving; // If the player has disconnected, and the socket closes once the server acknowledges
+    private long leaveBy; // When to close the socket while leaving, acknowledged or not
+    private final CompletableFuture<Void> closed = new CompletableFuture<>();
 
     public Client(String IP, BoardGUI gui) throws UnknownHostException {
 
@@ -29,35 +43,85 @@ public class Client {
             System.out.println("Unable to connect to host!");
             e.printStackTrace();
         }
+        packet = new DatagramPacket(outgoing.array(), 0, address, SERVER_PORT);
 
+        this.gui = gui;
         ClientThread thread = new ClientThread(socket, this);
         thread.start();
-        this.gui = gui;
     }
 
-    public void sendPacket(String msg) {
+    /**
+     * Sends a message to the server in the binary form. Every message but a chat line is resent until the server
+     * acknowledges it. Called from the FX thread and the thread reading replies.
+     * @param msg The message.
+     */
+    public synchronized void sendPacket(Message msg) {
+        outgoing.clear();
+        if (session.send(msg, outgoing, System.nanoTime())) {
+            transmit();
+        }
+    }
+
+    /**
+     * Sends whatever the session has due, and reports the server offline if it has stopped answering. While leaving,
+     * closes the socket once there is nothing left to send. Called by the thread reading replies every tick.
+     */
+    synchronized void tick() {
+        long now = System.nanoTime();
+        outgoing.clear();
+        while (session.poll(outgoing, now)) {
+            transmit();
+            outgoing.clear();
+        }
+        if (leaving) {
+            if (session.isSettled() || session.isLost() || now - leaveBy >= 0) {
+                close();
+            }
+            return;
+        }
+        if (session.isLost() && !offline) {
+            offline = true;
+            gui.handle(new Message(Opcode.INFO, 0, 0).setText("server offline"));
+        }
+    }
+
+    private void transmit() {
+        packet.setData(outgoing.array(), 0, outgoing.position());
         try {
-            socket.send(new DatagramPacket(msg.getBytes(), msg.length(), address, 8000));
+            socket.send(packet);
         } catch (IOException e) {
-            System.out.println("Error Sending data!\n" + msg);
+            System.out.println("Error Sending data!");
             e.printStackTrace();
         }
     }
 
-    public void process(String message) {
-        if(message.getBytes().length > 512) {
-            throw new RuntimeException("Request is too long!");
-        }
+    public void process(Message message) {
         System.out.println("Client received: " + message);
         gui.handle(message);
     }
 
-    public void disconnect(String username) {
-        sendPacket("dsct;" + username + ";");
+    /**
+     * Tells the server the player is leaving. This doesn't wait: the thread reading replies closes the socket once the
+     * server has acknowledged, or after half a second, so the disconnect can be resent if it is lost.
+     * @param playerId The player's id.
+     * @return A future that completes once the socket is closed.
+     */
+    public synchronized CompletableFuture<Void> disconnect(int playerId) {
+        sendPacket(new Message(Opcode.DISCONNECT, playerId, 0));
+        leaving = true;
+        leaveBy = System.nanoTime() + DISCONNECT_WAIT_MILLIS * 1_000_000L;
+        return closed;
+    }
+
+    /**
+     * Closes the socket, which stops the thread reading replies. Called on that thread.
+     */
+    void close() {
         try {
             socket.close();
         } catch (RuntimeException e) {
             e.printStackTrace();
         }
+        closed.complete(null);
     }
-}
\ No newline at end of file
+}
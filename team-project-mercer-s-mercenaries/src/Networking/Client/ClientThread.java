@@ -1,13 +1,24 @@
 package Networking.Client;
 
+import Networking.Protocol.Message;
+import Networking.Protocol.MessageCodec;
+import Networking.Protocol.Opcode;
+import Networking.Protocol.Session;
+
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 
 public class ClientThread extends Thread {
 
     private final DatagramSocket socket;
-    private final byte[] incoming = new byte[512];
+    private final byte[] incoming = new byte[MessageCodec.MAX_SIZE];
+    private final ByteBuffer buffer = ByteBuffer.wrap(incoming);
+    private final MessageCodec codec = new MessageCodec();
+    private final Message message = new Message(); // Every packet is decoded into this
 
     private final Client client;
 
@@ -17,17 +28,61 @@ public class ClientThread extends Thread {
         this.client = client;
     }
 
+    /**
+     * Reads packets until the socket is closed, waking every tick for the client's session to resend what is due.
+     * Binary packets are handled in the order the server sent them.
+     */
     @Override
     public void run() {
+        try {
+            read();
+        } finally {
+            client.close(); // So a disconnect waiting on it finishes, however the thread stopped
+        }
+    }
+
+    private void read() {
+        DatagramPacket packet = new DatagramPacket(incoming, incoming.length);
+        try {
+            socket.setSoTimeout(Session.TICK_MILLIS);
+        } catch (SocketException e) {
+            e.printStackTrace();
+        }
         while (!socket.isClosed()) {
-            DatagramPacket packet = new DatagramPacket(incoming, incoming.length);
+            client.tick();
+            if (socket.isClosed()) {
+                return; // The player has left
+            }
+            packet.setLength(incoming.length);
             try {
                 socket.receive(packet);
+            } catch (SocketTimeoutException e) {
+                continue;
             } catch (IOException e) {
-                client.gui.handle("info;server offline;");
+                client.gui.handle(message.set(Opcode.INFO, 0, 0).setText("server offline"));
+                continue;
             }
-            String message = new String(packet.getData(), 0, packet.getLength());
-            client.process(message);
+            buffer.clear().limit(packet.getLength());
+            if (!MessageCodec.hasHeader(buffer)) {
+                process();
+                continue;
+            }
+            if (client.session.receive(buffer, System.nanoTime())) {
+                process();
+            }
+            while (client.session.nextHeld(buffer)) {
+                process();
+            }
+        }
+    }
+
+    private void process() {
+        try {
+            codec.decode(buffer, message);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Client dropped a malformed message: " + e.getMessage());
+            return;
         }
+        client.process(message);
     }
-}
\ No newline at end of file
+}
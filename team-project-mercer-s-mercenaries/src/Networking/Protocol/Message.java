@@ -0,0 +1,352 @@
+package Networking.Protocol;
+
+import model.Board;
+
+import java.util.Arrays;
+
+/**
+ * One message of the wire protocol, see {@link MessageCodec}. A message is mutable so a reader can decode every packet
+ * into the same one, and only the fields its {@link Opcode} carries mean anything.
+ * <p>
+ * Every message has the id of the player it is from or about, and another id whose meaning depends on the opcode. Ids
+ * are handed out by the server when a name is registered, and 0 means none. Cells are one byte each, row * 10 + col,
+ * so the protocol plays the standard board.
+ * <p>
+ * A fleet is three 100 bit masks: the cells of the horizontal ships, the cells of the vertical ships, and the nose of
+ * every ship. The noses split ships that touch end to end, so the fleet can be rebuilt exactly.
+ */
+public final class Message {
+
+    /** The most cells a message can carry. */
+    public static final int MAX_CELLS = Board.SIZE * Board.SIZE;
+    static final int MASK_WORDS = (MAX_CELLS + 63) >>> 6;
+    static final int FLEET_WORDS = 3 * MASK_WORDS;
+
+    private Opcode opcode;
+    private int player;
+    private int other;
+    private String name;
+    private String otherName;
+    private String text;
+    private final byte[] cells = new byte[MAX_CELLS];
+    private int numCells;
+    private final long[] fleet = new long[FLEET_WORDS]; // Horizontal cells, vertical cells, noses
+    private boolean salvo;
+    private int[] hostIds = new int[8];
+    private String[] hostNames = new String[8];
+    private boolean[] hostSalvos = new boolean[8];
+    private int numHosts;
+
+    /**
+     * Creates an empty message, to decode into.
+     */
+    public Message() {
+    }
+
+    /**
+     * Creates a message with no fields set.
+     * @param opcode The kind of message.
+     * @param player The id of the player it is from or about.
+     * @param other The other id, or 0.
+     */
+    public Message(Opcode opcode, int player, int other) {
+        set(opcode, player, other);
+    }
+
+    /**
+     * Clears the message and starts a new one.
+     * @param opcode The kind of message.
+     * @param player The id of the player it is from or about.
+     * @param other The other id, or 0.
+     * @return This message.
+     */
+    public Message set(Opcode opcode, int player, int other) {
+        this.opcode = opcode;
+        this.player = player;
+        this.other = other;
+        name = null;
+        otherName = null;
+        text = null;
+        numCells = 0;
+        Arrays.fill(fleet, 0);
+        salvo = false;
+        Arrays.fill(hostNames, 0, numHosts, null);
+        numHosts = 0;
+        return this;
+    }
+
+    /**
+     * Returns the kind of message.
+     * @return The opcode.
+     */
+    public Opcode getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Returns the id of the player the message is from or about.
+     * @return The id, or 0.
+     */
+    public int getPlayer() {
+        return player;
+    }
+
+    /**
+     * Returns the other id, e.g. the host of the game to join.
+     * @return The id, or 0.
+     */
+    public int getOther() {
+        return other;
+    }
+
+    /**
+     * Returns the name of the player the message is about.
+     * @return The name, or null if it wasn't set.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the second name, e.g. the host of a joined game.
+     * @return The name, or null if it wasn't set.
+     */
+    public String getOtherName() {
+        return otherName;
+    }
+
+    /**
+     * Returns the text of a chat line or status.
+     * @return The text, or null if it wasn't set.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the number of cells.
+     * @return The number of cells.
+     */
+    public int getNumCells() {
+        return numCells;
+    }
+
+    /**
+     * Returns one of the cells.
+     * @param i The index of the cell, from 0 to getNumCells() - 1.
+     * @return The cell, row * 10 + col.
+     */
+    public int getCell(int i) {
+        return cells[i];
+    }
+
+    /**
+     * Checks if the game is played in salvos, one shot per ship still afloat each turn, or one shot a turn.
+     * @return True for salvos.
+     */
+    public boolean isSalvo() {
+        return salvo;
+    }
+
+    /**
+     * Returns the number of games in a host list.
+     * @return The number of hosts.
+     */
+    public int getNumHosts() {
+        return numHosts;
+    }
+
+    /**
+     * Returns the id of a host in the list.
+     * @param i The index in the list.
+     * @return The id.
+     */
+    public int getHostId(int i) {
+        return hostIds[i];
+    }
+
+    /**
+     * Returns the name of a host in the list.
+     * @param i The index in the list.
+     * @return The name.
+     */
+    public String getHostName(int i) {
+        return hostNames[i];
+    }
+
+    /**
+     * Checks if a game in the host list is played in salvos.
+     * @param i The index in the list.
+     * @return True for salvos.
+     */
+    public boolean isHostSalvo(int i) {
+        return hostSalvos[i];
+    }
+
+    /**
+     * Sets the id of the player the message is from or about.
+     * @param player The id.
+     * @return This message.
+     */
+    public Message setPlayer(int player) {
+        this.player = player;
+        return this;
+    }
+
+    /**
+     * Sets the name of the player the message is about.
+     * @param name The name.
+     * @return This message.
+     */
+    public Message setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Sets the second name.
+     * @param otherName The name.
+     * @return This message.
+     */
+    public Message setOtherName(String otherName) {
+        this.otherName = otherName;
+        return this;
+    }
+
+    /**
+     * Sets the text of a chat line or status.
+     * @param text The text. It is cut short past 255 bytes of UTF-8.
+     * @return This message.
+     */
+    public Message setText(String text) {
+        this.text = text;
+        return this;
+    }
+
+    /**
+     * Sets if the game is played in salvos, see {@link #isSalvo()}.
+     * @param salvo True for salvos.
+     * @return This message.
+     */
+    public Message setSalvo(boolean salvo) {
+        this.salvo = salvo;
+        return this;
+    }
+
+    /**
+     * Adds a cell.
+     * @param cell The cell, row * 10 + col.
+     * @return This message.
+     * @throws IllegalArgumentException If the cell is off the board or the message is full.
+     */
+    public Message addCell(int cell) {
+        if (cell < 0 || cell >= MAX_CELLS || numCells == MAX_CELLS) {
+            throw new IllegalArgumentException("Can't add cell " + cell);
+        }
+        cells[numCells++] = (byte) cell;
+        return this;
+    }
+
+    /**
+     * Adds a game that can be joined.
+     * @param id The id of the host.
+     * @param name The name of the host.
+     * @param salvo If the game is played in salvos.
+     * @return This message.
+     */
+    public Message addHost(int id, String name, boolean salvo) {
+        if (numHosts == hostIds.length) {
+            hostIds = Arrays.copyOf(hostIds, numHosts * 2);
+            hostNames = Arrays.copyOf(hostNames, numHosts * 2);
+            hostSalvos = Arrays.copyOf(hostSalvos, numHosts * 2);
+        }
+        hostIds[numHosts] = id;
+        hostSalvos[numHosts] = salvo;
+        hostNames[numHosts++] = name;
+        return this;
+    }
+
+    /**
+     * Sets the fleet to the ships on a board.
+     * @param board The board. It must be the standard size.
+     * @return This message.
+     */
+    public Message setFleet(Board board) {
+        Arrays.fill(fleet, 0);
+        for (int ship = 0; ship < board.getNumShips(); ship++) {
+            boolean horizontal = board.isShipHorizontal(ship);
+            int nose = board.getShipRow(ship) * Board.SIZE + board.getShipCol(ship);
+            int step = horizontal ? 1 : Board.SIZE;
+            int mask = horizontal ? 0 : MASK_WORDS;
+            for (int i = 0, cell = nose; i < board.getShipLength(ship); i++, cell += step) {
+                fleet[mask + (cell >>> 6)] |= 1L << cell;
+            }
+            fleet[2 * MASK_WORDS + (nose >>> 6)] |= 1L << nose;
+        }
+        return this;
+    }
+
+    /**
+     * Places the fleet on a board. Ships of length 1 are taken to be horizontal.
+     * @param board The board, with none of the fleet's cells used.
+     * @throws IllegalArgumentException If the fleet doesn't fit on the board.
+     */
+    public void placeFleet(Board board) {
+        placeFleet(fleet, board);
+    }
+
+    /**
+     * Copies the fleet, to place it later with {@link #placeFleet(long[], Board)}.
+     * @return The fleet masks.
+     */
+    public long[] getFleet() {
+        return fleet.clone();
+    }
+
+    /**
+     * Places a fleet copied out of a message on a board.
+     * @param fleet The fleet masks, see {@link #getFleet()}.
+     * @param board The board, with none of the fleet's cells used.
+     * @throws IllegalArgumentException If the fleet doesn't fit on the board.
+     */
+    public static void placeFleet(long[] fleet, Board board) {
+        for (int nose = 0; nose < MAX_CELLS; nose++) {
+            if (!test(fleet, 2 * MASK_WORDS, nose)) {
+                continue;
+            }
+            boolean horizontal = test(fleet, 0, nose);
+            int mask = horizontal ? 0 : MASK_WORDS;
+            int length = 1;
+            for (int cell = nose + (horizontal ? 1 : Board.SIZE); // Walk along the ship until it ends or meets a nose
+                 (horizontal ? cell % Board.SIZE != 0 : cell < MAX_CELLS) && test(fleet, mask, cell)
+                         && !test(fleet, 2 * MASK_WORDS, cell);
+                 cell += horizontal ? 1 : Board.SIZE) {
+                length++;
+            }
+            if (!board.placeShip(horizontal, length, nose / Board.SIZE, nose % Board.SIZE)) {
+                throw new IllegalArgumentException("The ship at " + nose + " doesn't fit on the board");
+            }
+        }
+    }
+
+    private static boolean test(long[] words, int offset, int cell) {
+        return (words[offset + (cell >>> 6)] & (1L << cell)) != 0;
+    }
+
+    long getFleetWord(int word) {
+        return fleet[word];
+    }
+
+    void setFleetWord(int word, long bits) {
+        fleet[word] = bits;
+    }
+
+    void setOpcode(Opcode opcode) {
+        this.opcode = opcode;
+    }
+
+    @Override
+    public String toString() {
+        return MessageCodec.toText(this);
+    }
+}
@@ -0,0 +1,403 @@
+package Networking.Protocol;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes {@link Message}s. The binary form is what clients and the server send each other:
+ * <ul>
+ *     <li>a version byte, 0x80 | VERSION,</li>
+ *     <li>the opcode byte,</li>
+ *     <li>the sequence number, the highest sequence number received in order and the bits of the ones after it
+ *     received early, as big-endian ints, which are filled in by a {@link Session} and are 0 otherwise,</li>
+ *     <li>the player id and the other id as big-endian ints,</li>
+ *     <li>then the opcode's fields: a string is a length byte and up to 255 bytes of UTF-8, cells are a count byte and a
+ *     byte per cell, a fleet is its three masks in 13 bytes each, a mode is a byte, 1 for salvos and 0 for one shot a
+ *     turn, and a host list is a count byte and an id, a mode and a string per host.</li>
+ * </ul>
+ * Writing and reading the binary form allocates nothing, apart from the Strings read out of a message that has names
+ * or text, so a codec and a message can be reused for every packet. A codec is not thread-safe, so each thread needs
+ * its own.
+ * <p>
+ * The text form, e.g. {@code move;3;0;4 5;}, is the opcode's tag, the two ids and the fields separated by semicolons.
+ * A mode is {@code salvo} or {@code single}, which can be left out, and a host is its id, mode and name separated by spaces.
+ * It is for debugging: it can be typed by hand, and since its first byte is a letter and the binary form's never is,
+ * {@link #decode(ByteBuffer, Message)} reads either. It has no sequence numbers, so it is never resent.
+ */
+public final class MessageCodec {
+
+    /** The version of the binary form. Packets of another version are rejected. */
+    public static final int VERSION = 3;
+    /** The largest message, in bytes, either form can take. */
+    public static final int MAX_SIZE = 512;
+    static final int HEADER_SIZE = 22;
+    private static final int BINARY = 0x80;
+    private static final int SEQUENCE_AT = 2;
+    private static final int ACK_AT = 6;
+    private static final int ACK_BITS_AT = 10;
+    private static final int MAX_STRING = 255;
+    private static final int MASK_BYTES = (Message.MAX_CELLS + 7) >>> 3;
+
+    private final byte[] scratch = new byte[MAX_SIZE]; // Strings are copied out of direct buffers here
+
+    /**
+     * Writes a message in the binary form. Strings longer than 255 bytes are cut short.
+     * @param message The message.
+     * @param out The buffer, written from its position.
+     * @throws java.nio.BufferOverflowException If the message doesn't fit in the buffer.
+     */
+    public void encode(Message message, ByteBuffer out) {
+        Opcode opcode = message.getOpcode();
+        out.put((byte) (BINARY | VERSION));
+        out.put((byte) opcode.code());
+        out.putInt(0);
+        out.putInt(0);
+        out.putInt(0);
+        out.putInt(message.getPlayer());
+        out.putInt(message.getOther());
+        for (Opcode.Field field : opcode.fields()) {
+            switch (field) {
+                case NAME -> putString(out, message.getName());
+                case OTHER_NAME -> putString(out, message.getOtherName());
+                case TEXT -> putString(out, message.getText());
+                case CELLS -> {
+                    out.put((byte) message.getNumCells());
+                    for (int i = 0; i < message.getNumCells(); i++) {
+                        out.put((byte) message.getCell(i));
+                    }
+                }
+                case FLEET -> {
+                    for (int mask = 0; mask < 3; mask++) {
+                        for (int i = 0; i < MASK_BYTES; i++) {
+                            out.put((byte) (message.getFleetWord(mask * Message.MASK_WORDS + (i >>> 3)) >>> (i << 3)));
+                        }
+                    }
+                }
+                case HOSTS -> {
+                    int hosts = Math.min(message.getNumHosts(), 255);
+                    out.put((byte) hosts);
+                    for (int i = 0; i < hosts; i++) {
+                        out.putInt(message.getHostId(i));
+                        out.put((byte) (message.isHostSalvo(i) ? 1 : 0));
+                        putString(out, message.getHostName(i));
+                    }
+                }
+                case MODE -> out.put((byte) (message.isSalvo() ? 1 : 0));
+            }
+        }
+    }
+
+    /**
+     * Writes a message in the text form.
+     * @param message The message.
+     * @param out The buffer, written from its position.
+     * @throws java.nio.BufferOverflowException If the message doesn't fit in the buffer.
+     */
+    public void encodeText(Message message, ByteBuffer out) {
+        out.put(toText(message).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a message in either form, using up the rest of the buffer.
+     * @param in The buffer, read from its position to its limit.
+     * @param message The message to read into. Everything in it is replaced.
+     * @throws IllegalArgumentException If the bytes aren't a message this version understands.
+     */
+    public void decode(ByteBuffer in, Message message) {
+        if (!in.hasRemaining()) {
+            throw new IllegalArgumentException("Empty message");
+        }
+        if (!isBinary(in)) {
+            byte[] bytes = new byte[in.remaining()];
+            in.get(bytes);
+            fromText(new String(bytes, StandardCharsets.UTF_8), message);
+            return;
+        }
+        try {
+            int version = in.get() & ~BINARY & 0xFF;
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported protocol version " + version);
+            }
+            Opcode opcode = opcode(in.get());
+            in.getInt(); // The sequence number and acks are the session's
+            in.getInt();
+            in.getInt();
+            message.set(opcode, in.getInt(), in.getInt());
+            for (Opcode.Field field : opcode.fields()) {
+                switch (field) {
+                    case NAME -> message.setName(getString(in));
+                    case OTHER_NAME -> message.setOtherName(getString(in));
+                    case TEXT -> message.setText(getString(in));
+                    case CELLS -> {
+                        int count = in.get() & 0xFF;
+                        for (int i = 0; i < count; i++) {
+                            message.addCell(in.get() & 0xFF);
+                        }
+                    }
+                    case FLEET -> {
+                        for (int mask = 0; mask < 3; mask++) {
+                            for (int i = 0; i < MASK_BYTES; i++) {
+                                int word = mask * Message.MASK_WORDS + (i >>> 3);
+                                message.setFleetWord(word, message.getFleetWord(word)
+                                        | (in.get() & 0xFFL) << (i << 3));
+                            }
+                        }
+                    }
+                    case HOSTS -> {
+                        int count = in.get() & 0xFF;
+                        for (int i = 0; i < count; i++) {
+                            int id = in.getInt();
+                            boolean salvo = in.get() != 0;
+                            message.addHost(id, getString(in), salvo);
+                        }
+                    }
+                    case MODE -> message.setSalvo(in.get() != 0);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated message");
+        }
+    }
+
+    /**
+     * Reads just the opcode and ids of a message, which is enough to route it, without moving the buffer's position.
+     * @param in The buffer, holding a message from its position.
+     * @param message The message to read into. Its other fields are cleared, or for the text form, read too.
+     * @throws IllegalArgumentException If the bytes aren't a message this version understands.
+     */
+    public void decodeHeader(ByteBuffer in, Message message) {
+        if (in.remaining() < HEADER_SIZE || !isBinary(in)) {
+            decode(in.duplicate(), message);
+            return;
+        }
+        int at = in.position();
+        int version = in.get(at) & ~BINARY & 0xFF;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported protocol version " + version);
+        }
+        message.set(opcode(in.get(at + 1)), in.getInt(at + HEADER_SIZE - 8), in.getInt(at + HEADER_SIZE - 4));
+    }
+
+    /**
+     * Checks if a buffer holds the header of a binary message of this version, which is what a {@link Session} reads.
+     * @param in The buffer, holding a packet from its position.
+     * @return True if the packet starts with a binary header.
+     */
+    public static boolean hasHeader(ByteBuffer in) {
+        return in.remaining() >= HEADER_SIZE && (in.get(in.position()) & 0xFF) == (BINARY | VERSION);
+    }
+
+    static int sequence(ByteBuffer in) {
+        return in.getInt(in.position() + SEQUENCE_AT);
+    }
+
+    static int ack(ByteBuffer in) {
+        return in.getInt(in.position() + ACK_AT);
+    }
+
+    static int ackBits(ByteBuffer in) {
+        return in.getInt(in.position() + ACK_BITS_AT);
+    }
+
+    static int opcodeCode(ByteBuffer in) {
+        return in.get(in.position() + 1);
+    }
+
+    static void setSequence(ByteBuffer out, int start, int sequence) {
+        out.putInt(start + SEQUENCE_AT, sequence);
+    }
+
+    static void setAcks(ByteBuffer out, int start, int ack, int ackBits) {
+        out.putInt(start + ACK_AT, ack);
+        out.putInt(start + ACK_BITS_AT, ackBits);
+    }
+
+    /**
+     * Checks if a buffer holds a message in the binary form.
+     * @param in The buffer, holding a message from its position.
+     * @return True for the binary form, false for the text form.
+     */
+    public static boolean isBinary(ByteBuffer in) {
+        return (in.get(in.position()) & BINARY) != 0;
+    }
+
+    /**
+     * Writes a message in the text form.
+     * @param message The message.
+     * @return The text.
+     */
+    public static String toText(Message message) {
+        Opcode opcode = message.getOpcode();
+        if (opcode == null) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder(opcode.tag()).append(';').append(message.getPlayer()).append(';')
+                .append(message.getOther()).append(';');
+        for (Opcode.Field field : opcode.fields()) {
+            switch (field) {
+                case NAME -> text.append(orEmpty(message.getName())).append(';');
+                case OTHER_NAME -> text.append(orEmpty(message.getOtherName())).append(';');
+                case TEXT -> text.append(orEmpty(message.getText())).append(';');
+                case CELLS -> {
+                    for (int i = 0; i < message.getNumCells(); i++) {
+                        int cell = message.getCell(i);
+                        text.append(cell / 10).append(' ').append(cell % 10).append(';');
+                    }
+                }
+                case FLEET -> {
+                    for (int word = 0; word < Message.FLEET_WORDS; word++) {
+                        text.append(Long.toHexString(message.getFleetWord(word))).append(word + 1 < Message.FLEET_WORDS
+                                ? ',' : ';');
+                    }
+                }
+                case HOSTS -> {
+                    for (int i = 0; i < message.getNumHosts(); i++) {
+                        text.append(message.getHostId(i)).append(' ').append(mode(message.isHostSalvo(i))).append(' ')
+                                .append(message.getHostName(i)).append(';');
+                    }
+                }
+                case MODE -> text.append(mode(message.isSalvo())).append(';');
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads a message in the text form. Text, being the last field of its message, may contain semicolons.
+     */
+    private static void fromText(String text, Message message) {
+        String[] parts = text.split(";", -1);
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("Malformed message " + text);
+        }
+        Opcode opcode = Opcode.ofTag(parts[0]);
+        if (opcode == null) {
+            throw new IllegalArgumentException("Unknown message " + text);
+        }
+        try {
+            message.set(opcode, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            int next = 3;
+            for (Opcode.Field field : opcode.fields()) {
+                switch (field) {
+                    case NAME -> message.setName(part(parts, next++));
+                    case OTHER_NAME -> message.setOtherName(part(parts, next++));
+                    case TEXT -> {
+                        int start = 0;
+                        for (int i = 0; i < next; i++) {
+                            start = text.indexOf(';', start) + 1;
+                        }
+                        message.setText(text.endsWith(";") && text.length() > start
+                                ? text.substring(start, text.length() - 1) : text.substring(start));
+                        next = parts.length;
+                    }
+                    case CELLS -> {
+                        for (; next < parts.length && !parts[next].isEmpty(); next++) {
+                            String[] cell = parts[next].trim().split(" ");
+                            message.addCell(Integer.parseInt(cell[0]) * 10 + Integer.parseInt(cell[1]));
+                        }
+                    }
+                    case FLEET -> {
+                        String[] words = part(parts, next++).split(",");
+                        for (int word = 0; word < Message.FLEET_WORDS; word++) {
+                            message.setFleetWord(word, Long.parseUnsignedLong(words[word], 16));
+                        }
+                    }
+                    case HOSTS -> {
+                        for (; next < parts.length && !parts[next].isEmpty(); next++) {
+                            String[] host = parts[next].split(" ", 3);
+                            message.addHost(Integer.parseInt(host[0]), host[2], isSalvo(host[1]));
+                        }
+                    }
+                    case MODE -> message.setSalvo(isSalvo(part(parts, next++)));
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed message " + text, e);
+        }
+    }
+
+    private static String part(String[] parts, int i) {
+        return i < parts.length ? parts[i] : "";
+    }
+
+    private static String mode(boolean salvo) {
+        return salvo ? "salvo" : "single";
+    }
+
+    private static boolean isSalvo(String mode) {
+        return switch (mode) {
+            case "salvo" -> true;
+            case "single", "" -> false;
+            default -> throw new IllegalArgumentException("Unknown mode " + mode);
+        };
+    }
+
+    private static String orEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static Opcode opcode(byte code) {
+        Opcode opcode = Opcode.of(code);
+        if (opcode == null) {
+            throw new IllegalArgumentException("Unknown opcode " + code);
+        }
+        return opcode;
+    }
+
+    /**
+     * Writes a string as a length byte and UTF-8, stopping before the character that would take it past 255 bytes.
+     */
+    private static void putString(ByteBuffer out, String s) {
+        int lengthAt = out.position();
+        out.put((byte) 0);
+        int length = 0;
+        for (int i = 0; s != null && i < s.length(); i++) {
+            char c = s.charAt(i);
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, s.charAt(i + 1));
+            } else if (Character.isSurrogate(c)) {
+                codePoint = '?'; // A lone surrogate can't be encoded
+            }
+            int size = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (length + size > MAX_STRING) {
+                break;
+            }
+            if (size == 1) {
+                out.put((byte) codePoint);
+            } else if (size == 2) {
+                out.put((byte) (0xC0 | codePoint >>> 6));
+                out.put((byte) (0x80 | codePoint & 0x3F));
+            } else if (size == 3) {
+                out.put((byte) (0xE0 | codePoint >>> 12));
+                out.put((byte) (0x80 | codePoint >>> 6 & 0x3F));
+                out.put((byte) (0x80 | codePoint & 0x3F));
+            } else {
+                out.put((byte) (0xF0 | codePoint >>> 18));
+                out.put((byte) (0x80 | codePoint >>> 12 & 0x3F));
+                out.put((byte) (0x80 | codePoint >>> 6 & 0x3F));
+                out.put((byte) (0x80 | codePoint & 0x3F));
+                i++; // The low surrogate
+            }
+            length += size;
+        }
+        out.put(lengthAt, (byte) length);
+    }
+
+    private String getString(ByteBuffer in) {
+        int length = in.get() & 0xFF;
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String s;
+        if (in.hasArray()) {
+            s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            in.get(scratch, 0, length);
+            s = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+}
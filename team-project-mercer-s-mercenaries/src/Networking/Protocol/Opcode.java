@@ -0,0 +1,120 @@
+package Networking.Protocol;
+
+/**
+ * The kinds of message sent between the clients and the server. Each has a one byte code for the binary form, a four
+ * letter tag for the text form, and the fields it carries after the player and other ids every message has. Every
+ * kind but CHAT and ACK is delivered reliably and in order, see {@link Session}.
+ */
+public enum Opcode {
+    /** Client to server: register a name. Carries the name. */
+    INIT(1, "init", Field.NAME),
+    /** Server to client: a status, e.g. "Name registered". The player id is the one the server assigned. */
+    INFO(2, "info", Field.TEXT),
+    /** Client to server: host a game, played in salvos or not. */
+    HOST(3, "host", Field.MODE),
+    /**
+     * Client to server: ask for the games to join, or host one in the mode given if there are none. Server to clients:
+     * a game was joined, by name, host's name, and the game's mode.
+     */
+    JOIN(4, "join", Field.NAME, Field.OTHER_NAME, Field.MODE),
+    /** Server to client: the games waiting for a player, and the mode of each. */
+    LIST(5, "list", Field.HOSTS),
+    /** Client to server: join the game of the other id, which must be played in the mode given. */
+    JOIN_GAME(6, "jngm", Field.MODE),
+    /** Client to server: the player's ships are placed. */
+    READY(7, "redy"),
+    /** Server to clients: both players are ready. */
+    START(8, "strt"),
+    /** Asks the opponent for their fleet. */
+    REQUEST(9, "rqst"),
+    /** The reply to a REQUEST. Carries the fleet. */
+    RESPONSE(10, "rspn", Field.FLEET),
+    /** A shot, in a game not played in salvos. Carries one cell. */
+    MOVE(11, "move", Field.CELLS),
+    /** A salvo, in a game played in salvos. Carries a cell per ship the shooter has afloat. */
+    SALVO(12, "salv", Field.CELLS),
+    /** A chat line. The server fills in the sender's name. */
+    CHAT(13, "chat", Field.NAME, Field.TEXT),
+    /** A player left. The server fills in their name. */
+    DISCONNECT(14, "dsct", Field.NAME),
+    /** Client to server: ask for a rematch. Server to clients: the rematch started, joiner's name, host's name. */
+    REMATCH(15, "rmch", Field.NAME, Field.OTHER_NAME),
+    /** Either way: acknowledges packets when there is nothing else to carry the acknowledgement. Never handled. */
+    ACK(16, "ackn");
+
+    /**
+     * The fields a message can carry, in the order they are written.
+     */
+    enum Field {
+        NAME, OTHER_NAME, TEXT, CELLS, FLEET, HOSTS, MODE
+    }
+
+    private static final Opcode[] BY_CODE = new Opcode[32];
+
+    static {
+        for (Opcode opcode : values()) {
+            BY_CODE[opcode.code] = opcode;
+        }
+    }
+
+    private final int code;
+    private final String tag;
+    private final Field[] fields;
+
+    Opcode(int code, String tag, Field... fields) {
+        this.code = code;
+        this.tag = tag;
+        this.fields = fields;
+    }
+
+    /**
+     * Returns the byte that stands for this opcode in the binary form.
+     * @return The code.
+     */
+    public int code() {
+        return code;
+    }
+
+    /**
+     * Returns the tag that starts a message of this kind in the text form.
+     * @return The tag.
+     */
+    public String tag() {
+        return tag;
+    }
+
+    /**
+     * Checks if messages of this kind are resent until they are acknowledged, and delivered in order.
+     * @return False for chat lines and acks, which are sent once, true for everything else.
+     */
+    public boolean isReliable() {
+        return this != CHAT && this != ACK;
+    }
+
+    Field[] fields() {
+        return fields;
+    }
+
+    /**
+     * Finds the opcode for a code.
+     * @param code The code.
+     * @return The opcode, or null if no opcode has that code.
+     */
+    public static Opcode of(int code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+    /**
+     * Finds the opcode for a tag.
+     * @param tag The tag.
+     * @return The opcode, or null if no opcode has that tag.
+     */
+    public static Opcode ofTag(String tag) {
+        for (Opcode opcode : values()) {
+            if (opcode.tag.equals(tag)) {
+                return opcode;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,294 @@
+package Networking.Protocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reliable, ordered delivery of binary messages between this end and one peer, on top of UDP. Each reliable message,
+ * see {@link Opcode#isReliable()}, gets the next sequence number and is kept until the peer acknowledges it, and sent
+ * again if the acknowledgement is late. Every packet either way carries the acknowledgements: the highest sequence
+ * number received in order, and a bit for each of the 32 after it that arrived early, so one lost packet doesn't make
+ * the peer resend the ones after it. A packet that arrives early is held until the gap before it is filled, and a
+ * packet that arrives twice is dropped.
+ * <p>
+ * The time to wait for an acknowledgement follows the measured round trip time as in TCP: the smoothed round trip plus
+ * four times its variation, doubled for each retry of a packet. Only packets sent once are timed, since the
+ * acknowledgement of a resent packet could be for either copy. After 10 tries the peer is taken to be gone, see
+ * {@link #isLost()}.
+ * <p>
+ * Chat lines are sent once with no sequence number, so they are never held up behind a lost move, and an
+ * acknowledgement waits a tick for a reply to carry it before going out on its own.
+ * <p>
+ * A session has no socket or thread. Its owner sends what {@link #send} writes, passes each packet with a binary
+ * header to {@link #receive} and then {@link #nextHeld}, and every {@link #TICK_MILLIS} or so sends what
+ * {@link #poll} writes. The methods are synchronized, so one thread can send while another receives. Times are
+ * {@link System#nanoTime()}s.
+ */
+public final class Session {
+
+    /** How often, in milliseconds, the owner should call {@link #poll}. */
+    public static final int TICK_MILLIS = 10;
+    /** The most reliable messages sent and not yet acknowledged. Any more wait for room. */
+    public static final int WINDOW = 32;
+    private static final int MAX_TRIES = 10;
+    private static final long ACK_DELAY = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+    private static final long INITIAL_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long MIN_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(30);
+    private static final long MAX_TIMEOUT = TimeUnit.SECONDS.toNanos(3);
+
+    private final MessageCodec codec = new MessageCodec();
+    private final Message ack = new Message(Opcode.ACK, 0, 0);
+
+    // The messages sent, by sequence number % WINDOW
+    private final byte[][] sent = new byte[WINDOW][];
+    private final int[] sentLength = new int[WINDOW];
+    private final long[] sentAt = new long[WINDOW];
+    private final long[] resendAt = new long[WINDOW];
+    private final int[] tries = new int[WINDOW]; // 0 once acknowledged
+    private final ArrayDeque<byte[]> waiting = new ArrayDeque<>(); // Messages waiting for room in the window
+    private int nextSequence = 1;
+    private int oldestUnacked = 1;
+
+    // The messages received early, by sequence number % WINDOW
+    private final byte[][] held = new byte[WINDOW][];
+    private final int[] heldLength = new int[WINDOW];
+    private int heldBits; // Bit i is set if delivered + 1 + i is held
+    private int delivered; // The highest sequence number delivered in order
+    private boolean ackDue;
+    private long ackAt;
+
+    private long smoothedRtt = -1;
+    private long rttVariation;
+    private long timeout = INITIAL_TIMEOUT;
+    private boolean lost;
+    private boolean ended;
+
+    /**
+     * Writes a message to send to the peer. A reliable message is given a sequence number and kept to be resent,
+     * unless the window is full, in which case it is kept until {@link #poll} has room to send it.
+     * @param message The message.
+     * @param out The buffer, written from its position.
+     * @param now The time.
+     * @return True if the packet written to out should be sent, false if the message is waiting for room.
+     * @throws java.nio.BufferOverflowException If the message doesn't fit in the buffer.
+     */
+    public synchronized boolean send(Message message, ByteBuffer out, long now) {
+        int start = out.position();
+        codec.encode(message, out);
+        if (!message.getOpcode().isReliable()) {
+            putAcks(out, start);
+            return true;
+        }
+        if (!waiting.isEmpty() || nextSequence - oldestUnacked == WINDOW) {
+            byte[] copy = new byte[out.position() - start];
+            out.get(start, copy);
+            out.position(start);
+            waiting.add(copy);
+            return false;
+        }
+        putSequence(out, start, now);
+        return true;
+    }
+
+    /**
+     * Reads the acknowledgements of a packet from the peer, and works out if the packet is to be handled now. A
+     * reliable packet is handled if it is the next in order, held if it is early, and dropped if it was already
+     * received. After handling it, the owner handles any held packets it was the gap before, see {@link #nextHeld}.
+     * @param in The packet, from its position to its limit, which aren't moved.
+     * @param now The time.
+     * @return True if the packet is to be handled now.
+     * @throws IllegalArgumentException If the packet has no binary header, see {@link MessageCodec#hasHeader}.
+     */
+    public synchronized boolean receive(ByteBuffer in, long now) {
+        if (!MessageCodec.hasHeader(in)) {
+            throw new IllegalArgumentException("Not a binary packet");
+        }
+        acknowledge(MessageCodec.ack(in), MessageCodec.ackBits(in), now);
+        int sequence = MessageCodec.sequence(in);
+        if (MessageCodec.opcodeCode(in) == Opcode.ACK.code()) {
+            return false;
+        }
+        if (sequence == 0) {
+            return true; // Sent once, so there is nothing to order
+        }
+        int ahead = sequence - delivered - 1; // 0 for the next in order
+        if (ahead < 0 || ahead < WINDOW && (heldBits & 1 << ahead) != 0) {
+            ackDue = true; // A copy, likely resent because our acknowledgement was lost, so send it again now
+            ackAt = now;
+            return false;
+        }
+        if (ahead >= WINDOW) {
+            return false; // Too far ahead to hold, the peer will send it again
+        }
+        if (!ackDue) {
+            ackDue = true;
+            ackAt = now + ACK_DELAY;
+        }
+        if (ahead == 0) {
+            delivered = sequence;
+            heldBits >>>= 1;
+            return true;
+        }
+        int slot = sequence % WINDOW;
+        if (held[slot] == null) {
+            held[slot] = new byte[MessageCodec.MAX_SIZE];
+        }
+        heldLength[slot] = Math.min(in.remaining(), MessageCodec.MAX_SIZE);
+        in.get(in.position(), held[slot], 0, heldLength[slot]);
+        heldBits |= 1 << ahead;
+        return false;
+    }
+
+    /**
+     * Takes the next held packet, if the gap before it has been filled.
+     * @param out The buffer to copy the packet into. It is cleared, and flipped to be read.
+     * @return True if a packet was copied into out, to be handled next.
+     */
+    public synchronized boolean nextHeld(ByteBuffer out) {
+        if ((heldBits & 1) == 0) {
+            return false;
+        }
+        delivered++;
+        heldBits >>>= 1;
+        int slot = delivered % WINDOW;
+        out.clear();
+        out.put(held[slot], 0, heldLength[slot]).flip();
+        return true;
+    }
+
+    /**
+     * Writes the next packet that is due: a message that was waiting for room in the window, a message that wasn't
+     * acknowledged in time, or an acknowledgement that nothing else carried.
+     * @param out The buffer, written from its position.
+     * @param now The time.
+     * @return True if a packet was written to out, to be sent. Call again until it returns false.
+     */
+    public synchronized boolean poll(ByteBuffer out, long now) {
+        if (lost) {
+            return false;
+        }
+        int start = out.position();
+        if (!waiting.isEmpty() && nextSequence - oldestUnacked < WINDOW) {
+            out.put(waiting.poll());
+            putSequence(out, start, now);
+            return true;
+        }
+        for (int sequence = oldestUnacked; sequence < nextSequence; sequence++) {
+            int slot = sequence % WINDOW;
+            if (tries[slot] != 0 && resendAt[slot] - now <= 0) {
+                if (tries[slot] == MAX_TRIES) {
+                    lost = true;
+                    return false;
+                }
+                out.put(sent[slot], 0, sentLength[slot]);
+                putAcks(out, start);
+                resendAt[slot] = now + Math.min(timeout << tries[slot], MAX_TIMEOUT);
+                tries[slot]++;
+                return true;
+            }
+        }
+        if (ackDue && ackAt - now <= 0) {
+            codec.encode(ack, out);
+            putAcks(out, start);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the peer has stopped acknowledging, having ignored a message sent 10 times. A lost session sends
+     * nothing more.
+     * @return True if the peer is gone.
+     */
+    public synchronized boolean isLost() {
+        return lost;
+    }
+
+    /**
+     * Checks if everything sent has been acknowledged, and every acknowledgement owed has been sent.
+     * @return True if there is nothing left to send.
+     */
+    public synchronized boolean isSettled() {
+        return oldestUnacked == nextSequence && waiting.isEmpty() && !ackDue;
+    }
+
+    /**
+     * Marks the conversation as over, so the owner can drop the session once it {@link #isSettled()}.
+     */
+    public synchronized void end() {
+        ended = true;
+    }
+
+    /**
+     * Checks if the conversation is over, see {@link #end()}.
+     * @return True if it has ended.
+     */
+    public synchronized boolean hasEnded() {
+        return ended;
+    }
+
+    /**
+     * Returns the smoothed round trip time.
+     * @return The time in nanoseconds, or -1 if nothing has been timed yet.
+     */
+    public synchronized long getRoundTrip() {
+        return smoothedRtt;
+    }
+
+    /**
+     * Gives the message just written to out the next sequence number, and keeps a copy to resend.
+     */
+    private void putSequence(ByteBuffer out, int start, long now) {
+        MessageCodec.setSequence(out, start, nextSequence);
+        putAcks(out, start);
+        int slot = nextSequence % WINDOW;
+        if (sent[slot] == null) {
+            sent[slot] = new byte[MessageCodec.MAX_SIZE];
+        }
+        sentLength[slot] = out.position() - start;
+        out.get(start, sent[slot], 0, sentLength[slot]);
+        sentAt[slot] = now;
+        resendAt[slot] = now + timeout;
+        tries[slot] = 1;
+        nextSequence++;
+    }
+
+    private void putAcks(ByteBuffer out, int start) {
+        MessageCodec.setAcks(out, start, delivered, heldBits);
+        ackDue = false;
+    }
+
+    /**
+     * Forgets the messages the peer has acknowledged, timing the ones that were only sent once.
+     */
+    private void acknowledge(int ack, int ackBits, long now) {
+        for (int sequence = oldestUnacked; sequence < nextSequence; sequence++) {
+            int slot = sequence % WINDOW;
+            int ahead = sequence - ack - 1;
+            if (tries[slot] != 0 && (ahead < 0 || ahead < 32 && (ackBits & 1 << ahead) != 0)) {
+                if (tries[slot] == 1) {
+                    time(now - sentAt[slot]);
+                }
+                tries[slot] = 0;
+            }
+        }
+        while (oldestUnacked < nextSequence && tries[oldestUnacked % WINDOW] == 0) {
+            oldestUnacked++;
+        }
+    }
+
+    /**
+     * Adds a round trip to the smoothed round trip and its variation, and sets the timeout from them.
+     */
+    private void time(long rtt) {
+        if (smoothedRtt < 0) {
+            smoothedRtt = rtt;
+            rttVariation = rtt / 2;
+        } else {
+            rttVariation = (3 * rttVariation + Math.abs(smoothedRtt - rtt)) / 4;
+            smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+        }
+        timeout = Math.min(Math.max(smoothedRtt + 4 * rttVariation, MIN_TIMEOUT), MAX_TIMEOUT);
+    }
+}
@@ -1,237 +1,592 @@
 package Networking.Server;
 
+import Networking.Protocol.Message;
+import Networking.Protocol.MessageCodec;
+import Networking.Protocol.Opcode;
+import Networking.Protocol.Session;
+
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.*;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The lobby and relay server. One selector thread owns the socket: it reads every packet into a direct buffer, decodes
+ * it and hands it to a worker, and writes the packets the workers queue up. The workers are single threads, each
+ * owning a share of the games, and every message about a game goes to the same worker, so the messages of one game are
+ * handled in order while separate games are handled at the same time.
+ * <p>
+ * Messages are in the protocol of {@link MessageCodec}. Each player is answered in the form, binary or text, they
+ * last wrote in. A message that can't be handled, say from a player the server doesn't know, is logged and dropped
+ * without affecting any other game.
+ * <p>
+ * Binary packets go through a {@link Session} per address, which puts them in order before they are handed to a
+ * worker, and which the selector thread polls every tick to resend what wasn't acknowledged. A player whose session is
+ * lost is disconnected, as if they had sent a disconnect.
+ */
+public class Server implements Closeable {
 
-public class Server {
+    private static final int PORT = 8000;
+    private static final int MAX_PACKET = MessageCodec.MAX_SIZE;
+    private static final int MAX_LISTED = 16; // Games in a host list, so the list fits in a packet
+    private static final int READS_PER_SELECT = 256; // Packets read before the queued sends get a turn
 
-    private final byte[] incoming = new byte[512];
-    private final int PORT = 8000;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+    private final ByteBuffer incoming = ByteBuffer.allocateDirect(MAX_PACKET);
+    private final ByteBuffer outgoing = ByteBuffer.allocateDirect(MAX_PACKET);
+    private final ByteBuffer held = ByteBuffer.allocate(MAX_PACKET); // Packets released by a session
+    private final ByteBuffer resend = ByteBuffer.allocate(MAX_PACKET); // Packets polled from a session
+    private final Queue<Packet> sendQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(); // Set once a send has woken the selector
+    private final MessageCodec codec = new MessageCodec(); // For the selector thread, to route packets
+    private final Message header = new Message();
+    private final ExecutorService[] workers; // Each game's messages always go to the same worker
+    private final Worker[] scratch; // The codec and buffers of each worker
+    private final ConcurrentHashMap<InetSocketAddress, Session> sessions = new ConcurrentHashMap<>();
 
-    private final DatagramSocket socket;
-    private final HashMap<String, Integer> ports; // Maps usernames to ports
-    private final HashMap<String, InetAddress> IPs; // Maps usernames to IPs
-    private final HashMap<String, GameState> hosts; // Maps hosts to games
-    private final HashMap<String, String> opponents; // Maps users to their opponents.
-    private final HashSet<String> usernames; // Contains the list of used usernames.
+    private final ConcurrentHashMap<Integer, Player> players; // Maps ids to players
+    private final ConcurrentHashMap<String, Player> names; // Maps names to players, to keep names unique
+    private final ConcurrentHashMap<Integer, GameState> hosts; // Maps the ids of hosts to their games
+    private final AtomicInteger nextId = new AtomicInteger(1);
 
-    private final InetAddress address;
+    private final InetSocketAddress address;
+    private volatile boolean running = true;
+    private volatile boolean verbose;
 
     /**
-     * Creates a new server, binding to port 8000. Port 8000 was chosen arbitrarily.
+     * Creates a new server, binding to port 8000 on this machine's address with a worker per core. Port 8000 was
+     * chosen arbitrarily.
      */
     public Server() {
+        this(localAddress(), Runtime.getRuntime().availableProcessors());
+    }
 
+    /**
+     * Creates a new server.
+     * @param address The address to bind to. Port 0 picks a free port, see {@link #getAddress()}.
+     * @param numWorkers The number of worker threads the games are shared between.
+     */
+    public Server(InetSocketAddress address, int numWorkers) {
         try {
-            address = InetAddress.getLocalHost();
-        } catch (UnknownHostException e) {
+            channel = DatagramChannel.open();
+            channel.bind(address);
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            key = channel.register(selector, SelectionKey.OP_READ);
+            this.address = (InetSocketAddress) channel.getLocalAddress();
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
-        try {
-            socket = new DatagramSocket(PORT, address);
-        } catch (SocketException e) {
-            throw new RuntimeException(e);
+        workers = new ExecutorService[numWorkers];
+        scratch = new Worker[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            scratch[i] = new Worker();
+            String name = "server-worker-" + i;
+            workers[i] = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, name);
+                thread.setDaemon(true);
+                return thread;
+            });
         }
 
-        ports = new HashMap<>();
-        hosts = new HashMap<>();
-        IPs = new HashMap<>();
-        opponents = new HashMap<>();
-        usernames = new HashSet<>();
+        players = new ConcurrentHashMap<>();
+        names = new ConcurrentHashMap<>();
+        hosts = new ConcurrentHashMap<>();
     }
 
+    private static InetSocketAddress localAddress() {
+        try {
+            return new InetSocketAddress(InetAddress.getLocalHost(), PORT);
+        } catch (UnknownHostException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
+    /**
+     * Starts the server. Every packet is logged unless --quiet is given.
+     * @param args The command line arguments.
+     */
     public static void main(String[] args) {
         Server server = new Server();
+        server.setVerbose(!Arrays.asList(args).contains("--quiet"));
         server.run();
     }
 
     /**
-     * Response and request headers
-     * New connections begin with "init;username"
-     * Game hosting messages begin with "host;username;"
-     * Game joining messages begin with "join;username_self;username_host" (Shows an appropriate message in the chat window)
-     * Game joining requests begin with "jngm;" (join game)
-     * Ready signals from the boards begin with "redy;"
-     * Game start signals from the server begin with "strt;"
-     * Requests begin with "rqst;" (i.e. other user requests your current board)
-     * Moves begin with "move;username;row;col;"
-     * Chat messages begin with "chat;username;"
-     * Host lists begin with "list;"
-     * Disconnect messages are of the format "dsct;username;"
-     * Rematches begin with "rmch;"
+     * Returns the address the server is bound to.
+     * @return The address.
+     */
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Sets whether every packet sent and received is logged. Logging slows a busy server down a lot.
+     * @param verbose True to log every packet.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Runs the selector loop on a new thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this::run, "server-selector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the server. Messages already handed to the workers are still handled, but their replies may not be sent.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        try {
+            for (ExecutorService worker : workers) {
+                worker.awaitTermination(1, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Error closing the server: " + e);
+        }
+    }
+
+    /**
+     * Reads, dispatches and sends packets until the server is closed.
      */
-    @SuppressWarnings("InfiniteLoopStatement")
     private void run() {
-        System.out.println("Server started on address " + address.getHostAddress() + " and port " + PORT);
+        System.out.println("Server started on address " + address.getAddress().getHostAddress() + " and port "
+                + address.getPort());
 
-        while (true) { // We want this to run until we close the program.
-            DatagramPacket packet = new DatagramPacket(incoming, incoming.length);
+        long nextTick = System.nanoTime();
+        while (running) {
             try {
-                socket.receive(packet);
+                selector.select(Session.TICK_MILLIS);
+                wakeupPending.set(false); // Before draining, so a send queued from now on wakes the next select
+                if (key.isReadable()) {
+                    receive();
+                }
+                long now = System.nanoTime();
+                if (now - nextTick >= 0) {
+                    tick(now);
+                    nextTick = now + TimeUnit.MILLISECONDS.toNanos(Session.TICK_MILLIS);
+                }
+                flush();
+                selector.selectedKeys().clear();
             } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-
-            String message = new String(packet.getData(), 0, packet.getLength());
-            System.out.println("Server received: " + message + " from address: " + packet.getAddress().getHostAddress() +
-                    " from port: " + packet.getPort());
-
-            String name;
-            String opponent;
-            String host;
-            String[] info;
-            GameState gs;
-
-            switch (message.substring(0, 5)) {
-                case "init;" -> {
-                    name = message.substring(5);
-                    String msg;
-                    if (usernames.contains(name)) {
-                        msg = "info;Name used";
-                    } else {
-                        msg = "info;Name registered";
-                        usernames.add(name);
-                        ports.put(name, packet.getPort());
-                        IPs.put(name, packet.getAddress());
+                if (running) {
+                    System.out.println("Server error: " + e);
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the packets waiting on the socket and hands each one to the worker for its game, binary ones in the order
+     * they were sent.
+     */
+    private void receive() throws IOException {
+        for (int i = 0; i < READS_PER_SELECT; i++) {
+            incoming.clear();
+            SocketAddress from = channel.receive(incoming);
+            if (from == null) {
+                return;
+            }
+            incoming.flip();
+            InetSocketAddress sender = (InetSocketAddress) from;
+            if (!MessageCodec.hasHeader(incoming)) {
+                dispatch(incoming, sender); // The text form, or a malformed packet
+                continue;
+            }
+            Session session = sessions.computeIfAbsent(sender, address -> new Session());
+            if (session.receive(incoming, System.nanoTime())) {
+                dispatch(incoming, sender);
+            }
+            while (session.nextHeld(held)) {
+                dispatch(held, sender);
+            }
+        }
+    }
+
+    /**
+     * Sends what each session has due, and disconnects the players whose sessions are lost.
+     * @param now The time.
+     */
+    private void tick(long now) {
+        for (Map.Entry<InetSocketAddress, Session> entry : sessions.entrySet()) {
+            InetSocketAddress address = entry.getKey();
+            Session session = entry.getValue();
+            resend.clear();
+            while (session.poll(resend, now)) {
+                resend.flip();
+                byte[] data = new byte[resend.remaining()];
+                resend.get(data);
+                sendQueue.add(new Packet(data, address));
+                resend.clear();
+            }
+            if (session.isLost() || session.hasEnded() && session.isSettled()) {
+                sessions.remove(address, session);
+            }
+            if (session.isLost()) {
+                System.out.println("Server lost contact with " + address);
+                for (Player player : players.values()) {
+                    if (player.address.equals(address)) {
+                        resend.clear();
+                        codec.encode(header.set(Opcode.DISCONNECT, player.id, 0), resend);
+                        dispatch(resend.flip(), address);
                     }
-                    sendPacket(msg, packet.getPort(), packet.getAddress());
-                }
-                case "host;" -> {
-                    name = message.substring(5, message.indexOf(';', 5));
-                    hosts.put(name, new GameState()); // Represents that the game hasn't started yet
-                    sendPacket("info;Host received", packet.getPort(), packet.getAddress());
-                }
-                case "join;" -> {
-                    if (hosts.isEmpty()) {
-                        name = message.substring(5, message.indexOf(';', 5));
-                        sendPacket("info;No hosts found", packet.getPort(), packet.getAddress());
-                        hosts.put(name, new GameState()); // Represents that the game hasn't started yet
-                    } else {
-                        StringBuilder send = new StringBuilder("list;");
-                        for (String hostname : hosts.keySet()) {
-                            if (!hosts.get(hostname).gameStarted) {
-                                send.append(hostname).append(";");
-                            }
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands a packet to the worker for its game.
+     * @param packet The packet, from its position to its limit.
+     * @param sender The address it came from.
+     */
+    private void dispatch(ByteBuffer packet, InetSocketAddress sender) {
+        int partition;
+        try {
+            codec.decodeHeader(packet, header);
+            partition = Math.floorMod(gameOf(header), workers.length);
+        } catch (RuntimeException e) {
+            System.out.println("Server dropped a malformed message from " + sender + ": " + e.getMessage());
+            return;
+        }
+        byte[] bytes = new byte[packet.remaining()]; // The worker decodes its own copy
+        packet.get(bytes);
+        Worker worker = scratch[partition];
+        workers[partition].execute(() -> {
+            try {
+                worker.in.clear();
+                worker.in.put(bytes).flip();
+                boolean text = !MessageCodec.isBinary(worker.in);
+                worker.codec.decode(worker.in, worker.message);
+                if (verbose) {
+                    System.out.println("Server received: " + worker.message + " from address: "
+                            + sender.getAddress().getHostAddress() + " from port: " + sender.getPort());
+                }
+                handle(worker, sender, text);
+            } catch (RuntimeException e) {
+                System.out.println("Server couldn't handle a message from " + sender + ": " + e);
+            }
+        });
+    }
+
+    /**
+     * Sends the queued packets, until the queue is empty or the socket's buffer is full. If it fills, the selector
+     * waits for it to drain before sending the rest.
+     */
+    private void flush() throws IOException {
+        Packet packet;
+        while ((packet = sendQueue.peek()) != null) {
+            outgoing.clear();
+            outgoing.put(packet.data).flip();
+            if (channel.send(outgoing, packet.to) == 0) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            sendQueue.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Finds the game a message is about, which decides the worker that handles it. Players in a game map to its host,
+     * and players not in one map to themselves.
+     * @param message The message, of which only the opcode and ids are read.
+     * @return The id of the host of the game, or of the player.
+     */
+    private int gameOf(Message message) {
+        if (message.getOpcode() == Opcode.JOIN_GAME) {
+            return message.getOther();
+        }
+        Player player = players.get(message.getPlayer());
+        GameState game = player == null ? null : player.game;
+        return game == null ? message.getPlayer() : game.host.id;
+    }
+
+    /**
+     * Handles one message. Called on the worker for the message's game, see {@link Opcode} for what each one means.
+     * @param worker The worker, holding the message.
+     * @param sender The address the message came from.
+     * @param text If the message was in the text form.
+     */
+    private void handle(Worker worker, InetSocketAddress sender, boolean text) {
+        Message message = worker.message;
+        Message reply = worker.reply;
+        if (message.getOpcode() == Opcode.INIT) {
+            Player player = new Player(nextId.getAndIncrement(), message.getName(), sender);
+            player.text = text;
+            if (message.getName() == null || message.getName().isEmpty()
+                    || names.putIfAbsent(message.getName(), player) != null) {
+                reply.set(Opcode.INFO, 0, 0).setText("Name used");
+                send(worker, reply, sender, text);
+            } else {
+                players.put(player.id, player);
+                send(worker, reply.set(Opcode.INFO, player.id, 0).setText("Name registered"), player);
+            }
+            return;
+        }
+
+        Player player = players.get(message.getPlayer());
+        if (player == null || !player.address.equals(sender)) {
+            System.out.println("Server dropped " + message + " from " + sender + ", which isn't that player");
+            return;
+        }
+        player.text = text;
+        Player opponent = player.opponent;
+        GameState gs = player.game;
+
+        switch (message.getOpcode()) {
+            case HOST -> {
+                gs = new GameState(player, message.isSalvo()); // Represents that the game hasn't started yet
+                hosts.put(player.id, gs);
+                player.game = gs;
+                send(worker, reply.set(Opcode.INFO, player.id, 0).setText("Host received"), player);
+            }
+            case JOIN -> {
+                if (hosts.isEmpty()) {
+                    send(worker, reply.set(Opcode.INFO, player.id, 0).setText("No hosts found"), player);
+                    gs = new GameState(player, message.isSalvo()); // Represents that the game hasn't started yet
+                    hosts.put(player.id, gs);
+                    player.game = gs;
+                } else {
+                    reply.set(Opcode.LIST, player.id, 0);
+                    for (GameState game : hosts.values()) {
+                        if (!game.gameStarted && reply.getNumHosts() < MAX_LISTED) {
+                            reply.addHost(game.host.id, game.host.name, game.salvo);
                         }
-                        sendPacket(send.toString(), packet.getPort(), packet.getAddress());
                     }
+                    send(worker, reply, player);
                 }
-                case "jngm;" -> {
-                    info = message.split(";");
-                    if (hosts.get(info[2]).gameStarted) {
-                        sendPacket("User is already in a game.", packet.getPort(), packet.getAddress());
-                    } else {
-                        opponents.put(info[1], info[2]);
-                        opponents.put(info[2], info[1]);
-                        hosts.get(info[2]).gameStarted = true;
-                        sendPacket("join;" + info[1] + ";" + info[2], ports.get(info[2]), IPs.get(info[2]));
-                        sendPacket("join;" + info[1] + ";" + info[2], packet.getPort(), packet.getAddress());
-                    }
+            }
+            case JOIN_GAME -> {
+                GameState game = hosts.get(message.getOther());
+                if (game == null || game.gameStarted) {
+                    send(worker, reply.set(Opcode.INFO, player.id, 0).setText("User is already in a game."), player);
+                } else if (game.salvo != message.isSalvo()) {
+                    send(worker, reply.set(Opcode.INFO, player.id, 0).setText("Game mode doesn't match."), player);
+                } else {
+                    game.gameStarted = true;
+                    player.opponent = game.host;
+                    game.host.opponent = player;
+                    player.game = game;
+                    reply.set(Opcode.JOIN, player.id, game.host.id).setName(player.name).setOtherName(game.host.name)
+                            .setSalvo(game.salvo);
+                    send(worker, reply, game.host);
+                    send(worker, reply, player);
                 }
-                case "redy;" -> {
-                    info = message.split(";");
-                    if (hosts.get(info[1]) != null) {
-                        host = info[1];
-                        gs = hosts.get(info[1]);
-                        hosts.get(host).hostReady = true;
-                    } else {
-                        host = opponents.get(info[1]);
-                        hosts.get(host).joinReady = true;
-                        gs = hosts.get(host);
-                    }
-                    if (gs.joinReady && gs.hostReady) {
-                        sendPacket("strt;", ports.get(host), IPs.get(host));
-                        sendPacket("strt;", ports.get(opponents.get(host)), IPs.get(opponents.get(host)));
-                    }
+            }
+            case READY -> {
+                if (gs.host == player) {
+                    gs.hostReady = true;
+                } else {
+                    gs.joinReady = true;
                 }
-                case "rqst;" -> {
-                    info = message.split(";");
-                    if (info[2].equals("board")) {
-                        opponent = opponents.get(info[1]);
-                        sendPacket("rqst;board", ports.get(opponent), IPs.get(opponent));
-                    }
+                if (gs.joinReady && gs.hostReady) {
+                    reply.set(Opcode.START, 0, 0);
+                    send(worker, reply, gs.host);
+                    send(worker, reply, gs.host.opponent);
+                }
+            }
+            case REQUEST, RESPONSE -> send(worker, message, opponent); // We need to forward these
+            case MOVE, SALVO -> {
+                if (gs == null || gs.salvo != (message.getOpcode() == Opcode.SALVO)
+                        || !gs.salvo && message.getNumCells() != 1) {
+                    System.out.println("Server dropped " + message + ", which doesn't fit the game's mode");
+                } else {
+                    send(worker, message, opponent);
                 }
-                case "rspn;", "move;" -> { // We need to forward these requests
-                    info = message.split(";");
-                    opponent = opponents.get(info[1]);
-                    sendPacket(message, ports.get(opponent), IPs.get(opponent));
-                }
-                case "chat;" -> {
-                    info = message.split(";");
-                    if (opponents.get(info[1]) == null) {
-                        for (String oName : usernames) {
-                            if (opponents.get(oName) == null && !oName.equals(info[1])) {
-                                sendPacket(message, ports.get(oName), IPs.get(oName)); // Pass on messages if not in game
-                            }
+            }
+            case CHAT -> {
+                message.setName(player.name);
+                if (opponent == null) {
+                    for (Player other : players.values()) {
+                        if (other.opponent == null && other != player) {
+                            send(worker, message, other); // Pass on messages if not in game
                         }
-                    } else {
-                        opponent = opponents.get(info[1]);
-                        sendPacket(message, ports.get(opponent), IPs.get(opponent));
                     }
+                } else {
+                    send(worker, message, opponent);
                 }
-                case "dsct;" -> {
-                    info = message.split(";");
-                    name = info[1];
-                    if (opponents.get(name) != null && ports.get(opponents.get(name)) != null && IPs.get(opponents.get(name)) != null) {
-                        sendPacket(message, ports.get(opponents.get(name)), IPs.get(opponents.get(name)));
-                    }
-                    hosts.remove(name);
-                    ports.remove(name);
-                    IPs.remove(name);
-                    usernames.remove(name);
-                    opponents.remove(name);
-                    System.out.println(name + " deregistered");
-                }
-                case "rmch;" -> {
-                    info = message.split(";");
-                    name = info[1];
-                    if (hosts.get(name) != null) {
-                        host = name;
-                        opponent = opponents.get(name);
-                        gs = hosts.get(name);
-                        gs.hostRematch = true;
-                    } else {
-                        host = opponents.get(name);
-                        opponent = name;
-                        gs = hosts.get(host);
-                        gs.joinRematch = true;
-                    }
-                    if (gs.joinRematch && gs.hostRematch) {
-                        gs.hostReady = false;
-                        gs.joinReady = false;
-                        gs.hostRematch = false;
-                        gs.joinRematch = false;
-                        sendPacket("rmch;" + opponent + ";" + host, ports.get(host), IPs.get(host));
-                        sendPacket("rmch;" + opponent + ";" + host, ports.get(opponents.get(host)), IPs.get(opponents.get(host)));
-                    }
+            }
+            case DISCONNECT -> {
+                message.setName(player.name);
+                if (opponent != null) {
+                    send(worker, message, opponent);
+                    opponent.opponent = null;
+                }
+                if (gs != null && gs.host == player) {
+                    hosts.remove(player.id);
+                }
+                players.remove(player.id);
+                names.remove(player.name);
+                Session session = sessions.get(player.address);
+                if (session != null) {
+                    session.end(); // Dropped once the disconnect is acknowledged
+                }
+                System.out.println(player.name + " deregistered");
+            }
+            case REMATCH -> {
+                if (gs.host == player) {
+                    gs.hostRematch = true;
+                } else {
+                    gs.joinRematch = true;
+                }
+                if (gs.joinRematch && gs.hostRematch) {
+                    gs.hostReady = false;
+                    gs.joinReady = false;
+                    gs.hostRematch = false;
+                    gs.joinRematch = false;
+                    Player joiner = gs.host.opponent;
+                    reply.set(Opcode.REMATCH, joiner.id, gs.host.id).setName(joiner.name).setOtherName(gs.host.name);
+                    send(worker, reply, gs.host);
+                    send(worker, reply, joiner);
                 }
             }
+            default -> System.out.println("Server dropped " + message + ", which only the server sends");
         }
     }
 
-    private void sendPacket(String message, int port, InetAddress ip) {
-        DatagramPacket packet = new DatagramPacket(message.getBytes(), message.length(), ip, port);
+    /**
+     * Queues a message for a player, in the form they last wrote in.
+     * @param worker The worker sending it.
+     * @param message The message.
+     * @param to The player. If it is null, say because they have disconnected, nothing is sent.
+     */
+    private void send(Worker worker, Message message, Player to) {
+        if (to == null) {
+            System.out.println("Server dropped " + message + " to a player that isn't connected");
+            return;
+        }
+        send(worker, message, to.address, to.text);
+    }
+
+    /**
+     * Queues a message for the selector thread to send. A binary message goes through the address's session, and may
+     * wait there for room in its window.
+     * @param worker The worker sending it.
+     * @param message The message.
+     * @param to The address to send it to.
+     * @param text True to send the text form, false for binary.
+     */
+    private void send(Worker worker, Message message, InetSocketAddress to, boolean text) {
+        ByteBuffer out = worker.out;
+        out.clear();
+        boolean now;
         try {
-            socket.send(packet);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            if (text) {
+                worker.codec.encodeText(message, out);
+                now = true;
+            } else {
+                now = sessions.computeIfAbsent(to, address -> new Session()).send(message, out, System.nanoTime());
+            }
+        } catch (BufferOverflowException e) {
+            System.out.println("Server dropped " + message + ", it is too long");
+            return;
+        }
+        if (verbose) {
+            System.out.println("Server sent: " + message + " to address: " + to.getAddress().getHostAddress()
+                    + " to port: " + to.getPort());
+        }
+        if (!now) {
+            return; // Sent when the session has room
+        }
+        out.flip();
+        byte[] data = new byte[out.remaining()]; // The selector thread sends its own copy
+        out.get(data);
+        sendQueue.add(new Packet(data, to));
+        if (!wakeupPending.getAndSet(true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * A packet waiting to be sent.
+     */
+    private record Packet(byte[] data, InetSocketAddress to) {
+    }
+
+    /**
+     * What a worker reuses for every message: its own codec, the message being handled and the reply being built.
+     */
+    private static final class Worker {
+        final MessageCodec codec = new MessageCodec();
+        final ByteBuffer in = ByteBuffer.allocate(MAX_PACKET);
+        final ByteBuffer out = ByteBuffer.allocate(MAX_PACKET);
+        final Message message = new Message();
+        final Message reply = new Message();
+    }
+
+    /**
+     * A registered player. The opponent and game are read when routing messages, so they are volatile.
+     */
+    private static final class Player {
+        final int id;
+        final String name;
+        final InetSocketAddress address;
+        volatile boolean text; // If the player writes the text form
+        volatile Player opponent;
+        volatile GameState game; // The game the player hosts or joined, null in the lobby
+
+        Player(int id, String name, InetSocketAddress address) {
+            this.id = id;
+            this.name = name;
+            this.address = address;
         }
-        System.out.println("Server sent: " + message + " to address: " + ip.getHostAddress() + " to port: " + port);
     }
 
     /**
      * Represents the state of an individual game. Lets the server know when a game has two people connected, and when
-     * both of them have placed their ships.
+     * both of them have placed their ships. Only the worker for the game touches it. The server checks each shot is a
+     * move or a salvo as the game's mode says, but only the players know how many ships are afloat, so the one shot at
+     * checks the size of a salvo.
      */
     private static class GameState {
+        final Player host;
+        final boolean salvo; // Each turn is one shot per ship afloat, see Opcode.SALVO
         boolean gameStarted = false;
         boolean hostReady = false;
         boolean joinReady = false;
         boolean hostRematch = false;
         boolean joinRematch = false;
+
+        GameState(Player host, boolean salvo) {
+            this.host = host;
+            this.salvo = salvo;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,24 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark in this package with the GC profiler, which adds the allocation rate (gc.alloc.rate.norm, in
+ * bytes per operation) next to the time per operation. Pass a regular expression to only run matching benchmarks.
+ * <p>
+ * Needs jmh-core and jmh-generator-annprocess on the classpath, the same way the tests need JUnit.
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "benchmarks\\..*")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
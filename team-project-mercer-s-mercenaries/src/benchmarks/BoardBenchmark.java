@@ -0,0 +1,140 @@
+package benchmarks;
+
+import model.Board;
+import model.BoardState;
+import model.FleetGenerator;
+import model.ShotResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import simulation.Match;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the core Board operations. Boards can't be reset, so the shot and placement benchmarks build a new
+ * board in every invocation and spread the time over the operations they make. {@link #construct()} measures that
+ * overhead on its own. {@link BoardState} can take shots back, so {@link #applyUndo()} reuses one state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BoardBenchmark {
+
+    private static final int FLEETS = 256; // Cycle through several fleets so the branches aren't all predicted
+
+    private Board[] fleets; // Copied with placeShip, since fleets can have touching ships
+    private int[] shotOrder;
+    private Board midGame;
+    private BoardState midGameState;
+    private FleetGenerator fleetGenerator;
+    private int[] fleetBuffer;
+    private int next;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        fleets = new Board[FLEETS];
+        for (int i = 0; i < FLEETS; i++) {
+            fleets[i] = Match.randomBoard(random);
+        }
+        shotOrder = new int[Board.SIZE * Board.SIZE];
+        for (int i = 0; i < shotOrder.length; i++) { // Shuffle the cells so shots aren't in memory order
+            int j = random.nextInt(i + 1);
+            shotOrder[i] = shotOrder[j];
+            shotOrder[j] = i;
+        }
+        fleetGenerator = new FleetGenerator(42);
+        fleetBuffer = new int[FLEETS * fleetGenerator.fleetSize()];
+        midGame = fresh(fleets[0]);
+        for (int i = 0; i < shotOrder.length / 2; i++) {
+            midGame.tryShot(shotOrder[i] / Board.SIZE, shotOrder[i] % Board.SIZE);
+        }
+        midGameState = midGame.snapshot();
+    }
+
+    private Board nextFleet() {
+        next = (next + 1) & (FLEETS - 1);
+        return fleets[next];
+    }
+
+    @Benchmark
+    public Board construct() {
+        return fresh(nextFleet());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Board.SIZE * Board.SIZE)
+    public Board tryShot() {
+        Board board = fresh(nextFleet());
+        for (int cell : shotOrder) {
+            board.tryShot(cell / Board.SIZE, cell % Board.SIZE);
+        }
+        return board;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(5)
+    public Board placeShip() {
+        Board board = new Board(null);
+        int offset = next = (next + 1) & 3;
+        board.placeShip(true, 5, offset, 0);
+        board.placeShip(false, 4, 2, 9 - offset);
+        board.placeShip(true, 3, 5 + offset, 3);
+        board.placeShip(false, 3, 4, offset);
+        board.placeShip(true, 2, 9, 5 + offset);
+        return board;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FLEETS)
+    public int[] generateFleets() {
+        fleetGenerator.fill(fleetBuffer, FLEETS);
+        return fleetBuffer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Board.SIZE * Board.SIZE)
+    public BoardState applyUndo() {
+        for (int cell : shotOrder) {
+            if (midGameState.apply(cell) != ShotResult.INVALID) {
+                midGameState.undo();
+            }
+        }
+        return midGameState;
+    }
+
+    @Benchmark
+    public BoardState snapshot() {
+        return midGame.snapshot();
+    }
+
+    @Benchmark
+    public boolean gameOver() {
+        return midGame.gameOver();
+    }
+
+    /**
+     * Returns a board with the same ships as another and no shots.
+     */
+    private static Board fresh(Board fleet) {
+        Board board = new Board(null);
+        for (int ship = 0; ship < fleet.getNumShips(); ship++) {
+            board.placeShip(fleet.isShipHorizontal(ship), fleet.getShipLength(ship), fleet.getShipRow(ship),
+                    fleet.getShipCol(ship));
+        }
+        return board;
+    }
+}
@@ -0,0 +1,119 @@
+package benchmarks;
+
+import model.Board;
+import model.Point;
+import model.ProbabilityAI;
+import model.RandomAI;
+import model.SmartAI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import simulation.Match;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the computer strategies. The RandomAI benchmarks never shoot, so the board stays in the state set up
+ * for the trial. The SmartAI and ProbabilityAI benchmarks play a whole game per invocation, since those strategies keep
+ * state between moves.
+ * <p>
+ * {@link #smartNewGame()} only creates the board and the SmartAI. With the GC profiler, its bytes per operation should
+ * match {@link #smartFullGame()}, since the moves themselves allocate nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StrategyBenchmark {
+
+    private static final int FLEETS = 256;
+
+    private Board[] fleets; // Copied with placeShip, since fleets can have touching ships
+    private Board empty;
+    private Board nearlyFull;
+    private RandomAI random;
+    private int next;
+
+    @Setup
+    public void setup() {
+        SplittableRandom generator = new SplittableRandom(42);
+        fleets = new Board[FLEETS];
+        for (int i = 0; i < FLEETS; i++) {
+            fleets[i] = Match.randomBoard(generator);
+        }
+        empty = fresh(fleets[0]);
+        nearlyFull = fresh(fleets[0]);
+        for (int row = 0; row < Board.SIZE; row++) {
+            for (int col = 0; col < Board.SIZE; col++) {
+                if (row != Board.SIZE - 1 || col != Board.SIZE - 1) { // Leave one open cell
+                    nearlyFull.tryShot(row, col);
+                }
+            }
+        }
+        random = new RandomAI();
+    }
+
+    @Benchmark
+    public Point randomEmptyBoard() {
+        return random.desiredMove(empty);
+    }
+
+    @Benchmark
+    public Point randomNearlyFullBoard() {
+        return random.desiredMove(nearlyFull);
+    }
+
+    @Benchmark
+    public Board smartFullGame() {
+        next = (next + 1) & (FLEETS - 1);
+        Board board = fresh(fleets[next]);
+        SmartAI smart = new SmartAI();
+        while (!board.gameOver()) {
+            Point move = smart.desiredMove(board);
+            board.tryShot(move.row, move.col);
+        }
+        return board;
+    }
+
+    @Benchmark
+    public void smartNewGame(Blackhole blackhole) {
+        next = (next + 1) & (FLEETS - 1);
+        blackhole.consume(fresh(fleets[next]));
+        blackhole.consume(new SmartAI());
+    }
+
+    @Benchmark
+    public Board probabilityFullGame() {
+        next = (next + 1) & (FLEETS - 1);
+        Board board = fresh(fleets[next]);
+        ProbabilityAI probability = new ProbabilityAI(next);
+        while (!board.gameOver()) {
+            Point move = probability.desiredMove(board);
+            board.tryShot(move.row, move.col);
+        }
+        return board;
+    }
+
+    /**
+     * Returns a board with the same ships as another and no shots.
+     */
+    private static Board fresh(Board fleet) {
+        Board board = new Board(null);
+        for (int ship = 0; ship < fleet.getNumShips(); ship++) {
+            board.placeShip(fleet.isShipHorizontal(ship), fleet.getShipLength(ship), fleet.getShipRow(ship),
+                    fleet.getShipCol(ship));
+        }
+        return board;
+    }
+}
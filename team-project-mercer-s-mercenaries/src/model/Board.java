@@ -1,69 +1,133 @@
 /**
- * Class to represent the game board. Stores the array as a 2D array of chars.
+ * Class to represent the game board. Ships, hits and misses are each stored as a bitboard, one bit per cell, packed
+ * into an array of longs. Cell (row, col) is bit row * width + col. The board also owns the ships placed on it, and
+ * keeps a count of the un-hit cells of each ship so sunk ships and the end of the game are known as soon as a shot
+ * lands.
+ * <p>
+ * The size of the board and its fleet come from its {@link Rules}, the standard 10 by 10 game unless given. Boards too
+ * big to keep flat, for stress tests, keep their cells in chunks that are allocated as they are played.
+ * <p>
+ * Changes are reported to any {@link BoardListener}s as {@link BoardEvent}s. With none registered, no events are built.
  * @authors: Ryan Bullard
  */
 
 package model;
 
-import view_controller.BoardGUI;
-
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class Board {
 
     public static final int SIZE = 10;
-	private final char[][] board;
-    private final BoardGUI gui;
+
+    /**
+     * The lengths of the ships in a full fleet. A board created without hardcoded ships is not finished until this
+     * many ships have been placed on it.
+     */
+    public static final int[] FLEET = {5, 4, 3, 3, 2};
+
+    private static final BoardListener[] NO_LISTENERS = {};
+
+    private final Rules rules;
+    private final int width;
+    private final int height;
+    private CellStore grid; // Ships, hits and misses
+    private int[] shots; // Every cell shot at, in order
+    private BoardListener[] listeners = NO_LISTENERS; // Copied on change, so a listener can remove itself
     private int numMoves;
     private int numHits;
     private int numMisses;
     private int currHitsInRow;
     private int maxHitsInARow;
-    private final ArrayList<Point> shipLocations;
+    private int[] shipNose; // The cell of each ship's nose.
+    private int[] shipLength;
+    private boolean[] shipHorizontal;
+    private int[] shipRemaining; // The number of un-hit cells left on each ship.
+    private int numShips;
+    private int shipsAfloat;
+    private int fleetSize; // The number of ships this board needs before the game can end.
+    private long hash; // Zobrist hash of the ships and shots
+    private long shotHash; // Zobrist hash of only what the shooter can see: hits, misses and sunk ships
 
     /**
-     * Creates a new Board with hardcoded ships.
+     * Creates a new Board with hardcoded ships. Each straight run of 'S' is read as one ship, so the ships must not
+     * touch: ships side by side are rejected, and ships end to end in a line can't be told apart and are read as one
+     * longer ship. To copy a fleet that may have touching ships, such as one from {@link FleetGenerator}, place its
+     * ships with {@link #placeShip(boolean, int, int, int)} instead.
      * @param shipLocations The list of coordinates the ships have been placed at.
-     * @param listener The BoardGUI this board is connected to.
-     */
-    public Board(char[][] shipLocations, BoardGUI listener) {
-        board = new char[10][10]; // Accurate to the real board.
-        this.shipLocations = new ArrayList<>();
-        for(int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (shipLocations[i][j] == 'S') {
-                    board[i][j] = 'S'; // Represents a ship, should not be shown on the enemy board.
-                    this.shipLocations.add(new Point(i, j));
-                } else {
-                    board[i][j] = 'U'; // U means un-hit.
+     * @param listener The listener to tell about changes, or null.
+     * @throws IllegalArgumentException If two runs of 'S' touch side by side.
+     */
+    public Board(char[][] shipLocations, BoardListener listener) {
+        this(shipLocations.length == SIZE && shipLocations[0].length == SIZE ? Rules.STANDARD
+                : new Rules(shipLocations[0].length, shipLocations.length, new int[0]), listener);
+        for(int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                if (shipLocations[i][j] == 'S' && getShipAt(i, j) < 0) { // The nose of a ship we haven't seen
+                    boolean horizontal = j + 1 < width && shipLocations[i][j + 1] == 'S';
+                    int length = 1;
+                    while (horizontal ? j + length < width && shipLocations[i][j + length] == 'S'
+                            : i + length < height && shipLocations[i + length][j] == 'S') {
+                        length++;
+                    }
+                    for (int k = 0; k < length; k++) { // Another run alongside would make the ships ambiguous
+                        int row = horizontal ? i : i + k;
+                        int col = horizontal ? j + k : j;
+                        if (horizontal ? isShip(shipLocations, row - 1, col) || isShip(shipLocations, row + 1, col)
+                                : isShip(shipLocations, row, col - 1) || isShip(shipLocations, row, col + 1)) {
+                            throw new IllegalArgumentException("The ship at (" + i + ", " + j
+                                    + ") touches another ship side by side");
+                        }
+                    }
+                    addShip(horizontal, length, i * width + j);
                 }
             }
         }
-        gui = listener;
-        numMoves = 0;
-        numHits = 0;
-        numMisses = 0;
-        currHitsInRow = 0;
-        maxHitsInARow = 0;
+        fleetSize = numShips; // Hardcoded boards are always complete.
+    }
+
+    private static boolean isShip(char[][] shipLocations, int row, int col) {
+        return row >= 0 && row < shipLocations.length && col >= 0 && col < shipLocations[row].length
+                && shipLocations[row][col] == 'S';
+    }
+
+    /**
+     * Creates a new board without hardcoded ship placements, for the standard rules.
+     * @param listener The listener to tell about changes, or null.
+     */
+    public Board(BoardListener listener) {
+        this(Rules.STANDARD, listener);
     }
 
     /**
      * Creates a new board without hardcoded ship placements.
-     * @param boardGUI The boardGui this board is associated with.
+     * @param rules The size of the board and the fleet it needs.
+     * @param listener The listener to tell about changes, or null.
      */
-    public Board(BoardGUI boardGUI) {
-        board = new char[10][10]; // Accurate to the real board.
-        for (char[] chars : board) {
-            Arrays.fill(chars, 'U');
+    public Board(Rules rules, BoardListener listener) {
+        this.rules = rules;
+        width = rules.getWidth();
+        height = rules.getHeight();
+        grid = CellStore.create(rules);
+        shots = new int[Math.min(rules.getCells(), 128)];
+        if (listener != null) {
+            listeners = new BoardListener[]{listener};
         }
-        gui = boardGUI;
         numMoves = 0;
         numHits = 0;
         numMisses = 0;
         currHitsInRow = 0;
         maxHitsInARow = 0;
-        this.shipLocations = new ArrayList<>();
+        int capacity = Math.max(rules.getFleetSize(), 1);
+        shipNose = new int[capacity];
+        shipLength = new int[capacity];
+        shipHorizontal = new boolean[capacity];
+        shipRemaining = new int[capacity];
+        numShips = 0;
+        shipsAfloat = 0;
+        fleetSize = rules.getFleetSize();
     }
 
     /**
@@ -76,43 +140,49 @@ public class Board {
      * @return True if the placement is a success, false otherwise
      */
     public boolean placeShip(boolean horizontal, int length, int row, int col) {
-        if(horizontal && col > (10 - length)) {
-            col = 10 - length;
-        } else if (!horizontal && row > (10 - length)){
-            row = 10 - length;
-        }
-        if(horizontal) {
-            for (int i = 0; i < length; i++) { // Check the placement isn't used already
-                if (board[row][col + i] != 'U') {
-                    return false;
-                }
-            }
-            for (int i = 0; i < length; i++) { // Place the ship
-                board[row][col + i] = 'S';
-                shipLocations.add(new Point(row, col + i));
-            }
-        } else {
-            for (int i = 0; i < length; i++) { // Check the placement isn't used already
-                if (board[row + i][col] != 'U') {
-                    return false;
-                }
-            }
-            for (int i = 0; i < length; i++) { // Place the ship
-                board[row + i][col] = 'S';
-                shipLocations.add(new Point(row + i, col));
+        if(horizontal && col > (width - length)) {
+            col = width - length;
+        } else if (!horizontal && row > (height - length)){
+            row = height - length;
+        }
+        if (length < 1 || row < 0 || col < 0 || row >= height || col >= width) { // Doesn't fit at all
+            return false;
+        }
+        int nose = row * width + col;
+        int step = horizontal ? 1 : width;
+        for (int i = 0, cell = nose; i < length; i++, cell += step) { // Check the placement isn't used already
+            if (grid.shipAt(cell) >= 0 || grid.used(cell)) {
+                return false;
             }
         }
-        if(gui != null) {
-            update(new Point(row, col));
+        addShip(horizontal, length, nose);
+        if(listeners.length != 0) {
+            notifyListeners(List.of(BoardEvent.shipPlaced(nose, numShips - 1, width)));
         }
         return true;
     }
 
     /**
-     * Returns the internal representation of the board.
+     * Builds a char representation of the board. 'S' is an un-hit ship, 'H' a hit, 'M' a miss and 'U' un-hit water.
+     * This allocates a new array on every call, so it should only be used for display.
      * @return The board.
      */
     public char[][] getBoard() {
+        char[][] board = new char[height][width];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                int cell = i * width + j;
+                if (grid.hit(cell)) {
+                    board[i][j] = 'H';
+                } else if (grid.used(cell)) {
+                    board[i][j] = 'M';
+                } else if (grid.shipAt(cell) >= 0) {
+                    board[i][j] = 'S';
+                } else {
+                    board[i][j] = 'U';
+                }
+            }
+        }
         return board;
     }
 
@@ -123,7 +193,34 @@ public class Board {
      * @return True if the space has been hit, false otherwise.
      */
     public boolean used(int row, int col) {
-        return board[row][col] == 'H' || board[row][col] == 'M';
+        return used(row * width + col);
+    }
+
+    /**
+     * Checks if a cell has been used, i.e., hit or missed.
+     * @param cell The cell, row * width + col.
+     * @return True if the cell has been shot at, false otherwise.
+     */
+    public boolean used(int cell) {
+        return grid.used(cell);
+    }
+
+    /**
+     * Returns the number of spaces that haven't been hit or missed yet.
+     * @return The number of open spaces.
+     */
+    public int getOpenCells() {
+        return rules.getCells() - numMoves;
+    }
+
+    /**
+     * Finds an open space by its rank, counting open spaces from the top left, row by row. Together with
+     * {@link #getOpenCells()} this picks a uniformly random open space with one random number.
+     * @param n The rank of the space, from 0 to getOpenCells() - 1.
+     * @return The index of the space, row * width + col, or -1 if there are not that many open spaces.
+     */
+    public int openCell(int n) {
+        return grid.openCell(n);
     }
 
     /**
@@ -134,6 +231,45 @@ public class Board {
         return numMoves;
     }
 
+    /**
+     * Returns the cell a past shot was fired at. Strategies can use this to catch up on the shots made since their
+     * last move without scanning the board.
+     * @param move The number of the move, from 0 to getNumMoves() - 1.
+     * @return The cell of that shot, row * width + col.
+     */
+    public int getShot(int move) {
+        return shots[move];
+    }
+
+    /**
+     * Returns one word of the bitboard of the cells covered by ships. Cell c is bit (c & 63) of word (c >>> 6), the
+     * same layout {@link Placements} uses.
+     * @param word The index of the word, from 0 to (width * height + 63) / 64 - 1.
+     * @return The ship bits in that word.
+     */
+    public long getShipWord(int word) {
+        return grid.shipWord(word);
+    }
+
+    /**
+     * Returns the Zobrist hash of the whole board, ships included. It is updated with every placement and shot, so
+     * this is free to call.
+     * @return The hash.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the Zobrist hash of what the player shooting at this board can see: the hits, the misses, and the cells
+     * of the ships that have been sunk. Two boards with different fleets but the same shots and sunk ships have the
+     * same shot hash, so strategies can use it as the key of the position they are looking at.
+     * @return The hash.
+     */
+    public long getShotHash() {
+        return shotHash;
+    }
+
     /**
      * Returns the number of shots that hit a ship.
      * @return The number of hits.
@@ -162,77 +298,457 @@ public class Board {
      * Fires a shot at the location on the board, and updates the board based on the success or failure.
      * @param row The row to hit.
      * @param col The column to hit.
-     * @return True if the shot is valid, false otherwise.
+     * @return True if the shot is valid, false if the space was already used or is off the board.
      */
     public boolean tryShot(int row, int col) {
-        if(used(row, col)) {
-            return false;
+        return fire(row, col) != ShotResult.INVALID;
+    }
+
+    /**
+     * Fires a shot at a cell, like {@link #tryShot(int, int)}.
+     * @param cell The cell, row * width + col.
+     * @return True if the shot is valid, false if the cell was already used or is off the board.
+     */
+    public boolean tryShot(int cell) {
+        return fire(cell) != ShotResult.INVALID;
+    }
+
+    /**
+     * Fires a shot at the location on the board, and reports what it did. See {@link ShotResult} for decoding.
+     * @param row The row to hit.
+     * @param col The column to hit.
+     * @return ShotResult.INVALID if the space was already used or is off the board, otherwise a miss, hit, sunk or
+     * fleet destroyed result.
+     */
+    public int fire(int row, int col) {
+        if (row < 0 || row >= height || col < 0 || col >= width) {
+            return ShotResult.INVALID; // Checked here, since a column past the edge packs to a cell on the next row
         }
-        if(board[row][col] == 'S') {
-            board[row][col] = 'H'; // Represents hit
+        return fire(row * width + col);
+    }
+
+    /**
+     * Fires a shot at a cell, like {@link #fire(int, int)}.
+     * @param cell The cell, row * width + col.
+     * @return ShotResult.INVALID if the cell was already used or is off the board, otherwise a miss, hit, sunk or
+     * fleet destroyed result.
+     */
+    public int fire(int cell) {
+        int result = shoot(cell);
+        if(result != ShotResult.INVALID && listeners.length != 0) {
+            List<BoardEvent> events = new ArrayList<>(3);
+            addEvents(events, cell, result);
+            notifyListeners(events);
+        }
+        return result;
+    }
+
+    /**
+     * Fires a salvo of shots in one pass, for the salvo variant where each turn is one shot per ship still afloat.
+     * Either every shot is made or, if any of them is invalid, none are. Listeners get the events of the whole salvo in
+     * one call.
+     * @param cells The cells to shoot at, row * width + col. No cell may be used already or appear twice.
+     * @param count The number of shots, from the start of cells. At most {@link ShotResult#MAX_SALVO}.
+     * @return ShotResult.SALVO_INVALID if a shot was invalid or off the board, otherwise a bitmask of which shots hit
+     * and which ships sank, see {@link ShotResult#salvoHit(long, int)} and {@link ShotResult#salvoSunk(long)}.
+     * @throws IllegalArgumentException If there are more than {@link ShotResult#MAX_SALVO} shots.
+     * @throws IllegalStateException If the board has more than {@link ShotResult#MAX_SALVO} ships, too many for the
+     * bitmask of sunk ships.
+     */
+    public long tryShots(int[] cells, int count) {
+        if (count > ShotResult.MAX_SALVO) {
+            throw new IllegalArgumentException("A salvo can have at most " + ShotResult.MAX_SALVO + " shots, not "
+                    + count);
+        }
+        if (numShips > ShotResult.MAX_SALVO) {
+            throw new IllegalStateException("Salvos can only be fired at boards of at most " + ShotResult.MAX_SALVO
+                    + " ships, not " + numShips);
+        }
+        for (int i = 0; i < count; i++) {
+            if (cells[i] < 0 || cells[i] >= rules.getCells() || used(cells[i])) {
+                return ShotResult.SALVO_INVALID;
+            }
+            for (int j = 0; j < i; j++) {
+                if (cells[j] == cells[i]) {
+                    return ShotResult.SALVO_INVALID;
+                }
+            }
+        }
+        long salvo = 0;
+        List<BoardEvent> events = listeners.length != 0 ? new ArrayList<>(count + 2) : null;
+        for (int i = 0; i < count; i++) {
+            int result = shoot(cells[i]);
+            if (events != null) {
+                addEvents(events, cells[i], result);
+            }
+            if (ShotResult.isHit(result)) {
+                salvo |= 1L << i;
+            }
+            int sunk = ShotResult.sunkShip(result);
+            if (sunk >= 0) {
+                salvo |= 1L << (32 + sunk);
+            }
+        }
+        if(events != null && count > 0) {
+            notifyListeners(events);
+        }
+        return salvo;
+    }
+
+    /**
+     * Fires a salvo of shots in one pass, see {@link #tryShots(int[], int)}.
+     * @param cells The cells to shoot at.
+     * @return ShotResult.SALVO_INVALID if a shot was invalid, otherwise the bitmask of hits and sunk ships.
+     */
+    public long tryShots(int[] cells) {
+        return tryShots(cells, cells.length);
+    }
+
+    /**
+     * Makes a shot without telling the listeners.
+     * @param cell The cell, row * width + col.
+     * @return The result, see {@link #fire(int)}.
+     */
+    private int shoot(int cell) {
+        if(cell < 0 || cell >= rules.getCells() || grid.used(cell)) {
+            return ShotResult.INVALID;
+        }
+        int result;
+        int ship = grid.shipAt(cell);
+        if(ship >= 0) {
+            grid.markHit(cell);
             currHitsInRow++;
             if(currHitsInRow > maxHitsInARow) {
                 maxHitsInARow = currHitsInRow;
             }
             numHits++;
+            hash ^= Zobrist.hit(cell);
+            shotHash ^= Zobrist.hit(cell);
+            if(--shipRemaining[ship] == 0) {
+                shipsAfloat--;
+                long sunk = Zobrist.sunkShip(shipNose[ship], shipLength[ship], shipHorizontal[ship], width);
+                hash ^= sunk;
+                shotHash ^= sunk;
+                result = ShotResult.sunk(ship, gameOver());
+            } else {
+                result = ShotResult.HIT;
+            }
         } else {
-            board[row][col] = 'M'; // Represents miss
+            grid.markMiss(cell);
             currHitsInRow = 0;
             numMisses++;
+            hash ^= Zobrist.miss(cell);
+            shotHash ^= Zobrist.miss(cell);
+            result = ShotResult.MISS;
         }
-        if(gui != null) {
-            update(new Point(row, col));
+        if (numMoves == shots.length) {
+            shots = Arrays.copyOf(shots, numMoves * 2);
         }
-        numMoves++;
-        return true;
+        shots[numMoves++] = cell;
+        return result;
     }
 
     /**
      * Checks if the game is over.
-     * @return True, if all ships have been hit on this board, false otherwise.
+     * @return True, if the whole fleet has been placed and sunk on this board, false otherwise.
      */
     public boolean gameOver() {
-        if(shipLocations.size() != 17) { // Not all ships have been placed
-            return false;
+        return numShips >= fleetSize && shipsAfloat == 0;
+    }
+
+    /**
+     * Returns the number of ships placed on this board.
+     * @return The number of ships. Ship ids run from 0 to this number - 1, in the order the ships were placed.
+     */
+    public int getNumShips() {
+        return numShips;
+    }
+
+    /**
+     * Returns a copy of this board with the same ships and shots, in the same order, that has no listeners.
+     * Strategies can shoot at the copy without changing this board.
+     * @return The copy.
+     */
+    public Board copy() {
+        Board copy = new Board(rules, null);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Makes this board a copy of another, with the same ships and shots, keeping its own listeners. Unlike
+     * {@link #copy()}, the board stays the same object, so whatever a strategy keeps about it from move to move, like
+     * an {@link ObservedBoard}, carries on from the shots it has seen instead of starting over. That assumes the shots
+     * it has seen are still the first shots, so the other board should be a later position of the same game.
+     * @param other The board to copy.
+     * @throws IllegalArgumentException If the other board has different rules.
+     */
+    public void copyFrom(Board other) {
+        if (!rules.equals(other.rules)) {
+            throw new IllegalArgumentException("Can't copy a board with rules " + other.rules + " into " + rules);
         }
-        for(Point point : shipLocations) {
-            if(board[point.row][point.col] == 'S') {
-                return false;
+        grid = other.grid.copy();
+        shots = other.shots.clone();
+        shipNose = other.shipNose.clone();
+        shipLength = other.shipLength.clone();
+        shipHorizontal = other.shipHorizontal.clone();
+        shipRemaining = other.shipRemaining.clone();
+        numMoves = other.numMoves;
+        numHits = other.numHits;
+        numMisses = other.numMisses;
+        currHitsInRow = other.currHitsInRow;
+        maxHitsInARow = other.maxHitsInARow;
+        numShips = other.numShips;
+        shipsAfloat = other.shipsAfloat;
+        fleetSize = other.fleetSize;
+        hash = other.hash;
+        shotHash = other.shotHash;
+    }
+
+    /**
+     * Returns the number of ships this board needs before the game can end.
+     * @return The size of the fleet.
+     */
+    int getFleetSize() {
+        return fleetSize;
+    }
+
+    /**
+     * Copies the ships and shots of this board into a {@link BoardState}, which can try shots and take them back.
+     * @return The new state.
+     * @throws IllegalStateException If the board isn't 10 by 10. BoardState is only for the standard board.
+     */
+    public BoardState snapshot() {
+        if (width != SIZE || height != SIZE) {
+            throw new IllegalStateException("Only 10 by 10 boards can be snapshot, not " + rules);
+        }
+        return new BoardState(this);
+    }
+
+    /**
+     * Returns the rules this board is played by.
+     * @return The rules.
+     */
+    public Rules getRules() {
+        return rules;
+    }
+
+    /**
+     * Returns the number of columns.
+     * @return The width of the board.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the number of rows.
+     * @return The height of the board.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of ships that have not been sunk yet.
+     * @return The number of ships afloat.
+     */
+    public int getShipsAfloat() {
+        return shipsAfloat;
+    }
+
+    /**
+     * Finds the ship on a space of the board.
+     * @param row The row to check.
+     * @param col The column to check.
+     * @return The id of the ship on that space, or -1 if there isn't one.
+     */
+    public int getShipAt(int row, int col) {
+        return grid.shipAt(row * width + col);
+    }
+
+    /**
+     * Finds the ship on a cell of the board.
+     * @param cell The cell, row * width + col.
+     * @return The id of the ship on that cell, or -1 if there isn't one.
+     */
+    public int getShipAt(int cell) {
+        return grid.shipAt(cell);
+    }
+
+    /**
+     * Returns the row of a ship's nose, i.e. its top left cell.
+     * @param ship The id of the ship.
+     * @return The row of the nose.
+     */
+    public int getShipRow(int ship) {
+        return shipNose[ship] / width;
+    }
+
+    /**
+     * Returns the column of a ship's nose, i.e. its top left cell.
+     * @param ship The id of the ship.
+     * @return The column of the nose.
+     */
+    public int getShipCol(int ship) {
+        return shipNose[ship] % width;
+    }
+
+    /**
+     * Returns the length of a ship.
+     * @param ship The id of the ship.
+     * @return The length of the ship.
+     */
+    public int getShipLength(int ship) {
+        return shipLength[ship];
+    }
+
+    /**
+     * Returns the orientation of a ship.
+     * @param ship The id of the ship.
+     * @return True if the ship is horizontal, false if it is vertical.
+     */
+    public boolean isShipHorizontal(int ship) {
+        return shipHorizontal[ship];
+    }
+
+    /**
+     * Returns if every position of a ship has been hit.
+     * @param ship The id of the ship.
+     * @return True if the ship has been sunk, false otherwise.
+     */
+    public boolean isSunk(int ship) {
+        return shipRemaining[ship] == 0;
+    }
+
+    /**
+     * Registers a listener to tell about every later change to this board.
+     * @param listener The listener.
+     */
+    public void addListener(BoardListener listener) {
+        BoardListener[] added = Arrays.copyOf(listeners, listeners.length + 1);
+        added[listeners.length] = listener;
+        listeners = added;
+    }
+
+    /**
+     * Stops telling a listener about changes to this board.
+     * @param listener The listener.
+     * @return True if the listener was registered.
+     */
+    public boolean removeListener(BoardListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                BoardListener[] removed = new BoardListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, removed, 0, i);
+                System.arraycopy(listeners, i + 1, removed, i, removed.length - i);
+                listeners = removed.length == 0 ? NO_LISTENERS : removed;
+                return true;
             }
         }
-        return true;
+        return false;
     }
 
     /**
-     * Lets an observer know that the board has been updated, either with a shot or with a placement.
-     * @param pos The position of any new shots. This will be null in any case where shots were not made.
+     * Adds the events for one shot: the shot itself, then any ship it sank and the end of the fleet.
      */
-    private void update(Point pos) {
-        gui.updateBoard(this.getBoard(), this, pos);
+    private void addEvents(List<BoardEvent> events, int cell, int result) {
+        events.add(BoardEvent.shot(cell, result, width));
+        if (ShotResult.sunkShip(result) >= 0) {
+            events.add(BoardEvent.shipSunk(cell, result, width));
+        }
+        if (ShotResult.type(result) == ShotResult.FLEET_DESTROYED) {
+            events.add(BoardEvent.fleetDestroyed(cell, result, width));
+        }
+    }
+
+    /**
+     * Lets the listeners know that the board has been updated, either with shots or with a placement.
+     * @param events What changed.
+     */
+    private void notifyListeners(List<BoardEvent> events) {
+        List<BoardEvent> view = Collections.unmodifiableList(events);
+        for (BoardListener listener : listeners) {
+            listener.boardChanged(this, view);
+        }
     }
 
     /**
      * Test method to print out the current state of the board.
      */
     public void printBoard() {
-        for (char[] row : board) {
+        for (char[] row : getBoard()) {
             for (char curr : row) {
                 System.out.print(curr + " ");
             }
             System.out.println();
         }
     }
-    
+
     /**
      * Checks if the row and col on the board are part of a ship
      * @param row The row to check
      * @param col The column to check
      */
     public boolean hit(int row, int col) {
-        return board[row][col] == 'H';
+        return hit(row * width + col);
     }
-    
+
+    /**
+     * Checks if a cell has been hit.
+     * @param cell The cell, row * width + col.
+     * @return True if a shot at the cell hit a ship.
+     */
+    public boolean hit(int cell) {
+        return grid.hit(cell);
+    }
+
+    /**
+     * Returns the Point for a cell, see {@link Point#of(int, int)}.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The canonical Point.
+     */
     public Point getPoint(int row, int col) {
-    	return new Point(row, col);
+    	return Point.of(row, col);
+    }
+
+    /**
+     * Returns the Point for a cell of this board.
+     * @param cell The cell, row * width + col.
+     * @return The canonical Point.
+     */
+    public Point getPoint(int cell) {
+        return Point.of(cell / width, cell % width);
+    }
+
+    /**
+     * Records a new ship on the board. The caller has already checked that the placement is legal.
+     * @param horizontal If the ship is horizontal or not.
+     * @param length The length of the ship.
+     * @param nose The cell of the ship's nose.
+     */
+    private void addShip(boolean horizontal, int length, int nose) {
+        if (numShips > Short.MAX_VALUE) {
+            throw new IllegalStateException("A board can't hold more than " + (Short.MAX_VALUE + 1) + " ships");
+        }
+        if (numShips == shipNose.length) {
+            int capacity = numShips * 2;
+            shipNose = Arrays.copyOf(shipNose, capacity);
+            shipLength = Arrays.copyOf(shipLength, capacity);
+            shipHorizontal = Arrays.copyOf(shipHorizontal, capacity);
+            shipRemaining = Arrays.copyOf(shipRemaining, capacity);
+        }
+        int id = numShips++;
+        for (int i = 0; i < length; i++) {
+            int cell = horizontal ? nose + i : nose + i * width;
+            grid.setShip(cell, id);
+            hash ^= Zobrist.ship(cell);
+        }
+        shipNose[id] = nose;
+        shipLength[id] = length;
+        shipHorizontal[id] = horizontal;
+        shipRemaining[id] = length;
+        shipsAfloat++;
     }
 }
@@ -0,0 +1,96 @@
+package model;
+
+/**
+ * One change to a {@link Board}, as delivered to a {@link BoardListener}. A shot that sinks a ship is reported as a
+ * SHOT event followed by a SHIP_SUNK event, and a FLEET_DESTROYED event after that if it was the last ship afloat.
+ * Events are immutable, so listeners may keep them.
+ */
+public final class BoardEvent {
+
+    /** The kinds of change. */
+    public enum Type {
+        /** A ship was placed. The cell is its nose. */
+        SHIP_PLACED,
+        /** A shot was made. The result is the packed {@link ShotResult}. */
+        SHOT,
+        /** A ship sank. The cell is the shot that sank it. */
+        SHIP_SUNK,
+        /** The last ship afloat sank. The cell is the shot that sank it. */
+        FLEET_DESTROYED
+    }
+
+    private final Type type;
+    private final int cell;
+    private final int ship;
+    private final int result;
+    private final int width; // Of the board, to turn the cell back into a row and column
+
+    private BoardEvent(Type type, int cell, int ship, int result, int width) {
+        this.type = type;
+        this.cell = cell;
+        this.ship = ship;
+        this.result = result;
+        this.width = width;
+    }
+
+    static BoardEvent shipPlaced(int nose, int ship, int width) {
+        return new BoardEvent(Type.SHIP_PLACED, nose, ship, ShotResult.INVALID, width);
+    }
+
+    static BoardEvent shot(int cell, int result, int width) {
+        return new BoardEvent(Type.SHOT, cell, ShotResult.sunkShip(result), result, width);
+    }
+
+    static BoardEvent shipSunk(int cell, int result, int width) {
+        return new BoardEvent(Type.SHIP_SUNK, cell, ShotResult.sunkShip(result), result, width);
+    }
+
+    static BoardEvent fleetDestroyed(int cell, int result, int width) {
+        return new BoardEvent(Type.FLEET_DESTROYED, cell, ShotResult.sunkShip(result), result, width);
+    }
+
+    /**
+     * Returns the kind of change.
+     * @return The type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the cell the change happened on.
+     * @return The cell, row * width + col.
+     */
+    public int getCell() {
+        return cell;
+    }
+
+    /**
+     * Returns the cell the change happened on as a Point.
+     * @return The Point.
+     */
+    public Point getPoint() {
+        return Point.of(cell / width, cell % width);
+    }
+
+    /**
+     * Returns the ship the change is about.
+     * @return The id of the ship placed or sunk, or -1 for a shot that didn't sink anything.
+     */
+    public int getShip() {
+        return ship;
+    }
+
+    /**
+     * Returns the result of the shot.
+     * @return The packed {@link ShotResult}, or ShotResult.INVALID for a placement.
+     */
+    public int getResult() {
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return type + "(" + cell / width + ", " + cell % width + (ship >= 0 ? ", ship " + ship : "") + ")";
+    }
+}
@@ -0,0 +1,21 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Observes the changes made to a {@link Board}. The events of one change arrive together, in order: a placement, a
+ * single shot with whatever it sank, or a whole salvo. Listeners are called on the thread that changed the board.
+ * <p>
+ * A board with no listeners doesn't build any events, so headless games pay nothing for them. Listeners that would
+ * rather handle a frame or a turn at a time can be wrapped in a {@link CoalescingListener}.
+ */
+@FunctionalInterface
+public interface BoardListener {
+
+    /**
+     * Called after a board changes.
+     * @param board The board that changed.
+     * @param events What changed, in the order it happened. The list can't be modified.
+     */
+    void boardChanged(Board board, List<BoardEvent> events);
+}
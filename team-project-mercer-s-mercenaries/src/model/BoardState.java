@@ -0,0 +1,339 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A lightweight copy of a board's ships and shots for strategies that search ahead. Unlike {@link Board} it has no
+ * GUI and can take back its shots: {@link #apply(int)} fires a shot and {@link #undo()} rolls back the last one, both
+ * in constant time and without allocating. A search can apply a shot, look at the position, and undo it again as
+ * many times as it likes on one object.
+ * <p>
+ * States are made from a board with {@link Board#snapshot()}, or empty with ships placed on them for hypothetical
+ * fleets. {@link #copy()} makes an independent copy, and {@link #copyFrom(BoardState)} overwrites an existing one
+ * so saving and restoring positions in a loop allocates nothing either.
+ */
+public final class BoardState {
+
+    private static final int CELLS = Board.SIZE * Board.SIZE;
+    private static final int WORDS = (CELLS + 63) >>> 6;
+
+    private final long[] ships = new long[WORDS];
+    private final long[] hits = new long[WORDS];
+    private final long[] misses = new long[WORDS];
+    private final byte[] shipAt = new byte[CELLS]; // The id of the ship on each cell, or -1 for water
+    private final int[] shots = new int[CELLS]; // Every cell shot at, in order, so undo knows what to take back
+    private int[] shipLength;
+    private int[] shipRemaining; // The number of un-hit cells left on each ship
+    private int numShips;
+    private int shipsAfloat;
+    private int fleetSize; // The number of ships needed before the game can end
+    private int numMoves;
+    private int numHits;
+    private long[] shipSunkKey; // The Zobrist key each ship adds to the hashes when it sinks
+    private long hash; // Zobrist hashes, the same as Board.getHash() and Board.getShotHash()
+    private long shotHash;
+
+    /**
+     * Creates an empty state with no ships or shots, that needs a whole {@link Board#FLEET} before the game can end.
+     */
+    public BoardState() {
+        Arrays.fill(shipAt, (byte) -1);
+        shipLength = new int[Board.FLEET.length];
+        shipRemaining = new int[Board.FLEET.length];
+        shipSunkKey = new long[Board.FLEET.length];
+        fleetSize = Board.FLEET.length;
+    }
+
+    /**
+     * Creates a state with the same ships and shots as a board. Ship ids and the order of the shots are the same as
+     * on the board.
+     * @param board The board to copy.
+     */
+    public BoardState(Board board) {
+        this();
+        for (int ship = 0; ship < board.getNumShips(); ship++) {
+            placeShip(board.isShipHorizontal(ship), board.getShipLength(ship),
+                    board.getShipRow(ship) * Board.SIZE + board.getShipCol(ship));
+        }
+        fleetSize = board.getFleetSize();
+        for (int move = 0; move < board.getNumMoves(); move++) {
+            apply(board.getShot(move));
+        }
+    }
+
+    /**
+     * Creates an independent copy of another state.
+     * @param other The state to copy.
+     */
+    private BoardState(BoardState other) {
+        shipLength = new int[other.shipLength.length];
+        shipRemaining = new int[other.shipRemaining.length];
+        shipSunkKey = new long[other.shipSunkKey.length];
+        copyFrom(other);
+    }
+
+    /**
+     * Returns an independent copy of this state.
+     * @return The copy.
+     */
+    public BoardState copy() {
+        return new BoardState(this);
+    }
+
+    /**
+     * Overwrites this state with another one. This only allocates if the other state has more ships than this one
+     * has ever had.
+     * @param other The state to copy.
+     */
+    public void copyFrom(BoardState other) {
+        if (shipLength.length < other.numShips) {
+            shipLength = new int[other.shipLength.length];
+            shipRemaining = new int[other.shipRemaining.length];
+            shipSunkKey = new long[other.shipSunkKey.length];
+        }
+        System.arraycopy(other.ships, 0, ships, 0, WORDS);
+        System.arraycopy(other.hits, 0, hits, 0, WORDS);
+        System.arraycopy(other.misses, 0, misses, 0, WORDS);
+        System.arraycopy(other.shipAt, 0, shipAt, 0, CELLS);
+        System.arraycopy(other.shots, 0, shots, 0, other.numMoves);
+        System.arraycopy(other.shipLength, 0, shipLength, 0, other.numShips);
+        System.arraycopy(other.shipRemaining, 0, shipRemaining, 0, other.numShips);
+        System.arraycopy(other.shipSunkKey, 0, shipSunkKey, 0, other.numShips);
+        numShips = other.numShips;
+        shipsAfloat = other.shipsAfloat;
+        fleetSize = other.fleetSize;
+        numMoves = other.numMoves;
+        numHits = other.numHits;
+        hash = other.hash;
+        shotHash = other.shotHash;
+    }
+
+    /**
+     * Places a ship, for building hypothetical fleets. Unlike {@link Board#placeShip(boolean, int, int, int)} the ship
+     * is not moved back onto the board if it runs off the edge.
+     * @param horizontal If the ship is horizontal or not.
+     * @param length The length of the ship.
+     * @param nose The cell of the ship's nose, row * Board.SIZE + col.
+     * @return True if the ship was placed, false if it runs off the board or covers a ship or a shot cell.
+     */
+    public boolean placeShip(boolean horizontal, int length, int nose) {
+        int row = nose / Board.SIZE;
+        int col = nose % Board.SIZE;
+        if (horizontal ? col + length > Board.SIZE : row + length > Board.SIZE) {
+            return false;
+        }
+        int step = horizontal ? 1 : Board.SIZE;
+        for (int i = 0, cell = nose; i < length; i++, cell += step) {
+            if (shipAt[cell] >= 0 || used(cell)) {
+                return false;
+            }
+        }
+        if (numShips == shipLength.length) {
+            shipLength = Arrays.copyOf(shipLength, numShips * 2);
+            shipRemaining = Arrays.copyOf(shipRemaining, numShips * 2);
+            shipSunkKey = Arrays.copyOf(shipSunkKey, numShips * 2);
+        }
+        int id = numShips++;
+        for (int i = 0, cell = nose; i < length; i++, cell += step) {
+            ships[cell >>> 6] |= 1L << cell;
+            shipAt[cell] = (byte) id;
+            hash ^= Zobrist.ship(cell);
+        }
+        shipSunkKey[id] = Zobrist.sunkShip(nose, length, horizontal);
+        shipLength[id] = length;
+        shipRemaining[id] = length;
+        shipsAfloat++;
+        return true;
+    }
+
+    /**
+     * Fires a shot at a cell.
+     * @param cell The cell, row * Board.SIZE + col.
+     * @return ShotResult.INVALID if the cell was already used, otherwise a miss, hit, sunk or fleet destroyed result,
+     * the same as {@link Board#fire(int)} would give.
+     */
+    public int apply(int cell) {
+        int w = cell >>> 6;
+        long bit = 1L << cell;
+        if (((hits[w] | misses[w]) & bit) != 0) {
+            return ShotResult.INVALID;
+        }
+        shots[numMoves++] = cell;
+        if ((ships[w] & bit) == 0) {
+            misses[w] |= bit;
+            hash ^= Zobrist.miss(cell);
+            shotHash ^= Zobrist.miss(cell);
+            return ShotResult.MISS;
+        }
+        hits[w] |= bit;
+        numHits++;
+        hash ^= Zobrist.hit(cell);
+        shotHash ^= Zobrist.hit(cell);
+        int ship = shipAt[cell];
+        if (--shipRemaining[ship] == 0) {
+            shipsAfloat--;
+            hash ^= shipSunkKey[ship];
+            shotHash ^= shipSunkKey[ship];
+            return ShotResult.sunk(ship, gameOver());
+        }
+        return ShotResult.HIT;
+    }
+
+    /**
+     * Takes back the last shot.
+     * @return The cell of the shot that was taken back, or -1 if there were no shots.
+     */
+    public int undo() {
+        if (numMoves == 0) {
+            return -1;
+        }
+        int cell = shots[--numMoves];
+        int w = cell >>> 6;
+        long bit = 1L << cell;
+        if ((hits[w] & bit) == 0) {
+            misses[w] &= ~bit;
+            hash ^= Zobrist.miss(cell);
+            shotHash ^= Zobrist.miss(cell);
+            return cell;
+        }
+        hits[w] &= ~bit;
+        numHits--;
+        hash ^= Zobrist.hit(cell);
+        shotHash ^= Zobrist.hit(cell);
+        int ship = shipAt[cell];
+        if (shipRemaining[ship]++ == 0) {
+            shipsAfloat++;
+            hash ^= shipSunkKey[ship];
+            shotHash ^= shipSunkKey[ship];
+        }
+        return cell;
+    }
+
+    /**
+     * Takes back shots until only the given number are left.
+     * @param moves The number of shots to keep, at most getNumMoves().
+     */
+    public void undoTo(int moves) {
+        while (numMoves > moves) {
+            undo();
+        }
+    }
+
+    /**
+     * Checks if a cell has been shot at.
+     * @param cell The cell, row * Board.SIZE + col.
+     * @return True if the cell has been hit or missed.
+     */
+    public boolean used(int cell) {
+        return ((hits[cell >>> 6] | misses[cell >>> 6]) & (1L << cell)) != 0;
+    }
+
+    /**
+     * Checks if a cell has been hit.
+     * @param cell The cell, row * Board.SIZE + col.
+     * @return True if a shot at the cell hit a ship.
+     */
+    public boolean hit(int cell) {
+        return (hits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Finds the ship on a cell.
+     * @param cell The cell, row * Board.SIZE + col.
+     * @return The id of the ship on that cell, or -1 if there isn't one.
+     */
+    public int getShipAt(int cell) {
+        return shipAt[cell];
+    }
+
+    /**
+     * Returns the length of a ship.
+     * @param ship The id of the ship.
+     * @return The length of the ship.
+     */
+    public int getShipLength(int ship) {
+        return shipLength[ship];
+    }
+
+    /**
+     * Returns if every cell of a ship has been hit.
+     * @param ship The id of the ship.
+     * @return True if the ship has been sunk.
+     */
+    public boolean isSunk(int ship) {
+        return shipRemaining[ship] == 0;
+    }
+
+    /**
+     * Returns the number of ships placed.
+     * @return The number of ships.
+     */
+    public int getNumShips() {
+        return numShips;
+    }
+
+    /**
+     * Returns the number of ships that have not been sunk yet.
+     * @return The number of ships afloat.
+     */
+    public int getShipsAfloat() {
+        return shipsAfloat;
+    }
+
+    /**
+     * Returns the number of shots made.
+     * @return The number of shots.
+     */
+    public int getNumMoves() {
+        return numMoves;
+    }
+
+    /**
+     * Returns the Zobrist hash of the ships and shots, see {@link Board#getHash()}.
+     * @return The hash.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the Zobrist hash of what the shooter can see, see {@link Board#getShotHash()}.
+     * @return The hash.
+     */
+    public long getShotHash() {
+        return shotHash;
+    }
+
+    /**
+     * Returns the number of shots that hit a ship.
+     * @return The number of hits.
+     */
+    public int getNumHits() {
+        return numHits;
+    }
+
+    /**
+     * Returns the cell a past shot was fired at.
+     * @param move The number of the move, from 0 to getNumMoves() - 1.
+     * @return The cell of that shot.
+     */
+    public int getShot(int move) {
+        return shots[move];
+    }
+
+    /**
+     * Returns the number of cells that haven't been shot at.
+     * @return The number of open cells.
+     */
+    public int getOpenCells() {
+        return CELLS - numMoves;
+    }
+
+    /**
+     * Checks if the game is over.
+     * @return True if the whole fleet has been placed and sunk.
+     */
+    public boolean gameOver() {
+        return numShips >= fleetSize && shipsAfloat == 0;
+    }
+}
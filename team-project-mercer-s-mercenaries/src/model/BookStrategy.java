@@ -0,0 +1,47 @@
+package model;
+
+/**
+ * Plays the moves of an {@link OpeningBook} for as long as the position is in the book, then hands every move after
+ * that to another strategy. The other strategy sees the book's shots on the board like any other shots, so it picks up
+ * the game from wherever the book left it.
+ */
+public class BookStrategy implements BoardStrategy {
+
+    private final OpeningBook book;
+    private final BoardStrategy fallback;
+    private Board board; // The board being played, to notice a new game
+    private boolean outOfBook;
+
+    /**
+     * Creates a strategy that plays from a book first.
+     * @param book The opening book.
+     * @param fallback The strategy to use once the position is not in the book.
+     */
+    public BookStrategy(OpeningBook book, BoardStrategy fallback) {
+        this.book = book;
+        this.fallback = fallback;
+    }
+
+    public Point desiredMove(Board board) {
+        if (board != this.board || board.getNumMoves() == 0) {
+            this.board = board;
+            outOfBook = false;
+        }
+        if (!outOfBook && board.getNumMoves() < book.getDepth() && board.getRules().equals(Rules.STANDARD)) {
+            int cell = book.lookup(board.getShotHash());
+            if (cell >= 0 && !board.used(cell)) {
+                return board.getPoint(cell);
+            }
+        }
+        outOfBook = true; // Once a position is missing, every later one is too
+        return fallback.desiredMove(board);
+    }
+
+    /**
+     * Checks if the last move came from the strategy this one falls back to.
+     * @return True once the game has left the book.
+     */
+    public boolean isOutOfBook() {
+        return outOfBook;
+    }
+}
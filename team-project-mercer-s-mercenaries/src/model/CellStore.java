@@ -0,0 +1,339 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Where a {@link Board} keeps its cells: which ship covers each one, and which have been hit or missed. Ship, hit and
+ * miss flags are bitboards, cell c being bit (c & 63) of word (c >>> 6).
+ * <p>
+ * Boards that fit the {@link Rules#isDense() dense} limit use flat arrays. Bigger boards split their cells into chunks
+ * of 4096, and a chunk is only allocated once a ship is placed or a shot is fired in it, so the memory a stress board
+ * uses grows with the number of ships and shots rather than its area.
+ */
+abstract class CellStore {
+
+    /**
+     * Creates empty storage for a board.
+     * @param rules The rules of the board.
+     * @return Flat storage if the rules are dense, chunked storage otherwise.
+     */
+    static CellStore create(Rules rules) {
+        return rules.isDense() ? new Dense(rules.getCells()) : new Chunked(rules.getCells());
+    }
+
+    /**
+     * Finds the ship on a cell.
+     * @param cell The cell.
+     * @return The id of the ship, or -1 for water.
+     */
+    abstract int shipAt(int cell);
+
+    /**
+     * Puts part of a ship on a cell.
+     * @param cell The cell.
+     * @param ship The id of the ship, at most Short.MAX_VALUE.
+     */
+    abstract void setShip(int cell, int ship);
+
+    /**
+     * Checks if a cell has been shot at.
+     * @param cell The cell.
+     * @return True if it was hit or missed.
+     */
+    abstract boolean used(int cell);
+
+    /**
+     * Checks if a cell has been hit.
+     * @param cell The cell.
+     * @return True if a shot at the cell hit a ship.
+     */
+    abstract boolean hit(int cell);
+
+    /**
+     * Records a hit. The cell must not have been shot at.
+     * @param cell The cell.
+     */
+    abstract void markHit(int cell);
+
+    /**
+     * Records a miss. The cell must not have been shot at.
+     * @param cell The cell.
+     */
+    abstract void markMiss(int cell);
+
+    /**
+     * Finds an open cell by its rank, counting from cell 0.
+     * @param n The rank, from 0.
+     * @return The cell, or -1 if there are not that many open cells.
+     */
+    abstract int openCell(int n);
+
+    /**
+     * Returns one word of the bitboard of the cells covered by ships.
+     * @param word The index of the word.
+     * @return The ship bits in that word.
+     */
+    abstract long shipWord(int word);
+
+    /**
+     * Returns a copy that can be changed without changing this one.
+     * @return The copy.
+     */
+    abstract CellStore copy();
+
+    /**
+     * Finds the position of the nth set bit of a word by halving the word until one bit is left.
+     * @param bits The word to search.
+     * @param n The rank of the bit, from 0 to bitCount(bits) - 1.
+     * @return The position of the bit.
+     */
+    static int select(long bits, int n) {
+        int position = 0;
+        for (int width = 32; width > 0; width >>>= 1) {
+            long low = bits & ((1L << width) - 1);
+            int count = Long.bitCount(low);
+            if (n >= count) {
+                n -= count;
+                bits >>>= width;
+                position += width;
+            } else {
+                bits = low;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Finds the nth open cell among the first cells of a set of words.
+     * @param hits The hit bitboard.
+     * @param misses The miss bitboard.
+     * @param cells The number of cells the words hold.
+     * @param n The rank, from 0.
+     * @return The cell, or -(the number of open cells) - 1 if there are not that many.
+     */
+    private static int openCellIn(long[] hits, long[] misses, int cells, int n) {
+        int open = 0;
+        for (int w = 0; w << 6 < cells; w++) {
+            long bits = ~(hits[w] | misses[w]);
+            if (cells - (w << 6) < 64) {
+                bits &= -1L >>> (64 - (cells - (w << 6))); // Only the bits of the last word that are cells
+            }
+            int count = Long.bitCount(bits);
+            if (n < open + count) {
+                return (w << 6) + select(bits, n - open);
+            }
+            open += count;
+        }
+        return -open - 1;
+    }
+
+    /**
+     * Flat bitboards and a flat ship table, for boards of normal size.
+     */
+    private static final class Dense extends CellStore {
+
+        private final int cells;
+        private final long[] ships;
+        private final long[] hits;
+        private final long[] misses;
+        private final short[] shipAt; // The id of the ship on each cell, or -1 for water
+
+        Dense(int cells) {
+            this.cells = cells;
+            int words = (cells + 63) >>> 6;
+            ships = new long[words];
+            hits = new long[words];
+            misses = new long[words];
+            shipAt = new short[cells];
+            Arrays.fill(shipAt, (short) -1);
+        }
+
+        private Dense(Dense other) {
+            cells = other.cells;
+            ships = other.ships.clone();
+            hits = other.hits.clone();
+            misses = other.misses.clone();
+            shipAt = other.shipAt.clone();
+        }
+
+        @Override
+        int shipAt(int cell) {
+            return shipAt[cell];
+        }
+
+        @Override
+        void setShip(int cell, int ship) {
+            ships[cell >>> 6] |= 1L << cell;
+            shipAt[cell] = (short) ship;
+        }
+
+        @Override
+        boolean used(int cell) {
+            return ((hits[cell >>> 6] | misses[cell >>> 6]) & (1L << cell)) != 0;
+        }
+
+        @Override
+        boolean hit(int cell) {
+            return (hits[cell >>> 6] & (1L << cell)) != 0;
+        }
+
+        @Override
+        void markHit(int cell) {
+            hits[cell >>> 6] |= 1L << cell;
+        }
+
+        @Override
+        void markMiss(int cell) {
+            misses[cell >>> 6] |= 1L << cell;
+        }
+
+        @Override
+        int openCell(int n) {
+            int cell = openCellIn(hits, misses, cells, n);
+            return cell < 0 ? -1 : cell;
+        }
+
+        @Override
+        long shipWord(int word) {
+            return ships[word];
+        }
+
+        @Override
+        CellStore copy() {
+            return new Dense(this);
+        }
+    }
+
+    /**
+     * Chunks of 4096 cells, allocated on first use, for stress boards too big to keep flat.
+     */
+    private static final class Chunked extends CellStore {
+
+        private static final int CHUNK_BITS = 12;
+        private static final int CHUNK_CELLS = 1 << CHUNK_BITS;
+        private static final int CHUNK_WORDS = CHUNK_CELLS >>> 6;
+
+        private final int cells;
+        private final Chunk[] chunks;
+
+        Chunked(int cells) {
+            this.cells = cells;
+            chunks = new Chunk[(int) (((long) cells + CHUNK_CELLS - 1) >>> CHUNK_BITS)];
+        }
+
+        private Chunked(Chunked other) {
+            cells = other.cells;
+            chunks = new Chunk[other.chunks.length];
+            for (int c = 0; c < chunks.length; c++) {
+                chunks[c] = other.chunks[c] == null ? null : other.chunks[c].copy();
+            }
+        }
+
+        private Chunk chunk(int cell) {
+            Chunk chunk = chunks[cell >>> CHUNK_BITS];
+            if (chunk == null) {
+                chunk = new Chunk();
+                chunks[cell >>> CHUNK_BITS] = chunk;
+            }
+            return chunk;
+        }
+
+        @Override
+        int shipAt(int cell) {
+            Chunk chunk = chunks[cell >>> CHUNK_BITS];
+            return chunk == null ? -1 : chunk.shipAt[cell & (CHUNK_CELLS - 1)];
+        }
+
+        @Override
+        void setShip(int cell, int ship) {
+            Chunk chunk = chunk(cell);
+            chunk.ships[(cell >>> 6) & (CHUNK_WORDS - 1)] |= 1L << cell;
+            chunk.shipAt[cell & (CHUNK_CELLS - 1)] = (short) ship;
+        }
+
+        @Override
+        boolean used(int cell) {
+            Chunk chunk = chunks[cell >>> CHUNK_BITS];
+            int w = (cell >>> 6) & (CHUNK_WORDS - 1);
+            return chunk != null && ((chunk.hits[w] | chunk.misses[w]) & (1L << cell)) != 0;
+        }
+
+        @Override
+        boolean hit(int cell) {
+            Chunk chunk = chunks[cell >>> CHUNK_BITS];
+            return chunk != null && (chunk.hits[(cell >>> 6) & (CHUNK_WORDS - 1)] & (1L << cell)) != 0;
+        }
+
+        @Override
+        void markHit(int cell) {
+            Chunk chunk = chunk(cell);
+            chunk.hits[(cell >>> 6) & (CHUNK_WORDS - 1)] |= 1L << cell;
+            chunk.used++;
+        }
+
+        @Override
+        void markMiss(int cell) {
+            Chunk chunk = chunk(cell);
+            chunk.misses[(cell >>> 6) & (CHUNK_WORDS - 1)] |= 1L << cell;
+            chunk.used++;
+        }
+
+        @Override
+        int openCell(int n) {
+            for (int c = 0; c < chunks.length; c++) { // Skip whole chunks by their counts
+                int base = c << CHUNK_BITS;
+                int size = Math.min(CHUNK_CELLS, cells - base);
+                Chunk chunk = chunks[c];
+                int open = size - (chunk == null ? 0 : chunk.used);
+                if (n >= open) {
+                    n -= open;
+                } else if (chunk == null) {
+                    return base + n;
+                } else {
+                    return base + openCellIn(chunk.hits, chunk.misses, size, n);
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        long shipWord(int word) {
+            Chunk chunk = chunks[word / CHUNK_WORDS];
+            return chunk == null ? 0 : chunk.ships[word & (CHUNK_WORDS - 1)];
+        }
+
+        @Override
+        CellStore copy() {
+            return new Chunked(this);
+        }
+
+        private static final class Chunk {
+
+            private final long[] ships;
+            private final long[] hits;
+            private final long[] misses;
+            private final short[] shipAt;
+            private int used; // Cells hit or missed
+
+            Chunk() {
+                ships = new long[CHUNK_WORDS];
+                hits = new long[CHUNK_WORDS];
+                misses = new long[CHUNK_WORDS];
+                shipAt = new short[CHUNK_CELLS];
+                Arrays.fill(shipAt, (short) -1);
+            }
+
+            private Chunk(Chunk other) {
+                ships = other.ships.clone();
+                hits = other.hits.clone();
+                misses = other.misses.clone();
+                shipAt = other.shipAt.clone();
+                used = other.used;
+            }
+
+            Chunk copy() {
+                return new Chunk(this);
+            }
+        }
+    }
+}
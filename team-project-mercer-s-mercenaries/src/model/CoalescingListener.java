@@ -0,0 +1,59 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link BoardListener} that holds on to events until {@link #flush()} is called, then hands each board's events to
+ * the listener it wraps in one call. Calling flush once per frame or once per turn means the wrapped listener, say a
+ * redraw or a network sync, runs once however many changes were made in between.
+ * <p>
+ * Boards may change on one thread and be flushed on another.
+ */
+public final class CoalescingListener implements BoardListener {
+
+    private final BoardListener listener;
+    private Map<Board, List<BoardEvent>> pending = new LinkedHashMap<>();
+
+    /**
+     * Creates a coalescing listener.
+     * @param listener The listener to hand the events to.
+     */
+    public CoalescingListener(BoardListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public synchronized void boardChanged(Board board, List<BoardEvent> events) {
+        pending.computeIfAbsent(board, b -> new ArrayList<>()).addAll(events);
+    }
+
+    /**
+     * Checks if there are events waiting to be flushed.
+     * @return True if a board has changed since the last flush.
+     */
+    public synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Hands the events held for each board to the wrapped listener, in the order the boards first changed.
+     */
+    public void flush() {
+        Map<Board, List<BoardEvent>> batches;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batches = pending;
+            pending = new LinkedHashMap<>();
+        }
+        // Outside the lock, so the boards can keep changing while the listener runs
+        for (Map.Entry<Board, List<BoardEvent>> batch : batches.entrySet()) {
+            listener.boardChanged(batch.getKey(), Collections.unmodifiableList(batch.getValue()));
+        }
+    }
+}
@@ -1,16 +1,45 @@
 package model;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
 /**
  * This class allows a Tic Tac Toe (TTT) player to play games against a variety
  * of AIs. It completely relies on the TicTacToeStrategy for it's next move
  * with the desiredMove(TicTacToeGame theGame) method that can "see" the game.
- * 
+ * <p>
+ * Moves can also be computed in the background with desiredMoveAsync, so a slow
+ * strategy doesn't freeze the GUI. Background moves run on a small pool shared
+ * by every ComputerPlayer, and can be given a deadline or cancelled.
+ * <p>
+ * In the salvo variant, desiredSalvo picks several shots for one turn.
+ *
  * @author Kartikey Bihani
  */
 
 public class ComputerPlayer {
 
+  private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+  private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+  private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(64), runnable -> {
+        Thread thread = new Thread(runnable, "computer-player-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true); // Never keeps the application running
+        return thread;
+      });
+
   private BoardStrategy myStrategy;
+  // The board myStrategy plays on in the background, replaced along with it and only touched holding its lock
+  private AtomicReference<Board> scratch = new AtomicReference<>();
+  private CompletableFuture<?> pending; // The last background move, until it finishes
 
   public ComputerPlayer() {
     // This default can be changed with setStrategy
@@ -18,21 +47,150 @@ public class ComputerPlayer {
   }
 
   /**
-   * Change the AI for this ComputerPlayer.
-   * 
+   * Change the AI for this ComputerPlayer. A move still being computed by the
+   * old AI is cancelled.
+   *
    * @param strategy  Any type that implements TicTacToeStrategy
    */
   public void setStrategy(BoardStrategy strategy) {
+    cancel();
     myStrategy = strategy;
+    scratch = new AtomicReference<>();
   }
- 
+
   /**
-   * 
+   *
    * @param board The current state of the game when asked for a move
-   * 
+   *
    * @return A point that store two ints: a row and a column
    */
   public Point desiredMove(Board board) {
     return myStrategy.desiredMove(board);
   }
+
+  /**
+   * Computes the next move on a background thread. The strategy is given a
+   * copy of the board, so the board can be changed as soon as this returns,
+   * even by a move made in its place after a timeout while the strategy is
+   * still running. The copy is the same Board object from move to move, so
+   * a strategy that follows the board can catch up instead of starting over.
+   * Asking for a new move cancels the one still pending, and the strategy is
+   * never asked for two moves at once.
+   *
+   * @param board The current state of the game when asked for a move
+   * @param timeout How long to wait for the move, or 0 to wait forever
+   * @param unit The unit of the timeout
+   *
+   * @return A future of the move. It completes exceptionally with a
+   * TimeoutException if the deadline passes first, and is cancelled by
+   * cancel() or setStrategy. Either way the strategy's thread is interrupted.
+   */
+  public CompletableFuture<Point> desiredMoveAsync(Board board, long timeout, TimeUnit unit) {
+    Board snapshot = board.copy();
+    AtomicReference<Board> follower = scratch;
+    return submit(strategy -> strategy.desiredMove(follow(follower, snapshot)), timeout, unit);
+  }
+
+  /**
+   * Picks the shots for one turn of a salvo game. The strategies only know how
+   * to pick one shot at a time, so each shot is made on a copy of the board
+   * before picking the next. That means the strategy sees where its earlier
+   * shots of the salvo landed, which the real rules don't allow, but it never
+   * picks the same cell twice.
+   *
+   * @param board The current state of the game when asked for a move
+   * @param shots The number of shots in the salvo
+   *
+   * @return The cells to shoot at, row * width + col. There are fewer
+   * than asked for if the board runs out of open cells.
+   */
+  public int[] desiredSalvo(Board board, int shots) {
+    return pickSalvo(myStrategy, board.copy(), shots);
+  }
+
+  /**
+   * Picks the shots for one turn of a salvo game on a background thread, see
+   * desiredSalvo and desiredMoveAsync. Like desiredMoveAsync, it works on a
+   * copy of the board. The shots of the salvo are tried on a further copy, so
+   * the one followed from move to move only ever holds real shots.
+   *
+   * @param board The current state of the game when asked for a move
+   * @param shots The number of shots in the salvo
+   * @param timeout How long to wait for the salvo, or 0 to wait forever
+   * @param unit The unit of the timeout
+   *
+   * @return A future of the cells to shoot at
+   */
+  public CompletableFuture<int[]> desiredSalvoAsync(Board board, int shots, long timeout, TimeUnit unit) {
+    Board snapshot = board.copy();
+    AtomicReference<Board> follower = scratch;
+    return submit(strategy -> pickSalvo(strategy, follow(follower, snapshot).copy(), shots), timeout, unit);
+  }
+
+  /**
+   * Brings the board a strategy plays on up to the snapshot taken when the
+   * move was asked for. Runs on the background thread, holding the
+   * strategy's lock, so the strategy is never reading it at the same time.
+   */
+  private static Board follow(AtomicReference<Board> follower, Board snapshot) {
+    Board board = follower.get();
+    if (board == null || !board.getRules().equals(snapshot.getRules())) {
+      follower.set(snapshot);
+      return snapshot;
+    }
+    board.copyFrom(snapshot);
+    return board;
+  }
+
+  /**
+   * Picks a salvo by shooting at the given board, which must be a copy.
+   */
+  private static int[] pickSalvo(BoardStrategy strategy, Board scratch, int shots) {
+    int[] cells = new int[Math.min(shots, scratch.getOpenCells())];
+    for (int i = 0; i < cells.length; i++) {
+      Point move = strategy.desiredMove(scratch);
+      cells[i] = move.row * scratch.getWidth() + move.col;
+      scratch.tryShot(cells[i]);
+    }
+    return cells;
+  }
+
+  private <T> CompletableFuture<T> submit(Function<BoardStrategy, T> move, long timeout, TimeUnit unit) {
+    cancel();
+    BoardStrategy strategy = myStrategy;
+    CompletableFuture<T> result = new CompletableFuture<>();
+    Future<?> task;
+    try {
+      task = EXECUTOR.submit(() -> {
+        synchronized (strategy) { // An interrupted move may still be running
+          if (!result.isDone()) {
+            try {
+              result.complete(move.apply(strategy));
+            } catch (Throwable e) {
+              result.completeExceptionally(e);
+            }
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    result.whenComplete((value, error) -> {
+      if (error != null) {
+        task.cancel(true);
+      }
+    });
+    pending = result;
+    return timeout > 0 ? result.orTimeout(timeout, unit) : result;
+  }
+
+  /**
+   * Cancels the move being computed in the background, if there is one.
+   */
+  public void cancel() {
+    if (pending != null) {
+      pending.cancel(true);
+      pending = null;
+    }
+  }
 }
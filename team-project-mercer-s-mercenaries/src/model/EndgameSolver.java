@@ -0,0 +1,460 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Picks shots exactly once only a few ships are left afloat. It lists every way the remaining ships can be placed
+ * that agrees with the board, then searches the shots and their outcomes (miss, hit, or sinking a ship, which reveals
+ * where it was) for the shot that minimizes the expected number of shots left. Positions reached by different shot
+ * orders are only searched once.
+ * <p>
+ * The search is only run once a ship has been hit and the number of placements is small, and it gives up after a fixed
+ * number of positions. Otherwise the solver falls back to the cell covered by the most placements, which is the cell
+ * most likely to be a hit.
+ */
+public class EndgameSolver {
+
+    /** By default the solver only takes over for the last ship, where the search is cheap. */
+    public static final int DEFAULT_THRESHOLD = 1;
+
+    private static final int MAX_CONFIGURATIONS = 5000; // More than this and we leave it to the heuristics
+    private static final int EXACT_CONFIGURATIONS = 100; // Only search a hit ship when there are at most this many
+    private static final int NODE_BUDGET = 800; // Positions to search before falling back to the greedy shot
+    private static final int MISS = -1;
+    private static final int HIT = -2;
+
+    private final Placements placements;
+    private final Random generator;
+    private final int threshold;
+    private final int words;
+    private final int[] ships = new int[64]; // Lengths of the ships afloat
+    private final int[] chosen = new int[64]; // Placements picked so far while listing
+    private int numShips;
+    private int[] configurations = new int[1024]; // numShips placement ids per configuration
+    private long[] unions = new long[1024]; // words longs per configuration
+    private int numConfigurations;
+    private int nodes;
+    private boolean lastExact;
+    private final HashMap<Position, Double> memo = new HashMap<>();
+
+    /**
+     * Creates a solver that takes over at the default threshold.
+     * @param placements The placement table for the board.
+     * @param generator The random number generator used to break ties between equally good shots.
+     */
+    public EndgameSolver(Placements placements, Random generator) {
+        this(placements, generator, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates a solver.
+     * @param placements The placement table for the board.
+     * @param generator The random number generator used to break ties between equally good shots.
+     * @param threshold The number of ships afloat at or below which the solver takes over.
+     */
+    public EndgameSolver(Placements placements, Random generator, int threshold) {
+        this.placements = placements;
+        this.generator = generator;
+        this.threshold = threshold;
+        words = placements.words();
+    }
+
+    /**
+     * Returns the number of ships afloat at or below which the solver takes over.
+     * @return The threshold.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Checks if the solver should pick the next shot on a board.
+     * @param observed What is known about the board.
+     * @return True if there are ships afloat, but no more than the threshold.
+     */
+    public boolean applies(ObservedBoard observed) {
+        return observed.shipsAfloat() > 0 && observed.shipsAfloat() <= threshold;
+    }
+
+    /**
+     * Returns the number of placements of the remaining ships found for the last shot.
+     * @return The number of placements.
+     */
+    public int getLastConfigurations() {
+        return numConfigurations;
+    }
+
+    /**
+     * Returns if the last shot came from the full search, rather than the greedy fallback.
+     * @return True if the last shot is exactly optimal.
+     */
+    public boolean wasLastExact() {
+        return lastExact;
+    }
+
+    /**
+     * Picks the next shot.
+     * @param observed What is known about the board, synced with it.
+     * @return The cell to shoot, or -1 if there are too many placements to list.
+     */
+    public int solve(ObservedBoard observed) {
+        lastExact = false;
+        if (!list(observed)) {
+            return -1;
+        }
+        int[] all = new int[numConfigurations];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        long[] used = observed.used().clone();
+        if (numConfigurations <= EXACT_CONFIGURATIONS && observed.hasUnresolvedHits()) {
+            nodes = 0;
+            memo.clear();
+            int cell = search(all, used);
+            memo.clear();
+            if (cell >= 0) {
+                lastExact = true;
+                return cell;
+            }
+        }
+        return mostCovered(all, used);
+    }
+
+    /**
+     * Lists every placement of the ships afloat that avoids the blocked cells, has no overlapping ships and covers
+     * every unresolved hit.
+     * @return False if there were too many to list.
+     */
+    private boolean list(ObservedBoard observed) {
+        numShips = 0;
+        for (int length = placements.maxLength(); length > 0; length--) {
+            for (int i = 0; i < observed.afloat(length); i++) {
+                ships[numShips++] = length;
+            }
+        }
+        numConfigurations = 0;
+        // Each ship on its own gives an upper bound, which saves listing thousands just to give up
+        long bound = 1;
+        for (int ship = 0; ship < numShips; ship++) {
+            int legal = 0;
+            for (int p = placements.first(ships[ship]); p < placements.end(ships[ship]); p++) {
+                if (!placements.overlaps(p, observed.blocked())) {
+                    legal++;
+                }
+            }
+            bound *= legal;
+            if (ship > 0 && ships[ship - 1] == ships[ship]) {
+                bound /= 2;
+            }
+        }
+        if (bound > 4L * MAX_CONFIGURATIONS) {
+            return false;
+        }
+        return list(0, new long[words], observed.blocked(), observed.unresolved());
+    }
+
+    private boolean list(int ship, long[] occupied, long[] blocked, long[] unresolved) {
+        if (ship == numShips) {
+            for (int w = 0; w < words; w++) {
+                if ((unresolved[w] & ~occupied[w]) != 0) {
+                    return true; // Leaves a hit unexplained
+                }
+            }
+            if (numConfigurations == MAX_CONFIGURATIONS) {
+                return false;
+            }
+            if ((numConfigurations + 1) * numShips > configurations.length) {
+                configurations = Arrays.copyOf(configurations, configurations.length * 2);
+            }
+            if ((numConfigurations + 1) * words > unions.length) {
+                unions = Arrays.copyOf(unions, unions.length * 2);
+            }
+            System.arraycopy(chosen, 0, configurations, numConfigurations * numShips, numShips);
+            System.arraycopy(occupied, 0, unions, numConfigurations * words, words);
+            numConfigurations++;
+            return true;
+        }
+        int length = ships[ship];
+        // Ships of the same length are interchangeable, so only list them in increasing placement order
+        int start = ship > 0 && ships[ship - 1] == length ? chosen[ship - 1] + 1 : placements.first(length);
+        for (int p = start; p < placements.end(length); p++) {
+            if (placements.overlaps(p, blocked) || placements.overlaps(p, occupied)) {
+                continue;
+            }
+            chosen[ship] = p;
+            for (int w = 0; w < words; w++) {
+                occupied[w] |= placements.mask(p, w);
+            }
+            boolean ok = list(ship + 1, occupied, blocked, unresolved);
+            for (int w = 0; w < words; w++) {
+                occupied[w] &= ~placements.mask(p, w);
+            }
+            if (!ok) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the best shot from the root position.
+     * @return The cell, or -1 if the search ran out of budget.
+     */
+    private int search(int[] set, long[] used) {
+        int[] candidates = candidates(set, used);
+        shuffleTies(candidates, coverage(set, used));
+        int best = -1;
+        double bestValue = Double.MAX_VALUE;
+        for (int cell : candidates) {
+            double value = value(set, used, cell, bestValue);
+            if (Double.isNaN(value)) {
+                return -1;
+            }
+            if (value < bestValue) {
+                bestValue = value;
+                best = cell;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the expected number of shots needed to sink every ship from a position, playing perfectly.
+     * @return The expected shots, or NaN if the search ran out of budget.
+     */
+    private double expected(int[] set, long[] used) {
+        int bound = lowerBound(set, used);
+        if (bound == 0 || set.length == 1) {
+            return bound; // Nothing left to find, or just shoot the cells that are left
+        }
+        Position key = new Position(set, used);
+        Double known = memo.get(key);
+        if (known != null) {
+            return known;
+        }
+        if (++nodes > NODE_BUDGET) {
+            return Double.NaN;
+        }
+        double best = Double.MAX_VALUE;
+        for (int cell : candidates(set, used)) {
+            double value = value(set, used, cell, best);
+            if (Double.isNaN(value)) {
+                return value;
+            }
+            best = Math.min(best, value);
+        }
+        memo.put(key, best);
+        return best;
+    }
+
+    /**
+     * Returns the expected number of shots left after shooting a cell, counting the shot itself.
+     * @param cutoff Stop early and return something at least this big once the shot can't beat it.
+     * @return The expected shots, or NaN if the search ran out of budget.
+     */
+    private double value(int[] set, long[] used, int cell, double cutoff) {
+        int[] outcomes = new int[set.length];
+        for (int i = 0; i < set.length; i++) {
+            outcomes[i] = outcome(set[i], cell, used);
+        }
+        int[][] groups = group(set, outcomes);
+        long[] after = used.clone();
+        after[cell >>> 6] |= 1L << cell;
+
+        double bound = 1;
+        for (int[] group : groups) {
+            bound += (double) group.length / set.length * lowerBound(group, after);
+        }
+        if (bound >= cutoff) {
+            return bound;
+        }
+        double value = 1;
+        for (int[] group : groups) {
+            double expected = expected(group, after);
+            if (Double.isNaN(expected)) {
+                return expected;
+            }
+            value += (double) group.length / set.length * expected;
+            if (value >= cutoff) {
+                return value;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Works out what a shot would show for one configuration.
+     * @return MISS, HIT, or the placement id of the ship it sinks, which is what sinking reveals.
+     */
+    private int outcome(int configuration, int cell, long[] used) {
+        long bit = 1L << cell;
+        if ((unions[configuration * words + (cell >>> 6)] & bit) == 0) {
+            return MISS;
+        }
+        for (int s = 0; s < numShips; s++) {
+            int p = configurations[configuration * numShips + s];
+            if ((placements.mask(p, cell >>> 6) & bit) != 0) {
+                for (int w = 0; w < words; w++) {
+                    long left = placements.mask(p, w) & ~used[w];
+                    if (w == cell >>> 6) {
+                        left &= ~bit;
+                    }
+                    if (left != 0) {
+                        return HIT;
+                    }
+                }
+                return p;
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * Splits configurations into groups with the same outcome.
+     */
+    private static int[][] group(int[] set, int[] outcomes) {
+        long[] order = new long[set.length]; // Outcome in the high half, so sorting groups them
+        for (int i = 0; i < order.length; i++) {
+            order[i] = (long) outcomes[i] << 32 | i;
+        }
+        Arrays.sort(order);
+        int numGroups = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (i == 0 || order[i] >> 32 != order[i - 1] >> 32) {
+                numGroups++;
+            }
+        }
+        int[][] groups = new int[numGroups][];
+        int g = 0;
+        for (int i = 0; i < order.length; ) {
+            int j = i;
+            while (j < order.length && order[j] >> 32 == order[i] >> 32) {
+                j++;
+            }
+            groups[g] = new int[j - i];
+            for (int k = i; k < j; k++) {
+                groups[g][k - i] = set[(int) order[k]];
+            }
+            g++;
+            i = j;
+        }
+        return groups;
+    }
+
+    /**
+     * Returns a lower bound on the shots left: every configuration still needs all of its un-shot cells hit.
+     */
+    private int lowerBound(int[] set, long[] used) {
+        int bound = Integer.MAX_VALUE;
+        for (int configuration : set) {
+            int left = 0;
+            for (int w = 0; w < words; w++) {
+                left += Long.bitCount(unions[configuration * words + w] & ~used[w]);
+            }
+            bound = Math.min(bound, left);
+        }
+        return bound;
+    }
+
+    /**
+     * Lists the open cells covered by at least one configuration, most covered first.
+     */
+    private int[] candidates(int[] set, long[] used) {
+        int[] coverage = coverage(set, used);
+        long[] order = new long[coverage.length]; // Coverage in the high half, negated so sorting puts the most first
+        int count = 0;
+        for (int cell = 0; cell < coverage.length; cell++) {
+            if (coverage[cell] > 0) {
+                order[count++] = (long) -coverage[cell] << 32 | cell;
+            }
+        }
+        Arrays.sort(order, 0, count);
+        if (count > 0 && -(order[0] >> 32) == set.length) {
+            count = 1; // A certain hit has to be shot sooner or later, and shooting it first never loses anything
+        }
+        int[] candidates = new int[count];
+        for (int i = 0; i < count; i++) {
+            candidates[i] = (int) order[i];
+        }
+        return candidates;
+    }
+
+    /**
+     * Shuffles each run of equally covered candidates, so equally good shots are picked at random.
+     */
+    private void shuffleTies(int[] candidates, int[] coverage) {
+        for (int i = 0; i < candidates.length; ) {
+            int j = i;
+            while (j < candidates.length && coverage[candidates[j]] == coverage[candidates[i]]) {
+                j++;
+            }
+            for (int k = j - 1; k > i; k--) {
+                int swap = i + generator.nextInt(k - i + 1);
+                int cell = candidates[k];
+                candidates[k] = candidates[swap];
+                candidates[swap] = cell;
+            }
+            i = j;
+        }
+    }
+
+    private int[] coverage(int[] set, long[] used) {
+        int[] coverage = new int[placements.cells()];
+        for (int configuration : set) {
+            for (int w = 0; w < words; w++) {
+                for (long bits = unions[configuration * words + w] & ~used[w]; bits != 0; bits &= bits - 1) {
+                    coverage[(w << 6) + Long.numberOfTrailingZeros(bits)]++;
+                }
+            }
+        }
+        return coverage;
+    }
+
+    /**
+     * Returns the open cell covered by the most configurations.
+     */
+    private int mostCovered(int[] set, long[] used) {
+        int[] coverage = coverage(set, used);
+        int best = -1;
+        int ties = 0;
+        for (int cell = 0; cell < coverage.length; cell++) {
+            if (coverage[cell] == 0 || best >= 0 && coverage[cell] < coverage[best]) {
+                continue;
+            }
+            if (best < 0 || coverage[cell] > coverage[best]) {
+                best = cell;
+                ties = 1;
+            } else if (generator.nextInt(++ties) == 0) {
+                best = cell;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A set of configurations together with the cells shot so far, used as the memo key.
+     */
+    private static final class Position {
+        private final int[] set;
+        private final long[] used;
+        private final int hash;
+
+        Position(int[] set, long[] used) {
+            this.set = set;
+            this.used = used;
+            hash = 31 * Arrays.hashCode(set) + Arrays.hashCode(used);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Position other && Arrays.equals(set, other.set) && Arrays.equals(used, other.used);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package model;
+
+import java.util.SplittableRandom;
+
+/**
+ * Generates random fleets, with every legal layout equally likely. Each ship picks one of its placements from the
+ * precomputed {@link Placements} table, and the whole fleet is drawn again if two ships overlap, which keeps the
+ * distribution uniform. Checking for overlaps is a few bitmask ANDs, so no cells are scanned and nothing is allocated.
+ * <p>
+ * A fleet is written as the placement ids of its ships, in the order of the fleet lengths, so many fleets can be
+ * generated into one reusable buffer. {@link #placeFleet(Board)} puts a fleet on a Board.
+ * <p>
+ * Boards too big for a placement table can only have fleets placed on them. Each ship then picks its orientation and
+ * nose directly, weighted by the number of placements of each orientation, and the ships are checked against each
+ * other rather than against a bitmask, so nothing the size of the board is allocated.
+ */
+public final class FleetGenerator {
+
+    private final Placements placements; // Null if the board is too big for a table
+    private final int width;
+    private final int height;
+    private final int[] fleet;
+    private final int[] first; // The first placement id for each ship
+    private final int[] choices; // The number of placements for each ship
+    private final SplittableRandom random;
+    private final long[] occupied;
+
+    /**
+     * Creates a generator for the standard fleet with a random seed.
+     */
+    public FleetGenerator() {
+        this(new SplittableRandom());
+    }
+
+    /**
+     * Creates a generator for the standard fleet that always produces the same fleets.
+     * @param seed The seed for the random number generator.
+     */
+    public FleetGenerator(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    /**
+     * Creates a generator for the standard fleet that draws from an existing random number generator.
+     * @param random The random number generator. It is used directly, not copied.
+     */
+    public FleetGenerator(SplittableRandom random) {
+        this(Placements.STANDARD, Board.FLEET, random);
+    }
+
+    /**
+     * Creates a generator for the fleet of some rules.
+     * @param rules The rules of the boards to generate fleets for.
+     * @param random The random number generator. It is used directly, not copied.
+     */
+    public FleetGenerator(Rules rules, SplittableRandom random) {
+        if (Placements.supports(rules)) {
+            placements = Placements.of(rules);
+            occupied = new long[placements.words()];
+        } else {
+            placements = null;
+            occupied = null;
+        }
+        width = rules.getWidth();
+        height = rules.getHeight();
+        fleet = rules.getFleet();
+        first = new int[fleet.length];
+        choices = new int[fleet.length];
+        if (placements != null) {
+            for (int ship = 0; ship < fleet.length; ship++) {
+                first[ship] = placements.first(fleet[ship]);
+                choices[ship] = placements.end(fleet[ship]) - first[ship];
+            }
+        }
+        this.random = random;
+    }
+
+    /**
+     * Creates a generator for any fleet.
+     * @param placements The placement table for the board. It must include every length in the fleet.
+     * @param fleet The lengths of the ships.
+     * @param random The random number generator. It is used directly, not copied.
+     * @throws IllegalArgumentException If the table has no placements for one of the lengths.
+     */
+    public FleetGenerator(Placements placements, int[] fleet, SplittableRandom random) {
+        for (int length : fleet) {
+            if (placements.first(length) < 0) {
+                throw new IllegalArgumentException("No placements for ships of length " + length);
+            }
+        }
+        this.placements = placements;
+        width = placements.width();
+        height = placements.height();
+        this.fleet = fleet.clone();
+        first = new int[fleet.length];
+        choices = new int[fleet.length];
+        for (int ship = 0; ship < fleet.length; ship++) {
+            first[ship] = placements.first(fleet[ship]);
+            choices[ship] = placements.end(fleet[ship]) - first[ship];
+        }
+        this.random = random;
+        occupied = new long[placements.words()];
+    }
+
+    /**
+     * Returns the number of ships in each fleet, which is how many ints {@link #next(int[], int)} writes.
+     * @return The fleet size.
+     */
+    public int fleetSize() {
+        return fleet.length;
+    }
+
+    /**
+     * Generates a fleet.
+     * @param buffer Where to write the placement ids of the ships, in the order of the fleet lengths.
+     * @param offset The index of the first ship in the buffer.
+     * @throws IllegalStateException If the board is too big for a placement table.
+     */
+    public void next(int[] buffer, int offset) {
+        if (placements == null) {
+            throw new IllegalStateException("Fleets for boards without a placement table can only be placed");
+        }
+        int words = occupied.length;
+        draw:
+        while (true) {
+            for (int w = 0; w < words; w++) {
+                occupied[w] = 0;
+            }
+            for (int ship = 0; ship < fleet.length; ship++) {
+                int p = first[ship] + random.nextInt(choices[ship]);
+                if (placements.overlaps(p, occupied)) {
+                    continue draw; // Start over, so every legal fleet stays equally likely
+                }
+                for (int w = 0; w < words; w++) {
+                    occupied[w] |= placements.mask(p, w);
+                }
+                buffer[offset + ship] = p;
+            }
+            return;
+        }
+    }
+
+    /**
+     * Generates several fleets back to back.
+     * @param buffer Where to write the fleets. Fleet i starts at i * fleetSize().
+     * @param fleets The number of fleets to generate.
+     * @throws IllegalStateException If the board is too big for a placement table.
+     */
+    public void fill(int[] buffer, int fleets) {
+        for (int i = 0; i < fleets; i++) {
+            next(buffer, i * fleet.length);
+        }
+    }
+
+    /**
+     * Generates a fleet and places it on a board.
+     * @param board The board to place the ships on. It should have no ships yet.
+     * @throws IllegalArgumentException If a ship overlaps something already on the board.
+     */
+    public void placeFleet(Board board) {
+        if (placements == null) {
+            placeSparse(board);
+            return;
+        }
+        int[] ships = new int[fleet.length];
+        next(ships, 0);
+        place(board, ships, 0);
+    }
+
+    /**
+     * Generates a fleet without a placement table and places it on a board.
+     * @param board The board to place the ships on.
+     */
+    private void placeSparse(Board board) {
+        int[] rows = new int[fleet.length];
+        int[] cols = new int[fleet.length];
+        boolean[] horizontal = new boolean[fleet.length];
+        draw:
+        while (true) {
+            for (int ship = 0; ship < fleet.length; ship++) {
+                int len = fleet[ship];
+                long across = (long) height * Math.max(0, width - len + 1);
+                long down = (long) width * Math.max(0, height - len + 1);
+                long p = random.nextLong(across + down);
+                horizontal[ship] = p < across;
+                if (horizontal[ship]) {
+                    rows[ship] = (int) (p / (width - len + 1));
+                    cols[ship] = (int) (p % (width - len + 1));
+                } else {
+                    p -= across;
+                    rows[ship] = (int) (p / width);
+                    cols[ship] = (int) (p % width);
+                }
+                for (int other = 0; other < ship; other++) {
+                    if (overlap(rows, cols, horizontal, ship, other)) {
+                        continue draw; // Start over, so every legal fleet stays equally likely
+                    }
+                }
+            }
+            break;
+        }
+        for (int ship = 0; ship < fleet.length; ship++) {
+            if (!board.placeShip(horizontal[ship], fleet[ship], rows[ship], cols[ship])) {
+                throw new IllegalArgumentException("Ship " + ship + " doesn't fit on the board");
+            }
+        }
+    }
+
+    /**
+     * Checks if two drawn ships share a cell, by comparing the rectangles they cover.
+     */
+    private boolean overlap(int[] rows, int[] cols, boolean[] horizontal, int a, int b) {
+        int aRows = horizontal[a] ? 1 : fleet[a];
+        int aCols = horizontal[a] ? fleet[a] : 1;
+        int bRows = horizontal[b] ? 1 : fleet[b];
+        int bCols = horizontal[b] ? fleet[b] : 1;
+        return rows[a] < rows[b] + bRows && rows[b] < rows[a] + aRows
+                && cols[a] < cols[b] + bCols && cols[b] < cols[a] + aCols;
+    }
+
+    /**
+     * Places a generated fleet on a board.
+     * @param board The board to place the ships on.
+     * @param buffer The buffer the fleet was written to.
+     * @param offset The index of the first ship in the buffer.
+     * @throws IllegalArgumentException If a ship overlaps something already on the board.
+     */
+    public void place(Board board, int[] buffer, int offset) {
+        for (int ship = 0; ship < fleet.length; ship++) {
+            int p = buffer[offset + ship];
+            int nose = placements.nose(p);
+            if (!board.placeShip(placements.isHorizontal(p), placements.length(p), nose / width, nose % width)) {
+                throw new IllegalArgumentException("Ship " + ship + " doesn't fit on the board");
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Everything needed to play a game again exactly: the fleet on each board, who was shooting at it (a registered
+ * strategy name and its seed, or {@link #HUMAN}), which player moved first and the ordered shots made at each board.
+ * Players take turns, one shot each, so the two shot lists and the first player fix the order of every shot.
+ * <p>
+ * Player i shoots at board i. Records are immutable, and two records of the same game are equal.
+ */
+public final class GameRecord {
+
+    /** The strategy name recorded for a person. Their shots are replayed as recorded. */
+    public static final String HUMAN = "human";
+
+    private static final int MAGIC = 0x42535231; // "BSR1"
+
+    private final String[] strategies;
+    private final long[] seeds;
+    private final int first;
+    private final int[][] fleets; // Per board, one packed ship per int, see ship()
+    private final int[][] shots; // Per board, the cells shot in order
+
+    private GameRecord(String[] strategies, long[] seeds, int first, int[][] fleets, int[][] shots) {
+        this.strategies = strategies;
+        this.seeds = seeds;
+        this.first = first;
+        this.fleets = fleets;
+        this.shots = shots;
+    }
+
+    /**
+     * Records the current state of a game. This can be called at any point, and records the shots made so far.
+     * @param targets The two boards. Player i shoots at targets[i].
+     * @param strategies The registered name of each player's strategy, or HUMAN.
+     * @param seeds The seed each strategy was created with. Ignored for HUMAN.
+     * @param first The player that moved first.
+     * @return The record.
+     * @throws IllegalArgumentException If a board isn't the standard size. Records only hold standard games.
+     */
+    public static GameRecord capture(Board[] targets, String[] strategies, long[] seeds, int first) {
+        int[][] fleets = new int[targets.length][];
+        int[][] shots = new int[targets.length][];
+        for (int i = 0; i < targets.length; i++) {
+            Board board = targets[i];
+            if (board.getWidth() != Board.SIZE || board.getHeight() != Board.SIZE) {
+                throw new IllegalArgumentException("Only games on the standard board can be recorded");
+            }
+            fleets[i] = new int[board.getNumShips()];
+            for (int ship = 0; ship < fleets[i].length; ship++) {
+                fleets[i][ship] = ship(board.getShipRow(ship) * Board.SIZE + board.getShipCol(ship),
+                        board.getShipLength(ship), board.isShipHorizontal(ship));
+            }
+            shots[i] = new int[board.getNumMoves()];
+            for (int move = 0; move < shots[i].length; move++) {
+                shots[i][move] = board.getShot(move);
+            }
+        }
+        return new GameRecord(strategies.clone(), seeds.clone(), first, fleets, shots);
+    }
+
+    private static int ship(int nose, int length, boolean horizontal) {
+        return nose | length << 8 | (horizontal ? 1 << 16 : 0);
+    }
+
+    /**
+     * Builds a board with the recorded fleet of one player's target and no shots.
+     * @param target The index of the board.
+     * @param listener The listener to tell as the board changes, or null.
+     * @return The new board.
+     */
+    public Board createBoard(int target, BoardListener listener) {
+        Board board = new Board(listener);
+        for (int ship : fleets[target]) {
+            int nose = ship & 0xFF;
+            board.placeShip((ship & 1 << 16) != 0, ship >>> 8 & 0xFF, nose / Board.SIZE, nose % Board.SIZE);
+        }
+        return board;
+    }
+
+    /**
+     * Returns the strategy a player used.
+     * @param player The player.
+     * @return The registered strategy name, or HUMAN.
+     */
+    public String getStrategy(int player) {
+        return strategies[player];
+    }
+
+    /**
+     * Returns the seed a player's strategy was created with.
+     * @param player The player.
+     * @return The seed.
+     */
+    public long getSeed(int player) {
+        return seeds[player];
+    }
+
+    /**
+     * Returns the player that moved first.
+     * @return The player index.
+     */
+    public int getFirst() {
+        return first;
+    }
+
+    /**
+     * Returns the number of players, which is also the number of boards.
+     * @return The number of players.
+     */
+    public int getPlayers() {
+        return strategies.length;
+    }
+
+    /**
+     * Returns the number of shots a player made.
+     * @param player The player.
+     * @return The number of shots at the player's target.
+     */
+    public int getNumShots(int player) {
+        return shots[player].length;
+    }
+
+    /**
+     * Returns one of a player's shots.
+     * @param player The player.
+     * @param move The index of the shot, from 0.
+     * @return The cell, row * Board.SIZE + col.
+     */
+    public int getShot(int player, int move) {
+        return shots[player][move];
+    }
+
+    /**
+     * Writes the record in a compact binary form that {@link #read(DataInput)} reads back.
+     * @param out Where to write the record.
+     * @throws IOException If the output fails.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(strategies.length);
+        out.writeByte(first);
+        for (int player = 0; player < strategies.length; player++) {
+            out.writeUTF(strategies[player]);
+            out.writeLong(seeds[player]);
+            out.writeByte(fleets[player].length);
+            for (int ship : fleets[player]) {
+                out.writeInt(ship);
+            }
+            out.writeShort(shots[player].length);
+            for (int cell : shots[player]) {
+                out.writeByte(cell);
+            }
+        }
+    }
+
+    /**
+     * Reads a record written by {@link #write(DataOutput)}.
+     * @param in Where to read the record from.
+     * @return The record.
+     * @throws IOException If the input fails or doesn't hold a record.
+     */
+    public static GameRecord read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a game record");
+        }
+        int players = in.readUnsignedByte();
+        int first = in.readUnsignedByte();
+        String[] strategies = new String[players];
+        long[] seeds = new long[players];
+        int[][] fleets = new int[players][];
+        int[][] shots = new int[players][];
+        for (int player = 0; player < players; player++) {
+            strategies[player] = in.readUTF();
+            seeds[player] = in.readLong();
+            fleets[player] = new int[in.readUnsignedByte()];
+            for (int ship = 0; ship < fleets[player].length; ship++) {
+                fleets[player][ship] = in.readInt();
+            }
+            shots[player] = new int[in.readUnsignedShort()];
+            for (int move = 0; move < shots[player].length; move++) {
+                shots[player][move] = in.readUnsignedByte();
+            }
+        }
+        return new GameRecord(strategies, seeds, first, fleets, shots);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof GameRecord other && first == other.first && Arrays.equals(strategies, other.strategies)
+                && Arrays.equals(seeds, other.seeds) && Arrays.deepEquals(fleets, other.fleets)
+                && Arrays.deepEquals(shots, other.shots);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(seeds) + Arrays.deepHashCode(fleets)) + Arrays.deepHashCode(shots);
+    }
+}
@@ -0,0 +1,265 @@
+package model;
+
+import java.io.Serial;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This strategy samples whole fleets that agree with everything seen on the board: no ship afloat covers a miss or a
+ * sunk ship, and together the ships afloat cover every unresolved hit. It counts how often each open cell is covered
+ * across the samples and fires at the most covered one.
+ * <p>
+ * Sampling runs on a fork/join pool until a per-move time budget runs out, and the move is picked from however many
+ * samples were finished by then, so a bigger budget buys a stronger move. Fleets are sampled by drawing each ship from
+ * its legal placements and throwing the whole fleet away if ships overlap or a hit is left uncovered, which keeps the
+ * samples uniform over the consistent fleets. If no sample is accepted in time, it falls back to {@link ProbabilityAI}.
+ * Because the number of samples depends on timing, the moves are not reproducible from a seed.
+ * <p>
+ * With a {@link TranspositionCache}, the move picked for each position is stored under the board's shot hash, and a
+ * position that is already cached is answered without sampling. A cache shared by every MonteCarloAI in a simulation
+ * turns the common opening positions into lookups after the first few games.
+ * <p>
+ * Boards with other rules get their own placement tables, and boards too big for one are left to the fallback.
+ */
+public class MonteCarloAI implements BoardStrategy {
+
+    private static final int CHECK_EVERY = 64; // Samples between looks at the clock
+
+    private final long budgetNanos;
+    private final ForkJoinPool pool;
+    private final int tasks;
+    private final SplittableRandom generator;
+    private Rules rules;
+    private Placements placements;
+    private ObservedBoard observed;
+    private final ProbabilityAI fallback;
+    private final TranspositionCache cache; // Null if moves aren't cached
+    private int[][] legal; // Legal placements of each length, rebuilt every move
+    private int[] numLegal;
+    private int[] fleet; // Lengths of the ships afloat, longest first
+    private long[][] counts; // Coverage counts of each task, merged after every move
+    private final long[] samples;
+    private long lastSamples;
+
+    /**
+     * Creates a MonteCarloAI that samples on the common pool with a 2 millisecond budget per move.
+     */
+    public MonteCarloAI() {
+        this(2_000_000L, ForkJoinPool.commonPool(), System.nanoTime());
+    }
+
+    /**
+     * Creates a MonteCarloAI with a seed for its samplers. The moves still depend on how many samples fit in the
+     * budget.
+     * @param seed The seed.
+     */
+    public MonteCarloAI(long seed) {
+        this(2_000_000L, ForkJoinPool.commonPool(), seed);
+    }
+
+    /**
+     * Creates a MonteCarloAI.
+     * @param budgetNanos The time to spend sampling on each move, in nanoseconds.
+     * @param pool The pool to sample on. One task is started for each thread of the pool.
+     * @param seed The seed for the samplers.
+     */
+    public MonteCarloAI(long budgetNanos, ForkJoinPool pool, long seed) {
+        this(budgetNanos, pool, seed, null);
+    }
+
+    /**
+     * Creates a MonteCarloAI that caches its moves.
+     * @param budgetNanos The time to spend sampling on each move, in nanoseconds.
+     * @param pool The pool to sample on. One task is started for each thread of the pool.
+     * @param seed The seed for the samplers.
+     * @param cache The cache to look up and store moves in, shared only with other MonteCarloAIs. May be null.
+     */
+    public MonteCarloAI(long budgetNanos, ForkJoinPool pool, long seed, TranspositionCache cache) {
+        this.budgetNanos = budgetNanos;
+        this.cache = cache;
+        this.pool = pool;
+        this.tasks = pool.getParallelism();
+        generator = new SplittableRandom(seed);
+        fallback = new ProbabilityAI(seed);
+        samples = new long[tasks];
+        bind(Rules.STANDARD);
+    }
+
+    /**
+     * Sets up the placement tables for boards of some rules.
+     * @param rules The rules. They must be small enough for a placement table.
+     */
+    private void bind(Rules rules) {
+        this.rules = rules;
+        placements = Placements.of(rules);
+        observed = new ObservedBoard(placements);
+        legal = new int[placements.maxLength() + 1][];
+        numLegal = new int[placements.maxLength() + 1];
+        counts = new long[tasks][placements.cells()];
+    }
+
+    public Point desiredMove(Board board) {
+        if (!board.getRules().equals(rules)) {
+            if (!Placements.supports(board.getRules())) {
+                lastSamples = 0;
+                return fallback.desiredMove(board);
+            }
+            bind(board.getRules());
+        }
+        observed.sync(board);
+        if (cache != null) {
+            long entry = cache.probe(board.getShotHash());
+            if (entry != TranspositionCache.NOT_FOUND && observed.isOpen(TranspositionCache.move(entry))) {
+                lastSamples = 0;
+                return board.getPoint(TranspositionCache.move(entry));
+            }
+        }
+        findLegalPlacements();
+
+        long deadline = System.nanoTime() + budgetNanos;
+        ForkJoinTask<?>[] running = new ForkJoinTask<?>[tasks];
+        for (int i = 0; i < tasks; i++) {
+            running[i] = pool.submit(new Sampler(i, generator.split(), deadline));
+        }
+        lastSamples = 0;
+        long[] total = counts[0];
+        for (int i = 0; i < tasks; i++) {
+            running[i].join();
+            lastSamples += samples[i];
+            if (i > 0) {
+                for (int cell = 0; cell < total.length; cell++) {
+                    total[cell] += counts[i][cell];
+                }
+            }
+        }
+
+        int best = -1;
+        for (int cell = 0; cell < total.length; cell++) {
+            if (observed.isOpen(cell) && total[cell] > 0 && (best < 0 || total[cell] > total[best])) {
+                best = cell;
+            }
+        }
+        if (best < 0) {
+            return fallback.desiredMove(board);
+        }
+        if (cache != null) { // The depth is the number of bits in the sample count, so better-sampled moves are kept
+            cache.store(board.getShotHash(), TranspositionCache.pack(best, (int) Math.min(total[best],
+                    Integer.MAX_VALUE), 64 - Long.numberOfLeadingZeros(lastSamples)));
+        }
+        return board.getPoint(best);
+    }
+
+    /**
+     * Returns the number of consistent fleets sampled for the last move.
+     * @return The number of samples, 0 if the move came from the cache.
+     */
+    public long getLastSamples() {
+        return lastSamples;
+    }
+
+    /**
+     * Lists the placements of each length that don't cover a miss or sunk ship, and the ships still afloat.
+     */
+    private void findLegalPlacements() {
+        int ships = observed.shipsAfloat();
+        if (fleet == null || fleet.length != ships) {
+            fleet = new int[ships];
+        }
+        int k = 0;
+        for (int length = placements.maxLength(); length > 0; length--) {
+            for (int i = 0; i < observed.afloat(length); i++) {
+                fleet[k++] = length;
+            }
+            int first = placements.first(length);
+            if (first < 0) {
+                continue;
+            }
+            if (legal[length] == null) {
+                legal[length] = new int[placements.end(length) - first];
+            }
+            numLegal[length] = 0;
+            for (int p = first; p < placements.end(length); p++) {
+                if (!placements.overlaps(p, observed.blocked())) {
+                    legal[length][numLegal[length]++] = p;
+                }
+            }
+        }
+    }
+
+    /**
+     * Samples fleets on one thread until the deadline, counting coverage into its own row of counts.
+     */
+    private class Sampler extends RecursiveAction {
+
+        @Serial
+        private static final long serialVersionUID = 0L;
+        private final int index;
+        private final SplittableRandom random;
+        private final long deadline;
+
+        Sampler(int index, SplittableRandom random, long deadline) {
+            this.index = index;
+            this.random = random;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void compute() {
+            long[] coverage = counts[index];
+            Arrays.fill(coverage, 0);
+            long accepted = 0;
+            int words = placements.words();
+            long[] occupied = new long[words];
+            int[] chosen = new int[fleet.length];
+            long[] unresolved = observed.unresolved();
+            do {
+                for (int attempt = 0; attempt < CHECK_EVERY; attempt++) {
+                    if (sample(occupied, chosen) && covers(occupied, unresolved, words)) {
+                        accepted++;
+                        for (int p : chosen) {
+                            for (int i = 0; i < placements.length(p); i++) {
+                                coverage[placements.cell(p, i)]++;
+                            }
+                        }
+                    }
+                }
+            } while (System.nanoTime() < deadline);
+            samples[index] = accepted;
+        }
+
+        /**
+         * Draws one placement for every ship afloat.
+         * @return False if two ships overlapped or a ship had nowhere to go.
+         */
+        private boolean sample(long[] occupied, int[] chosen) {
+            Arrays.fill(occupied, 0);
+            for (int k = 0; k < fleet.length; k++) {
+                int n = numLegal[fleet[k]];
+                if (n == 0) {
+                    return false;
+                }
+                int p = legal[fleet[k]][random.nextInt(n)];
+                if (placements.overlaps(p, occupied)) {
+                    return false;
+                }
+                for (int w = 0; w < occupied.length; w++) {
+                    occupied[w] |= placements.mask(p, w);
+                }
+                chosen[k] = p;
+            }
+            return true;
+        }
+
+        private boolean covers(long[] occupied, long[] unresolved, int words) {
+            for (int w = 0; w < words; w++) {
+                if ((unresolved[w] & ~occupied[w]) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * What a player shooting at a board is allowed to know about it: where the hits and misses are, which ships have
+ * been sunk and where they were. Strategies keep one of these and call {@link #sync(Board)} at the start of every
+ * move. It reads only the shots made since the last sync, and lists the cells and ships that changed so the strategy
+ * can update its own tables incrementally.
+ */
+public final class ObservedBoard {
+
+    private final Placements placements;
+    private final int words;
+    private final long[] unresolved; // Hits that are not part of a sunk ship yet
+    private final long[] blocked; // Misses and the cells of sunk ships. No ship afloat can cover these.
+    private final long[] used;
+    private final int[] afloat; // Ships still afloat, by length
+    private boolean[] sunk; // By ship id
+    private int shipsAfloat;
+    private Board board;
+    private int moves;
+    private final int[] changedCells; // Cells that became blocked during the last sync
+    private int numChangedCells;
+    private final int[] sunkLengths; // Lengths of the ships sunk during the last sync
+    private int numSunkLengths;
+
+    /**
+     * Creates an empty observation.
+     * @param placements The placement table for the boards this will observe.
+     */
+    public ObservedBoard(Placements placements) {
+        this.placements = placements;
+        int cells = placements.cells();
+        words = placements.words();
+        unresolved = new long[words];
+        blocked = new long[words];
+        used = new long[words];
+        afloat = new int[placements.maxLength() + 1];
+        sunk = new boolean[Board.FLEET.length];
+        changedCells = new int[cells];
+        sunkLengths = new int[cells];
+    }
+
+    /**
+     * Catches up with the shots made on a board since the last sync. If the board is a different board, or has fewer
+     * moves than were already seen, the observation starts over.
+     * @param board The board being shot at.
+     * @return True if the observation started over, in which case the change lists are not filled in.
+     */
+    public boolean sync(Board board) {
+        numChangedCells = 0;
+        numSunkLengths = 0;
+        boolean reset = board != this.board || board.getNumMoves() < moves;
+        if (reset) {
+            this.board = board;
+            moves = 0;
+            Arrays.fill(unresolved, 0);
+            Arrays.fill(blocked, 0);
+            Arrays.fill(used, 0);
+            Arrays.fill(afloat, 0);
+            if (sunk.length < board.getNumShips()) {
+                sunk = new boolean[board.getNumShips()];
+            }
+            Arrays.fill(sunk, false);
+            shipsAfloat = board.getNumShips();
+            for (int ship = 0; ship < shipsAfloat; ship++) {
+                afloat[board.getShipLength(ship)]++;
+            }
+        }
+        int width = placements.width();
+        for (; moves < board.getNumMoves(); moves++) {
+            int cell = board.getShot(moves);
+            used[cell >>> 6] |= 1L << cell;
+            if (board.hit(cell)) {
+                unresolved[cell >>> 6] |= 1L << cell;
+            } else {
+                block(cell);
+            }
+        }
+        if (board.getShipsAfloat() < shipsAfloat) { // Something sank, find out what
+            for (int ship = 0; ship < board.getNumShips(); ship++) {
+                if (!sunk[ship] && board.isSunk(ship)) {
+                    sunk[ship] = true;
+                    shipsAfloat--;
+                    int length = board.getShipLength(ship);
+                    afloat[length]--;
+                    sunkLengths[numSunkLengths++] = length;
+                    int nose = board.getShipRow(ship) * width + board.getShipCol(ship);
+                    for (int i = 0; i < length; i++) {
+                        int cell = board.isShipHorizontal(ship) ? nose + i : nose + i * width;
+                        unresolved[cell >>> 6] &= ~(1L << cell);
+                        block(cell);
+                    }
+                }
+            }
+        }
+        if (reset) {
+            numChangedCells = 0;
+            numSunkLengths = 0;
+        }
+        return reset;
+    }
+
+    private void block(int cell) {
+        blocked[cell >>> 6] |= 1L << cell;
+        changedCells[numChangedCells++] = cell;
+    }
+
+    /**
+     * Returns the placement table this observation uses.
+     * @return The placements.
+     */
+    public Placements placements() {
+        return placements;
+    }
+
+    /**
+     * Returns the hits that don't belong to a sunk ship yet. The array is live and must not be changed.
+     * @return A bitboard of the unresolved hits.
+     */
+    public long[] unresolved() {
+        return unresolved;
+    }
+
+    /**
+     * Returns the cells no ship afloat can cover: misses and sunk ships. The array is live and must not be changed.
+     * @return A bitboard of the blocked cells.
+     */
+    public long[] blocked() {
+        return blocked;
+    }
+
+    /**
+     * Returns every cell that has been shot at. The array is live and must not be changed.
+     * @return A bitboard of the used cells.
+     */
+    public long[] used() {
+        return used;
+    }
+
+    /**
+     * Checks if there are any hits that don't belong to a sunk ship yet.
+     * @return True if some ship afloat has been hit.
+     */
+    public boolean hasUnresolvedHits() {
+        for (int w = 0; w < words; w++) {
+            if (unresolved[w] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a cell can still be shot at.
+     * @param cell The cell, row * width + col.
+     * @return True if the cell hasn't been used.
+     */
+    public boolean isOpen(int cell) {
+        return (used[cell >>> 6] & (1L << cell)) == 0;
+    }
+
+    /**
+     * Returns the number of ships of a length that are still afloat.
+     * @param length The ship length.
+     * @return The number of ships.
+     */
+    public int afloat(int length) {
+        return length < afloat.length ? afloat[length] : 0;
+    }
+
+    /**
+     * Returns the number of ships still afloat.
+     * @return The number of ships.
+     */
+    public int shipsAfloat() {
+        return shipsAfloat;
+    }
+
+    /**
+     * Returns the number of cells that became blocked during the last sync.
+     * @return The number of cells.
+     */
+    public int numChangedCells() {
+        return numChangedCells;
+    }
+
+    /**
+     * Returns a cell that became blocked during the last sync.
+     * @param i The index in the change list.
+     * @return The cell.
+     */
+    public int changedCell(int i) {
+        return changedCells[i];
+    }
+
+    /**
+     * Returns the number of ships sunk during the last sync.
+     * @return The number of ships.
+     */
+    public int numSunkLengths() {
+        return numSunkLengths;
+    }
+
+    /**
+     * Returns the length of a ship sunk during the last sync.
+     * @param i The index in the change list.
+     * @return The ship length.
+     */
+    public int sunkLength(int i) {
+        return sunkLengths[i];
+    }
+}
@@ -0,0 +1,123 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The best first shots for the positions that come up early in a game, worked out offline (see
+ * simulation.BookBuilder) and looked up by the board's shot hash, {@link Board#getShotHash()}. Wrap a strategy in a
+ * {@link BookStrategy} to play from the book and fall back to the strategy once the game leaves it.
+ * <p>
+ * The file is a 16 byte header (the magic "BSB1", the depth the book was built to, the number of positions and a
+ * reserved int), the hashes of the positions as sorted longs, and then the move for each position as one byte. The
+ * file is memory-mapped, so opening it reads nothing, and a lookup is a binary search that only touches the pages it
+ * needs. Books are immutable and can be shared by any number of threads.
+ */
+public final class OpeningBook {
+
+    private static final int MAGIC = 0x42534231; // "BSB1"
+    private static final int HEADER_SIZE = 16;
+
+    private final ByteBuffer data;
+    private final int depth;
+    private final int size;
+    private final int movesAt;
+
+    private OpeningBook(ByteBuffer data) throws IOException {
+        if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("Not an opening book");
+        }
+        depth = data.getInt(4);
+        size = data.getInt(8);
+        movesAt = HEADER_SIZE + size * Long.BYTES;
+        if (size < 0 || data.capacity() < movesAt + size) {
+            throw new IOException("Opening book is truncated");
+        }
+        this.data = data;
+    }
+
+    /**
+     * Maps a book file.
+     * @param file The file.
+     * @return The book.
+     * @throws IOException If the file can't be read or is not a book.
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes a book file.
+     * @param file The file to write, replacing it if it exists.
+     * @param depth The number of shots the book was built to.
+     * @param keys The shot hash of each position. Every hash must be different.
+     * @param moves The cell to shoot at in each position.
+     * @param count The number of positions.
+     * @throws IOException If the file can't be written.
+     */
+    public static void write(Path file, int depth, long[] keys, int[] moves, int count) throws IOException {
+        long[] sorted = Arrays.copyOf(keys, count);
+        Arrays.sort(sorted);
+        byte[] sortedMoves = new byte[count];
+        for (int i = 0; i < count; i++) {
+            sortedMoves[Arrays.binarySearch(sorted, keys[i])] = (byte) moves[i];
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(depth);
+            out.writeInt(count);
+            out.writeInt(0);
+            for (long key : sorted) {
+                out.writeLong(key);
+            }
+            out.write(sortedMoves);
+        }
+    }
+
+    /**
+     * Looks up the move for a position.
+     * @param shotHash The shot hash of the board.
+     * @return The cell to shoot at, or -1 if the position isn't in the book.
+     */
+    public int lookup(long shotHash) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long key = data.getLong(HEADER_SIZE + mid * Long.BYTES);
+            if (key < shotHash) {
+                low = mid + 1;
+            } else if (key > shotHash) {
+                high = mid - 1;
+            } else {
+                return data.get(movesAt + mid) & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of shots the book was built to.
+     * @return The depth.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the number of positions in the book.
+     * @return The number of positions.
+     */
+    public int size() {
+        return size;
+    }
+}
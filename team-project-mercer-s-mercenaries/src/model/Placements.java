@@ -0,0 +1,320 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed table of every legal placement of a set of ship lengths on a board. Each placement has an id,
+ * and the table stores its bitboard (in the same layout as Board) and its cells. It also indexes, for every cell, the
+ * placements that cover it, so strategies can update after a shot by only touching the placements through that cell.
+ * <p>
+ * Placement ids are grouped by length, shortest first. Within a length the horizontal placements come first, then the
+ * vertical ones, each ordered by the cell of the nose.
+ * <p>
+ * The table stores a whole bitboard per placement, so it grows with the square of the number of cells. Only boards of
+ * up to {@link #MAX_CELLS} cells get one; strategies built on it play something simpler on bigger boards.
+ */
+public final class Placements {
+
+    /** The placements of the standard fleet on the standard board. */
+    public static final Placements STANDARD = new Placements(Board.SIZE, Board.FLEET);
+
+    /** The most cells a board can have and still get a placement table, about 16 MB for the standard fleet. */
+    public static final int MAX_CELLS = 4096;
+
+    private static volatile Cached recent; // The last table built for other rules
+
+    private final int width;
+    private final int height;
+    private final int words;
+    private final int[] lengths; // The distinct ship lengths, shortest first
+    private final int[] lengthStart; // Placements of lengths[i] have ids lengthStart[i] until lengthStart[i + 1]
+    private final int[] length;
+    private final int[] nose;
+    private final boolean[] horizontal;
+    private final long[] masks; // words longs per placement
+    private final int[] coverStart; // Placements covering cell c are cover[coverStart[c]] until cover[coverStart[c + 1]]
+    private final int[] cover;
+
+    /**
+     * Builds the table for a square board.
+     * @param size The width and height of the board.
+     * @param fleet The lengths of the ships in the fleet. Repeated lengths share their placements.
+     */
+    public Placements(int size, int[] fleet) {
+        this(size, size, fleet);
+    }
+
+    /**
+     * Builds the table for a board.
+     * @param width The number of columns.
+     * @param height The number of rows.
+     * @param fleet The lengths of the ships in the fleet. Repeated lengths share their placements.
+     */
+    public Placements(int width, int height, int[] fleet) {
+        this.width = width;
+        this.height = height;
+        int cells = width * height;
+        words = (cells + 63) >>> 6;
+        lengths = Arrays.stream(fleet).distinct().sorted().toArray();
+        lengthStart = new int[lengths.length + 1];
+        int count = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            lengthStart[i] = count;
+            count += height * Math.max(0, width - lengths[i] + 1) + width * Math.max(0, height - lengths[i] + 1);
+        }
+        lengthStart[lengths.length] = count;
+
+        length = new int[count];
+        nose = new int[count];
+        horizontal = new boolean[count];
+        masks = new long[count * words];
+        int[] covering = new int[cells];
+        int id = 0;
+        for (int len : lengths) {
+            for (int orientation = 0; orientation < 2; orientation++) {
+                boolean horiz = orientation == 0;
+                for (int row = 0; row < height; row++) {
+                    for (int col = 0; col < width; col++) {
+                        if (horiz ? col + len > width : row + len > height) {
+                            continue;
+                        }
+                        length[id] = len;
+                        nose[id] = row * width + col;
+                        horizontal[id] = horiz;
+                        for (int i = 0; i < len; i++) {
+                            int cell = cell(id, i);
+                            masks[id * words + (cell >>> 6)] |= 1L << cell;
+                            covering[cell]++;
+                        }
+                        id++;
+                    }
+                }
+            }
+        }
+
+        coverStart = new int[cells + 1];
+        for (int cell = 0; cell < cells; cell++) {
+            coverStart[cell + 1] = coverStart[cell] + covering[cell];
+        }
+        cover = new int[coverStart[cells]];
+        int[] filled = Arrays.copyOf(coverStart, cells);
+        for (int p = 0; p < count; p++) {
+            for (int i = 0; i < length[p]; i++) {
+                int cell = cell(p, i);
+                cover[filled[cell]++] = p;
+            }
+        }
+    }
+
+    /**
+     * Checks if boards with some rules are small enough for a placement table.
+     * @param rules The rules.
+     * @return True if the board has at most MAX_CELLS cells.
+     */
+    public static boolean supports(Rules rules) {
+        return rules.getCells() <= MAX_CELLS;
+    }
+
+    /**
+     * Returns the placement table for the boards of some rules. The standard table is always shared. Of the others,
+     * only the last one built is kept, so strategies playing the same rules share it, but a run that sweeps through
+     * many board sizes doesn't keep a table for each of them. Callers hold on to the table they are given.
+     * @param rules The rules.
+     * @return The table.
+     * @throws IllegalArgumentException If the board is too big for a table.
+     */
+    public static Placements of(Rules rules) {
+        if (rules.equals(Rules.STANDARD)) {
+            return STANDARD;
+        }
+        if (!supports(rules)) {
+            throw new IllegalArgumentException("A " + rules + " board is too big for a placement table");
+        }
+        Cached cached = recent;
+        if (cached == null || !cached.rules.equals(rules)) { // Two threads may both build it, which is only wasteful
+            cached = new Cached(rules, new Placements(rules.getWidth(), rules.getHeight(), rules.getFleet()));
+            recent = cached;
+        }
+        return cached.table;
+    }
+
+    /**
+     * A table and the rules it was built for.
+     */
+    private record Cached(Rules rules, Placements table) {
+    }
+
+    /**
+     * Returns the number of columns of the board these placements are for.
+     * @return The width.
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Returns the number of rows of the board these placements are for.
+     * @return The height.
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Returns the number of cells of the board these placements are for.
+     * @return width * height.
+     */
+    public int cells() {
+        return width * height;
+    }
+
+    /**
+     * Returns the longest ship that fits on the board, so arrays indexed by length can be sized.
+     * @return The larger of the width and height.
+     */
+    public int maxLength() {
+        return Math.max(width, height);
+    }
+
+    /**
+     * Returns the number of longs in one bitboard.
+     * @return The number of words.
+     */
+    public int words() {
+        return words;
+    }
+
+    /**
+     * Returns the number of placements in the table.
+     * @return The number of placements.
+     */
+    public int count() {
+        return length.length;
+    }
+
+    /**
+     * Returns the first placement id of a given length.
+     * @param len The ship length.
+     * @return The first id, or -1 if the length isn't in the fleet.
+     */
+    public int first(int len) {
+        int i = Arrays.binarySearch(lengths, len);
+        return i < 0 ? -1 : lengthStart[i];
+    }
+
+    /**
+     * Returns one past the last placement id of a given length.
+     * @param len The ship length.
+     * @return The end of the id range, or -1 if the length isn't in the fleet.
+     */
+    public int end(int len) {
+        int i = Arrays.binarySearch(lengths, len);
+        return i < 0 ? -1 : lengthStart[i + 1];
+    }
+
+    /**
+     * Returns the length of the ship in a placement.
+     * @param placement The placement id.
+     * @return The ship length.
+     */
+    public int length(int placement) {
+        return length[placement];
+    }
+
+    /**
+     * Returns the cell of the nose of a placement, i.e. its top left cell.
+     * @param placement The placement id.
+     * @return The cell, row * width + col.
+     */
+    public int nose(int placement) {
+        return nose[placement];
+    }
+
+    /**
+     * Returns the orientation of a placement.
+     * @param placement The placement id.
+     * @return True if the ship is horizontal, false if it is vertical.
+     */
+    public boolean isHorizontal(int placement) {
+        return horizontal[placement];
+    }
+
+    /**
+     * Returns one of the cells a placement covers.
+     * @param placement The placement id.
+     * @param i The position along the ship, from 0 at the nose to length - 1.
+     * @return The cell, row * width + col.
+     */
+    public int cell(int placement, int i) {
+        return horizontal[placement] ? nose[placement] + i : nose[placement] + i * width;
+    }
+
+    /**
+     * Returns one word of a placement's bitboard.
+     * @param placement The placement id.
+     * @param word The index of the word.
+     * @return The bits of the placement in that word.
+     */
+    public long mask(int placement, int word) {
+        return masks[placement * words + word];
+    }
+
+    /**
+     * Checks if a placement shares any cell with a bitboard.
+     * @param placement The placement id.
+     * @param bits A bitboard with at least words() longs.
+     * @return True if they overlap.
+     */
+    public boolean overlaps(int placement, long[] bits) {
+        int base = placement * words;
+        for (int w = 0; w < words; w++) {
+            if ((masks[base + w] & bits[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the cells a placement shares with a bitboard.
+     * @param placement The placement id.
+     * @param bits A bitboard with at least words() longs.
+     * @return The number of shared cells.
+     */
+    public int overlapCount(int placement, long[] bits) {
+        int base = placement * words;
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(masks[base + w] & bits[w]);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the start of the placements covering a cell, for use with {@link #covering(int)}.
+     * @param cell The cell.
+     * @return The first index to pass to covering.
+     */
+    public int coverStart(int cell) {
+        return coverStart[cell];
+    }
+
+    /**
+     * Returns the end of the placements covering a cell, for use with {@link #covering(int)}.
+     * @param cell The cell.
+     * @return One past the last index to pass to covering.
+     */
+    public int coverEnd(int cell) {
+        return coverStart[cell + 1];
+    }
+
+    /**
+     * Returns a placement from the cell index. The placements covering cell c are covering(i) for i from
+     * coverStart(c) until coverEnd(c).
+     * @param i The position in the cell index.
+     * @return The placement id.
+     */
+    public int covering(int i) {
+        return cover[i];
+    }
+}
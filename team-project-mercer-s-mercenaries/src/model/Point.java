@@ -3,40 +3,71 @@ package model;
 import java.io.Serial;
 import java.io.Serializable;
 
-public class Point implements Serializable {
+/**
+ * An immutable board coordinate. Points on the standard board are interned: {@link #of(int, int)} always returns the
+ * same instance for the same cell, so comparing them is an identity check and handing them out allocates nothing.
+ * Hot paths can skip Points entirely and use packed cells, row * width + col. Only the board knows its width, so
+ * {@link Board#getPoint(int)} turns a cell into a Point.
+ */
+public final class Point implements Serializable {
 
-    public int row;
-    public int col;
     @Serial
     private static final long serialVersionUID = 0L;
+    private static final Point[] TABLE = new Point[Board.SIZE * Board.SIZE]; // One per cell of the standard board
+    static {
+        for (int cell = 0; cell < TABLE.length; cell++) {
+            TABLE[cell] = new Point(cell / Board.SIZE, cell % Board.SIZE);
+        }
+    }
+
+    public final int row;
+    public final int col;
 
-    public Point(int row, int col) {
+    private Point(int row, int col) {
         this.row = row;
         this.col = col;
     }
 
+    /**
+     * Returns the Point for a coordinate. Coordinates on the standard board come from the shared table.
+     * @param row The row.
+     * @param col The column.
+     * @return The canonical Point, or a new one if the coordinate is off the standard board.
+     */
+    public static Point of(int row, int col) {
+        if (row >= 0 && row < Board.SIZE && col >= 0 && col < Board.SIZE) {
+            return TABLE[row * Board.SIZE + col];
+        }
+        return new Point(row, col);
+    }
+
+    @Serial
+    private Object readResolve() {
+        return of(row, col); // Keep deserialized points canonical
+    }
+
     @Override
     public int hashCode() {
-        return row + 10*col;
+        return 31 * row + col;
     }
 
     @Override
     public boolean equals(Object other) {
-        if(!(other instanceof Point otherP)) {
-            return false;
+        if(this == other) {
+            return true;
         }
-        return otherP.row == this.row && otherP.col == this.col;
+        return other instanceof Point otherP && otherP.row == this.row && otherP.col == this.col;
     }
 
     @Override
     public String toString() {
         return row + " " + col;
     }
-    
+
     public int getRow() {
     	return row;
     }
-    
+
     public int getCol() {
     	return col;
     }
@@ -0,0 +1,229 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This strategy fires at the open cell covered by the most legal placements of the ships still afloat. A placement is
+ * legal if it doesn't cover a miss or a sunk ship. While a ship afloat has been hit, only placements through those
+ * hits count, weighted heavily by how many of the hits they explain, so the AI finishes off the ship it found.
+ * <p>
+ * The per-cell placement counts are kept up to date incrementally: a new miss only touches the placements through that
+ * cell, using the precomputed {@link Placements} table. Once only a few ships are left, the {@link EndgameSolver} picks
+ * the shots instead.
+ * <p>
+ * The tables are for the rules of the board being shot at, and are rebuilt if the rules change. Boards too big for a
+ * placement table are left to a {@link SmartAI}.
+ */
+public class ProbabilityAI implements BoardStrategy {
+
+    private static final int HIT_WEIGHT = 16; // How much more a placement counts for each extra hit it explains
+
+    private final Random generator;
+    private final int endgameThreshold;
+    private Rules rules;
+    private Placements placements;
+    private ObservedBoard observed;
+    private EndgameSolver endgame;
+    private int[] blockedCells; // Blocked cells under each placement. A placement is legal when this is 0.
+    private int[] remaining; // Ships afloat by length, as counted in density
+    private int[] density; // Legal placements covering each cell, counting each ship afloat separately
+    private int[] scores; // Scratch space for target mode
+    private SmartAI hunter; // Plays boards too big for a placement table
+
+    public ProbabilityAI() {
+        this(new Random());
+    }
+
+    /**
+     * Creates a ProbabilityAI that always makes the same moves on the same boards.
+     * @param seed The seed for the random number generator used to break ties.
+     */
+    public ProbabilityAI(long seed) {
+        this(new Random(seed), EndgameSolver.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates a ProbabilityAI that hands over to the endgame solver at a given number of ships.
+     * @param seed The seed for the random number generator used to break ties.
+     * @param endgameThreshold The number of ships afloat at which the endgame solver takes over. 0 turns it off.
+     */
+    public ProbabilityAI(long seed, int endgameThreshold) {
+        this(new Random(seed), endgameThreshold);
+    }
+
+    private ProbabilityAI(Random generator) {
+        this(generator, EndgameSolver.DEFAULT_THRESHOLD);
+    }
+
+    private ProbabilityAI(Random generator, int endgameThreshold) {
+        this.generator = generator;
+        this.endgameThreshold = endgameThreshold;
+        bind(Rules.STANDARD);
+    }
+
+    /**
+     * Sets up the tables for boards of some rules.
+     * @param rules The rules. They must be small enough for a placement table.
+     */
+    private void bind(Rules rules) {
+        this.rules = rules;
+        placements = Placements.of(rules);
+        observed = new ObservedBoard(placements);
+        endgame = new EndgameSolver(placements, generator, endgameThreshold);
+        blockedCells = new int[placements.count()];
+        remaining = new int[placements.maxLength() + 1];
+        density = new int[placements.cells()];
+        scores = new int[density.length];
+    }
+
+    public Point desiredMove(Board board) {
+        if (!board.getRules().equals(rules)) {
+            if (!Placements.supports(board.getRules())) {
+                if (hunter == null) {
+                    hunter = new SmartAI(generator.nextLong());
+                }
+                return hunter.desiredMove(board);
+            }
+            bind(board.getRules());
+        }
+        update(board);
+        int cell = endgame.applies(observed) ? endgame.solve(observed) : -1;
+        if (cell < 0 && observed.hasUnresolvedHits()) {
+            cell = target();
+        }
+        if (cell < 0) {
+            cell = best(density);
+        }
+        if (cell < 0) { // Nothing fits anywhere, which only happens on boards with a made up fleet
+            int open = board.getOpenCells();
+            if (open == 0) {
+                return null;
+            }
+            cell = board.openCell(generator.nextInt(open));
+        }
+        return board.getPoint(cell);
+    }
+
+    /**
+     * Brings the placement counts up to date with the board.
+     * @param board The board being shot at.
+     */
+    private void update(Board board) {
+        if (observed.sync(board)) {
+            rebuild();
+            return;
+        }
+        for (int i = 0; i < observed.numSunkLengths(); i++) {
+            int length = observed.sunkLength(i);
+            for (int p = placements.first(length); p < placements.end(length); p++) {
+                if (blockedCells[p] == 0) {
+                    addPlacement(p, -1);
+                }
+            }
+            remaining[length]--;
+        }
+        for (int i = 0; i < observed.numChangedCells(); i++) {
+            int cell = observed.changedCell(i);
+            for (int j = placements.coverStart(cell); j < placements.coverEnd(cell); j++) {
+                int p = placements.covering(j);
+                if (blockedCells[p]++ == 0) { // It was legal until now
+                    addPlacement(p, -remaining[placements.length(p)]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recounts everything from scratch, for a new board.
+     */
+    private void rebuild() {
+        Arrays.fill(density, 0);
+        for (int length = 0; length < remaining.length; length++) {
+            remaining[length] = observed.afloat(length);
+        }
+        for (int p = 0; p < placements.count(); p++) {
+            blockedCells[p] = placements.overlapCount(p, observed.blocked());
+            if (blockedCells[p] == 0) {
+                addPlacement(p, remaining[placements.length(p)]);
+            }
+        }
+    }
+
+    /**
+     * Adds a weight to every cell of a placement.
+     * @param placement The placement id.
+     * @param weight The amount to add to the density of each cell.
+     */
+    private void addPlacement(int placement, int weight) {
+        for (int i = 0; i < placements.length(placement); i++) {
+            density[placements.cell(placement, i)] += weight;
+        }
+    }
+
+    /**
+     * Scores the open cells next to the unresolved hits by the legal placements through those hits.
+     * @return The best cell, or -1 if no legal placement covers a hit.
+     */
+    private int target() {
+        Arrays.fill(scores, 0);
+        long[] unresolved = observed.unresolved();
+        for (int w = 0; w < unresolved.length; w++) {
+            for (long bits = unresolved[w]; bits != 0; bits &= bits - 1) {
+                int hit = (w << 6) + Long.numberOfTrailingZeros(bits);
+                for (int j = placements.coverStart(hit); j < placements.coverEnd(hit); j++) {
+                    int p = placements.covering(j);
+                    if (blockedCells[p] != 0 || remaining[placements.length(p)] == 0 || !firstHit(p, hit, unresolved)) {
+                        continue; // Illegal, or already counted from an earlier hit
+                    }
+                    int weight = remaining[placements.length(p)];
+                    for (int hits = placements.overlapCount(p, unresolved); hits > 1; hits--) {
+                        weight *= HIT_WEIGHT;
+                    }
+                    for (int i = 0; i < placements.length(p); i++) {
+                        scores[placements.cell(p, i)] += weight;
+                    }
+                }
+            }
+        }
+        return best(scores);
+    }
+
+    /**
+     * Checks if a hit is the first unresolved hit in a placement, so placements through several hits count once.
+     */
+    private boolean firstHit(int placement, int hit, long[] unresolved) {
+        for (int w = 0; w < unresolved.length; w++) {
+            long bits = placements.mask(placement, w) & unresolved[w];
+            if (bits != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(bits) == hit;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the open cell with the highest score, picking at random between ties.
+     * @param cellScores The score of each cell.
+     * @return The best cell, or -1 if every open cell scores 0.
+     */
+    private int best(int[] cellScores) {
+        int best = -1;
+        int bestScore = 0;
+        int ties = 0;
+        for (int cell = 0; cell < cellScores.length; cell++) {
+            int score = cellScores[cell];
+            if (score < bestScore || score == 0 || !observed.isOpen(cell)) {
+                continue;
+            }
+            if (score > bestScore) {
+                best = cell;
+                bestScore = score;
+                ties = 1;
+            } else if (generator.nextInt(++ties) == 0) {
+                best = cell;
+            }
+        }
+        return best;
+    }
+}
@@ -11,26 +11,28 @@ import java.util.Random;
 
 public class RandomAI implements BoardStrategy {
 
-	private static Random generator;
+	private final Random generator;
 
 	public RandomAI() {
 		generator = new Random();
 	}
 
-	// Find an open spot while ignoring possible wins and stops
-	public Point desiredMove(Board board) {
-		boolean set = false;
-		while (!set) {
-			int row = generator.nextInt(10);
-			int col = generator.nextInt(10);
-
-			if (!board.used(row, col)) {
-				set = true;
-				return new Point(row, col);
-			}
+	/**
+	 * Creates a RandomAI that always makes the same moves on the same boards.
+	 * @param seed The seed for the random number generator.
+	 */
+	public RandomAI(long seed) {
+		generator = new Random(seed);
+	}
 
+	// Pick one of the open spots directly, so a nearly full board is as fast as an empty one
+	public Point desiredMove(Board board) {
+		int open = board.getOpenCells();
+		if (open == 0) {
+			return null;
 		}
-		return null;
+		int cell = board.openCell(generator.nextInt(open));
+		return board.getPoint(cell);
 	}
 
 }
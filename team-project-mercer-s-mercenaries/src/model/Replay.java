@@ -0,0 +1,146 @@
+package model;
+
+/**
+ * Plays a recorded game again, one shot at a time. Without a GUI the shots are applied as fast as the boards take
+ * them. With a GUI the boards update it after every shot, so the caller can pace {@link #step()} with a timer.
+ * <p>
+ * {@link #verify(GameRecord)} goes further: it recreates every strategy from its name and seed, checks each move it
+ * picks against the recording, and checks the finished game records to exactly the same record.
+ */
+public final class Replay {
+
+    private final GameRecord record;
+    private final Board[] targets;
+    private final int[] moves; // Shots replayed so far, per player
+    private int turn;
+
+    /**
+     * Creates a headless replay.
+     * @param record The game to replay.
+     */
+    public Replay(GameRecord record) {
+        this(record, null);
+    }
+
+    /**
+     * Creates a replay that shows the game in a GUI.
+     * @param record The game to replay.
+     * @param listener The listener the boards tell about each shot, or null. Usually the GUI.
+     */
+    public Replay(GameRecord record, BoardListener listener) {
+        this.record = record;
+        targets = new Board[record.getPlayers()];
+        for (int player = 0; player < targets.length; player++) {
+            targets[player] = record.createBoard(player, listener);
+        }
+        moves = new int[targets.length];
+        turn = record.getFirst();
+    }
+
+    /**
+     * Returns one of the boards being replayed.
+     * @param player The player shooting at the board.
+     * @return The board.
+     */
+    public Board getBoard(int player) {
+        return targets[player];
+    }
+
+    /**
+     * Returns the player whose recorded shot is next.
+     * @return The player index.
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    /**
+     * Returns the number of recorded shots not replayed yet.
+     * @return The remaining shots.
+     */
+    public int getRemaining() {
+        int remaining = 0;
+        for (int player = 0; player < targets.length; player++) {
+            remaining += record.getNumShots(player) - moves[player];
+        }
+        return remaining;
+    }
+
+    /**
+     * Checks if there are recorded shots left.
+     * @return True if step() has something to replay.
+     */
+    public boolean hasNext() {
+        return getRemaining() > 0;
+    }
+
+    /**
+     * Replays the next recorded shot.
+     * @return The cell shot, row * Board.SIZE + col.
+     * @throws IllegalStateException If every shot has been replayed, or the recorded shot isn't legal.
+     */
+    public int step() {
+        if (moves[turn] == record.getNumShots(turn)) {
+            turn = nextTurn(); // The other player may still have a last shot, e.g. when the loser moved first
+            if (moves[turn] == record.getNumShots(turn)) {
+                throw new IllegalStateException("No shots left to replay");
+            }
+        }
+        int cell = record.getShot(turn, moves[turn]++);
+        if (!targets[turn].tryShot(cell / Board.SIZE, cell % Board.SIZE)) {
+            throw new IllegalStateException("Player " + turn + " shot cell " + cell + " twice");
+        }
+        turn = nextTurn();
+        return cell;
+    }
+
+    /**
+     * Replays every remaining shot.
+     */
+    public void runToEnd() {
+        while (hasNext()) {
+            step();
+        }
+    }
+
+    private int nextTurn() {
+        return (turn + 1) % targets.length;
+    }
+
+    /**
+     * Re-executes a recorded game headlessly. Strategies are recreated from their names and seeds and must pick the
+     * recorded shots. Shots by people, and by strategies that depend on a time budget, are applied as recorded.
+     * @param record The game to check.
+     * @return -1 if the replay matches the recording exactly, otherwise the number of shots that matched before the
+     * first difference.
+     */
+    public static int verify(GameRecord record) {
+        Replay replay = new Replay(record);
+        BoardStrategy[] strategies = new BoardStrategy[record.getPlayers()];
+        for (int player = 0; player < strategies.length; player++) {
+            String name = record.getStrategy(player);
+            if (!GameRecord.HUMAN.equals(name) && Strategies.isReproducible(name)) {
+                strategies[player] = Strategies.create(name, record.getSeed(player));
+            }
+        }
+        int shots = 0;
+        while (replay.hasNext()) {
+            int player = replay.moves[replay.turn] < record.getNumShots(replay.turn) ? replay.turn : replay.nextTurn();
+            if (strategies[player] != null) {
+                Point move = strategies[player].desiredMove(replay.targets[player]);
+                if (move == null || move.row * Board.SIZE + move.col != record.getShot(player, replay.moves[player])) {
+                    return shots;
+                }
+            }
+            replay.step();
+            shots++;
+        }
+        String[] names = new String[strategies.length];
+        long[] seeds = new long[strategies.length];
+        for (int player = 0; player < strategies.length; player++) {
+            names[player] = record.getStrategy(player);
+            seeds[player] = record.getSeed(player);
+        }
+        return GameRecord.capture(replay.targets, names, seeds, record.getFirst()).equals(record) ? -1 : shots;
+    }
+}
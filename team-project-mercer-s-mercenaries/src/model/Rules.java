@@ -0,0 +1,139 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * The rules a board is played by: its width and height, and the lengths of the ships in a full fleet. Cell (row, col)
+ * of a board is row * width + col, so a board can have at most Integer.MAX_VALUE cells.
+ * <p>
+ * Boards of up to {@link #DENSE_CELLS} cells keep their cells in flat bitboards. Bigger boards, meant for stress
+ * tests, keep them in chunks that are only allocated once something is placed or shot there, so a game on a million
+ * cell board only pays for the parts of it that are played.
+ */
+public final class Rules {
+
+    /** The most cells a board can have and still keep them in flat bitboards. */
+    public static final int DENSE_CELLS = 1 << 16;
+
+    /** The standard game: a 10 by 10 board and the fleet in {@link Board#FLEET}. */
+    public static final Rules STANDARD = new Rules(Board.SIZE, Board.SIZE, Board.FLEET);
+
+    private final int width;
+    private final int height;
+    private final int[] fleet;
+
+    /**
+     * Creates a set of rules.
+     * @param width The number of columns.
+     * @param height The number of rows.
+     * @param fleet The lengths of the ships in a full fleet. It may be empty for boards whose ships are all hardcoded.
+     * @throws IllegalArgumentException If the board is empty or too big, or a ship can't fit on it.
+     */
+    public Rules(int width, int height, int[] fleet) {
+        if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A board can't be " + width + " by " + height);
+        }
+        for (int length : fleet) {
+            if (length < 1 || length > Math.max(width, height)) {
+                throw new IllegalArgumentException("A ship of length " + length + " doesn't fit on a " + width
+                        + " by " + height + " board");
+            }
+        }
+        this.width = width;
+        this.height = height;
+        this.fleet = fleet.clone();
+    }
+
+    /**
+     * Reads rules written as {@code WIDTHxHEIGHT}, optionally followed by {@code :} and the ship lengths separated by
+     * commas, e.g. {@code 1000x1000:5,4,3,3,2}. Without the lengths the standard fleet is used.
+     * @param text The rules.
+     * @return The rules.
+     * @throws IllegalArgumentException If the text isn't in that form or the rules are invalid.
+     */
+    public static Rules parse(String text) {
+        String[] parts = text.split(":", 2);
+        String[] size = parts[0].split("x");
+        if (size.length != 2) {
+            throw new IllegalArgumentException("Rules must look like 10x10 or 10x10:5,4,3,3,2, not " + text);
+        }
+        int[] fleet = Board.FLEET;
+        if (parts.length > 1) {
+            fleet = Arrays.stream(parts[1].split(",")).mapToInt(Integer::parseInt).toArray();
+        }
+        return new Rules(Integer.parseInt(size[0]), Integer.parseInt(size[1]), fleet);
+    }
+
+    /**
+     * Returns the number of columns.
+     * @return The width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the number of rows.
+     * @return The height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of cells on the board.
+     * @return width * height.
+     */
+    public int getCells() {
+        return width * height;
+    }
+
+    /**
+     * Returns the number of ships in a full fleet.
+     * @return The fleet size.
+     */
+    public int getFleetSize() {
+        return fleet.length;
+    }
+
+    /**
+     * Returns the length of one ship of the fleet.
+     * @param ship The index of the ship in the fleet.
+     * @return The length.
+     */
+    public int getShipLength(int ship) {
+        return fleet[ship];
+    }
+
+    /**
+     * Returns the lengths of the ships in a full fleet.
+     * @return A copy of the lengths.
+     */
+    public int[] getFleet() {
+        return fleet.clone();
+    }
+
+    /**
+     * Checks if boards with these rules keep their cells in flat bitboards.
+     * @return True if the board has at most DENSE_CELLS cells.
+     */
+    public boolean isDense() {
+        return getCells() <= DENSE_CELLS;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Rules other && width == other.width && height == other.height
+                && Arrays.equals(fleet, other.fleet);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * width + height) + Arrays.hashCode(fleet);
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + ":" + Arrays.toString(fleet).replaceAll("[\\[\\] ]", "");
+    }
+}
@@ -0,0 +1,96 @@
+package model;
+
+/**
+ * Decodes the packed int results returned by {@link Board#fire(int, int)}. A result is one of the type constants below
+ * in the low byte, with the id of the ship in the upper bits when a ship was sunk. Keeping the result a plain int means
+ * firing a shot never allocates.
+ * <p>
+ * A salvo from {@link Board#tryShots(int[], int)} returns a long instead: bit i is set if shot i hit, and bit 32 + s is
+ * set if ship s sank. Salvos and the fleets they are fired at are kept to {@link #MAX_SALVO}, so bit 63 is never set
+ * and no salvo result can be mistaken for {@link #SALVO_INVALID}.
+ */
+public final class ShotResult {
+
+    /** The cell was already used or is off the board, so the shot was not made. */
+    public static final int INVALID = -1;
+    /** The shot landed in open water. */
+    public static final int MISS = 0;
+    /** The shot hit a ship that is still afloat. */
+    public static final int HIT = 1;
+    /** The shot sank a ship. */
+    public static final int SUNK = 2;
+    /** The shot sank the last ship on the board. */
+    public static final int FLEET_DESTROYED = 3;
+    /** Returned by {@link Board#tryShots(int[], int)} when a shot in the salvo was invalid, so none were made. */
+    public static final long SALVO_INVALID = -1L;
+    /** The most shots in a salvo, and the most ships on a board a salvo is fired at. */
+    public static final int MAX_SALVO = 31;
+
+    private ShotResult() {
+    }
+
+    /**
+     * Packs the result of a shot that sank a ship.
+     * @param shipId The id of the ship that was sunk.
+     * @param fleetDestroyed True if that was the last ship afloat.
+     * @return The packed result.
+     */
+    static int sunk(int shipId, boolean fleetDestroyed) {
+        return (shipId << 8) | (fleetDestroyed ? FLEET_DESTROYED : SUNK);
+    }
+
+    /**
+     * Returns the type of a result.
+     * @param result The packed result.
+     * @return One of INVALID, MISS, HIT, SUNK or FLEET_DESTROYED.
+     */
+    public static int type(int result) {
+        return result < 0 ? INVALID : result & 0xFF;
+    }
+
+    /**
+     * Returns the ship sunk by a shot.
+     * @param result The packed result.
+     * @return The id of the sunk ship, or -1 if the shot did not sink anything.
+     */
+    public static int sunkShip(int result) {
+        return type(result) >= SUNK ? result >>> 8 : -1;
+    }
+
+    /**
+     * Checks if a shot hit a ship, including shots that sank it.
+     * @param result The packed result.
+     * @return True if the shot hit, false otherwise.
+     */
+    public static boolean isHit(int result) {
+        return type(result) >= HIT;
+    }
+
+    /**
+     * Checks if one shot of a salvo hit a ship.
+     * @param salvo The salvo result.
+     * @param shot The index of the shot in the salvo.
+     * @return True if the shot hit.
+     */
+    public static boolean salvoHit(long salvo, int shot) {
+        return salvo != SALVO_INVALID && (salvo & 1L << shot) != 0;
+    }
+
+    /**
+     * Returns the number of shots of a salvo that hit a ship.
+     * @param salvo The salvo result.
+     * @return The number of hits, or 0 if the salvo was invalid.
+     */
+    public static int salvoHits(long salvo) {
+        return salvo == SALVO_INVALID ? 0 : Integer.bitCount((int) salvo);
+    }
+
+    /**
+     * Returns the ships a salvo sank.
+     * @param salvo The salvo result.
+     * @return A bitmask with bit s set if ship s sank, or 0 if the salvo was invalid.
+     */
+    public static int salvoSunk(long salvo) {
+        return salvo == SALVO_INVALID ? 0 : (int) (salvo >>> 32);
+    }
+}
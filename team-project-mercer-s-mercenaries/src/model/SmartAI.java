@@ -1,20 +1,46 @@
 package model;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 
+/**
+ * Sweeps the diagonals, then the center column and row, following up on the cells it swept, then shoots at random.
+ * Hits from shots it didn't pick, such as the moves of an {@link OpeningBook}, are followed up too.
+ * <p>
+ * The swept cells waiting to be followed up are kept as packed cell indexes (row * width + col) in a ring buffer
+ * used as a stack, and moves are interned Points, so a whole game allocates nothing. The buffer holds 128 cells, so on
+ * big boards the oldest cells can be dropped unvisited.
+ */
 public class SmartAI implements BoardStrategy {
 
-    private static Random generator;
-    private List<Point> hitCells;
+    // A power of two above the cells of a standard board, so it never fills there. On a board of more than 128 cells
+    // it can fill, and then each new cell pushes out the oldest, which is never followed up.
+    private static final int CAPACITY = 128;
+    private static final int MASK = CAPACITY - 1;
+
+    private final Random generator;
+    private final int[] hitCells = new int[CAPACITY]; // Ring buffer of cells, newest at top. When full, the oldest goes.
+    private int top = MASK; // Index of the newest cell
+    private int numHitCells;
     private boolean isDiagonalSpree;
     private boolean isCenterSpree;
     private boolean isHorizontalSpree;
+    private int movesSeen; // The shots on the board already looked at
+    private int ownMove = -1; // The number of the last shot this strategy picked
 
     public SmartAI() {
-        generator = new Random();
-        hitCells = new ArrayList<>();
+        this(new Random());
+    }
+
+    /**
+     * Creates a SmartAI that always makes the same moves on the same boards.
+     * @param seed The seed for the random number generator.
+     */
+    public SmartAI(long seed) {
+        this(new Random(seed));
+    }
+
+    private SmartAI(Random generator) {
+        this.generator = generator;
         isDiagonalSpree = true;
         isCenterSpree = false;
         isHorizontalSpree = false;
@@ -22,8 +48,17 @@ public class SmartAI implements BoardStrategy {
 
     // Find an open spot while considering adjacent cells and forming a line of hit cells
     public Point desiredMove(Board board) {
+        // Follow up on hits from shots someone else picked, like the moves of an opening book
+        for (; movesSeen < board.getNumMoves(); movesSeen++) {
+            int cell = board.getShot(movesSeen);
+            if (movesSeen != ownMove && board.hit(cell)) {
+                remember(cell);
+            }
+        }
+        ownMove = board.getNumMoves();
+
         // Check if there are hit cells to follow
-        if (!hitCells.isEmpty()) {
+        if (numHitCells > 0) {
             Point nextMove = getNextHitMove(board);
             if (nextMove != null) {
                 return nextMove;
@@ -47,16 +82,17 @@ public class SmartAI implements BoardStrategy {
 
     // Helper method to get the next move when following a line of hit cells
     private Point getNextHitMove(Board board) {
-        Point lastHit = hitCells.get(hitCells.size() - 1);
+        int lastHit = hitCells[top];
         
         // Try to form a line of hit cells
-        Point nextMove = formLine(board, lastHit.getRow(), lastHit.getCol());
+        Point nextMove = formLine(board, lastHit / board.getWidth(), lastHit % board.getWidth());
         if (nextMove != null) {
             return nextMove;
         }
 
         // If no line is formed, remove the last hit cell
-        hitCells.remove(hitCells.size() - 1);
+        top = (top - 1) & MASK;
+        numHitCells--;
 
         // If the diagonal spree is still active, continue diagonally
         if (isDiagonalSpree) {
@@ -73,16 +109,14 @@ public class SmartAI implements BoardStrategy {
 
     // Helper method to get a move for a spree from the top line center to the bottom line center
     private Point getCenterSpreeMove(Board board) {
-        int centerCol = Board.SIZE / 2;
+        int centerCol = board.getWidth() / 2;
 
         // Check for a line of hit cells from top line center to bottom line center in the 5th column
-        for (int i = 0; i < Board.SIZE; i++) {
+        for (int i = 0; i < board.getHeight(); i++) {
             int row = i;
             int col = centerCol;
             if (!board.used(row, col)) {
-                Point centerSpreeMove = new Point(row, col);
-                hitCells.add(centerSpreeMove);
-                return centerSpreeMove;
+                return push(board, row, col);
             }
         }
 
@@ -94,16 +128,14 @@ public class SmartAI implements BoardStrategy {
 
     // Helper method to get a move for a spree from the 1st column to the 10th column in the 5th row
     private Point getHorizontalSpreeMove(Board board) {
-        int targetRow = Board.SIZE / 2;
+        int targetRow = board.getHeight() / 2;
 
         // Check for a line of hit cells from the 1st column to the 10th column in the 5th row
-        for (int i = 0; i < Board.SIZE; i++) {
+        for (int i = 0; i < board.getWidth(); i++) {
             int row = targetRow;
             int col = i;
             if (!board.used(row, col)) {
-                Point horizontalSpreeMove = new Point(row, col);
-                hitCells.add(horizontalSpreeMove);
-                return horizontalSpreeMove;
+                return push(board, row, col);
             }
         }
 
@@ -112,23 +144,27 @@ public class SmartAI implements BoardStrategy {
         return getRandomMove(board);
     }
 
-    // Helper method to get a random move
+    // Helper method to get a random move, picked directly from the open spots on the board
     private Point getRandomMove(Board board) {
-        boolean set = false;
-        while (!set) {
-            int row = generator.nextInt(Board.SIZE);
-            int col = generator.nextInt(Board.SIZE);
-
-            if (!board.used(row, col)) {
-                set = true;
-                Point randPoint = new Point(row, col);
-                if (board.hit(row, col)) {
-                	hitCells.add(randPoint);
-                }
-                return randPoint;
-            }
+        int open = board.getOpenCells();
+        if (open == 0) {
+            return null;
         }
-        return null;
+        int cell = board.openCell(generator.nextInt(open));
+        return board.getPoint(cell);
+    }
+
+    // Helper method to remember a swept cell to follow up on, and return it as the move
+    private Point push(Board board, int row, int col) {
+        remember(row * board.getWidth() + col);
+        return board.getPoint(row, col);
+    }
+
+    // Helper method to put a cell on top of the stack of cells to follow up on
+    private void remember(int cell) {
+        top = (top + 1) & MASK;
+        hitCells[top] = cell;
+        numHitCells = Math.min(numHitCells + 1, CAPACITY);
     }
 
     // Helper method to form a line of hit cells
@@ -163,16 +199,16 @@ public class SmartAI implements BoardStrategy {
         int currentCol = col;
 
         // Move in the specified direction until an open spot is found
-        while (currentRow >= 0 && currentRow < Board.SIZE && currentCol >= 0 && currentCol < Board.SIZE
+        while (currentRow >= 0 && currentRow < board.getHeight() && currentCol >= 0 && currentCol < board.getWidth()
                 && board.hit(currentRow, currentCol)) {
             currentRow += rowIncrement;
             currentCol += colIncrement;
         }
 
         // Check if a line of hit cells is formed
-        if (currentRow >= 0 && currentRow < Board.SIZE && currentCol >= 0 && currentCol < Board.SIZE
+        if (currentRow >= 0 && currentRow < board.getHeight() && currentCol >= 0 && currentCol < board.getWidth()
                 && !board.used(currentRow, currentCol)) {
-            return new Point(currentRow, currentCol);
+            return board.getPoint(currentRow, currentCol);
         }
 
         return null;
@@ -181,22 +217,19 @@ public class SmartAI implements BoardStrategy {
     // Helper method to get a diagonal move
     private Point getDiagonalMove(Board board) {
         // Check for diagonal cells from top left to bottom right and hit them
-        for (int i = 0; i < Board.SIZE; i++) {
+        int diagonal = Math.min(board.getWidth(), board.getHeight());
+        for (int i = 0; i < diagonal; i++) {
             if (!board.used(i, i)) {
-                Point diagonalMove = new Point(i, i);
-                hitCells.add(diagonalMove);
-                return diagonalMove;
+                return push(board, i, i);
             }
         }
 
         // Check for diagonal cells from top right to bottom left and hit them
-        for (int i = 0; i < Board.SIZE; i++) {
+        for (int i = 0; i < diagonal; i++) {
             int row = i;
-            int col = Board.SIZE - 1 - i;
+            int col = board.getWidth() - 1 - i;
             if (!board.used(row, col)) {
-                Point diagonalMove = new Point(row, col);
-                hitCells.add(diagonalMove);
-                return diagonalMove;
+                return push(board, row, col);
             }
         }
 
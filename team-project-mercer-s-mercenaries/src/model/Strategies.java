@@ -0,0 +1,94 @@
+package model;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongFunction;
+
+/**
+ * Registry of the available BoardStrategy implementations by name, so headless tools can pick strategies from the
+ * command line. Strategies keep state between moves, so every game needs its own instance.
+ */
+public final class Strategies {
+
+    private static final Map<String, LongFunction<BoardStrategy>> REGISTRY = new LinkedHashMap<>();
+    private static final Set<String> TIMED = new HashSet<>(); // Strategies whose moves depend on a time budget
+
+    static {
+        REGISTRY.put("random", RandomAI::new);
+        REGISTRY.put("smart", SmartAI::new);
+        REGISTRY.put("probability", ProbabilityAI::new);
+        REGISTRY.put("endgame", seed -> new ProbabilityAI(seed, 2)); // Solves the last two ships exactly
+        REGISTRY.put("montecarlo", MonteCarloAI::new);
+        REGISTRY.put("montecarlo-cached", seed -> new MonteCarloAI(2_000_000L, ForkJoinPool.commonPool(), seed,
+                SharedCache.CACHE));
+        TIMED.add("montecarlo");
+        TIMED.add("montecarlo-cached");
+    }
+
+    /**
+     * Holds the cache shared by every "montecarlo-cached" strategy, so it is only created if one is used.
+     */
+    private static final class SharedCache {
+        static final TranspositionCache CACHE = new TranspositionCache(1 << 16);
+    }
+
+    private Strategies() {
+    }
+
+    /**
+     * Returns the cache shared by every "montecarlo-cached" strategy, for reporting its hit rate.
+     * @return The shared cache.
+     */
+    public static TranspositionCache sharedCache() {
+        return SharedCache.CACHE;
+    }
+
+    /**
+     * Creates a new instance of a registered strategy with a random seed.
+     * @param name The name the strategy is registered under.
+     * @return A fresh strategy.
+     * @throws IllegalArgumentException If no strategy is registered under that name.
+     */
+    public static BoardStrategy create(String name) {
+        return create(name, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates a new instance of a registered strategy. Two strategies created with the same name and seed make the
+     * same moves on the same boards.
+     * @param name The name the strategy is registered under.
+     * @param seed The seed for the strategy's random number generator.
+     * @return A fresh strategy.
+     * @throws IllegalArgumentException If no strategy is registered under that name.
+     */
+    public static BoardStrategy create(String name, long seed) {
+        LongFunction<BoardStrategy> factory = REGISTRY.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown strategy " + name + ", expected one of " + names());
+        }
+        return factory.apply(seed);
+    }
+
+    /**
+     * Checks if a strategy always makes the same moves when created with the same seed. Strategies that work to a
+     * time budget don't, since how far they get depends on the machine.
+     * @param name The name the strategy is registered under.
+     * @return True if the strategy's moves depend only on the seed and the board.
+     */
+    public static boolean isReproducible(String name) {
+        return REGISTRY.containsKey(name) && !TIMED.contains(name);
+    }
+
+    /**
+     * Returns the names of every registered strategy, in registration order.
+     * @return The strategy names.
+     */
+    public static Set<String> names() {
+        return Collections.unmodifiableSet(REGISTRY.keySet());
+    }
+}
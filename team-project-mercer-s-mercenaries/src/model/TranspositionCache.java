@@ -0,0 +1,183 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size cache of strategy results keyed by a board's Zobrist hash, see {@link Board#getShotHash()}. It can be
+ * shared by strategies on any number of threads without locks, so positions that come up again, like the opening
+ * moves of every game, are looked up instead of worked out again.
+ * <p>
+ * Each entry is a packed long holding a move, a score and a depth, see {@link #pack(int, int, int)}. Entries are kept
+ * in buckets of two slots. The first slot keeps the deepest entry seen for that bucket and the second is always
+ * replaced, so a flood of cheap results can't push out expensive ones, but new positions still get cached.
+ * <p>
+ * Every slot is two longs, the key XORed with the entry and the entry itself. A reader that sees halves from two
+ * different writes gets a key that doesn't match, so a torn slot reads as a miss instead of a wrong answer. Entries
+ * with the same key from two threads are both correct, so it doesn't matter which one wins.
+ * <p>
+ * The cache doesn't know what the entries mean, so strategies should only share a cache with strategies of the same
+ * kind and settings.
+ */
+public final class TranspositionCache {
+
+    /** Returned by {@link #probe(long)} when the position is not in the cache. No packed entry is ever zero. */
+    public static final long NOT_FOUND = 0L;
+
+    private static final int MAX_DEPTH = 0x7FFF;
+    private static final long PRESENT = 1L << 31;
+
+    private final AtomicLongArray slots; // Four longs per bucket: key ^ entry and entry, for two slots
+    private final int mask; // Buckets - 1
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     * @param buckets The number of buckets, rounded up to a power of two. Each takes 32 bytes and holds two entries.
+     */
+    public TranspositionCache(int buckets) {
+        if (buckets <= 0 || buckets > 1 << 28) {
+            throw new IllegalArgumentException("Bucket count must be between 1 and 2^28, not " + buckets);
+        }
+        int size = Integer.highestOneBit(buckets);
+        if (size < buckets) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        slots = new AtomicLongArray(size * 4);
+    }
+
+    /**
+     * Packs a result into an entry.
+     * @param move The move, from 0 to 65535, usually a cell.
+     * @param score The score of the move.
+     * @param depth How much work went into the result, from 0 to 32767. Deeper entries are kept over shallower ones.
+     * @return The packed entry.
+     */
+    public static long pack(int move, int score, int depth) {
+        return (long) score << 32 | PRESENT | (long) Math.min(Math.max(depth, 0), MAX_DEPTH) << 16 | (move & 0xFFFF);
+    }
+
+    /**
+     * Returns the move of an entry.
+     * @param entry The packed entry.
+     * @return The move.
+     */
+    public static int move(long entry) {
+        return (int) entry & 0xFFFF;
+    }
+
+    /**
+     * Returns the score of an entry.
+     * @param entry The packed entry.
+     * @return The score.
+     */
+    public static int score(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    /**
+     * Returns the depth of an entry.
+     * @param entry The packed entry.
+     * @return The depth.
+     */
+    public static int depth(long entry) {
+        return (int) (entry >>> 16) & MAX_DEPTH;
+    }
+
+    /**
+     * Looks up a position.
+     * @param key The position's hash.
+     * @return The packed entry, or NOT_FOUND.
+     */
+    public long probe(long key) {
+        probes.increment();
+        int base = bucket(key);
+        for (int slot = base; slot < base + 4; slot += 2) {
+            long entry = slots.getOpaque(slot + 1);
+            if (entry != NOT_FOUND && (slots.getOpaque(slot) ^ entry) == key) {
+                hits.increment();
+                return entry;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Stores a result for a position. It goes in the first slot of its bucket if that slot holds the same position or
+     * a shallower result, otherwise in the second.
+     * @param key The position's hash.
+     * @param entry The packed entry, from {@link #pack(int, int, int)}.
+     */
+    public void store(long key, long entry) {
+        stores.increment();
+        int base = bucket(key);
+        long current = slots.getOpaque(base + 1);
+        int slot = base;
+        if (current != NOT_FOUND && (slots.getOpaque(base) ^ current) != key && depth(current) > depth(entry)) {
+            slot = base + 2;
+        }
+        slots.setOpaque(slot, key ^ entry);
+        slots.setOpaque(slot + 1, entry);
+    }
+
+    /**
+     * Empties the cache and resets its counters. Other threads may still be using it, in which case they see some
+     * mix of old and no entries, but never a wrong one.
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.setOpaque(i, 0L);
+        }
+        probes.reset();
+        hits.reset();
+        stores.reset();
+    }
+
+    /**
+     * Returns the number of entries the cache can hold.
+     * @return Two entries per bucket.
+     */
+    public int capacity() {
+        return slots.length() / 2;
+    }
+
+    /**
+     * Returns the number of lookups made.
+     * @return The number of probes.
+     */
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    /**
+     * Returns the number of lookups that found their position.
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of results stored.
+     * @return The number of stores.
+     */
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups that found their position.
+     * @return The hit rate, or 0 if nothing was looked up.
+     */
+    public double hitRate() {
+        long total = probes.sum();
+        return total == 0 ? 0.0 : (double) hits.sum() / total;
+    }
+
+    private int bucket(long key) {
+        return ((int) (key ^ key >>> 32) & mask) << 2;
+    }
+}
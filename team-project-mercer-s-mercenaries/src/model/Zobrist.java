@@ -0,0 +1,109 @@
+package model;
+
+import java.util.SplittableRandom;
+
+/**
+ * The random keys for Zobrist hashing of boards. A position's hash is the XOR of one key for every fact about each
+ * cell: a ship is there, it was hit, it was missed, or it is part of a sunk ship. Since XOR undoes itself, a board
+ * updates its hash with one XOR per change instead of rehashing every cell, and taking a shot back is the same XOR
+ * again.
+ * <p>
+ * The keys come from a fixed seed, so hashes are the same in every run and on every thread. Cells past the standard
+ * board, on bigger boards, get keys mixed from the cell number instead of a table.
+ */
+public final class Zobrist {
+
+    private static final int CELLS = Board.SIZE * Board.SIZE;
+    private static final long[] SHIP = new long[CELLS];
+    private static final long[] HIT = new long[CELLS];
+    private static final long[] MISS = new long[CELLS];
+    private static final long[] SUNK = new long[CELLS];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EA_BA771EL);
+        for (int cell = 0; cell < CELLS; cell++) {
+            SHIP[cell] = random.nextLong();
+            HIT[cell] = random.nextLong();
+            MISS[cell] = random.nextLong();
+            SUNK[cell] = random.nextLong();
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Returns the key for a ship covering a cell.
+     * @param cell The cell, row * width + col.
+     * @return The key.
+     */
+    public static long ship(int cell) {
+        return cell < CELLS ? SHIP[cell] : mix(cell, 1);
+    }
+
+    /**
+     * Returns the key for a hit on a cell.
+     * @param cell The cell, row * width + col.
+     * @return The key.
+     */
+    public static long hit(int cell) {
+        return cell < CELLS ? HIT[cell] : mix(cell, 2);
+    }
+
+    /**
+     * Returns the key for a miss on a cell.
+     * @param cell The cell, row * width + col.
+     * @return The key.
+     */
+    public static long miss(int cell) {
+        return cell < CELLS ? MISS[cell] : mix(cell, 3);
+    }
+
+    /**
+     * Returns the key for a cell of a sunk ship. This is added on top of the cell's hit key when the ship sinks, since
+     * the shooter learns which hits belonged to it.
+     * @param cell The cell, row * width + col.
+     * @return The key.
+     */
+    public static long sunk(int cell) {
+        return cell < CELLS ? SUNK[cell] : mix(cell, 4);
+    }
+
+    /**
+     * Returns the combined key for the cells of a sunk ship.
+     * @param nose The cell of the ship's nose.
+     * @param length The length of the ship.
+     * @param horizontal If the ship is horizontal or not.
+     * @return The XOR of the sunk keys of the ship's cells.
+     */
+    public static long sunkShip(int nose, int length, boolean horizontal) {
+        return sunkShip(nose, length, horizontal, Board.SIZE);
+    }
+
+    /**
+     * Returns the combined key for the cells of a sunk ship on a board of any width.
+     * @param nose The cell of the ship's nose.
+     * @param length The length of the ship.
+     * @param horizontal If the ship is horizontal or not.
+     * @param width The width of the board.
+     * @return The XOR of the sunk keys of the ship's cells.
+     */
+    public static long sunkShip(int nose, int length, boolean horizontal, int width) {
+        long key = 0;
+        int step = horizontal ? 1 : width;
+        for (int i = 0, cell = nose; i < length; i++, cell += step) {
+            key ^= sunk(cell);
+        }
+        return key;
+    }
+
+    /**
+     * Makes a key for a cell past the table, with the SplitMix64 finalizer.
+     */
+    private static long mix(int cell, int kind) {
+        long z = 0x5EA_BA771EL + (((long) cell << 3 | kind) * 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
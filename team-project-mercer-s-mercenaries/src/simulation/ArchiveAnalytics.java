@@ -0,0 +1,189 @@
+package simulation;
+
+import model.Board;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Command line entry point that scans a game archive in one pass on every core and reports, for each strategy, its
+ * win rate, shots to win, hit streaks and where it shoots and hits, plus how often ships are placed on each cell.
+ * <p>
+ * Segments are indexed on their own threads, and each segment is split into runs of a few thousand games. Each worker
+ * scans a run into its own {@link ArchiveStats}, and the results are merged at the end, so even a one-segment archive
+ * is scanned on every core and memory use stays the same however big the archive is.
+ * <p>
+ * Usage: {@code java simulation.ArchiveAnalytics <archive>}
+ */
+public class ArchiveAnalytics {
+
+    private static final int GAMES_PER_TASK = 4096; // Enough to dwarf the cost of a task, small enough to share out
+
+    private ArchiveAnalytics() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java simulation.ArchiveAnalytics <archive>");
+            return;
+        }
+        try (GameArchive archive = GameArchive.openForReading(Path.of(args[0]))) {
+            long start = System.nanoTime();
+            ArchiveStats stats = analyze(archive);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d games in %.2f s (%.0f games/sec)%n", archive.getGames(), seconds,
+                    archive.getGames() / seconds);
+
+            for (int s = 0; s < stats.getStrategies(); s++) {
+                if (stats.getGames(s) == 0) {
+                    continue;
+                }
+                long shots = 0;
+                long hits = 0;
+                for (int cell = 0; cell < Board.SIZE * Board.SIZE; cell++) {
+                    shots += stats.getShots(s, cell);
+                    hits += stats.getHits(s, cell);
+                }
+                System.out.printf("%n%s: %d games, wins %.2f%%, hit rate %.2f%%%n", archive.getStrategyName(s),
+                        stats.getGames(s), 100.0 * stats.getWins(s) / stats.getGames(s), 100.0 * hits / shots);
+                System.out.printf("  shots to win: mean %.2f, p50 %d, p90 %d, p99 %d%n", stats.meanShotsToWin(s),
+                        stats.percentileShotsToWin(s, 50), stats.percentileShotsToWin(s, 90),
+                        stats.percentileShotsToWin(s, 99));
+                System.out.printf("  most hits in a row: mean %.2f, p50 %d, p90 %d, max %d%n",
+                        stats.meanLongestStreak(s), stats.percentileLongestStreak(s, 50),
+                        stats.percentileLongestStreak(s, 90), stats.percentileLongestStreak(s, 100));
+                System.out.println("  hit rate by cell (%):");
+                for (int row = 0; row < Board.SIZE; row++) {
+                    StringBuilder line = new StringBuilder("   ");
+                    for (int col = 0; col < Board.SIZE; col++) {
+                        long cellShots = stats.getShots(s, row * Board.SIZE + col);
+                        line.append(String.format(" %3.0f", cellShots == 0 ? 0.0
+                                : 100.0 * stats.getHits(s, row * Board.SIZE + col) / cellShots));
+                    }
+                    System.out.println(line);
+                }
+            }
+
+            System.out.println("\nfleets with a ship on each cell (%):");
+            for (int row = 0; row < Board.SIZE; row++) {
+                StringBuilder line = new StringBuilder("   ");
+                for (int col = 0; col < Board.SIZE; col++) {
+                    line.append(String.format(" %3.0f",
+                            100.0 * stats.getShipCells(row * Board.SIZE + col) / Math.max(1, stats.getFleets())));
+                }
+                System.out.println(line);
+            }
+        }
+    }
+
+    /**
+     * Scans every game in an archive on the common fork/join pool.
+     * @param archive The archive.
+     * @return The statistics of all its games.
+     * @throws IOException If a segment can't be mapped.
+     */
+    public static ArchiveStats analyze(GameArchive archive) throws IOException {
+        return analyze(archive, ForkJoinPool.commonPool(), GAMES_PER_TASK);
+    }
+
+    /**
+     * Scans every game in an archive.
+     * @param archive The archive.
+     * @param pool The pool to scan on.
+     * @param gamesPerTask The number of games each task scans.
+     * @return The statistics of all its games.
+     * @throws IOException If a segment can't be mapped.
+     */
+    public static ArchiveStats analyze(GameArchive archive, ForkJoinPool pool, int gamesPerTask) throws IOException {
+        try {
+            return pool.invoke(new Scan(archive, 0, archive.getNumSegments(), gamesPerTask));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Splits a range of segments in half until there is one left, then indexes it and scans its runs of games.
+     */
+    private static class Scan extends RecursiveTask<ArchiveStats> {
+
+        @Serial
+        private static final long serialVersionUID = 0L;
+        private final transient GameArchive archive;
+        private final int from;
+        private final int to;
+        private final int gamesPerTask;
+
+        Scan(GameArchive archive, int from, int to, int gamesPerTask) {
+            this.archive = archive;
+            this.from = from;
+            this.to = to;
+            this.gamesPerTask = gamesPerTask;
+        }
+
+        @Override
+        protected ArchiveStats compute() {
+            if (to - from <= 1) {
+                try {
+                    int[] offsets = archive.index(from, gamesPerTask);
+                    return new Runs(archive, from, offsets, 0, offsets.length - 1).compute();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            int mid = (from + to) >>> 1;
+            Scan left = new Scan(archive, from, mid, gamesPerTask);
+            left.fork();
+            ArchiveStats right = new Scan(archive, mid, to, gamesPerTask).compute();
+            return right.merge(left.join());
+        }
+    }
+
+    /**
+     * Splits the runs of games in a segment in half until there is one left to scan on this thread. Run i is the
+     * games from offsets[i] to offsets[i + 1].
+     */
+    private static class Runs extends RecursiveTask<ArchiveStats> {
+
+        @Serial
+        private static final long serialVersionUID = 0L;
+        private final transient GameArchive archive;
+        private final int segment;
+        private final int[] offsets;
+        private final int from;
+        private final int to;
+
+        Runs(GameArchive archive, int segment, int[] offsets, int from, int to) {
+            this.archive = archive;
+            this.segment = segment;
+            this.offsets = offsets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ArchiveStats compute() {
+            if (to - from <= 1) {
+                ArchiveStats stats = new ArchiveStats(archive.getNumStrategies());
+                try {
+                    GameArchive.Cursor cursor = archive.cursor(segment, offsets[from], offsets[to]);
+                    while (cursor.next()) {
+                        stats.record(cursor);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return stats;
+            }
+            int mid = (from + to) >>> 1;
+            Runs left = new Runs(archive, segment, offsets, from, mid);
+            left.fork();
+            ArchiveStats right = new Runs(archive, segment, offsets, mid, to).compute();
+            return right.merge(left.join());
+        }
+    }
+}
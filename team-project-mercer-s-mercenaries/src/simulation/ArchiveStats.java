@@ -0,0 +1,251 @@
+package simulation;
+
+import model.Board;
+
+/**
+ * Accumulates statistics over archived games, per strategy. Like {@link SimulationStats}, everything is kept in
+ * primitive arrays of a fixed size, so each worker keeps its own copy while it scans and the copies are merged at the
+ * end. The memory used doesn't depend on the number of games.
+ * <p>
+ * Strategies are identified by their index in the archive's name table.
+ */
+public final class ArchiveStats {
+
+    private static final int CELLS = Board.SIZE * Board.SIZE;
+    private static final int MAX_SHOTS = CELLS;
+
+    private final int strategies;
+    private final long[] games; // Games played, per strategy
+    private final long[] wins;
+    private final long[][] shotsToWin; // Histogram of the shots the strategy took in the games it won
+    private final long[][] shots; // Shots at each cell, per strategy
+    private final long[][] hits; // Hits at each cell, per strategy
+    private final long[][] longestStreak; // Histogram of the most hits in a row in each game, per strategy
+    private final long[] shipCells = new long[CELLS]; // Fleets with a ship on each cell
+    private long fleets;
+
+    /**
+     * Creates empty statistics.
+     * @param strategies The number of strategies in the archive's name table.
+     */
+    public ArchiveStats(int strategies) {
+        this.strategies = strategies;
+        games = new long[strategies];
+        wins = new long[strategies];
+        shotsToWin = new long[strategies][MAX_SHOTS + 1];
+        shots = new long[strategies][CELLS];
+        hits = new long[strategies][CELLS];
+        longestStreak = new long[strategies][MAX_SHOTS + 1];
+    }
+
+    /**
+     * Adds the game under a cursor.
+     * @param cursor A cursor positioned on a game.
+     */
+    public void record(GameArchive.Cursor cursor) {
+        int winner = cursor.getWinner();
+        for (int player = 0; player < 2; player++) {
+            int strategy = cursor.getStrategy(player);
+            long fleet0 = cursor.getFleetWord(player, 0);
+            long fleet1 = cursor.getFleetWord(player, 1);
+            fleets++;
+            for (long bits = fleet0; bits != 0; bits &= bits - 1) {
+                shipCells[Long.numberOfTrailingZeros(bits)]++;
+            }
+            for (long bits = fleet1; bits != 0; bits &= bits - 1) {
+                shipCells[64 + Long.numberOfTrailingZeros(bits)]++;
+            }
+
+            int numShots = cursor.getNumShots(player);
+            long[] shotCells = shots[strategy];
+            long[] hitCells = hits[strategy];
+            int streak = 0;
+            int longest = 0;
+            for (int move = 0; move < numShots; move++) {
+                int cell = cursor.getShot(player, move);
+                shotCells[cell]++;
+                if (((cell < 64 ? fleet0 : fleet1) & 1L << cell) != 0) {
+                    hitCells[cell]++;
+                    longest = Math.max(longest, ++streak);
+                } else {
+                    streak = 0;
+                }
+            }
+            games[strategy]++;
+            longestStreak[strategy][longest]++;
+            if (winner == player) {
+                wins[strategy]++;
+                shotsToWin[strategy][numShots]++;
+            }
+        }
+    }
+
+    /**
+     * Adds the statistics of another set of games to this one.
+     * @param other The statistics to add. It must be for the same archive.
+     * @return This object.
+     */
+    public ArchiveStats merge(ArchiveStats other) {
+        for (int s = 0; s < strategies; s++) {
+            games[s] += other.games[s];
+            wins[s] += other.wins[s];
+            add(shotsToWin[s], other.shotsToWin[s]);
+            add(shots[s], other.shots[s]);
+            add(hits[s], other.hits[s]);
+            add(longestStreak[s], other.longestStreak[s]);
+        }
+        add(shipCells, other.shipCells);
+        fleets += other.fleets;
+        return this;
+    }
+
+    private static void add(long[] into, long[] from) {
+        for (int i = 0; i < into.length; i++) {
+            into[i] += from[i];
+        }
+    }
+
+    /**
+     * Returns the number of strategies the statistics are kept for.
+     * @return The number of strategies.
+     */
+    public int getStrategies() {
+        return strategies;
+    }
+
+    /**
+     * Returns the number of games a strategy played.
+     * @param strategy The strategy index.
+     * @return The number of games.
+     */
+    public long getGames(int strategy) {
+        return games[strategy];
+    }
+
+    /**
+     * Returns the number of games a strategy won.
+     * @param strategy The strategy index.
+     * @return The number of wins.
+     */
+    public long getWins(int strategy) {
+        return wins[strategy];
+    }
+
+    /**
+     * Returns how many of a strategy's wins took a given number of shots.
+     * @param strategy The strategy index.
+     * @param numShots The number of shots.
+     * @return The number of wins.
+     */
+    public long getShotsToWin(int strategy, int numShots) {
+        return shotsToWin[strategy][numShots];
+    }
+
+    /**
+     * Returns the mean number of shots a strategy needed in the games it won.
+     * @param strategy The strategy index.
+     * @return The mean shots to win, or NaN if it never won.
+     */
+    public double meanShotsToWin(int strategy) {
+        long total = 0;
+        for (int n = 0; n <= MAX_SHOTS; n++) {
+            total += n * shotsToWin[strategy][n];
+        }
+        return wins[strategy] == 0 ? Double.NaN : (double) total / wins[strategy];
+    }
+
+    /**
+     * Returns a percentile of the number of shots a strategy needed in the games it won.
+     * @param strategy The strategy index.
+     * @param percentile The percentile to find, between 0 and 100.
+     * @return The smallest number of shots at or above that percentile, or -1 if it never won.
+     */
+    public int percentileShotsToWin(int strategy, double percentile) {
+        return percentile(shotsToWin[strategy], wins[strategy], percentile);
+    }
+
+    /**
+     * Returns how many shots a strategy made at a cell.
+     * @param strategy The strategy index.
+     * @param cell The cell, row * Board.SIZE + col.
+     * @return The number of shots.
+     */
+    public long getShots(int strategy, int cell) {
+        return shots[strategy][cell];
+    }
+
+    /**
+     * Returns how many of a strategy's shots at a cell hit a ship.
+     * @param strategy The strategy index.
+     * @param cell The cell, row * Board.SIZE + col.
+     * @return The number of hits.
+     */
+    public long getHits(int strategy, int cell) {
+        return hits[strategy][cell];
+    }
+
+    /**
+     * Returns how many games a strategy's longest run of hits was a given length.
+     * @param strategy The strategy index.
+     * @param streak The number of hits in a row.
+     * @return The number of games.
+     */
+    public long getLongestStreak(int strategy, int streak) {
+        return longestStreak[strategy][streak];
+    }
+
+    /**
+     * Returns the mean of a strategy's longest run of hits per game, like Board.getMaxHitsInARow().
+     * @param strategy The strategy index.
+     * @return The mean, or NaN if it played no games.
+     */
+    public double meanLongestStreak(int strategy) {
+        long total = 0;
+        for (int n = 0; n <= MAX_SHOTS; n++) {
+            total += n * longestStreak[strategy][n];
+        }
+        return games[strategy] == 0 ? Double.NaN : (double) total / games[strategy];
+    }
+
+    /**
+     * Returns a percentile of a strategy's longest run of hits per game.
+     * @param strategy The strategy index.
+     * @param percentile The percentile to find, between 0 and 100.
+     * @return The smallest streak at or above that percentile, or -1 if it played no games.
+     */
+    public int percentileLongestStreak(int strategy, double percentile) {
+        return percentile(longestStreak[strategy], games[strategy], percentile);
+    }
+
+    /**
+     * Returns the number of fleets seen, two per game.
+     * @return The number of fleets.
+     */
+    public long getFleets() {
+        return fleets;
+    }
+
+    /**
+     * Returns how many fleets had a ship on a cell.
+     * @param cell The cell, row * Board.SIZE + col.
+     * @return The number of fleets.
+     */
+    public long getShipCells(int cell) {
+        return shipCells[cell];
+    }
+
+    private static int percentile(long[] histogram, long total, double percentile) {
+        if (total == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int n = 0; n < histogram.length; n++) {
+            seen += histogram[n];
+            if (seen >= rank) {
+                return n;
+            }
+        }
+        return histogram.length - 1;
+    }
+}
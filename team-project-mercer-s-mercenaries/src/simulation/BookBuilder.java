@@ -0,0 +1,187 @@
+package simulation;
+
+import model.Board;
+import model.FleetGenerator;
+import model.OpeningBook;
+import model.Placements;
+import model.Zobrist;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Command line entry point that builds an {@link OpeningBook}. It generates a large sample of uniformly random fleets,
+ * and for each early position picks the open cell covered by the most of the fleets that agree with it, which is the
+ * shot most likely to hit. The fleets are then split by what that shot would show (a miss, a hit, or which ship it
+ * sank), and each part becomes the sample for the position after that shot. Every position the book's own moves can
+ * lead to is covered, down to the requested depth or until too few fleets are left to trust the counts.
+ * <p>
+ * Since the sample is split instead of drawn again, building a book costs about one pass over the sample per level of
+ * depth, plus a sort.
+ * <p>
+ * Usage: {@code java simulation.BookBuilder <file> [depth] [fleets] [seed]}
+ */
+public class BookBuilder {
+
+    private static final int CELLS = Board.SIZE * Board.SIZE;
+
+    private final int depth;
+    private final int minFleets;
+    private final Placements placements;
+    private final int fleetSize;
+    private final int[] fleets; // Placement ids, fleetSize per fleet
+    private final int[] order; // Fleet indexes, grouped by position as the book is built
+    private final long[] scratch;
+    private final int[][] counts; // Coverage counts, one row per level
+    private long[] keys = new long[1024];
+    private int[] moves = new int[1024];
+    private int positions;
+
+    /**
+     * Creates a builder and generates its sample of fleets.
+     * @param depth The number of shots to build the book to.
+     * @param numFleets The number of fleets to sample.
+     * @param minFleets The fewest fleets a position needs to be added to the book.
+     * @param seed The seed for the fleets. The same arguments always build the same book.
+     */
+    public BookBuilder(int depth, int numFleets, int minFleets, long seed) {
+        this.depth = depth;
+        this.minFleets = Math.max(1, minFleets);
+        placements = Placements.STANDARD;
+        FleetGenerator generator = new FleetGenerator(seed);
+        fleetSize = generator.fleetSize();
+        fleets = new int[numFleets * fleetSize];
+        generator.fill(fleets, numFleets);
+        order = new int[numFleets];
+        for (int i = 0; i < numFleets; i++) {
+            order[i] = i;
+        }
+        scratch = new long[numFleets];
+        counts = new int[depth][CELLS];
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java simulation.BookBuilder <file> [depth] [fleets] [seed]");
+            return;
+        }
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int numFleets = args.length > 2 ? Integer.parseInt(args[2]) : 2_000_000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        long start = System.nanoTime();
+        BookBuilder builder = new BookBuilder(depth, numFleets, numFleets / 1000, seed);
+        int positions = builder.build(Path.of(args[0]));
+        System.out.printf("%d positions to depth %d from %d fleets in %.2f s%n", positions, depth, numFleets,
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Works out every position of the book and writes it.
+     * @param file The book file to write.
+     * @return The number of positions in the book.
+     * @throws IOException If the file can't be written.
+     */
+    public int build(Path file) throws IOException {
+        positions = 0;
+        if (depth > 0 && order.length >= minFleets) {
+            expand(0, order.length, new long[placements.words()], 0L, 0);
+        }
+        OpeningBook.write(file, depth, keys, moves, positions);
+        return positions;
+    }
+
+    /**
+     * Picks the move for one position and expands the positions it leads to.
+     * @param from The first index in order of the fleets that agree with this position.
+     * @param to The index after the last one.
+     * @param shots The cells shot at so far.
+     * @param hash The shot hash of the position, the same as Board.getShotHash().
+     * @param level The number of shots made.
+     */
+    private void expand(int from, int to, long[] shots, long hash, int level) {
+        int[] coverage = counts[level];
+        Arrays.fill(coverage, 0);
+        for (int i = from; i < to; i++) {
+            int base = order[i] * fleetSize;
+            for (int ship = 0; ship < fleetSize; ship++) {
+                int p = fleets[base + ship];
+                for (int w = 0; w < shots.length; w++) {
+                    for (long bits = placements.mask(p, w) & ~shots[w]; bits != 0; bits &= bits - 1) {
+                        coverage[(w << 6) + Long.numberOfTrailingZeros(bits)]++;
+                    }
+                }
+            }
+        }
+        int best = -1;
+        for (int cell = 0; cell < CELLS; cell++) {
+            if ((shots[cell >>> 6] & 1L << cell) == 0 && (best < 0 || coverage[cell] > coverage[best])) {
+                best = cell;
+            }
+        }
+        add(hash, best);
+        if (level + 1 >= depth) {
+            return;
+        }
+
+        long[] next = shots.clone();
+        next[best >>> 6] |= 1L << best;
+        for (int i = from; i < to; i++) { // Sort the fleets by outcome: 0 a miss, 1 a hit, 2 + p sinking placement p
+            scratch[i] = (long) outcome(order[i], best, next) << 32 | order[i];
+        }
+        Arrays.sort(scratch, from, to);
+        for (int i = from; i < to; i++) {
+            order[i] = (int) scratch[i];
+        }
+        for (int start = from; start < to; ) {
+            int kind = (int) (scratch[start] >>> 32);
+            int end = start + 1;
+            while (end < to && (int) (scratch[end] >>> 32) == kind) {
+                end++;
+            }
+            if (end - start >= minFleets) {
+                long child = hash ^ (kind == 0 ? Zobrist.miss(best) : Zobrist.hit(best));
+                if (kind >= 2) {
+                    int p = kind - 2;
+                    child ^= Zobrist.sunkShip(placements.nose(p), placements.length(p), placements.isHorizontal(p));
+                }
+                expand(start, end, next, child, level + 1);
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Finds what a shot shows on one fleet.
+     * @param fleet The index of the fleet.
+     * @param cell The cell shot at.
+     * @param shots The cells shot at, including this one.
+     * @return 0 for a miss, 1 for a hit, or 2 + the placement of the ship it sank.
+     */
+    private int outcome(int fleet, int cell, long[] shots) {
+        int base = fleet * fleetSize;
+        for (int ship = 0; ship < fleetSize; ship++) {
+            int p = fleets[base + ship];
+            if ((placements.mask(p, cell >>> 6) & 1L << cell) != 0) {
+                for (int w = 0; w < shots.length; w++) {
+                    if ((placements.mask(p, w) & ~shots[w]) != 0) {
+                        return 1;
+                    }
+                }
+                return 2 + p;
+            }
+        }
+        return 0;
+    }
+
+    private void add(long hash, int move) {
+        if (positions == keys.length) {
+            keys = Arrays.copyOf(keys, positions * 2);
+            moves = Arrays.copyOf(moves, positions * 2);
+        }
+        keys[positions] = hash;
+        moves[positions++] = move;
+    }
+}
@@ -0,0 +1,478 @@
+package simulation;
+
+import model.Board;
+import model.GameRecord;
+import model.Replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only file of finished games in a compact binary form, memory-mapped so that appending and scanning are
+ * plain memory reads and writes. A game takes 37 bytes plus one byte per shot, so tens of millions of games fit in a
+ * few gigabytes.
+ * <p>
+ * The file starts with a header page holding the counts and the table of strategy names. After it come segments of a
+ * fixed size, each mapped on its own; a record never crosses into the next segment. Each record is:
+ * <ul>
+ *     <li>a tag byte: bit 7 always set, bit 0 the player who moved first, bit 1 the winner, bit 2 set if neither
+ *     fleet was destroyed</li>
+ *     <li>the index of each player's strategy in the name table, one byte each</li>
+ *     <li>the fleet bitmask of each player's target, two longs each</li>
+ *     <li>the number of shots each player made, one byte each</li>
+ *     <li>player 0's shots, then player 1's, one byte per cell</li>
+ * </ul>
+ * Whether a shot hit is the bit for its cell in the fleet bitmask. A {@link Cursor} reads the records straight out of
+ * the mapped segments, one at a time, without allocating anything per game. To split a segment between threads,
+ * {@link #index(int, int)} finds where every so many records start, and a cursor can cover the range between two.
+ */
+public final class GameArchive implements Closeable {
+
+    /** The default segment size, 64 MiB. */
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 26;
+
+    private static final int MAGIC = 0x42534131; // "BSA1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4096;
+    private static final int SEGMENT_SIZE_AT = 8;
+    private static final int NUM_NAMES_AT = 12;
+    private static final int GAMES_AT = 16;
+    private static final int END_AT = 24;
+    private static final int NAMES_AT = 32;
+    private static final int MAX_NAMES = 255;
+
+    static final int RECORD_HEADER = 37;
+    static final int STRATEGIES = 1;
+    static final int FLEETS = 3;
+    static final int SHOT_COUNTS = 35;
+    private static final int TAG = 0x80;
+    private static final int NO_WINNER = 4;
+    private static final int MAX_RECORD = RECORD_HEADER + 2 * Board.SIZE * Board.SIZE;
+
+    private final FileChannel channel;
+    private final boolean writable;
+    private final MappedByteBuffer header;
+    private final int segmentSize;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIndex = new HashMap<>();
+    private int namesEnd; // Where the next name goes in the header
+
+    private GameArchive(FileChannel channel, boolean writable, int segmentSize) throws IOException {
+        this.channel = channel;
+        this.writable = writable;
+        boolean empty = channel.size() == 0;
+        if (empty && !writable) {
+            throw new IOException("Empty game archive");
+        }
+        header = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (empty) {
+            if (segmentSize < MAX_RECORD) {
+                throw new IllegalArgumentException("Segments must hold at least one game of " + MAX_RECORD + " bytes");
+            }
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(SEGMENT_SIZE_AT, segmentSize);
+            header.putLong(END_AT, HEADER_SIZE);
+        } else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a game archive");
+        }
+        this.segmentSize = header.getInt(SEGMENT_SIZE_AT);
+        namesEnd = NAMES_AT;
+        for (int i = 0; i < header.getInt(NUM_NAMES_AT); i++) {
+            byte[] bytes = new byte[header.get(namesEnd) & 0xFF];
+            header.get(namesEnd + 1, bytes);
+            namesEnd += 1 + bytes.length;
+            String name = new String(bytes, StandardCharsets.UTF_8);
+            nameIndex.put(name, names.size());
+            names.add(name);
+        }
+    }
+
+    /**
+     * Opens an archive to add games to, creating it with the default segment size if it doesn't exist.
+     * @param file The archive file.
+     * @return The open archive.
+     * @throws IOException If the file can't be opened, or isn't an archive.
+     */
+    public static GameArchive open(Path file) throws IOException {
+        return open(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens an archive to add games to, creating it if it doesn't exist.
+     * @param file The archive file.
+     * @param segmentSize The size of each mapped segment if the archive is created. An existing archive keeps its own.
+     * @return The open archive.
+     * @throws IOException If the file can't be opened, or isn't an archive.
+     */
+    public static GameArchive open(Path file, int segmentSize) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            return new GameArchive(channel, true, segmentSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing archive for scanning only.
+     * @param file The archive file.
+     * @return The open archive.
+     * @throws IOException If the file can't be opened, or isn't an archive.
+     */
+    public static GameArchive openForReading(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new GameArchive(channel, false, 0);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of games in the archive.
+     * @return The number of games.
+     */
+    public synchronized long getGames() {
+        return header.getLong(GAMES_AT);
+    }
+
+    /**
+     * Returns the number of segments holding games.
+     * @return The number of segments.
+     */
+    public synchronized int getNumSegments() {
+        long used = header.getLong(END_AT) - HEADER_SIZE;
+        return (int) ((used + segmentSize - 1) / segmentSize);
+    }
+
+    /**
+     * Returns a strategy name from the archive's name table.
+     * @param index The index stored in a record.
+     * @return The strategy name.
+     */
+    public synchronized String getStrategyName(int index) {
+        return names.get(index);
+    }
+
+    /**
+     * Returns the number of strategy names in the table. Records store indexes below this.
+     * @return The number of names.
+     */
+    public synchronized int getNumStrategies() {
+        return names.size();
+    }
+
+    /**
+     * Adds a game to the end of the archive. The game doesn't need to be finished.
+     * @param targets The two boards. Player i shoots at targets[i].
+     * @param strategies The name of each player's strategy.
+     * @param first The player that moved first.
+     * @throws IllegalArgumentException If a board isn't the standard size. Records only hold standard games.
+     * @throws IllegalStateException If the archive was opened for reading, or the name table is full.
+     * @throws IOException If a new segment can't be mapped.
+     */
+    public synchronized void append(Board[] targets, String[] strategies, int first) throws IOException {
+        if (!writable) {
+            throw new IllegalStateException("The archive was opened for reading");
+        }
+        for (Board board : targets) { // Shots are one byte and the fleet two words, which only fit the standard board
+            if (board.getWidth() != Board.SIZE || board.getHeight() != Board.SIZE) {
+                throw new IllegalArgumentException("Only games on the standard board can be archived");
+            }
+        }
+        int size = RECORD_HEADER + targets[0].getNumMoves() + targets[1].getNumMoves();
+        long offset = header.getLong(END_AT) - HEADER_SIZE;
+        int segment = (int) (offset / segmentSize);
+        int position = (int) (offset % segmentSize);
+        if (position + size > segmentSize) { // Leave the rest of this segment empty
+            segment++;
+            position = 0;
+        }
+        MappedByteBuffer buffer = segment(segment);
+
+        int tag = TAG | first;
+        if (targets[1].gameOver()) {
+            tag |= 2;
+        } else if (!targets[0].gameOver()) {
+            tag |= NO_WINNER;
+        }
+        int shot = position + RECORD_HEADER;
+        for (int player = 0; player < 2; player++) {
+            Board board = targets[player];
+            buffer.put(position + STRATEGIES + player, (byte) strategyIndex(strategies[player]));
+            buffer.putLong(position + FLEETS + 16 * player, board.getShipWord(0));
+            buffer.putLong(position + FLEETS + 16 * player + 8, board.getShipWord(1));
+            buffer.put(position + SHOT_COUNTS + player, (byte) board.getNumMoves());
+            for (int move = 0; move < board.getNumMoves(); move++) {
+                buffer.put(shot++, (byte) board.getShot(move));
+            }
+        }
+        buffer.put(position, (byte) tag); // Last, so a record is never seen half written
+        header.putLong(GAMES_AT, header.getLong(GAMES_AT) + 1);
+        header.putLong(END_AT, HEADER_SIZE + (long) segment * segmentSize + position + size);
+    }
+
+    /**
+     * Adds a recorded game to the end of the archive.
+     * @param record The game.
+     * @throws IllegalStateException If the archive was opened for reading, or the name table is full.
+     * @throws IOException If a new segment can't be mapped.
+     */
+    public void append(GameRecord record) throws IOException {
+        Replay replay = new Replay(record);
+        replay.runToEnd();
+        append(new Board[]{replay.getBoard(0), replay.getBoard(1)},
+                new String[]{record.getStrategy(0), record.getStrategy(1)}, record.getFirst());
+    }
+
+    private int strategyIndex(String name) {
+        Integer index = nameIndex.get(name);
+        if (index != null) {
+            return index;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (names.size() == MAX_NAMES || bytes.length > 255 || namesEnd + 1 + bytes.length > HEADER_SIZE) {
+            throw new IllegalStateException("No room for strategy " + name + " in the archive's name table");
+        }
+        header.put(namesEnd, (byte) bytes.length);
+        header.put(namesEnd + 1, bytes);
+        namesEnd += 1 + bytes.length;
+        header.putInt(NUM_NAMES_AT, names.size() + 1);
+        nameIndex.put(name, names.size());
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    /**
+     * Returns a mapped segment, mapping it the first time it is used.
+     */
+    synchronized MappedByteBuffer segment(int segment) throws IOException {
+        while (segments.size() <= segment) {
+            long start = HEADER_SIZE + (long) segments.size() * segmentSize;
+            segments.add(writable ? channel.map(FileChannel.MapMode.READ_WRITE, start, segmentSize)
+                    : channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, channel.size() - start)));
+        }
+        return segments.get(segment);
+    }
+
+    /**
+     * Creates a cursor over every game in the archive.
+     * @return A cursor positioned before the first game.
+     * @throws IOException If a segment can't be mapped.
+     */
+    public Cursor cursor() throws IOException {
+        return cursor(0, getNumSegments());
+    }
+
+    /**
+     * Creates a cursor over the games in a range of segments. Cursors over different segments can be used from
+     * different threads at the same time.
+     * @param fromSegment The first segment.
+     * @param toSegment One past the last segment.
+     * @return A cursor positioned before the first game in the range.
+     * @throws IOException If a segment can't be mapped.
+     */
+    public Cursor cursor(int fromSegment, int toSegment) throws IOException {
+        long end;
+        synchronized (this) {
+            end = header.getLong(END_AT) - HEADER_SIZE; // Games appended later aren't seen
+        }
+        return new Cursor(fromSegment, Math.min(toSegment, getNumSegments()), end);
+    }
+
+    /**
+     * Creates a cursor over the games in part of a segment, such as the games between two offsets found by
+     * {@link #index(int, int)}. Cursors over different parts can be used from different threads at the same time.
+     * @param segment The segment.
+     * @param from The offset in the segment where a game starts.
+     * @param to The offset in the segment to stop at.
+     * @return A cursor positioned before the first game in the range.
+     * @throws IOException If the segment can't be mapped.
+     */
+    public Cursor cursor(int segment, int from, int to) throws IOException {
+        long end;
+        synchronized (this) {
+            end = header.getLong(END_AT) - HEADER_SIZE;
+        }
+        Cursor cursor = new Cursor(segment, Math.min(segment + 1, getNumSegments()),
+                Math.min(end, (long) segment * segmentSize + to));
+        cursor.next = from;
+        return cursor;
+    }
+
+    /**
+     * Finds where every stride-th game in a segment starts, so the segment can be split between threads. Only the
+     * length of each record is read, so this is much quicker than scanning the games.
+     * @param segment The segment.
+     * @param stride The number of games between offsets.
+     * @return The offsets in the segment of games 0, stride, 2 * stride and so on, then the end of its last game.
+     * @throws IOException If the segment can't be mapped.
+     */
+    public int[] index(int segment, int stride) throws IOException {
+        long end;
+        synchronized (this) {
+            end = header.getLong(END_AT) - HEADER_SIZE;
+        }
+        if (segment >= getNumSegments()) {
+            return new int[]{0};
+        }
+        MappedByteBuffer buffer = segment(segment);
+        long base = (long) segment * segmentSize;
+        int[] offsets = new int[16];
+        int numOffsets = 0;
+        int next = 0;
+        for (int game = 0; base + next < end && next + RECORD_HEADER <= buffer.limit() && buffer.get(next) != 0;
+             game++) {
+            if (game % stride == 0) {
+                if (numOffsets == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, numOffsets * 2);
+                }
+                offsets[numOffsets++] = next;
+            }
+            next += RECORD_HEADER + (buffer.get(next + SHOT_COUNTS) & 0xFF)
+                    + (buffer.get(next + SHOT_COUNTS + 1) & 0xFF);
+        }
+        offsets = Arrays.copyOf(offsets, numOffsets + 1);
+        offsets[numOffsets] = next;
+        return offsets;
+    }
+
+    /**
+     * Flushes the mapped segments to the file and closes it.
+     * @throws IOException If the file can't be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (writable) {
+            header.force();
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+        channel.close();
+    }
+
+    /**
+     * Reads games one at a time, straight from the mapped file. The accessors describe the current game.
+     */
+    public final class Cursor {
+
+        private final int toSegment;
+        private final long end;
+        private int segmentIndex;
+        private MappedByteBuffer segment;
+        private int next; // Where the next record starts in the segment
+        private int record = -1; // Where the current record starts
+        private int shots0;
+
+        private Cursor(int fromSegment, int toSegment, long end) throws IOException {
+            this.toSegment = toSegment;
+            this.end = end;
+            segmentIndex = fromSegment;
+            segment = fromSegment < toSegment ? segment(fromSegment) : null;
+        }
+
+        /**
+         * Moves to the next game.
+         * @return False if there are no more games.
+         * @throws IOException If the next segment can't be mapped.
+         */
+        public boolean next() throws IOException {
+            while (segment != null) {
+                long offset = (long) segmentIndex * segmentSize + next;
+                if (offset < end && next + RECORD_HEADER <= segment.limit() && segment.get(next) != 0) {
+                    record = next;
+                    shots0 = segment.get(record + SHOT_COUNTS) & 0xFF;
+                    next = record + RECORD_HEADER + shots0 + (segment.get(record + SHOT_COUNTS + 1) & 0xFF);
+                    return true;
+                }
+                segmentIndex++;
+                next = 0;
+                segment = segmentIndex < toSegment ? segment(segmentIndex) : null;
+            }
+            record = -1;
+            return false;
+        }
+
+        /**
+         * Returns the player that moved first.
+         * @return The player index.
+         */
+        public int getFirst() {
+            return segment.get(record) & 1;
+        }
+
+        /**
+         * Returns the player that destroyed the other fleet.
+         * @return The player index, or -1 if the game wasn't finished.
+         */
+        public int getWinner() {
+            int tag = segment.get(record);
+            return (tag & NO_WINNER) != 0 ? -1 : tag >> 1 & 1;
+        }
+
+        /**
+         * Returns the index of a player's strategy in the name table.
+         * @param player The player.
+         * @return The index, see {@link GameArchive#getStrategyName(int)}.
+         */
+        public int getStrategy(int player) {
+            return segment.get(record + STRATEGIES + player) & 0xFF;
+        }
+
+        /**
+         * Returns one word of the fleet bitmask of a player's target.
+         * @param player The player.
+         * @param word The index of the word, 0 or 1.
+         * @return The ship bits in that word, in the layout of {@link Board#getShipWord(int)}.
+         */
+        public long getFleetWord(int player, int word) {
+            return segment.getLong(record + FLEETS + 16 * player + 8 * word);
+        }
+
+        /**
+         * Returns the number of shots a player made.
+         * @param player The player.
+         * @return The number of shots.
+         */
+        public int getNumShots(int player) {
+            return player == 0 ? shots0 : segment.get(record + SHOT_COUNTS + 1) & 0xFF;
+        }
+
+        /**
+         * Returns one of a player's shots.
+         * @param player The player.
+         * @param move The index of the shot, from 0.
+         * @return The cell, row * Board.SIZE + col.
+         */
+        public int getShot(int player, int move) {
+            return segment.get(record + RECORD_HEADER + (player == 0 ? 0 : shots0) + move) & 0xFF;
+        }
+
+        /**
+         * Checks if one of a player's shots hit a ship.
+         * @param player The player.
+         * @param move The index of the shot, from 0.
+         * @return True if it hit.
+         */
+        public boolean isHit(int player, int move) {
+            int cell = getShot(player, move);
+            return (getFleetWord(player, cell >>> 6) & 1L << cell) != 0;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package simulation;
+
+import model.Board;
+import model.BoardStrategy;
+import model.FleetGenerator;
+import model.GameRecord;
+import model.Point;
+import model.Rules;
+import model.Strategies;
+
+import java.util.SplittableRandom;
+
+/**
+ * Plays a single headless game between two strategies. Nothing here touches the GUI, and there are no delays between
+ * moves, so games run as fast as the strategies can pick their shots.
+ */
+public final class Match {
+
+    private Match() {
+    }
+
+    /**
+     * Creates a board with a full fleet placed at random, the same way the GUI places the enemy fleet.
+     * @param random The source of randomness for the placement.
+     * @return The new board.
+     */
+    public static Board randomBoard(SplittableRandom random) {
+        Board board = new Board(null);
+        new FleetGenerator(random).placeFleet(board);
+        return board;
+    }
+
+    /**
+     * Creates a board for some rules with a full fleet placed at random.
+     * @param rules The rules of the board.
+     * @param random The source of randomness for the placement.
+     * @return The new board.
+     */
+    public static Board randomBoard(Rules rules, SplittableRandom random) {
+        Board board = new Board(rules, null);
+        new FleetGenerator(rules, random).placeFleet(board);
+        return board;
+    }
+
+    /**
+     * Plays a game until one fleet is destroyed. Strategy 0 shoots at target 0 and strategy 1 shoots at target 1.
+     * @param strategies The two strategies.
+     * @param targets The boards each strategy is shooting at.
+     * @param first The index of the strategy that moves first.
+     * @return The index of the winning strategy.
+     * @throws IllegalStateException If a strategy picks a space that has already been used.
+     */
+    public static int play(BoardStrategy[] strategies, Board[] targets, int first) {
+        int turn = first;
+        while (true) {
+            Board target = targets[turn];
+            Point move = strategies[turn].desiredMove(target);
+            if (move == null || !target.tryShot(move.row, move.col)) {
+                throw new IllegalStateException(strategies[turn].getClass().getSimpleName() + " made an invalid move " + move);
+            }
+            if (target.gameOver()) {
+                return turn;
+            }
+            turn = 1 - turn;
+        }
+    }
+
+    /**
+     * Plays a game between two registered strategies and records it. The fleets and the strategies' seeds all come
+     * from one random number generator, so the same seed always records the same game.
+     * @param names The registered names of the two strategies.
+     * @param random The source of the fleets and seeds.
+     * @param first The index of the strategy that moves first.
+     * @return The record of the finished game.
+     */
+    public static GameRecord playRecorded(String[] names, SplittableRandom random, int first) {
+        long[] seeds = {random.nextLong(), random.nextLong()};
+        BoardStrategy[] strategies = {Strategies.create(names[0], seeds[0]), Strategies.create(names[1], seeds[1])};
+        Board[] targets = {randomBoard(random), randomBoard(random)};
+        play(strategies, targets, first);
+        return GameRecord.capture(targets, names, seeds, first);
+    }
+}
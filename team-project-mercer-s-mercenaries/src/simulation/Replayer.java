@@ -0,0 +1,52 @@
+package simulation;
+
+import model.GameRecord;
+import model.Replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Command line entry point that re-executes recorded games headlessly and checks they play out exactly as recorded.
+ * Each file may hold any number of records back to back, like the ones the GUI saves in its recordings folder.
+ * <p>
+ * Usage: {@code java simulation.Replayer <file>...}
+ */
+public class Replayer {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java simulation.Replayer <file>...");
+            return;
+        }
+        long games = 0;
+        long mismatches = 0;
+        long start = System.nanoTime();
+        for (String name : args) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Path.of(name))))) {
+                for (int index = 0; ; index++) {
+                    GameRecord record;
+                    try {
+                        record = GameRecord.read(in);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    int shots = Replay.verify(record);
+                    games++;
+                    if (shots >= 0) {
+                        mismatches++;
+                        System.out.printf("%s game %d: %s vs %s differs after %d shots%n", name, index,
+                                record.getStrategy(0), record.getStrategy(1), shots);
+                    }
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games replayed in %.2f s (%.0f games/sec), %d differ from their recording%n", games,
+                seconds, games / seconds, mismatches);
+    }
+}
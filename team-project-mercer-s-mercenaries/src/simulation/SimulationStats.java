@@ -0,0 +1,120 @@
+package simulation;
+
+import model.Board;
+
+/**
+ * Accumulates the results of simulated games between two strategies. Everything is kept in primitive arrays so each
+ * worker can keep its own copy and the copies can be merged at the end.
+ */
+public final class SimulationStats {
+
+    private final int maxShots;
+    private final long[] wins = new long[2];
+    private final long[][] shotsToWin; // Histogram of the winner's shots, per strategy
+
+    /**
+     * Creates empty results for games on the standard board.
+     */
+    public SimulationStats() {
+        this(Board.SIZE * Board.SIZE);
+    }
+
+    /**
+     * Creates empty results.
+     * @param maxShots The most shots a game can take, which is the number of cells on the board.
+     */
+    public SimulationStats(int maxShots) {
+        this.maxShots = maxShots;
+        shotsToWin = new long[2][maxShots + 1];
+    }
+
+    /**
+     * Records a finished game.
+     * @param winner The index of the winning strategy.
+     * @param shots The number of shots the winner took.
+     */
+    public void record(int winner, int shots) {
+        wins[winner]++;
+        shotsToWin[winner][shots]++;
+    }
+
+    /**
+     * Adds the results of another set of games to this one.
+     * @param other The results to add, from games on boards of the same size.
+     * @return This object.
+     */
+    public SimulationStats merge(SimulationStats other) {
+        for (int i = 0; i < 2; i++) {
+            wins[i] += other.wins[i];
+            for (int shots = 0; shots <= maxShots; shots++) {
+                shotsToWin[i][shots] += other.shotsToWin[i][shots];
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of games recorded.
+     * @return The number of games.
+     */
+    public long getGames() {
+        return wins[0] + wins[1];
+    }
+
+    /**
+     * Returns the number of games a strategy won.
+     * @param player The index of the strategy.
+     * @return The number of wins.
+     */
+    public long getWins(int player) {
+        return wins[player];
+    }
+
+    /**
+     * Returns the mean number of shots a strategy needed in the games it won.
+     * @param player The index of the strategy, or -1 for both strategies together.
+     * @return The mean shots to win, or NaN if there were no wins.
+     */
+    public double meanShotsToWin(int player) {
+        long games = 0;
+        long total = 0;
+        for (int shots = 0; shots <= maxShots; shots++) {
+            long count = count(player, shots);
+            games += count;
+            total += count * shots;
+        }
+        return games == 0 ? Double.NaN : (double) total / games;
+    }
+
+    /**
+     * Returns a percentile of the number of shots a strategy needed in the games it won.
+     * @param player The index of the strategy, or -1 for both strategies together.
+     * @param percentile The percentile to find, between 0 and 100.
+     * @return The smallest number of shots at or above that percentile, or -1 if there were no wins.
+     */
+    public int percentileShotsToWin(int player, double percentile) {
+        long games = player < 0 ? getGames() : wins[player];
+        if (games == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(games * percentile / 100.0));
+        long seen = 0;
+        for (int shots = 0; shots <= maxShots; shots++) {
+            seen += count(player, shots);
+            if (seen >= rank) {
+                return shots;
+            }
+        }
+        return maxShots;
+    }
+
+    /**
+     * Returns how many wins took a given number of shots.
+     * @param player The index of the strategy, or -1 for both strategies together.
+     * @param shots The number of shots.
+     * @return The number of wins.
+     */
+    private long count(int player, int shots) {
+        return player < 0 ? shotsToWin[0][shots] + shotsToWin[1][shots] : shotsToWin[player][shots];
+    }
+}
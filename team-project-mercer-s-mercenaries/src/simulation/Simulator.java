@@ -0,0 +1,179 @@
+package simulation;
+
+import model.Board;
+import model.BoardStrategy;
+import model.Rules;
+import model.Strategies;
+import model.TranspositionCache;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Command line entry point that plays a batch of headless games between two strategies on every core, then reports
+ * the throughput, shots to win and win rates.
+ * <p>
+ * Usage: {@code java simulation.Simulator [--rules=WxH[:fleet]] <strategyA> <strategyB> [games] [seed] [archive]}
+ * <p>
+ * If an archive file is given, every game is appended to it, see {@link GameArchive}. Games are played on the standard
+ * board unless other rules are given, see {@link Rules#parse(String)}; only standard games can be archived.
+ */
+public class Simulator {
+
+    private static final int GAMES_PER_TASK = 1024;
+
+    private final String[] names;
+    private final long seed;
+    private Rules rules = Rules.STANDARD;
+    private GameArchive archive;
+
+    /**
+     * Creates a simulator for two registered strategies.
+     * @param nameA The name of the first strategy.
+     * @param nameB The name of the second strategy.
+     * @param seed The seed for the fleet layouts and strategies. The same seed always produces the same games.
+     */
+    public Simulator(String nameA, String nameB, long seed) {
+        Strategies.create(nameA); // Fail fast on unknown names
+        Strategies.create(nameB);
+        this.names = new String[]{nameA, nameB};
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Rules rules = Rules.STANDARD;
+        if (args.length > 0 && args[0].startsWith("--rules=")) {
+            rules = Rules.parse(args[0].substring("--rules=".length()));
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (args.length < 2) {
+            System.out.println("Usage: java simulation.Simulator [--rules=WxH[:fleet]] <strategyA> <strategyB> [games]"
+                    + " [seed] [archive]");
+            System.out.println("Strategies: " + Strategies.names());
+            return;
+        }
+        long games = args.length > 2 ? Long.parseLong(args[2]) : 100_000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        Simulator simulator = new Simulator(args[0], args[1], seed);
+        simulator.setRules(rules);
+
+        long start = System.nanoTime();
+        SimulationStats stats;
+        if (args.length > 4) {
+            try (GameArchive archive = GameArchive.open(Path.of(args[4]))) {
+                simulator.setArchive(archive);
+                stats = simulator.run(games);
+            }
+        } else {
+            stats = simulator.run(games);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d games in %.2f s (%.0f games/sec, seed %d)%n", stats.getGames(), seconds,
+                stats.getGames() / seconds, seed);
+        for (int player = 0; player < 2; player++) {
+            System.out.printf("%-8s wins %6.2f%%  shots to win: mean %.2f, p50 %d, p90 %d, p99 %d%n",
+                    args[player], 100.0 * stats.getWins(player) / stats.getGames(), stats.meanShotsToWin(player),
+                    stats.percentileShotsToWin(player, 50), stats.percentileShotsToWin(player, 90),
+                    stats.percentileShotsToWin(player, 99));
+        }
+        if (args[0].equals("montecarlo-cached") || args[1].equals("montecarlo-cached")) {
+            TranspositionCache cache = Strategies.sharedCache();
+            System.out.printf("cache: %d lookups, %.2f%% hits, %d stores%n", cache.getProbes(),
+                    100.0 * cache.hitRate(), cache.getStores());
+        }
+    }
+
+    /**
+     * Sets the rules of the boards the games are played on.
+     * @param rules The rules.
+     * @throws IllegalStateException If games are being archived and the rules aren't standard.
+     */
+    public void setRules(Rules rules) {
+        if (archive != null && !rules.equals(Rules.STANDARD)) {
+            throw new IllegalStateException("Only standard games can be archived");
+        }
+        this.rules = rules;
+    }
+
+    /**
+     * Sets the archive that every game played from now on is appended to.
+     * @param archive The archive, or null to stop archiving.
+     * @throws IllegalStateException If the games aren't played by the standard rules.
+     */
+    public void setArchive(GameArchive archive) {
+        if (archive != null && !rules.equals(Rules.STANDARD)) {
+            throw new IllegalStateException("Only standard games can be archived");
+        }
+        this.archive = archive;
+    }
+
+    /**
+     * Plays a batch of games on the common fork/join pool. The strategies alternate taking the first shot.
+     * @param games The number of games to play.
+     * @return The combined results.
+     */
+    public SimulationStats run(long games) {
+        return ForkJoinPool.commonPool().invoke(new Batch(0, games));
+    }
+
+    /**
+     * Plays a single game.
+     * @param game The index of the game in the batch. Decides the fleets and who moves first.
+     * @param stats The results to add this game to.
+     */
+    private void playGame(long game, SimulationStats stats) {
+        SplittableRandom random = new SplittableRandom(seed ^ (game * 0x9E3779B97F4A7C15L));
+        BoardStrategy[] strategies = {Strategies.create(names[0], random.nextLong()),
+                Strategies.create(names[1], random.nextLong())};
+        Board[] targets = {Match.randomBoard(rules, random), Match.randomBoard(rules, random)};
+        int first = (int) (game & 1);
+        int winner = Match.play(strategies, targets, first);
+        stats.record(winner, targets[winner].getNumMoves());
+        if (archive != null) {
+            try {
+                archive.append(targets, names, first);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Splits a range of games in half until it is small enough to play on one thread.
+     */
+    private class Batch extends RecursiveTask<SimulationStats> {
+
+        @Serial
+        private static final long serialVersionUID = 0L;
+        private final long from;
+        private final long to;
+
+        Batch(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SimulationStats compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                SimulationStats stats = new SimulationStats(rules.getCells());
+                for (long game = from; game < to; game++) {
+                    playGame(game, stats);
+                }
+                return stats;
+            }
+            long mid = (from + to) >>> 1;
+            Batch left = new Batch(from, mid);
+            left.fork();
+            SimulationStats right = new Batch(mid, to).compute();
+            return right.merge(left.join());
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package simulation;
+
+import model.Board;
+import model.BoardStrategy;
+import model.Point;
+import model.Strategies;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Command line entry point and engine for round-robin tournaments between registered strategies. Every pair of
+ * strategies plays the same deals, and each deal is two random fleets played twice with the sides swapped: the
+ * second game gives each strategy exactly the fleet and turn order the other had in the first. Luck in the layouts
+ * cancels out, so fewer games are needed to tell strategies apart.
+ * <p>
+ * The games of every pairing are spread over the common fork/join pool, which steals work between cores, so a slow
+ * pairing doesn't hold up the rest. Each worker keeps its own {@link TournamentStats} and they are merged at the end.
+ * The time each strategy takes per move is measured around its desiredMove call.
+ * <p>
+ * Usage: {@code java simulation.Tournament <deals> [seed] [output] [strategy...]}. Without strategy names, every
+ * strategy that doesn't play to a time budget takes part. With an output name, the results are also written to
+ * output.csv and output.json.
+ */
+public class Tournament {
+
+    private static final int DEALS_PER_TASK = 16;
+
+    private final String[] names;
+    private final long seed;
+    private final int[][] pairings;
+
+    /**
+     * Creates a tournament between registered strategies.
+     * @param names The names of the strategies. Each one plays every other one.
+     * @param seed The seed for the deals and strategies. The same seed always produces the same games, apart from
+     *             strategies that play to a time budget.
+     * @throws IllegalArgumentException If a name is not registered, or there are fewer than two.
+     */
+    public Tournament(String[] names, long seed) {
+        if (names.length < 2) {
+            throw new IllegalArgumentException("A tournament needs at least two strategies");
+        }
+        for (String name : names) {
+            Strategies.create(name); // Fail fast on unknown names
+        }
+        this.names = names.clone();
+        this.seed = seed;
+        pairings = new int[names.length * (names.length - 1) / 2][];
+        int k = 0;
+        for (int a = 0; a < names.length; a++) {
+            for (int b = a + 1; b < names.length; b++) {
+                pairings[k++] = new int[]{a, b};
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java simulation.Tournament <deals> [seed] [output] [strategy...]");
+            System.out.println("Strategies: " + Strategies.names());
+            return;
+        }
+        long deals = Long.parseLong(args[0]);
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        String[] names;
+        if (args.length > 3) {
+            names = Arrays.copyOfRange(args, 3, args.length);
+        } else {
+            List<String> reproducible = new ArrayList<>();
+            for (String name : Strategies.names()) {
+                if (Strategies.isReproducible(name)) {
+                    reproducible.add(name);
+                }
+            }
+            names = reproducible.toArray(new String[0]);
+        }
+        Tournament tournament = new Tournament(names, seed);
+
+        long start = System.nanoTime();
+        TournamentStats stats = tournament.run(deals);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d pairings x %d deals x 2 games in %.2f s (seed %d)%n", tournament.pairings.length, deals,
+                seconds, seed);
+        System.out.printf("%-12s %7s %7s %17s %9s %10s %10s %10s%n", "strategy", "score", "rating", "95% interval",
+                "shots", "p50 move", "p90 move", "p99 move");
+        for (int s = 0; s < names.length; s++) {
+            System.out.printf("%-12s %6.2f%% %7.0f %8.0f .. %5.0f %9.2f %8d ns %8d ns %8d ns%n",
+                    names[s], 100 * stats.score(s), stats.rating(s), stats.ratingLow(s), stats.ratingHigh(s),
+                    stats.meanShotsToWin(s), stats.movePercentile(s, 50), stats.movePercentile(s, 90),
+                    stats.movePercentile(s, 99));
+        }
+        if (args.length > 2) {
+            try (Writer out = Files.newBufferedWriter(Path.of(args[2] + ".csv"))) {
+                stats.writeCsv(out, names);
+            }
+            try (Writer out = Files.newBufferedWriter(Path.of(args[2] + ".json"))) {
+                stats.writeJson(out, names, deals, seed);
+            }
+        }
+    }
+
+    /**
+     * Plays every pairing over the same deals on the common fork/join pool.
+     * @param deals The number of fleet pairs each pairing plays, twice each.
+     * @return The combined results, with strategies in the order they were given.
+     */
+    public TournamentStats run(long deals) {
+        return ForkJoinPool.commonPool().invoke(new Round(0, pairings.length * deals, deals));
+    }
+
+    /**
+     * Plays both games of one deal for one pairing.
+     * @param pairing The index of the pairing.
+     * @param deal The index of the deal. Decides the fleets, the seeds and who moves first.
+     * @param stats The results to add the games to.
+     */
+    private void playDeal(int pairing, long deal, TournamentStats stats) {
+        SplittableRandom random = new SplittableRandom(seed ^ (deal * 0x9E3779B97F4A7C15L));
+        Board first = Match.randomBoard(random);
+        Board second = Match.randomBoard(random);
+        long[] seeds = {random.nextLong(), random.nextLong()};
+        int a = pairings[pairing][0];
+        int b = pairings[pairing][1];
+        int mover = (int) (deal & 1);
+        playGame(new int[]{a, b}, seeds, new Board[]{first, second}, mover, stats);
+        playGame(new int[]{b, a}, seeds, new Board[]{copy(first), copy(second)}, mover, stats);
+    }
+
+    /**
+     * Plays one game, timing every move.
+     * @param players The index of the strategy for each side.
+     * @param seeds The seed for each side's strategy.
+     * @param targets The board each side shoots at.
+     * @param first The side that moves first.
+     * @param stats The results to add the game to.
+     */
+    private void playGame(int[] players, long[] seeds, Board[] targets, int first, TournamentStats stats) {
+        BoardStrategy[] strategies = {Strategies.create(names[players[0]], seeds[0]),
+                Strategies.create(names[players[1]], seeds[1])};
+        int turn = first;
+        while (true) {
+            Board target = targets[turn];
+            long start = System.nanoTime();
+            Point move = strategies[turn].desiredMove(target);
+            stats.recordMove(players[turn], System.nanoTime() - start);
+            if (move == null || !target.tryShot(move.row, move.col)) {
+                throw new IllegalStateException(names[players[turn]] + " made an invalid move " + move);
+            }
+            if (target.gameOver()) {
+                stats.recordGame(players[turn], players[1 - turn], target.getNumMoves());
+                return;
+            }
+            turn = 1 - turn;
+        }
+    }
+
+    /**
+     * Returns a board with the same ships as another and no shots.
+     */
+    private static Board copy(Board board) {
+        Board copy = new Board(null);
+        for (int ship = 0; ship < board.getNumShips(); ship++) {
+            copy.placeShip(board.isShipHorizontal(ship), board.getShipLength(ship), board.getShipRow(ship),
+                    board.getShipCol(ship));
+        }
+        return copy;
+    }
+
+    /**
+     * Splits a range of (pairing, deal) units in half until it is small enough to play on one thread. Unit u is deal
+     * u % deals of pairing u / deals.
+     */
+    private class Round extends RecursiveTask<TournamentStats> {
+
+        @Serial
+        private static final long serialVersionUID = 0L;
+        private final long from;
+        private final long to;
+        private final long deals;
+
+        Round(long from, long to, long deals) {
+            this.from = from;
+            this.to = to;
+            this.deals = deals;
+        }
+
+        @Override
+        protected TournamentStats compute() {
+            if (to - from <= DEALS_PER_TASK) {
+                TournamentStats stats = new TournamentStats(names.length);
+                for (long unit = from; unit < to; unit++) {
+                    playDeal((int) (unit / deals), unit % deals, stats);
+                }
+                return stats;
+            }
+            long mid = (from + to) >>> 1;
+            Round left = new Round(from, mid, deals);
+            left.fork();
+            TournamentStats right = new Round(mid, to, deals).compute();
+            return right.merge(left.join());
+        }
+    }
+}
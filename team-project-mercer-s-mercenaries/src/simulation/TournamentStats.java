@@ -0,0 +1,302 @@
+package simulation;
+
+import model.Board;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Accumulates the results of a round-robin tournament: who beat whom, how many shots each strategy needed in the
+ * games it won, and how long each of its moves took. Like {@link SimulationStats}, everything is kept in primitive
+ * arrays of a fixed size, so each worker keeps its own copy and the copies are merged at the end.
+ * <p>
+ * Move times go into a log-linear histogram: 16 buckets for each power of two, so percentiles are exact to within
+ * about 6% whatever the scale.
+ * <p>
+ * Ratings are on the Elo scale, from each strategy's score against the whole field: a 75% score is about 191 points
+ * above the field's average. The interval is the 95% interval of the score, as a normal approximation, put through
+ * the same formula. In a round robin every strategy meets the same opponents, so ratings of the same tournament can
+ * be compared directly.
+ */
+public final class TournamentStats {
+
+    /** The rating of a strategy that scores 50% against the field. */
+    public static final double BASE_RATING = 1500;
+
+    private static final int MAX_SHOTS = Board.SIZE * Board.SIZE;
+    private static final int SUB_BUCKETS = 16;
+    private static final int BUCKETS = (64 - 3) * SUB_BUCKETS;
+
+    private final int strategies;
+    private final long[] wins; // wins[a * strategies + b] is the number of games a beat b
+    private final long[][] shotsToWin;
+    private final long[][] moveNanos; // Histogram of move times, per strategy
+    private final long[] moves;
+
+    /**
+     * Creates empty results.
+     * @param strategies The number of strategies in the tournament.
+     */
+    public TournamentStats(int strategies) {
+        this.strategies = strategies;
+        wins = new long[strategies * strategies];
+        shotsToWin = new long[strategies][MAX_SHOTS + 1];
+        moveNanos = new long[strategies][BUCKETS];
+        moves = new long[strategies];
+    }
+
+    /**
+     * Records a finished game.
+     * @param winner The index of the winning strategy.
+     * @param loser The index of the losing strategy.
+     * @param shots The number of shots the winner took.
+     */
+    public void recordGame(int winner, int loser, int shots) {
+        wins[winner * strategies + loser]++;
+        shotsToWin[winner][shots]++;
+    }
+
+    /**
+     * Records how long a strategy took to pick a move.
+     * @param strategy The index of the strategy.
+     * @param nanos The time it took, in nanoseconds.
+     */
+    public void recordMove(int strategy, long nanos) {
+        moveNanos[strategy][bucket(Math.max(0, nanos))]++;
+        moves[strategy]++;
+    }
+
+    /**
+     * Adds the results of another set of games to this one.
+     * @param other The results to add. It must be for the same strategies.
+     * @return This object.
+     */
+    public TournamentStats merge(TournamentStats other) {
+        for (int i = 0; i < wins.length; i++) {
+            wins[i] += other.wins[i];
+        }
+        for (int s = 0; s < strategies; s++) {
+            for (int n = 0; n <= MAX_SHOTS; n++) {
+                shotsToWin[s][n] += other.shotsToWin[s][n];
+            }
+            for (int b = 0; b < BUCKETS; b++) {
+                moveNanos[s][b] += other.moveNanos[s][b];
+            }
+            moves[s] += other.moves[s];
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of strategies.
+     * @return The number of strategies.
+     */
+    public int getStrategies() {
+        return strategies;
+    }
+
+    /**
+     * Returns the number of games one strategy won against another.
+     * @param strategy The index of the winner.
+     * @param opponent The index of the loser.
+     * @return The number of wins.
+     */
+    public long getWins(int strategy, int opponent) {
+        return wins[strategy * strategies + opponent];
+    }
+
+    /**
+     * Returns the number of games a strategy won against anyone.
+     * @param strategy The index of the strategy.
+     * @return The number of wins.
+     */
+    public long getWins(int strategy) {
+        long total = 0;
+        for (int opponent = 0; opponent < strategies; opponent++) {
+            total += getWins(strategy, opponent);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of games a strategy played.
+     * @param strategy The index of the strategy.
+     * @return The number of games.
+     */
+    public long getGames(int strategy) {
+        long total = 0;
+        for (int opponent = 0; opponent < strategies; opponent++) {
+            total += getWins(strategy, opponent) + getWins(opponent, strategy);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the fraction of its games a strategy won.
+     * @param strategy The index of the strategy.
+     * @return The score, or NaN if it played no games.
+     */
+    public double score(int strategy) {
+        long games = getGames(strategy);
+        return games == 0 ? Double.NaN : (double) getWins(strategy) / games;
+    }
+
+    /**
+     * Returns a strategy's rating.
+     * @param strategy The index of the strategy.
+     * @return The rating, or NaN if it played no games.
+     */
+    public double rating(int strategy) {
+        return elo(score(strategy), getGames(strategy));
+    }
+
+    /**
+     * Returns the low end of the 95% interval of a strategy's rating.
+     * @param strategy The index of the strategy.
+     * @return The rating.
+     */
+    public double ratingLow(int strategy) {
+        return elo(score(strategy) - margin(strategy), getGames(strategy));
+    }
+
+    /**
+     * Returns the high end of the 95% interval of a strategy's rating.
+     * @param strategy The index of the strategy.
+     * @return The rating.
+     */
+    public double ratingHigh(int strategy) {
+        return elo(score(strategy) + margin(strategy), getGames(strategy));
+    }
+
+    /**
+     * Returns the mean number of shots a strategy needed in the games it won.
+     * @param strategy The index of the strategy.
+     * @return The mean, or NaN if it never won.
+     */
+    public double meanShotsToWin(int strategy) {
+        long total = 0;
+        long count = 0;
+        for (int n = 0; n <= MAX_SHOTS; n++) {
+            total += n * shotsToWin[strategy][n];
+            count += shotsToWin[strategy][n];
+        }
+        return count == 0 ? Double.NaN : (double) total / count;
+    }
+
+    /**
+     * Returns the number of moves a strategy made.
+     * @param strategy The index of the strategy.
+     * @return The number of moves.
+     */
+    public long getMoves(int strategy) {
+        return moves[strategy];
+    }
+
+    /**
+     * Returns a percentile of the time a strategy took per move.
+     * @param strategy The index of the strategy.
+     * @param percentile The percentile to find, between 0 and 100.
+     * @return The time in nanoseconds, rounded down to its histogram bucket, or -1 if it made no moves.
+     */
+    public long movePercentile(int strategy, double percentile) {
+        if (moves[strategy] == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(moves[strategy] * percentile / 100.0));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += moveNanos[strategy][b];
+            if (seen >= rank) {
+                return lowest(b);
+            }
+        }
+        return lowest(BUCKETS - 1);
+    }
+
+    /**
+     * Writes one line per strategy, with a header line, as CSV.
+     * @param out Where to write.
+     * @param names The name of each strategy.
+     * @throws IOException If writing fails.
+     */
+    public void writeCsv(Appendable out, String[] names) throws IOException {
+        out.append("strategy,games,wins,score,rating,rating_low,rating_high,mean_shots_to_win,"
+                + "move_p50_ns,move_p90_ns,move_p99_ns\n");
+        for (int s = 0; s < strategies; s++) {
+            out.append(String.format(Locale.ROOT, "%s,%d,%d,%.4f,%.1f,%.1f,%.1f,%.3f,%d,%d,%d\n", names[s],
+                    getGames(s), getWins(s), score(s), rating(s), ratingLow(s), ratingHigh(s), meanShotsToWin(s),
+                    movePercentile(s, 50), movePercentile(s, 90), movePercentile(s, 99)));
+        }
+    }
+
+    /**
+     * Writes the standings and the table of wins as a JSON object.
+     * @param out Where to write.
+     * @param names The name of each strategy.
+     * @param deals The number of fleet pairs each pairing played.
+     * @param seed The seed of the tournament.
+     * @throws IOException If writing fails.
+     */
+    public void writeJson(Appendable out, String[] names, long deals, long seed) throws IOException {
+        out.append(String.format(Locale.ROOT, "{\n  \"deals\": %d,\n  \"seed\": %d,\n  \"strategies\": [\n", deals,
+                seed));
+        for (int s = 0; s < strategies; s++) {
+            out.append(String.format(Locale.ROOT, "    {\"name\": \"%s\", \"games\": %d, \"wins\": %d, "
+                    + "\"score\": %s, \"rating\": %s, \"ratingLow\": %s, \"ratingHigh\": %s, "
+                    + "\"meanShotsToWin\": %s, \"moveNanos\": {\"p50\": %d, \"p90\": %d, \"p99\": %d}}%s\n",
+                    escape(names[s]), getGames(s), getWins(s), number(score(s)), number(rating(s)),
+                    number(ratingLow(s)), number(ratingHigh(s)), number(meanShotsToWin(s)), movePercentile(s, 50),
+                    movePercentile(s, 90), movePercentile(s, 99), s + 1 < strategies ? "," : ""));
+        }
+        out.append("  ],\n  \"wins\": [\n");
+        for (int s = 0; s < strategies; s++) {
+            StringBuilder row = new StringBuilder("    [");
+            for (int opponent = 0; opponent < strategies; opponent++) {
+                row.append(opponent > 0 ? ", " : "").append(getWins(s, opponent));
+            }
+            out.append(row).append(s + 1 < strategies ? "],\n" : "]\n");
+        }
+        out.append("  ]\n}\n");
+    }
+
+    private double margin(int strategy) {
+        double p = score(strategy);
+        return 1.96 * Math.sqrt(p * (1 - p) / getGames(strategy));
+    }
+
+    /**
+     * Converts a score to a rating. Scores of 0 and 1 are moved half a game in, so they stay finite.
+     */
+    private static double elo(double score, long games) {
+        if (Double.isNaN(score)) {
+            return Double.NaN;
+        }
+        double edge = 0.5 / games;
+        double p = Math.min(Math.max(score, edge), 1 - edge);
+        return BASE_RATING - 400 * Math.log10(1 / p - 1);
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos); // At least 4
+        return (exponent - 3) * SUB_BUCKETS + (int) (nanos >>> (exponent - 4)) - SUB_BUCKETS;
+    }
+
+    private static long lowest(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 3;
+        return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << (exponent - 4);
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "null" : String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    private static String escape(String name) {
+        return name.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
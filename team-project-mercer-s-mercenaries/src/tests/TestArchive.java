@@ -0,0 +1,175 @@
+package tests;
+
+import model.Board;
+import model.GameRecord;
+import model.Replay;
+import model.Rules;
+import org.junit.jupiter.api.Test;
+import simulation.ArchiveAnalytics;
+import simulation.ArchiveStats;
+import simulation.GameArchive;
+import simulation.Match;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestArchive {
+
+    /**
+     * Checks that the game under a cursor matches a recorded game.
+     */
+    private void assertSameGame(GameRecord record, GameArchive archive, GameArchive.Cursor cursor) {
+        assertEquals(record.getFirst(), cursor.getFirst());
+        for (int player = 0; player < 2; player++) {
+            assertEquals(record.getStrategy(player), archive.getStrategyName(cursor.getStrategy(player)));
+            Board board = record.createBoard(player, null);
+            assertEquals(board.getShipWord(0), cursor.getFleetWord(player, 0));
+            assertEquals(board.getShipWord(1), cursor.getFleetWord(player, 1));
+            assertEquals(record.getNumShots(player), cursor.getNumShots(player));
+            for (int move = 0; move < record.getNumShots(player); move++) {
+                int cell = record.getShot(player, move);
+                assertEquals(cell, cursor.getShot(player, move));
+                assertEquals(board.tryShot(cell / Board.SIZE, cell % Board.SIZE) && board.hit(cell / Board.SIZE,
+                        cell % Board.SIZE), cursor.isHit(player, move));
+            }
+            if (board.gameOver()) {
+                assertEquals(player, cursor.getWinner());
+            }
+        }
+    }
+
+    @Test
+    public void testAppendAndScan() throws IOException {
+        Path file = Files.createTempFile("games", ".bsa");
+        Files.delete(file);
+        try {
+            SplittableRandom random = new SplittableRandom(4);
+            List<GameRecord> records = new ArrayList<>();
+            try (GameArchive archive = GameArchive.open(file, 4096)) { // Small segments, so records skip to the next
+                for (int game = 0; game < 100; game++) {
+                    GameRecord record = Match.playRecorded(new String[]{"random", game % 2 == 0 ? "smart" : "probability"},
+                            random, game & 1);
+                    archive.append(record);
+                    records.add(record);
+                }
+                assertTrue(archive.getNumSegments() > 1);
+            }
+            try (GameArchive archive = GameArchive.open(file)) { // Reopen and keep appending
+                GameRecord record = Match.playRecorded(new String[]{"probability", "random"}, random, 0);
+                archive.append(record);
+                records.add(record);
+                Board[] wide = {Match.randomBoard(new Rules(12, 10, Board.FLEET), random), Match.randomBoard(random)};
+                assertThrows(IllegalArgumentException.class, () -> archive.append(wide, new String[]{"random",
+                        "random"}, 0));
+            }
+
+            try (GameArchive archive = GameArchive.openForReading(file)) {
+                assertEquals(records.size(), archive.getGames());
+                assertEquals(3, archive.getNumStrategies());
+                GameArchive.Cursor cursor = archive.cursor();
+                for (GameRecord record : records) {
+                    assertTrue(cursor.next());
+                    assertSameGame(record, archive, cursor);
+                }
+                assertFalse(cursor.next());
+
+                int games = 0;
+                for (int segment = 0; segment < archive.getNumSegments(); segment++) {
+                    GameArchive.Cursor part = archive.cursor(segment, segment + 1);
+                    while (part.next()) {
+                        games++;
+                    }
+                }
+                assertEquals(records.size(), games);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testAnalytics() throws IOException {
+        Path file = Files.createTempFile("games", ".bsa");
+        Files.delete(file);
+        try (GameArchive archive = GameArchive.open(file, 8192)) {
+            SplittableRandom random = new SplittableRandom(8);
+            String[] names = {"smart", "probability"};
+            long[] wins = new long[2];
+            long[] streaks = new long[2];
+            long[] shotsAtCorner = new long[2];
+            long shipsOnCenter = 0;
+            for (int game = 0; game < 200; game++) {
+                GameRecord record = Match.playRecorded(names, random, game & 1);
+                archive.append(record);
+                Replay replay = new Replay(record);
+                replay.runToEnd();
+                for (int player = 0; player < 2; player++) {
+                    Board board = replay.getBoard(player);
+                    wins[player] += board.gameOver() ? 1 : 0;
+                    streaks[player] += board.getMaxHitsInARow();
+                    shotsAtCorner[player] += board.used(0, 0) ? 1 : 0;
+                    shipsOnCenter += board.getShipAt(4, 5) >= 0 ? 1 : 0;
+                }
+            }
+
+            ArchiveStats stats = ArchiveAnalytics.analyze(archive);
+            assertEquals(400, stats.getFleets());
+            assertEquals(shipsOnCenter, stats.getShipCells(45));
+            for (int player = 0; player < 2; player++) {
+                assertEquals(200, stats.getGames(player));
+                assertEquals(wins[player], stats.getWins(player));
+                assertEquals(streaks[player], Math.round(stats.meanLongestStreak(player) * 200));
+                assertEquals(shotsAtCorner[player], stats.getShots(player, 0));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testAnalyticsSplitsSegments() throws IOException {
+        Path file = Files.createTempFile("games", ".bsa");
+        Files.delete(file);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (GameArchive archive = GameArchive.open(file, 1 << 20)) {
+            SplittableRandom random = new SplittableRandom(12);
+            for (int game = 0; game < 300; game++) {
+                archive.append(Match.playRecorded(new String[]{"random", "smart"}, random, game & 1));
+            }
+            assertEquals(1, archive.getNumSegments());
+            int[] offsets = archive.index(0, 16);
+            assertEquals(300 / 16 + 2, offsets.length); // A run per 16 games, then the end
+
+            ArchiveStats whole = new ArchiveStats(archive.getNumStrategies()); // One cursor over everything
+            GameArchive.Cursor cursor = archive.cursor();
+            while (cursor.next()) {
+                whole.record(cursor);
+            }
+            ArchiveStats split = ArchiveAnalytics.analyze(archive, pool, 16);
+            assertEquals(600, split.getFleets());
+            for (int strategy = 0; strategy < 2; strategy++) {
+                assertEquals(300, split.getGames(strategy));
+                assertEquals(whole.getWins(strategy), split.getWins(strategy));
+                assertEquals(whole.meanShotsToWin(strategy), split.meanShotsToWin(strategy));
+                assertEquals(whole.meanLongestStreak(strategy), split.meanLongestStreak(strategy));
+                for (int cell = 0; cell < Board.SIZE * Board.SIZE; cell++) {
+                    assertEquals(whole.getShots(strategy, cell), split.getShots(strategy, cell));
+                    assertEquals(whole.getHits(strategy, cell), split.getHits(strategy, cell));
+                }
+            }
+            for (int cell = 0; cell < Board.SIZE * Board.SIZE; cell++) {
+                assertEquals(whole.getShipCells(cell), split.getShipCells(cell));
+            }
+        } finally {
+            pool.shutdown();
+            Files.deleteIfExists(file);
+        }
+    }
+}
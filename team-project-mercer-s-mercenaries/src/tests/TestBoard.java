@@ -2,6 +2,25 @@ package tests;
 
 import org.junit.jupiter.api.Test;
 import model.Board;
+import model.BoardEvent;
+import model.BoardListener;
+import model.BoardState;
+import model.CoalescingListener;
+import model.FleetGenerator;
+import model.Placements;
+import model.Point;
+import model.Rules;
+import model.ShotResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -42,6 +61,29 @@ public class TestBoard {
         board2.printBoard();
     }
 
+    @Test
+    public void testTouchingShipsRejected() {
+        char[][] touching = new char[Board.SIZE][Board.SIZE];
+        for (char[] row : touching) {
+            Arrays.fill(row, 'U');
+        }
+        touching[0][0] = 'S'; // Two vertical ships of length 2, side by side
+        touching[1][0] = 'S';
+        touching[0][1] = 'S';
+        touching[1][1] = 'S';
+        assertThrows(IllegalArgumentException.class, () -> new Board(touching, null));
+
+        touching[0][1] = 'U'; // A horizontal ship against the side of a vertical one
+        touching[1][2] = 'S';
+        assertThrows(IllegalArgumentException.class, () -> new Board(touching, null));
+
+        touching[1][0] = 'U'; // Now apart
+        Board board = new Board(touching, null);
+        assertEquals(2, board.getNumShips());
+        assertEquals(1, board.getShipLength(0));
+        assertEquals(2, board.getShipLength(1));
+    }
+
     @Test
     public void testShots() {
         Board board = new Board(testBoard, null);
@@ -56,6 +98,14 @@ public class TestBoard {
         assertTrue(board.tryShot(0, 2));
         assertEquals('H', board.getBoard()[0][2]);
         assertTrue(board.used(0, 2));
+
+        assertFalse(board.tryShot(0, Board.SIZE)); // Not (1, 0)
+        assertFalse(board.tryShot(-1, 5));
+        assertFalse(board.tryShot(Board.SIZE, 0));
+        assertEquals(ShotResult.INVALID, board.fire(Board.SIZE * Board.SIZE));
+        assertEquals(ShotResult.INVALID, board.fire(-1));
+        assertFalse(board.used(1, 0));
+        assertEquals(2, board.getNumMoves());
     }
 
     @Test
@@ -71,4 +121,368 @@ public class TestBoard {
         }
     assertTrue(board.gameOver());
     }
+
+    @Test
+    public void testSunkShips() {
+        Board board = new Board(testBoard, null);
+        assertEquals(6, board.getNumShips());
+        int ship = board.getShipAt(8, 1);
+        assertEquals(2, board.getShipLength(ship));
+        assertTrue(board.isShipHorizontal(ship));
+        assertEquals(ShotResult.MISS, board.fire(0, 0));
+        assertEquals(ShotResult.INVALID, board.fire(0, 0));
+        assertEquals(ShotResult.HIT, board.fire(8, 1));
+        assertFalse(board.isSunk(ship));
+        int result = board.fire(8, 2);
+        assertEquals(ShotResult.SUNK, ShotResult.type(result));
+        assertEquals(ship, ShotResult.sunkShip(result));
+        assertTrue(board.isSunk(ship));
+        assertEquals(5, board.getShipsAfloat());
+
+        Board board2 = new Board(null);
+        assertTrue(board2.placeShip(false, 2, 0, 0));
+        assertTrue(board2.tryShot(0, 0));
+        assertEquals(ShotResult.SUNK, ShotResult.type(board2.fire(1, 0)));
+        assertFalse(board2.gameOver()); // The rest of the fleet hasn't been placed yet
+    }
+
+    @Test
+    public void testOpenCells() {
+        Board board = new Board(testBoard, null);
+        assertEquals(100, board.getOpenCells());
+        assertEquals(0, board.openCell(0));
+        assertEquals(99, board.openCell(99));
+        assertEquals(-1, board.openCell(100));
+        assertTrue(board.tryShot(0, 0));
+        assertTrue(board.tryShot(6, 4));
+        assertEquals(98, board.getOpenCells());
+        assertEquals(1, board.openCell(0));
+        assertEquals(63, board.openCell(62));
+        assertEquals(65, board.openCell(63)); // Skips 64, the cell at 6, 4
+        for (int n = 0; n < 98; n++) {
+            int cell = board.openCell(n);
+            assertFalse(board.used(cell / Board.SIZE, cell % Board.SIZE));
+        }
+    }
+
+    @Test
+    public void testFleetGenerator() {
+        FleetGenerator generator = new FleetGenerator(3);
+        FleetGenerator same = new FleetGenerator(3);
+        int fleets = 1000;
+        int[] buffer = new int[fleets * generator.fleetSize()];
+        int[] repeat = new int[buffer.length];
+        generator.fill(buffer, fleets);
+        same.fill(repeat, fleets);
+        assertArrayEquals(buffer, repeat);
+
+        boolean[] covered = new boolean[Board.SIZE * Board.SIZE];
+        for (int fleet = 0; fleet < fleets; fleet++) {
+            Board board = new Board(null);
+            generator.place(board, buffer, fleet * generator.fleetSize());
+            assertEquals(Board.FLEET.length, board.getNumShips());
+            for (int ship = 0; ship < board.getNumShips(); ship++) {
+                assertEquals(Board.FLEET[ship], board.getShipLength(ship));
+            }
+            for (int cell = 0; cell < covered.length; cell++) {
+                covered[cell] |= board.getBoard()[cell / Board.SIZE][cell % Board.SIZE] == 'S';
+            }
+        }
+        for (boolean cell : covered) {
+            assertTrue(cell);
+        }
+    }
+
+    @Test
+    public void testPoints() throws IOException, ClassNotFoundException {
+        assertSame(Point.of(3, 7), Point.of(3, 7));
+        assertSame(Point.of(3, 7), new Board(null).getPoint(37));
+        assertSame(Point.of(3, 1), new Board(new Rules(12, 10, Board.FLEET), null).getPoint(37));
+        assertEquals(Point.of(-1, 12), Point.of(-1, 12)); // Off the board, equal but not shared
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(Point.of(9, 9));
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertSame(Point.of(9, 9), in.readObject());
+        }
+
+        Board board = new Board(testBoard, null);
+        assertEquals(-1, board.getShipAt(0));
+        assertEquals(board.getShipAt(0, 2), board.getShipAt(2));
+        assertEquals(ShotResult.MISS, ShotResult.type(board.fire(0)));
+        assertTrue(board.used(0));
+        assertFalse(board.hit(0));
+        assertTrue(board.tryShot(2));
+        assertTrue(board.hit(0, 2));
+        assertFalse(board.tryShot(2));
+    }
+
+    @Test
+    public void testBoardStateApplyAndUndo() {
+        FleetGenerator generator = new FleetGenerator(5);
+        Board board = new Board(null);
+        generator.placeFleet(board);
+        for (int cell = 0; cell < 40; cell++) {
+            board.tryShot((cell * 37) % 100);
+        }
+        BoardState state = board.snapshot();
+        BoardState saved = state.copy();
+        assertEquals(board.getNumMoves(), state.getNumMoves());
+        assertEquals(board.getShipsAfloat(), state.getShipsAfloat());
+
+        Board played = new Board(null);
+        generator.placeFleet(played);
+        BoardState fresh = played.snapshot();
+        int start = fresh.getNumMoves();
+        for (int cell = 0; cell < 100; cell++) { // Same results as the board, through to the end of the game
+            assertEquals(played.fire(cell), fresh.apply(cell));
+            assertEquals(played.gameOver(), fresh.gameOver());
+        }
+        assertEquals(ShotResult.INVALID, fresh.apply(0));
+        fresh.undoTo(start);
+        assertEquals(0, fresh.getNumHits());
+        assertEquals(Board.FLEET.length, fresh.getShipsAfloat());
+        for (int cell = 0; cell < 100; cell++) {
+            assertFalse(fresh.used(cell));
+        }
+
+        for (int cell = 0; cell < 100; cell++) { // Applying and undoing leaves the state as it was
+            if (state.apply(cell) != ShotResult.INVALID) {
+                assertEquals(cell, state.undo());
+            }
+        }
+        for (int cell = 0; cell < 100; cell++) {
+            assertEquals(board.used(cell), state.used(cell));
+            assertEquals(board.hit(cell), saved.hit(cell));
+        }
+        state.apply(firstOpen(state));
+        assertNotEquals(state.getNumMoves(), saved.getNumMoves());
+        state.copyFrom(saved);
+        assertEquals(saved.getNumMoves(), state.getNumMoves());
+        assertEquals(saved.getNumHits(), state.getNumHits());
+
+        BoardState hypothetical = new BoardState();
+        assertTrue(hypothetical.placeShip(true, 5, 0));
+        assertFalse(hypothetical.placeShip(false, 3, 2)); // Crosses the first ship
+        assertFalse(hypothetical.placeShip(true, 3, 8)); // Runs off the board
+    }
+
+    private static int firstOpen(BoardState state) {
+        int cell = 0;
+        while (state.used(cell)) {
+            cell++;
+        }
+        return cell;
+    }
+
+    @Test
+    public void testZobristHashes() {
+        Board board = new Board(testBoard, null);
+        Board reversed = new Board(testBoard, null);
+        assertEquals(board.getHash(), reversed.getHash());
+        assertEquals(0, board.getShotHash());
+        for (int cell = 0; cell < 100; cell++) { // The same shots in any order give the same position
+            board.tryShot(cell);
+            reversed.tryShot(99 - cell);
+        }
+        assertEquals(board.getHash(), reversed.getHash());
+        assertEquals(board.getShotHash(), reversed.getShotHash());
+
+        Board other = new Board(null);
+        new FleetGenerator(9).placeFleet(other);
+        assertNotEquals(new Board(testBoard, null).getHash(), other.getHash());
+        assertEquals(0, other.getShotHash()); // The shooter can't see the ships
+
+        Board played = new Board(testBoard, null);
+        for (int cell = 0; cell < 50; cell++) {
+            played.tryShot((cell * 37) % 100);
+        }
+        BoardState state = played.snapshot();
+        assertEquals(played.getHash(), state.getHash());
+        assertEquals(played.getShotHash(), state.getShotHash());
+        for (int cell = 0; cell < 100; cell++) {
+            if (state.apply(cell) != ShotResult.INVALID) {
+                assertNotEquals(played.getShotHash(), state.getShotHash());
+                state.undo();
+                assertEquals(played.getShotHash(), state.getShotHash());
+            }
+        }
+        state.undoTo(0);
+        assertEquals(0, state.getShotHash());
+        assertEquals(new Board(testBoard, null).getHash(), state.getHash());
+    }
+
+    @Test
+    public void testSalvo() {
+        Board board = new Board(testBoard, null);
+        long salvo = board.tryShots(new int[]{81, 82, 0});
+        assertTrue(ShotResult.salvoHit(salvo, 0));
+        assertTrue(ShotResult.salvoHit(salvo, 1));
+        assertFalse(ShotResult.salvoHit(salvo, 2));
+        assertEquals(2, ShotResult.salvoHits(salvo));
+        assertEquals(1 << board.getShipAt(8, 1), ShotResult.salvoSunk(salvo));
+        assertEquals(3, board.getNumMoves());
+
+        assertEquals(ShotResult.SALVO_INVALID, board.tryShots(new int[]{50, 0})); // 0 was already shot
+        assertEquals(ShotResult.SALVO_INVALID, board.tryShots(new int[]{50, 50}));
+        assertFalse(board.used(50)); // Nothing in an invalid salvo is fired
+        assertEquals(0, board.tryShots(new int[]{50, 51}, 1));
+        assertFalse(board.used(51));
+        assertThrows(IllegalArgumentException.class, () -> board.tryShots(new int[32]));
+        assertEquals(ShotResult.SALVO_INVALID, board.tryShots(new int[]{52, -1}));
+        assertEquals(ShotResult.SALVO_INVALID, board.tryShots(new int[]{52, 100}));
+        assertFalse(board.used(52));
+
+        Board crowded = new Board(Rules.parse("20x20:" + "1,".repeat(31) + "1"), null);
+        for (int ship = 0; ship < 32; ship++) {
+            crowded.placeShip(true, 1, ship / 10 * 2, ship % 10 * 2);
+        }
+        assertThrows(IllegalStateException.class, () -> crowded.tryShots(new int[]{1}));
+
+        Board full = new Board(Rules.parse("20x20:" + "1,".repeat(30) + "1"), null);
+        int[] everyShip = new int[ShotResult.MAX_SALVO];
+        for (int ship = 0; ship < everyShip.length; ship++) {
+            full.placeShip(true, 1, ship / 10 * 2, ship % 10 * 2);
+            everyShip[ship] = ship / 10 * 2 * full.getWidth() + ship % 10 * 2;
+        }
+        long sweep = full.tryShots(everyShip); // Every shot hits and sinks a ship, yet the result is still valid
+        assertNotEquals(ShotResult.SALVO_INVALID, sweep);
+        assertEquals(ShotResult.MAX_SALVO, ShotResult.salvoHits(sweep));
+        assertEquals((1 << ShotResult.MAX_SALVO) - 1, ShotResult.salvoSunk(sweep));
+        assertTrue(full.gameOver());
+
+        Board copy = board.copy();
+        assertEquals(board.getHash(), copy.getHash());
+        assertEquals(board.getShotHash(), copy.getShotHash());
+        assertEquals(board.getNumMoves(), copy.getNumMoves());
+        for (int cell = 0; cell < 100; cell++) {
+            copy.tryShot(cell);
+        }
+        assertTrue(copy.gameOver());
+        assertFalse(board.gameOver());
+        assertFalse(board.used(99));
+    }
+
+    @Test
+    public void testListeners() {
+        List<List<BoardEvent>> calls = new ArrayList<>();
+        BoardListener recorder = (board, events) -> calls.add(List.copyOf(events));
+        char[][] single = new char[Board.SIZE][Board.SIZE];
+        for (char[] row : single) {
+            Arrays.fill(row, 'U');
+        }
+        single[0][0] = 'S';
+        single[0][1] = 'S';
+        Board board = new Board(single, recorder); // A fleet of one ship
+        assertEquals(0, calls.size());
+        assertTrue(board.placeShip(true, 2, 9, 0));
+        assertEquals(1, calls.size());
+        assertEquals(BoardEvent.Type.SHIP_PLACED, calls.get(0).get(0).getType());
+        assertEquals(1, calls.get(0).get(0).getShip());
+        assertEquals(90, calls.get(0).get(0).getCell());
+
+        board.tryShot(50); // A miss
+        assertEquals(List.of(BoardEvent.Type.SHOT), types(calls.get(1)));
+        assertEquals(ShotResult.MISS, calls.get(1).get(0).getResult());
+        assertEquals(Point.of(5, 0), calls.get(1).get(0).getPoint());
+
+        board.tryShots(new int[]{0, 1, 2}); // One call for the whole salvo, which sinks the first ship
+        assertEquals(3, calls.size());
+        assertEquals(List.of(BoardEvent.Type.SHOT, BoardEvent.Type.SHOT, BoardEvent.Type.SHIP_SUNK,
+                BoardEvent.Type.SHOT), types(calls.get(2)));
+        assertEquals(0, calls.get(2).get(2).getShip());
+        assertFalse(board.tryShot(0)); // Invalid shots aren't reported
+        assertEquals(3, calls.size());
+        board.tryShots(new int[]{91, 90});
+        assertEquals(List.of(BoardEvent.Type.SHOT, BoardEvent.Type.SHOT, BoardEvent.Type.SHIP_SUNK,
+                BoardEvent.Type.FLEET_DESTROYED), types(calls.get(3)));
+        assertTrue(board.gameOver());
+
+        CoalescingListener coalescing = new CoalescingListener(recorder);
+        Board other = new Board(null);
+        other.addListener(coalescing);
+        other.placeShip(false, 3, 0, 0);
+        other.tryShot(0);
+        other.tryShot(10);
+        assertTrue(coalescing.hasPending());
+        assertEquals(4, calls.size());
+        coalescing.flush();
+        assertEquals(5, calls.size());
+        assertEquals(List.of(BoardEvent.Type.SHIP_PLACED, BoardEvent.Type.SHOT, BoardEvent.Type.SHOT),
+                types(calls.get(4)));
+        assertFalse(coalescing.hasPending());
+
+        assertTrue(other.removeListener(coalescing));
+        assertFalse(other.removeListener(coalescing));
+        other.tryShot(20);
+        assertFalse(coalescing.hasPending());
+    }
+
+    @Test
+    public void testRules() {
+        Rules rules = Rules.parse("20x15:6,3");
+        assertEquals(new Rules(20, 15, new int[]{6, 3}), rules);
+        assertEquals(Rules.STANDARD, Rules.parse("10x10"));
+        assertThrows(IllegalArgumentException.class, () -> Rules.parse("20"));
+        assertThrows(IllegalArgumentException.class, () -> new Rules(4, 4, new int[]{5}));
+
+        Board board = new Board(rules, null);
+        assertEquals(15, board.getBoard().length);
+        assertEquals(20, board.getBoard()[0].length);
+        new FleetGenerator(rules, new SplittableRandom(1)).placeFleet(board);
+        assertEquals(2, board.getNumShips());
+        Board empty = new Board(rules, null);
+        assertTrue(empty.placeShip(true, 2, 14, 19)); // Pushed back onto the board
+        assertEquals(18, empty.getShipCol(0));
+        assertFalse(empty.placeShip(false, 16, 0, 0)); // Taller than the board
+        assertEquals(Point.of(3, 7), board.getPoint(67));
+        assertThrows(IllegalStateException.class, board::snapshot);
+        for (int row = 0; row < 15; row++) {
+            for (int col = 0; col < 20; col++) {
+                assertTrue(board.tryShot(row, col));
+            }
+        }
+        assertTrue(board.gameOver());
+        assertEquals(-1, board.openCell(0));
+
+        Rules huge = new Rules(1000, 1000, Board.FLEET); // Chunked storage
+        assertFalse(huge.isDense());
+        assertFalse(Placements.supports(huge));
+        Rules small = Rules.parse("12x8:4,3,2");
+        Placements smallTable = Placements.of(small);
+        assertSame(smallTable, Placements.of(Rules.parse("12x8:4,3,2"))); // Shared while they are the last rules
+        assertEquals(96, Placements.of(Rules.parse("8x12:4,3,2")).cells());
+        assertNotSame(smallTable, Placements.of(small)); // Only the last table for other rules is kept
+        assertSame(Placements.STANDARD, Placements.of(Rules.STANDARD)); // But the standard one always is
+        Board stress = new Board(huge, null);
+        new FleetGenerator(huge, new SplittableRandom(2)).placeFleet(stress);
+        assertEquals(Board.FLEET.length, stress.getNumShips());
+        assertEquals(huge.getCells(), stress.getOpenCells());
+        assertEquals(999_999, stress.openCell(999_999));
+        assertTrue(stress.tryShot(999, 999));
+        assertTrue(stress.tryShot(500, 500));
+        assertEquals(500_499, stress.openCell(500_499));
+        assertEquals(500_501, stress.openCell(500_500)); // Skips the shot at 500, 500
+        Board copy = stress.copy();
+        for (int ship = 0; ship < stress.getNumShips(); ship++) {
+            int step = stress.isShipHorizontal(ship) ? 1 : 1000;
+            int nose = stress.getShipRow(ship) * 1000 + stress.getShipCol(ship);
+            for (int i = 0; i < stress.getShipLength(ship); i++) {
+                stress.tryShot(nose + i * step);
+            }
+        }
+        assertTrue(stress.gameOver());
+        assertFalse(copy.gameOver());
+        assertEquals(2, copy.getNumMoves());
+    }
+
+    private static List<BoardEvent.Type> types(List<BoardEvent> events) {
+        List<BoardEvent.Type> types = new ArrayList<>();
+        for (BoardEvent event : events) {
+            types.add(event.getType());
+        }
+        return types;
+    }
 }
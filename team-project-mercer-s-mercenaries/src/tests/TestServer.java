@@ -0,0 +1,344 @@
+package tests;
+
+import Networking.Protocol.Message;
+import Networking.Protocol.MessageCodec;
+import Networking.Protocol.Opcode;
+import Networking.Protocol.Session;
+import Networking.Server.Server;
+import model.Board;
+import org.junit.jupiter.api.Test;
+import simulation.Match;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestServer {
+
+    /**
+     * A user talking to the server over its own socket, with a session like a client's.
+     */
+    private static final class User implements AutoCloseable {
+
+        private final DatagramSocket socket;
+        private final InetSocketAddress server;
+        private final Session session = new Session();
+        private final MessageCodec codec = new MessageCodec();
+        private final ByteBuffer buffer = ByteBuffer.allocate(MessageCodec.MAX_SIZE);
+        private final ByteBuffer out = ByteBuffer.allocate(MessageCodec.MAX_SIZE);
+        private final Message message = new Message();
+
+        User(InetSocketAddress server) throws IOException {
+            socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+            socket.setSoTimeout(Session.TICK_MILLIS);
+            this.server = server;
+        }
+
+        void send(Message message) throws IOException {
+            out.clear();
+            if (session.send(message, out, System.nanoTime())) {
+                socket.send(new DatagramPacket(out.array(), out.position(), server));
+            }
+        }
+
+        void tick() throws IOException {
+            out.clear();
+            while (session.poll(out, System.nanoTime())) {
+                socket.send(new DatagramPacket(out.array(), out.position(), server));
+                out.clear();
+            }
+        }
+
+        void sendText(String text) throws IOException {
+            byte[] data = text.getBytes(StandardCharsets.UTF_8);
+            socket.send(new DatagramPacket(data, data.length, server));
+        }
+
+        Message receive() throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (true) {
+                if (session.nextHeld(buffer)) {
+                    codec.decode(buffer, message);
+                    return message;
+                }
+                tick();
+                DatagramPacket packet = new DatagramPacket(buffer.array(), buffer.capacity());
+                try {
+                    socket.receive(packet);
+                } catch (SocketTimeoutException e) {
+                    if (System.nanoTime() - deadline > 0) {
+                        throw e;
+                    }
+                    continue;
+                }
+                buffer.clear().limit(packet.getLength());
+                if (!MessageCodec.hasHeader(buffer) || session.receive(buffer, System.nanoTime())) {
+                    codec.decode(buffer, message);
+                    return message;
+                }
+            }
+        }
+
+        String receiveText() throws IOException {
+            socket.setSoTimeout(5000);
+            DatagramPacket packet = new DatagramPacket(buffer.array(), buffer.capacity());
+            socket.receive(packet);
+            socket.setSoTimeout(Session.TICK_MILLIS);
+            return new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+        }
+    }
+
+    /**
+     * Encodes a message and decodes it again.
+     */
+    private Message roundTrip(Message message, boolean text) {
+        MessageCodec codec = new MessageCodec();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MessageCodec.MAX_SIZE);
+        if (text) {
+            codec.encodeText(message, buffer);
+        } else {
+            codec.encode(message, buffer);
+        }
+        buffer.flip();
+        assertEquals(!text, MessageCodec.isBinary(buffer));
+        Message decoded = new Message();
+        codec.decode(buffer, decoded);
+        assertFalse(buffer.hasRemaining());
+        return decoded;
+    }
+
+    @Test
+    public void testCodec() {
+        for (boolean text : new boolean[]{false, true}) {
+            Message move = roundTrip(new Message(Opcode.MOVE, 7, 0).addCell(99), text);
+            assertEquals(Opcode.MOVE, move.getOpcode());
+            assertEquals(7, move.getPlayer());
+            assertEquals(1, move.getNumCells());
+            assertEquals(99, move.getCell(0));
+
+            Message chat = roundTrip(new Message(Opcode.CHAT, 3, 0).setName("bob").setText("h\u00e9llo; \ud83d\udea2"), text);
+            assertEquals("bob", chat.getName());
+            assertEquals("h\u00e9llo; \ud83d\udea2", chat.getText());
+
+            Message list = roundTrip(new Message(Opcode.LIST, 1, 0).addHost(4, "alice", true)
+                    .addHost(9, "carol smith", false), text);
+            assertEquals(2, list.getNumHosts());
+            assertEquals(9, list.getHostId(1));
+            assertEquals("carol smith", list.getHostName(1));
+            assertTrue(list.isHostSalvo(0));
+            assertFalse(list.isHostSalvo(1));
+
+            assertTrue(roundTrip(new Message(Opcode.HOST, 1, 0).setSalvo(true), text).isSalvo());
+            Message join = roundTrip(new Message(Opcode.JOIN, 1, 2).setName("a").setOtherName("b").setSalvo(true), text);
+            assertEquals("b", join.getOtherName());
+            assertTrue(join.isSalvo());
+
+            SplittableRandom random = new SplittableRandom(3);
+            for (int game = 0; game < 20; game++) {
+                Board board = Match.randomBoard(random);
+                Message response = roundTrip(new Message(Opcode.RESPONSE, 2, 0).setFleet(board), text);
+                Board copy = new Board(null);
+                response.placeFleet(copy);
+                assertEquals(board.getNumShips(), copy.getNumShips());
+                assertEquals(board.getHash(), copy.getHash());
+            }
+        }
+
+        String longText = "\u00fc".repeat(200); // 400 bytes of UTF-8, cut to the 127 characters that fit in 255 bytes
+        assertEquals("\u00fc".repeat(127), roundTrip(new Message(Opcode.CHAT, 1, 0).setText(longText), false).getText());
+
+        MessageCodec codec = new MessageCodec();
+        Message message = new Message();
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(ByteBuffer.wrap(new byte[]{(byte) 0x81, 11}),
+                message));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(ByteBuffer.wrap(new byte[]{(byte) 0x82, 11, 0}),
+                message));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(
+                ByteBuffer.wrap("fire;1;0;".getBytes(StandardCharsets.UTF_8)), message));
+    }
+
+    /**
+     * Sends a packet over a simulated link that loses one packet in five.
+     */
+    private void transmit(ByteBuffer out, List<byte[]> link, SplittableRandom random) {
+        if (random.nextInt(5) != 0) {
+            byte[] packet = new byte[out.position()];
+            out.get(0, packet);
+            link.add(packet);
+        }
+        out.clear();
+    }
+
+    /**
+     * Delivers about half the packets on a simulated link, in any order, and returns the messages to be handled.
+     */
+    private List<Message> deliver(List<byte[]> link, Session to, long now, SplittableRandom random) {
+        List<Message> handled = new ArrayList<>();
+        MessageCodec codec = new MessageCodec();
+        ByteBuffer held = ByteBuffer.allocate(MessageCodec.MAX_SIZE);
+        for (Iterator<byte[]> packets = link.iterator(); packets.hasNext(); ) {
+            byte[] packet = packets.next();
+            if (random.nextBoolean()) {
+                packets.remove();
+                if (to.receive(ByteBuffer.wrap(packet), now)) {
+                    Message message = new Message();
+                    codec.decode(ByteBuffer.wrap(packet), message);
+                    handled.add(message);
+                }
+                while (to.nextHeld(held)) {
+                    Message message = new Message();
+                    codec.decode(held, message);
+                    handled.add(message);
+                }
+            }
+        }
+        return handled;
+    }
+
+    @Test
+    public void testSessionOverLossyLink() {
+        Session alice = new Session();
+        Session bob = new Session();
+        SplittableRandom random = new SplittableRandom(5);
+        List<byte[]> toAlice = new ArrayList<>();
+        List<byte[]> toBob = new ArrayList<>();
+        ByteBuffer out = ByteBuffer.allocate(MessageCodec.MAX_SIZE);
+        List<Integer> moves = new ArrayList<>();
+        int chats = 0;
+        int sent = 0;
+        long now = 0;
+        for (int step = 0; step < 60_000 && !(moves.size() == 300 && alice.isSettled()); step++, now += 1_000_000) {
+            if (sent < 300) {
+                if (alice.send(new Message(Opcode.MOVE, sent, 0).addCell(sent % 100), out, now)) {
+                    transmit(out, toBob, random);
+                }
+                out.clear();
+                if (sent % 10 == 0 && alice.send(new Message(Opcode.CHAT, sent, 0).setText("hi"), out, now)) {
+                    transmit(out, toBob, random);
+                }
+                sent++;
+            }
+            while (alice.poll(out, now)) {
+                transmit(out, toBob, random);
+            }
+            while (bob.poll(out, now)) {
+                transmit(out, toAlice, random);
+            }
+            for (Message message : deliver(toBob, bob, now, random)) {
+                if (message.getOpcode() == Opcode.CHAT) {
+                    chats++;
+                } else {
+                    assertEquals(message.getPlayer() % 100, message.getCell(0));
+                    moves.add(message.getPlayer());
+                }
+            }
+            assertTrue(deliver(toAlice, alice, now, random).isEmpty()); // Only acks come back
+        }
+
+        assertFalse(alice.isLost());
+        assertTrue(alice.isSettled());
+        assertEquals(300, moves.size());
+        for (int move = 0; move < 300; move++) {
+            assertEquals(move, (int) moves.get(move)); // Every move once, in order
+        }
+        assertTrue(chats > 0 && chats < 30); // Chat lines that were lost stay lost
+        assertTrue(alice.getRoundTrip() > 0);
+    }
+
+    @Test
+    public void testSessionGivesUp() {
+        Session session = new Session();
+        ByteBuffer out = ByteBuffer.allocate(MessageCodec.MAX_SIZE);
+        assertTrue(session.send(new Message(Opcode.MOVE, 1, 0).addCell(0), out, 0));
+        int packets = 1;
+        long now = 0;
+        for (; now < TimeUnit.MINUTES.toNanos(1) && !session.isLost(); now += TimeUnit.MILLISECONDS.toNanos(10)) {
+            out.clear();
+            while (session.poll(out, now)) {
+                packets++;
+                out.clear();
+            }
+        }
+        assertTrue(session.isLost());
+        assertEquals(10, packets);
+        assertTrue(now > TimeUnit.SECONDS.toNanos(5)); // The waits back off
+        assertFalse(session.poll(out, now));
+    }
+
+    @Test
+    public void testGameThroughServer() throws IOException {
+        try (Server server = new Server(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4);
+             User alice = new User(server.getAddress());
+             User bob = new User(server.getAddress());
+             User impostor = new User(server.getAddress())) {
+            server.start();
+            alice.send(new Message(Opcode.INIT, 0, 0).setName("alice"));
+            assertEquals("Name registered", alice.receive().getText());
+            int aliceId = alice.message.getPlayer();
+            bob.send(new Message(Opcode.INIT, 0, 0).setName("bob"));
+            assertEquals("Name registered", bob.receive().getText());
+            int bobId = bob.message.getPlayer();
+            assertNotEquals(aliceId, bobId);
+            impostor.sendText("init;0;0;alice;"); // The text form gets a text reply
+            assertTrue(impostor.receiveText().startsWith("info;0;0;Name used"));
+
+            alice.send(new Message(Opcode.HOST, aliceId, 0));
+            assertEquals("Host received", alice.receive().getText());
+            bob.send(new Message(Opcode.JOIN, bobId, 0));
+            Message list = bob.receive();
+            assertEquals(Opcode.LIST, list.getOpcode());
+            assertEquals(1, list.getNumHosts());
+            assertEquals(aliceId, list.getHostId(0));
+            assertFalse(list.isHostSalvo(0));
+            bob.send(new Message(Opcode.JOIN_GAME, bobId, aliceId).setSalvo(true));
+            assertEquals("Game mode doesn't match.", bob.receive().getText());
+            bob.send(new Message(Opcode.JOIN_GAME, bobId, aliceId));
+            assertEquals("alice", alice.receive().getOtherName());
+            assertEquals("bob", bob.receive().getName());
+            assertFalse(bob.message.isSalvo());
+
+            alice.send(new Message(Opcode.READY, aliceId, 0));
+            bob.send(new Message(Opcode.READY, bobId, 0));
+            assertEquals(Opcode.START, alice.receive().getOpcode());
+            assertEquals(Opcode.START, bob.receive().getOpcode());
+
+            impostor.send(new Message(Opcode.MOVE, aliceId, 0).addCell(5)); // Not from alice's address
+            impostor.send(new Message(Opcode.JOIN_GAME, 99, 98)); // Fails on the server, which should carry on
+            impostor.sendText("?");
+            alice.send(new Message(Opcode.SALVO, aliceId, 0).addCell(50).addCell(51)); // Not in a single shot game
+            alice.send(new Message(Opcode.MOVE, aliceId, 0).addCell(50).addCell(51)); // Nor is a move of two shots
+            for (int move = 0; move < 20; move++) {
+                alice.send(new Message(Opcode.MOVE, aliceId, 0).addCell(move));
+                assertEquals(move, bob.receive().getCell(0));
+                bob.sendText("move;" + bobId + ";0;" + move / 10 + " " + move % 10 + ";");
+                assertEquals(move, alice.receive().getCell(0));
+            }
+            bob.send(new Message(Opcode.CHAT, bobId, 0).setText("hello"));
+            Message chat = alice.receive();
+            assertEquals("bob", chat.getName());
+            assertEquals("hello", chat.getText());
+
+            alice.send(new Message(Opcode.DISCONNECT, aliceId, 0));
+            Message disconnect = bob.receive();
+            assertEquals(Opcode.DISCONNECT, disconnect.getOpcode());
+            assertEquals("alice", disconnect.getName());
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package tests;
+
+import model.Board;
+import model.BoardStrategy;
+import model.BookStrategy;
+import model.ComputerPlayer;
+import model.EndgameSolver;
+import model.FleetGenerator;
+import model.GameRecord;
+import model.ObservedBoard;
+import model.OpeningBook;
+import model.Placements;
+import model.Point;
+import model.ProbabilityAI;
+import model.RandomAI;
+import model.Rules;
+import model.ShotResult;
+import model.Replay;
+import model.SmartAI;
+import model.Strategies;
+import model.TranspositionCache;
+import org.junit.jupiter.api.Test;
+import simulation.BookBuilder;
+import simulation.Match;
+import simulation.Tournament;
+import simulation.TournamentStats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestStrategies {
+
+    /**
+     * Plays a strategy against a board until the fleet is sunk, checking every move is legal.
+     * @return The number of shots it took.
+     */
+    private int playOut(BoardStrategy strategy, Board board) {
+        while (!board.gameOver()) {
+            Point move = strategy.desiredMove(board);
+            assertNotNull(move);
+            assertTrue(board.tryShot(move.row, move.col), "Picked a used cell " + move);
+        }
+        return board.getNumMoves();
+    }
+
+    @Test
+    public void testEveryStrategyFinishesGames() {
+        SplittableRandom random = new SplittableRandom(1);
+        for (String name : Strategies.names()) {
+            for (int game = 0; game < 20; game++) {
+                int shots = playOut(Strategies.create(name, game), Match.randomBoard(random));
+                assertTrue(shots >= 17 && shots <= 100, name + " took " + shots + " shots");
+            }
+        }
+    }
+
+    @Test
+    public void testEveryStrategyPlaysOtherRules() {
+        SplittableRandom random = new SplittableRandom(2);
+        Rules small = Rules.parse("12x8:4,3,2");
+        Rules big = Rules.parse("100x100:5,4"); // Too big for a placement table
+        for (String name : Strategies.names()) {
+            BoardStrategy strategy = Strategies.create(name, 4);
+            int shots = playOut(strategy, Match.randomBoard(small, random));
+            assertTrue(shots >= 9 && shots <= 96, name + " took " + shots + " shots");
+            shots = playOut(strategy, Match.randomBoard(big, random));
+            assertTrue(shots >= 9 && shots <= 10_000, name + " took " + shots + " shots");
+            shots = playOut(strategy, Match.randomBoard(random)); // And back to the standard game
+            assertTrue(shots >= 17 && shots <= 100, name + " took " + shots + " shots");
+        }
+    }
+
+    @Test
+    public void testSeedsRepeatGames() {
+        for (String name : Strategies.names()) {
+            if (!Strategies.isReproducible(name)) {
+                continue;
+            }
+            Board first = Match.randomBoard(new SplittableRandom(5));
+            Board second = Match.randomBoard(new SplittableRandom(5));
+            playOut(Strategies.create(name, 9), first);
+            playOut(Strategies.create(name, 9), second);
+            assertEquals(first.getNumMoves(), second.getNumMoves());
+            for (int move = 0; move < first.getNumMoves(); move++) {
+                assertEquals(first.getShot(move), second.getShot(move), name + " move " + move);
+            }
+        }
+    }
+
+    @Test
+    public void testSmartAIGoldenSequence() {
+        // Every shot of a seeded game from before SmartAI kept its hit list incrementally or read other shots
+        int[] expected = {0, 1, 2, 3, 4, 5, 10, 11, 22, 33, 44, 45, 54, 43, 42, 41, 34, 55, 66, 67, 76, 86, 96, 65, 56,
+                77, 88, 99, 9, 18, 27, 36, 63, 72, 81, 90, 91, 92, 80, 14, 15, 25, 35, 75, 85, 95, 12, 50, 93, 51, 68,
+                52, 38, 53, 60, 57, 7, 58, 89, 59, 69, 49, 39, 29};
+        Board board = new Board(null);
+        board.placeShip(true, 5, 0, 0);
+        board.placeShip(false, 4, 2, 9);
+        board.placeShip(true, 3, 4, 2);
+        board.placeShip(false, 3, 6, 6);
+        board.placeShip(true, 2, 9, 0);
+        assertEquals(expected.length, playOut(new SmartAI(42), board));
+        for (int move = 0; move < expected.length; move++) {
+            assertEquals(expected[move], board.getShot(move), "move " + move);
+        }
+    }
+
+    @Test
+    public void testSmartAIFollowsUpHitsItDidNotPick() {
+        Board board = new Board(null);
+        board.placeShip(true, 3, 4, 2);
+        board.tryShot(4, 3);
+        Point move = new SmartAI(1).desiredMove(board);
+        assertEquals(1, Math.abs(move.row - 4) + Math.abs(move.col - 3), "Shot " + move + " isn't next to the hit");
+    }
+
+    @Test
+    public void testRandomAIFindsLastCell() {
+        Board board = new Board(null);
+        for (int cell = 0; cell < 99; cell++) {
+            board.tryShot(cell / Board.SIZE, cell % Board.SIZE);
+        }
+        Point move = Strategies.create("random", 3).desiredMove(board);
+        assertEquals(9, move.row);
+        assertEquals(9, move.col);
+    }
+
+    @Test
+    public void testEndgameSolverFinishesShip() {
+        Board board = new Board(null);
+        board.placeShip(true, 2, 0, 0);
+        board.tryShot(0, 0);
+        board.tryShot(1, 0);
+        ObservedBoard observed = new ObservedBoard(Placements.STANDARD);
+        observed.sync(board);
+        EndgameSolver solver = new EndgameSolver(Placements.STANDARD, new Random(1));
+        assertTrue(solver.applies(observed));
+        assertEquals(1, solver.solve(observed));
+        assertEquals(1, solver.getLastConfigurations());
+        assertTrue(solver.wasLastExact());
+    }
+
+    @Test
+    public void testEndgameSolverDoesNotHurt() {
+        int withSolver = 0;
+        int without = 0;
+        for (int game = 0; game < 200; game++) {
+            withSolver += playOut(new ProbabilityAI(game, 2), Match.randomBoard(new SplittableRandom(game)));
+            without += playOut(new ProbabilityAI(game, 0), Match.randomBoard(new SplittableRandom(game)));
+        }
+        assertTrue(withSolver <= without + 200, withSolver + " shots with the solver, " + without + " without");
+    }
+
+    @Test
+    public void testRecordedGamesReplay() throws IOException {
+        SplittableRandom random = new SplittableRandom(11);
+        for (String name : Strategies.names()) {
+            GameRecord record = Match.playRecorded(new String[]{name, "smart"}, random, 1);
+            assertEquals(-1, Replay.verify(record), name);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            record.write(new DataOutputStream(bytes));
+            GameRecord copy = GameRecord.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            assertEquals(record, copy);
+
+            Replay replay = new Replay(copy);
+            replay.runToEnd();
+            assertTrue(replay.getBoard(0).gameOver() || replay.getBoard(1).gameOver());
+            Board[] boards = {replay.getBoard(0), replay.getBoard(1)};
+            GameRecord other = GameRecord.capture(boards, new String[]{name, "random"},
+                    new long[]{record.getSeed(0), record.getSeed(1)}, 1);
+            assertNotEquals(-1, Replay.verify(other), name); // The random AI won't pick the smart AI's shots
+        }
+    }
+
+    @Test
+    public void testTranspositionCache() throws InterruptedException {
+        long entry = TranspositionCache.pack(57, -12, 9);
+        assertEquals(57, TranspositionCache.move(entry));
+        assertEquals(-12, TranspositionCache.score(entry));
+        assertEquals(9, TranspositionCache.depth(entry));
+
+        TranspositionCache cache = new TranspositionCache(3);
+        assertEquals(8, cache.capacity());
+        assertEquals(TranspositionCache.NOT_FOUND, cache.probe(0));
+        cache.store(0, entry); // The empty board hashes to 0
+        assertEquals(entry, cache.probe(0));
+        cache.store(4, TranspositionCache.pack(1, 0, 2)); // Same bucket, shallower, so it takes the second slot
+        assertEquals(entry, cache.probe(0));
+        cache.store(8, TranspositionCache.pack(2, 0, 1)); // Replaces the second slot
+        assertEquals(TranspositionCache.NOT_FOUND, cache.probe(4));
+        assertEquals(2, TranspositionCache.move(cache.probe(8)));
+        cache.store(12, TranspositionCache.pack(3, 0, 10)); // Deeper, so it replaces the first slot
+        assertEquals(TranspositionCache.NOT_FOUND, cache.probe(0));
+        assertEquals(3, TranspositionCache.move(cache.probe(12)));
+        assertEquals(7, cache.getProbes());
+        assertEquals(4, cache.getHits());
+        assertEquals(4.0 / 7, cache.hitRate());
+
+        TranspositionCache shared = new TranspositionCache(16); // Small, so the threads keep overwriting each other
+        AtomicInteger wrong = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 200_000; i++) {
+                    long key = random.nextLong(64) * 0x9E3779B97F4A7C15L;
+                    long found = shared.probe(key);
+                    if (found != TranspositionCache.NOT_FOUND && TranspositionCache.score(found) != (int) key) {
+                        wrong.incrementAndGet();
+                    }
+                    shared.store(key, TranspositionCache.pack(i & 0xFFFF, (int) key, i & 7));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, wrong.get());
+        assertTrue(shared.getHits() > 0);
+
+        Board board = new Board(null); // Cached moves are still legal moves
+        new FleetGenerator(2).placeFleet(board);
+        BoardStrategy first = Strategies.create("montecarlo-cached", 1);
+        playOut(first, board);
+        Board again = new Board(null);
+        new FleetGenerator(3).placeFleet(again);
+        long hits = Strategies.sharedCache().getHits();
+        playOut(Strategies.create("montecarlo-cached", 2), again);
+        assertTrue(Strategies.sharedCache().getHits() > hits); // At least the opening move was cached
+    }
+
+    @Test
+    public void testOpeningBook() throws IOException {
+        Path file = Files.createTempFile("opening", ".bsb");
+        try {
+            int positions = new BookBuilder(4, 50_000, 500, 6).build(file);
+            OpeningBook book = OpeningBook.open(file);
+            assertEquals(positions, book.size());
+            assertEquals(4, book.getDepth());
+            int opening = book.lookup(0); // The empty board
+            assertTrue(opening >= 0 && opening < Board.SIZE * Board.SIZE);
+
+            FleetGenerator generator = new FleetGenerator(6);
+            for (int game = 0; game < 20; game++) {
+                Board board = new Board(null);
+                generator.placeFleet(board);
+                BookStrategy strategy = new BookStrategy(book, Strategies.create("smart", game));
+                Point first = strategy.desiredMove(board);
+                assertSame(board.getPoint(opening), first);
+                assertFalse(strategy.isOutOfBook());
+                board.tryShot(first.row, first.col);
+                int second = book.lookup(board.getShotHash()); // Both a hit and a miss are common enough to be in it
+                assertTrue(second >= 0 && !board.used(second));
+                playOut(strategy, board);
+                assertTrue(strategy.isOutOfBook());
+            }
+            assertEquals(-1, book.lookup(12345));
+
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        Path other = Files.createTempFile("opening", ".bsb");
+        try {
+            Files.write(other, new byte[]{1, 2, 3, 4});
+            assertThrows(IOException.class, () -> OpeningBook.open(other));
+        } finally {
+            Files.deleteIfExists(other);
+        }
+    }
+
+    @Test
+    public void testTournament() throws IOException {
+        String[] names = {"random", "smart", "probability"};
+        TournamentStats stats = new Tournament(names, 3).run(20);
+        TournamentStats again = new Tournament(names, 3).run(20);
+        for (int s = 0; s < names.length; s++) {
+            assertEquals(80, stats.getGames(s)); // Two opponents, 20 deals, both sides of each
+            for (int opponent = 0; opponent < names.length; opponent++) {
+                assertEquals(stats.getWins(s, opponent), again.getWins(s, opponent));
+            }
+            assertTrue(stats.ratingLow(s) <= stats.rating(s) && stats.rating(s) <= stats.ratingHigh(s));
+            assertTrue(stats.getMoves(s) > 0 && stats.movePercentile(s, 50) <= stats.movePercentile(s, 99));
+        }
+        assertTrue(stats.rating(2) > stats.rating(0));
+        assertTrue(stats.meanShotsToWin(2) < stats.meanShotsToWin(0));
+
+        TournamentStats mirrored = new Tournament(new String[]{"random", "random"}, 5).run(10);
+        assertEquals(20, mirrored.getGames(0));
+
+        TournamentStats times = new TournamentStats(1);
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            times.recordMove(0, nanos * 1000);
+        }
+        assertTrue(Math.abs(times.movePercentile(0, 50) - 500_000) < 500_000 / 16);
+        assertTrue(Math.abs(times.movePercentile(0, 99) - 990_000) < 990_000 / 16);
+
+        StringBuilder csv = new StringBuilder();
+        stats.writeCsv(csv, names);
+        assertEquals(4, csv.toString().split("\n").length);
+        assertTrue(csv.toString().contains("\nprobability,80,"));
+        StringBuilder json = new StringBuilder();
+        stats.writeJson(json, names, 20, 3);
+        assertTrue(json.toString().contains("\"name\": \"smart\""));
+    }
+
+    @Test
+    public void testComputerPlayerAsync() throws Exception {
+        Board board = Match.randomBoard(new SplittableRandom(11));
+        ComputerPlayer player = new ComputerPlayer();
+        player.setStrategy(Strategies.create("probability", 11));
+        Point move = player.desiredMoveAsync(board, 5, TimeUnit.SECONDS).get();
+        assertFalse(board.used(move.row, move.col));
+        int[] salvo = player.desiredSalvoAsync(board, 5, 5, TimeUnit.SECONDS).get();
+        assertEquals(5, salvo.length);
+        assertEquals(0, board.getNumMoves()); // Picked on a copy of the board
+        assertNotEquals(ShotResult.SALVO_INVALID, board.tryShots(salvo));
+
+        List<Board> given = new ArrayList<>();
+        BoardStrategy random = new RandomAI(3);
+        player.setStrategy(target -> {
+            given.add(target);
+            return random.desiredMove(target);
+        });
+        for (int turn = 0; turn < 3; turn++) {
+            Point shot = player.desiredMoveAsync(board, 5, TimeUnit.SECONDS).get();
+            assertTrue(board.tryShot(shot.row, shot.col));
+        }
+        assertNotSame(board, given.get(0));
+        assertSame(given.get(0), given.get(2)); // The same board every move, so strategies can follow it
+        assertEquals(board.getNumMoves() - 1, given.get(2).getNumMoves());
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        AtomicReference<Board> seen = new AtomicReference<>();
+        BoardStrategy slow = target -> {
+            seen.set(target);
+            started.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return Point.of(0, 0);
+        };
+        player.setStrategy(slow);
+        CompletableFuture<Point> late = player.desiredMoveAsync(board, 50, TimeUnit.MILLISECONDS);
+        ExecutionException timedOut = assertThrows(ExecutionException.class, late::get);
+        assertTrue(timedOut.getCause() instanceof TimeoutException);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertNotSame(board, seen.get()); // So a move made in its place can't race the strategy
+
+        CountDownLatch restarted = new CountDownLatch(1);
+        player.setStrategy(target -> {
+            restarted.countDown();
+            return slow.desiredMove(target);
+        });
+        CompletableFuture<Point> cancelled = player.desiredMoveAsync(board, 0, TimeUnit.SECONDS);
+        assertTrue(restarted.await(5, TimeUnit.SECONDS));
+        player.setStrategy(new RandomAI()); // Swapping strategies cancels the pending move
+        assertTrue(cancelled.isCancelled());
+    }
+}
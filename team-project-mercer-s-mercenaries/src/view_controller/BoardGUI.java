@@ -20,6 +20,8 @@ import javafx.scene.control.TextField;
 import javafx.scene.control.ListView;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Slider;
 
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.Background;
@@ -46,31 +48,49 @@ import javafx.scene.input.KeyCode;
 import javafx.stage.WindowEvent;
 
 import Networking.Client.Client;
+import Networking.Protocol.Message;
+import Networking.Protocol.Opcode;
+
+import simulation.GameArchive;
 
 import model.*;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Objects;
-import java.util.Random;
-import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import javafx.animation.FadeTransition;
+import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
 import javafx.animation.TranslateTransition;
 
 import javafx.util.Duration;
 
-public class BoardGUI extends Application {
+public class BoardGUI extends Application implements BoardListener {
 	// menuScene Components
 	private VBox menuLayout;
     private Button easyButton;
 	private Button hardButton;
 	private Button onlineButton;
 	private Button tutorialButton;
+	private CheckBox salvoBox;
     private TextArea placementText;
     private Label gameSummaryLabel;
     private Board playerBoard;
@@ -80,12 +100,19 @@ public class BoardGUI extends Application {
     private Scene menuScene;
     private Scene tutorialScene;
 
+    private static final long CPU_MOVE_DEADLINE_MS = 2000; // After this, the computer shoots at random instead
+    private static final Duration REPLAY_PACE = Duration.millis(300); // Between shots of a replay at normal speed
+    private static final Rules RULES = Rules.STANDARD; // The GUI plays the standard game; the model takes any rules
+
     private ComputerPlayer computerPlayer;
+    private String computerStrategy; // The registered name of the computer's strategy, null if it can't be recorded
+    private long computerSeed;
+    private GameRecord lastGame;
+    private boolean replaying;
+    private double replaySpeed = 1; // Replays show a shot every REPLAY_PACE divided by this
     private Rectangle[][] playerCells;
     private Rectangle[][] enemyCells;
     private HashMap<Integer, Integer> shipLens;
-    private HashMap<Point, Ship> ships;
-    private HashMap<Point, Ship> enemyShips;
     private int currLen;
     private int currRow;
     private int currCol;
@@ -94,7 +121,11 @@ public class BoardGUI extends Application {
     private boolean shotReady;
     private boolean online = false;
     private boolean host = false;
+    private boolean salvo; // Each turn is one shot per ship still afloat, fired together. Online, the host's choice
+    private final int[] salvoShots = new int[Board.FLEET.length]; // The cells picked for the next salvo
+    private int salvoCount;
     private String username;
+    private int playerId; // Handed out by the server when the name is registered
     private Client client = null;
     private Stage stage;
     private GridPane yourBoard;
@@ -150,9 +181,12 @@ public class BoardGUI extends Application {
     private void mainMenu() {
 
         stage.setOnCloseRequest((event) -> {
+            computerPlayer.cancel();
             if(client != null) {
-                client.disconnect(username);
                 chatWindow.close();
+                Platform.exit();
+                client.disconnect(playerId).whenComplete((ignored, error) -> System.exit(0)); // Once the server knows
+                return;
             }
             Platform.exit();
             System.exit(0);
@@ -170,11 +204,11 @@ public class BoardGUI extends Application {
         // local handlers to swap the stage from menuScene to gameScene
         easyButton.setOnAction(e -> {
             placementScene();
-            computerPlayer.setStrategy(new RandomAI());
+            setComputerStrategy("random");
         });
         hardButton.setOnAction(e -> {
             placementScene();
-            computerPlayer.setStrategy(new SmartAI());
+            setComputerStrategy("smart");
         });
         onlineButton.setOnAction(e -> {
             connectionScene(); // Scene that sets username.
@@ -208,8 +242,11 @@ public class BoardGUI extends Application {
 		onlineButton.setFont(Font.font("Impact"));
 		tutorialButton = new Button("Game Tutorial");
 		tutorialButton.setFont(Font.font("Impact"));
+		salvoBox = new CheckBox("Salvo");
+		salvoBox.setFont(Font.font("Impact"));
+		salvoBox.setOnAction(e -> salvo = salvoBox.isSelected());
 		
-		menuButtons.getChildren().addAll(easyButton, hardButton, onlineButton, tutorialButton);
+		menuButtons.getChildren().addAll(easyButton, hardButton, onlineButton, tutorialButton, salvoBox);
 		menuButtons.setAlignment(Pos.CENTER);
 
     	menuLayout.getChildren().addAll(menuTitle, imageView, menuButtons);
@@ -296,7 +333,7 @@ public class BoardGUI extends Application {
                 try {
                     client = new Client(IP.getText(), this);
                     this.host = true;
-                    client.sendPacket("init;" + userText.getText());
+                    client.sendPacket(new Message(Opcode.INIT, 0, 0).setName(userText.getText()));
                 } catch (UnknownHostException e) {
                     ipPrompt.setText("Unknown host!");
                 }
@@ -312,7 +349,7 @@ public class BoardGUI extends Application {
                 try {
                     client = new Client(IP.getText(), this);
                     this.host = false;
-                    client.sendPacket("init;" + userText.getText());
+                    client.sendPacket(new Message(Opcode.INIT, 0, 0).setName(userText.getText()));
                 } catch (UnknownHostException e) {
                     ipPrompt.setText("Unknown host!");
                 }
@@ -342,7 +379,7 @@ public class BoardGUI extends Application {
         TextField chatBox = new TextField();
         chatBox.setOnKeyPressed((event) -> {
             if(event.getCode().equals(KeyCode.ENTER)) {
-                client.sendPacket("chat;" + username + ";" + chatBox.getText());
+                client.sendPacket(new Message(Opcode.CHAT, playerId, 0).setText(chatBox.getText()));
                 chatArea.appendText(username + ": " + chatBox.getText() + "\n");
                 chatBox.setText("");
             }
@@ -367,20 +404,22 @@ public class BoardGUI extends Application {
 
     /**
      * Scene to show to players trying to join existing games.
-     * @param hosts The list of current game hosts, separated by a semicolon.
+     * @param hostIds The ids of the current game hosts.
+     * @param hostNames The names of the current game hosts.
+     * @param hostSalvos If each game is played in salvos.
      */
-    private void joinScene(String hosts) {
-        StringBuilder buf = new StringBuilder();
+    private void joinScene(int[] hostIds, String[] hostNames, boolean[] hostSalvos) {
         ListView<String> listView = new ListView<>();
-        for(int i = 5; i < hosts.length(); i++) {
-            if(hosts.charAt(i) == ';') {
-                listView.getItems().add(buf.toString());
-                buf = new StringBuilder();
-            } else {
-                buf.append(hosts.charAt(i));
-            }
+        for (int i = 0; i < hostNames.length; i++) {
+            listView.getItems().add(hostSalvos[i] ? hostNames[i] + " (salvo)" : hostNames[i]);
         }
-        listView.setOnMouseClicked((event) -> client.sendPacket("jngm;" + username + ";" + listView.getSelectionModel().getSelectedItem()));
+        listView.setOnMouseClicked((event) -> {
+            int selected = listView.getSelectionModel().getSelectedIndex();
+            if (selected >= 0) {
+                client.sendPacket(new Message(Opcode.JOIN_GAME, playerId, hostIds[selected])
+                        .setSalvo(hostSalvos[selected]));
+            }
+        });
         Scene joinScene = new Scene(listView, 200, 300);
         stage.setScene(joinScene);
     }
@@ -390,7 +429,7 @@ public class BoardGUI extends Application {
      */
     private void placementScene() {
         // Create your board at the bottom
-        playerCells = new Rectangle[10][10];
+        playerCells = new Rectangle[RULES.getHeight()][RULES.getWidth()];
         VBox gameLayout = new VBox(50);
 
         yourBoard = createBoard(true);
@@ -432,7 +471,7 @@ public class BoardGUI extends Application {
 
         // Create the opponent board at the top
         if(!gameReady) {
-            enemyCells = new Rectangle[10][10];
+            enemyCells = new Rectangle[RULES.getHeight()][RULES.getWidth()];
             opponentBoard = createBoard(false);
             if(!online) {
                 placeEnemyBoard();
@@ -457,10 +496,9 @@ public class BoardGUI extends Application {
     	GridPane board = new GridPane();
 
         int cellSize = 35;
-        int boardSize = 10;
 
-        for (int i = 0; i < boardSize; i++) {
-            for (int j = 0; j < boardSize; j++) {
+        for (int i = 0; i < RULES.getHeight(); i++) {
+            for (int j = 0; j < RULES.getWidth(); j++) {
                 Rectangle cell = new Rectangle(cellSize, cellSize);
                 cell.setFill(waterPattern);
                 cell.setStroke(Color.BLACK);
@@ -478,23 +516,11 @@ public class BoardGUI extends Application {
     }
 
     /**
-     * Randomly generates the board for the enemy player. Guaranteed to place 5 ships of the 5 specified sizes.
-     * Has a 50% chance to place ships horizontally, 50% vertically.
+     * Randomly generates the board for the enemy player. Guaranteed to place the 5 ships of the standard fleet, with
+     * every legal layout equally likely.
      */
     private void placeEnemyBoard() {
-        Random generator = new Random();
-        int[] sizes = {2, 3, 3, 4, 5};
-        for(int i = 0; i < sizes.length; i++) {
-            int row = generator.nextInt(10);
-            int col = generator.nextInt(10);
-            boolean horizontal = Math.random() > 0.5;
-
-            if (!enemyBoard.placeShip(horizontal, sizes[i], row, col)) {
-                i--;
-            } else {
-                addShip(horizontal, sizes[i], row, col, enemyShips);
-            }
-        }
+        new FleetGenerator().placeFleet(enemyBoard);
     }
 
     /**
@@ -507,10 +533,10 @@ public class BoardGUI extends Application {
 
         int row = currRow;
         int col = currCol;
-        if(horizontal && col > (10 - currLen)) {
-            col = 10 - currLen;
-        } else if (!horizontal && row > (10 - currLen)){
-            row = 10 - currLen;
+        if(horizontal && col > (RULES.getWidth() - currLen)) {
+            col = RULES.getWidth() - currLen;
+        } else if (!horizontal && row > (RULES.getHeight() - currLen)){
+            row = RULES.getHeight() - currLen;
         }
 
         char[][] board = playerBoard.getBoard();
@@ -550,7 +576,7 @@ public class BoardGUI extends Application {
      */
     private void resetBoardToCurr() {
         char[][] myBoard = playerBoard.getBoard();
-        setPlayerBoard(myBoard, null);
+        setPlayerBoard(myBoard, new Point[0]);
     }
 
     /**
@@ -619,49 +645,6 @@ public class BoardGUI extends Application {
         }
     }
 
-    /**
-     * Adds a ship to the internal mapping of positions and ships. Used to quickly look up what animation to use.
-     * @param horizontal If the ship was placed horizontally or vertically.
-     * @param currLen The length of the ship that was just placed.
-     * @param row The row of the nose.
-     * @param col The col of the nose.
-     * @param map The mapping to add this ship to.
-     */
-    private void addShip(boolean horizontal, int currLen, int row, int col, HashMap<Point, Ship> map) {
-        ArrayList<Point> pos = new ArrayList<>();
-        Point nose = null;
-        if(horizontal && col > (10 - currLen)) {
-            col = 10 - currLen;
-        } else if (!horizontal && row > (10 - currLen)){
-            row = 10 - currLen;
-        }
-
-        if(horizontal) {
-            for (int i = 0; i < currLen; i++) {
-                if(i == 0) {
-                    nose = new Point(row, col + i);
-                }
-                pos.add(new Point(row, col + i));
-            }
-        } else {
-            for (int i = 0; i < currLen; i++) {
-                if(i == 0) {
-                    nose = new Point(row + i, col);
-                }
-                pos.add(new Point(row + i, col));
-            }
-        }
-        Ship ship;
-        if(map == ships) {
-            ship = new Ship(nose, pos, playerBoard, horizontal);
-        } else {
-            ship = new Ship(nose, pos, enemyBoard, horizontal);
-        }
-        for(Point point : pos) {
-            map.put(point, ship);
-        }
-    }
-
     /**
      * Sets up the game for gameplay after placement is finished.
      */
@@ -677,8 +660,12 @@ public class BoardGUI extends Application {
                         }
                         for (int i = 0; i < enemyCells.length; i++) {
                             for (int j = 0; j < enemyCells[i].length; j++) {
-                                if (enemyCells[i][j] == event.getSource() && enemyBoard.tryShot(i, j) && !enemyBoard.gameOver()) {
-                                    getNextCPUMove();
+                                if (enemyCells[i][j] == event.getSource()) {
+                                    if (salvo) {
+                                        queueSalvoShot(i, j);
+                                    } else if (enemyBoard.tryShot(i, j) && !enemyBoard.gameOver()) {
+                                        getNextCPUMove();
+                                    }
                                 }
                             }
                         }
@@ -694,9 +681,13 @@ public class BoardGUI extends Application {
                         }
                         for (int i = 0; i < enemyCells.length; i++) {
                             for (int j = 0; j < enemyCells[i].length; j++) {
-                                if (enemyCells[i][j] == event.getSource() && enemyBoard.tryShot(i, j)) {
-                                    client.sendPacket("move;" + username + ";" + i + ";" + j + ";");
-                                    shotReady = false;
+                                if (enemyCells[i][j] == event.getSource()) {
+                                    if (salvo) {
+                                        queueSalvoShot(i, j);
+                                    } else if (enemyBoard.tryShot(i, j)) {
+                                        client.sendPacket(new Message(Opcode.MOVE, playerId, 0).addCell(i * Board.SIZE + j));
+                                        shotReady = false;
+                                    }
                                 }
                             }
                         }
@@ -706,21 +697,116 @@ public class BoardGUI extends Application {
         }
     }
 
-    private void getNextCPUMove() {
-        Point point = computerPlayer.desiredMove(playerBoard);
-        ExecutorService shotExec = Executors.newSingleThreadExecutor();
-        shotExec.submit(() -> {
-            try {
-                shotReady = false;
-                Thread.sleep(500);
-                playerBoard.tryShot(point.row, point.col);
-                Thread.sleep(100); // So the user can skip the animation
-                shotReady = true;
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+    /**
+     * Adds a cell to the player's next salvo, marking it on the enemy board. Once there is one cell per ship the player
+     * has afloat, the whole salvo is fired at once.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     */
+    private void queueSalvoShot(int row, int col) {
+        int cell = row * Board.SIZE + col;
+        if (enemyBoard.used(cell)) {
+            return;
+        }
+        for (int i = 0; i < salvoCount; i++) {
+            if (salvoShots[i] == cell) {
+                return;
             }
-            shotExec.shutdown();
-        });
+        }
+        salvoShots[salvoCount++] = cell;
+        enemyCells[row][col].setFill(Color.YELLOW);
+        if (salvoCount < Math.min(playerBoard.getShipsAfloat(), enemyBoard.getOpenCells())) {
+            return;
+        }
+        int[] shots = Arrays.copyOf(salvoShots, salvoCount);
+        salvoCount = 0;
+        enemyBoard.tryShots(shots);
+        if (online) {
+            Message message = new Message(Opcode.SALVO, playerId, 0);
+            for (int shot : shots) {
+                message.addCell(shot);
+            }
+            client.sendPacket(message);
+            shotReady = false;
+        } else if (!enemyBoard.gameOver()) {
+            getNextCPUMove();
+        }
+    }
+
+    /**
+     * Asks the computer for its move in the background, so the board keeps rendering while it thinks. The shot is
+     * made on the FX thread once the move is ready and at least half a second has passed. In a salvo game the
+     * computer fires one shot per ship it has afloat. The computer thinks on a copy of the board, so the random move
+     * made in its place when it misses the deadline can't race it.
+     */
+    private void getNextCPUMove() {
+        shotReady = false;
+        Board target = playerBoard;
+        CompletableFuture<Void> delay = CompletableFuture.runAsync(() -> { },
+                CompletableFuture.delayedExecutor(500, TimeUnit.MILLISECONDS));
+        if (salvo) {
+            int shots = enemyBoard.getShipsAfloat();
+            computerPlayer.desiredSalvoAsync(target, shots, CPU_MOVE_DEADLINE_MS, TimeUnit.MILLISECONDS)
+                    .thenCombine(delay, (cells, ignored) -> cells)
+                    .whenComplete((cells, error) -> Platform.runLater(() -> applyCPUSalvo(target, shots, cells, error)));
+            return;
+        }
+        computerPlayer.desiredMoveAsync(target, CPU_MOVE_DEADLINE_MS, TimeUnit.MILLISECONDS)
+                .thenCombine(delay, (point, ignored) -> point)
+                .whenComplete((point, error) -> Platform.runLater(() -> applyCPUMove(target, point, error)));
+    }
+
+    /**
+     * Makes the computer's shot. Runs on the FX thread.
+     * @param target The board the move was computed for.
+     * @param point The move, or null if there was an error.
+     * @param error Why there is no move, or null.
+     */
+    private void applyCPUMove(Board target, Point point, Throwable error) {
+        if (target != playerBoard || target.gameOver() || cancelled(error)) { // The game ended or was reset
+            return;
+        }
+        if (error != null) {
+            point = new RandomAI().desiredMove(target); // The strategy was too slow or failed
+            computerStrategy = null; // So the game can't be replayed from the seed
+        }
+        target.tryShot(point.row, point.col);
+        readyAfterShot();
+    }
+
+    /**
+     * Makes the computer's salvo. Runs on the FX thread.
+     * @param target The board the salvo was computed for.
+     * @param shots The number of shots the computer was asked for.
+     * @param cells The cells to shoot at, or null if there was an error.
+     * @param error Why there is no salvo, or null.
+     */
+    private void applyCPUSalvo(Board target, int shots, int[] cells, Throwable error) {
+        if (target != playerBoard || target.gameOver() || cancelled(error)) { // The game ended or was reset
+            return;
+        }
+        if (error != null) {
+            cells = new ComputerPlayer().desiredSalvo(target, shots); // The strategy was too slow or failed
+        }
+        target.tryShots(cells);
+        readyAfterShot();
+    }
+
+    /**
+     * Checks if the computer's move was cancelled, rather than failing.
+     */
+    private static boolean cancelled(Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        return cause instanceof CancellationException;
+    }
+
+    /**
+     * Lets the player shoot again after a short pause.
+     */
+    private void readyAfterShot() {
+        PauseTransition pause = new PauseTransition(Duration.millis(100)); // So the user can skip the animation
+        pause.setOnFinished(e -> shotReady = true);
+        pause.play();
     }
 
     /**
@@ -728,6 +814,10 @@ public class BoardGUI extends Application {
      * @param loser True if this player is the loser, false otherwise.
      */
     private void gameOver(boolean loser) {
+        if (!online && !replaying && !salvo && computerStrategy != null) { // Records assume one shot per turn
+            recordGame();
+        }
+        replaying = false;
         VBox gameOverPane = new VBox();
         HBox buttonPane = new HBox();
         Label statsText = getStyledStatsTextArea(loser);
@@ -736,12 +826,85 @@ public class BoardGUI extends Application {
 
         configureGamePane(gameOverPane, statsText, buttonPane);
         configureButtonPane(buttonPane, playAgainButton, quitButton);
+        if (lastGame != null) {
+            Button replayButton = new Button("Replay");
+            replayButton.setStyle(quitButton.getStyle());
+            replayButton.setOnAction(e -> replayGame(lastGame, REPLAY_PACE));
+            HBox.setMargin(replayButton, new Insets(20, 0, 0, 0));
+            buttonPane.getChildren().add(1, replayButton);
+
+            Slider speedSlider = new Slider(0.5, 4, replaySpeed); // Times normal speed
+            speedSlider.setMajorTickUnit(0.5);
+            speedSlider.setMinorTickCount(0);
+            speedSlider.setSnapToTicks(true);
+            speedSlider.setShowTickLabels(true);
+            speedSlider.setMaxWidth(300);
+            speedSlider.valueProperty().addListener((observable, old, speed) -> replaySpeed = speed.doubleValue());
+            VBox speedPane = new VBox(new Label("Replay speed"), speedSlider);
+            speedPane.setAlignment(Pos.CENTER);
+            gameOverPane.getChildren().add(speedPane);
+        }
 
-        Scene scene = createStyledScene(gameOverPane, "Game Over!", 500, 390);
+        Scene scene = createStyledScene(gameOverPane, "Game Over!", 500, lastGame != null ? 450 : 390);
 
         stage.setScene(scene);
     }
 
+    /**
+     * Picks the computer's strategy with a fresh seed, which is kept so the game can be recorded.
+     * @param name The registered name of the strategy.
+     */
+    private void setComputerStrategy(String name) {
+        computerStrategy = name;
+        computerSeed = ThreadLocalRandom.current().nextLong();
+        computerPlayer.setStrategy(Strategies.create(name, computerSeed));
+    }
+
+    /**
+     * Records the finished game against the computer and saves it in the recordings folder, so it can be replayed.
+     * It is also added to the folder's game archive for offline analysis.
+     */
+    private void recordGame() {
+        lastGame = GameRecord.capture(new Board[]{enemyBoard, playerBoard},
+                new String[]{GameRecord.HUMAN, computerStrategy}, new long[]{0, computerSeed}, 0);
+        Path file = Path.of("recordings", "game-" + System.currentTimeMillis() + ".bsr");
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                lastGame.write(out);
+            }
+            try (GameArchive archive = GameArchive.open(file.resolveSibling("games.bsa"), 1 << 20)) {
+                archive.append(lastGame);
+            }
+        } catch (IOException e) {
+            System.err.println("Couldn't save the game to " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replays a recorded game on fresh boards, one shot every pace sped up by the chosen replay speed, then shows the
+     * game over screen again.
+     * @param record The game to replay.
+     * @param pace The time between shots at normal speed.
+     */
+    private void replayGame(GameRecord record, Duration pace) {
+        Replay replay = new Replay(record, this);
+        replaying = true;
+        enemyBoard = replay.getBoard(0);
+        playerBoard = replay.getBoard(1);
+        playerCells = new Rectangle[RULES.getHeight()][RULES.getWidth()];
+        yourBoard = createBoard(true);
+        enemyCells = new Rectangle[RULES.getHeight()][RULES.getWidth()];
+        opponentBoard = createBoard(false);
+        gameReady = true;
+        stage.setScene(createGameScene());
+        updateBoard(playerBoard.getBoard(), playerBoard, null); // Show the player's ships
+        Timeline timeline = new Timeline(new KeyFrame(pace, e -> replay.step()));
+        timeline.setCycleCount(replay.getRemaining());
+        timeline.setRate(replaySpeed);
+        timeline.play();
+    }
+
     /**
      * Creates a styled stats text area and returns a Label containing the stats.
      *
@@ -875,7 +1038,7 @@ public class BoardGUI extends Application {
     private void handlePlayAgain() {
         if (online) {
             chatArea.appendText("Waiting for the opponent to respond to the rematch request...\n");
-            client.sendPacket("rmch;" + username);
+            client.sendPacket(new Message(Opcode.REMATCH, playerId, 0));
         } else {
             reset();
             mainMenu();
@@ -898,9 +1061,33 @@ public class BoardGUI extends Application {
      * @param pos The position the update occurred on, if any.
      */
     public void updateBoard(char[][] newBoard, Board source, Point pos) {
-        if(!gameReady && pos != null) {
-            addShip(horizontal, currLen, pos.row, pos.col, ships);
+        refreshBoard(newBoard, source, pos == null ? new Point[0] : new Point[]{pos});
+    }
+
+    /**
+     * Reacts to changes on the enemy and player boards, redrawing the board once for all of them. A salvo of shots
+     * arrives as one change.
+     * @param board The board that changed.
+     * @param events What changed.
+     */
+    @Override
+    public void boardChanged(Board board, List<BoardEvent> events) {
+        List<Point> shots = new ArrayList<>();
+        for (BoardEvent event : events) {
+            if (event.getType() == BoardEvent.Type.SHOT) {
+                shots.add(event.getPoint());
+            }
         }
+        refreshBoard(board.getBoard(), board, shots.toArray(new Point[0]));
+    }
+
+    /**
+     * Redraws a board after an update and checks if the game is over.
+     * @param newBoard The new state of the board.
+     * @param source The source of the update.
+     * @param shots The positions of any new shots.
+     */
+    private void refreshBoard(char[][] newBoard, Board source, Point[] shots) {
         if(source == playerBoard) { // Update the player's array, not the enemy's array.
             if(!gameReady) { // Checking for placement amounts left.
                 shipLens.put(currLen, shipLens.get(currLen) - 1); // Will always be valid for the last placed ship
@@ -912,7 +1099,7 @@ public class BoardGUI extends Application {
                     }
                     if(i == 5) {
                         if(online) {
-                            client.sendPacket("redy;" + username);
+                            client.sendPacket(new Message(Opcode.READY, playerId, 0));
                         }
                         for(Rectangle[] cellArr : playerCells) { // Remove handlers from the cells and game scene
                             for (Rectangle cell : cellArr) {
@@ -928,7 +1115,7 @@ public class BoardGUI extends Application {
                     }
                 }
             }
-            setPlayerBoard(newBoard, pos);
+            setPlayerBoard(newBoard, shots);
             if(playerBoard.gameOver()) {
                 for(Rectangle[] cellArr : enemyCells) {
                     for (Rectangle cell : cellArr) {
@@ -938,7 +1125,7 @@ public class BoardGUI extends Application {
                 Platform.runLater(()-> gameOver(true));
             }
         } else if (source == enemyBoard) { // Update the enemy array, not the player array.
-            setEnemyBoard(newBoard, pos);
+            setEnemyBoard(newBoard, shots);
             if(enemyBoard.gameOver()) {
                 for(Rectangle[] cellArr : enemyCells) {
                     for (Rectangle cell : cellArr) {
@@ -953,19 +1140,16 @@ public class BoardGUI extends Application {
     /**
      * Sets the player board gui element to a specific board array.
      * @param newBoard The board array to use for the new gui.
-     * @param pos The position of any new shots. This will be null in any case where shots were not made.
+     * @param shots The positions of any new shots.
      */
-    private void setPlayerBoard(char[][] newBoard, Point pos) {
+    private void setPlayerBoard(char[][] newBoard, Point[] shots) {
         for(int i = 0; i < playerCells.length; i++) {
             for(int j = 0; j < playerCells[i].length; j++) {
                 if (newBoard[i][j] == 'S') {
-                    Point point = new Point(i, j);
-                    Ship ship = ships.get(point);
-                    if(ship != null) {
-                        chooseImageOnOrientation(playerCells, ship, point, noseHPattern, noseVPattern, bodyHPattern, bodyVPattern);
-                    }
+                    chooseImageOnOrientation(playerCells, playerBoard, playerBoard.getShipAt(i, j), i, j,
+                            noseHPattern, noseVPattern, bodyHPattern, bodyVPattern);
                 } else {
-                    chooseImage(newBoard, pos, i, j, ships, playerCells);
+                    chooseImage(newBoard, shots, i, j, playerBoard, playerCells);
                 }
             }
         }
@@ -974,28 +1158,31 @@ public class BoardGUI extends Application {
     /**
      * Chooses the image to use for an update to the board. Also handles setting lambdas for animations if needed.
      * @param newBoard The board after the latest change.
-     * @param pos The position the change occurred on.
+     * @param shots The positions the change occurred on.
      * @param row The row to look at.
      * @param col The column to look at.
-     * @param updateShips The mapping of ships for this board.
+     * @param board The board the change occurred on.
      * @param cells The cells to change.
      */
-    private void chooseImage(char[][] newBoard, Point pos, int row, int col, HashMap<Point, Ship> updateShips, Rectangle[][] cells) {
+    private void chooseImage(char[][] newBoard, Point[] shots, int row, int col, Board board, Rectangle[][] cells) {
+        boolean shot = Arrays.asList(shots).contains(Point.of(row, col));
         if (newBoard[row][col] == 'H') {
-            if(row == pos.row && col == pos.col) {
-                if(updateShips.get(pos).sunk()) {
-                    Ship ship = updateShips.get(pos);
-                    for(Point point : ship.positions) {
+            if(shot) {
+                int ship = board.getShipAt(row, col);
+                if(board.isSunk(ship)) {
+                    for(int k = 0; k < board.getShipLength(ship); k++) {
+                        int shipRow = board.isShipHorizontal(ship) ? board.getShipRow(ship) : board.getShipRow(ship) + k;
+                        int shipCol = board.isShipHorizontal(ship) ? board.getShipCol(ship) + k : board.getShipCol(ship);
                         ExecutorService execSink = Executors.newSingleThreadExecutor();
-                        chooseImageOnOrientation(cells, ship, point, noseHExplosion, noseVExplosion, bodyHExplosion, bodyVExplosion);
+                        chooseImageOnOrientation(cells, board, ship, shipRow, shipCol, noseHExplosion, noseVExplosion, bodyHExplosion, bodyVExplosion);
                         mediaPlayer.stop();
                         mediaPlayer.play();
                         execSink.submit(() -> {
                             try {
                                 Thread.sleep(500);
-                                chooseImageOnOrientation(cells, ship, point, noseHSink, noseVSink, bodyHSink, bodyVSink);
+                                chooseImageOnOrientation(cells, board, ship, shipRow, shipCol, noseHSink, noseVSink, bodyHSink, bodyVSink);
                                 Thread.sleep(120);
-                                chooseImageOnOrientation(cells, ship, point, noseHSunk, noseVSunk, bodyHSunk, bodyVSunk);
+                                chooseImageOnOrientation(cells, board, ship, shipRow, shipCol, noseHSunk, noseVSunk, bodyHSunk, bodyVSunk);
                             } catch (InterruptedException e) {
                                 throw new RuntimeException(e);
                             }
@@ -1003,16 +1190,14 @@ public class BoardGUI extends Application {
                         });
                     }
                 } else {
-                    Point point = new Point(row, col);
-                    Ship ship = updateShips.get(pos);
-                    chooseImageOnOrientation(cells, ship, point, noseHExplosion, noseVExplosion, bodyHExplosion, bodyVExplosion);
+                    chooseImageOnOrientation(cells, board, ship, row, col, noseHExplosion, noseVExplosion, bodyHExplosion, bodyVExplosion);
                     mediaPlayer.stop();
                     mediaPlayer.play();
                     ExecutorService exec = Executors.newSingleThreadExecutor();
                     exec.submit(() -> {
                         try {
                             Thread.sleep(500);
-                            cells[point.row][point.col].setFill(Color.RED);
+                            cells[row][col].setFill(Color.RED);
                         } catch (InterruptedException e) {
                             throw new RuntimeException(e);
                         }
@@ -1021,7 +1206,7 @@ public class BoardGUI extends Application {
                 }
             }
         } else if (newBoard[row][col] == 'M') {
-            if (pos.row == row && pos.col == col) {
+            if (shot) {
                 cells[row][col].setFill(splash);
                 mediaPlayer2.stop();
                 mediaPlayer2.play();
@@ -1045,26 +1230,28 @@ public class BoardGUI extends Application {
     /**
      * Chooses which image to use based on the orientation of a given ship.
      * @param cells The cells the ship exists on.
-     * @param ship The ship to compare to.
-     * @param point The coordinate of the update.
+     * @param board The board the ship is on.
+     * @param ship The id of the ship to compare to.
+     * @param row The row of the update.
+     * @param col The column of the update.
      * @param noseH The image to use for the horizontal nose.
      * @param noseV The image to use for the vertical nose.
      * @param bodyH The image to use for the horizontal body.
      * @param bodyV The image to use for the vertical body.
      */
-    private void chooseImageOnOrientation(Rectangle[][] cells, Ship ship, Point point, ImagePattern noseH,
+    private void chooseImageOnOrientation(Rectangle[][] cells, Board board, int ship, int row, int col, ImagePattern noseH,
                                           ImagePattern noseV, ImagePattern bodyH, ImagePattern bodyV) {
-        if(point.equals(ship.nose)) {
-            if(ship.horizontal) {
-                cells[point.row][point.col].setFill(noseH);
+        if(row == board.getShipRow(ship) && col == board.getShipCol(ship)) {
+            if(board.isShipHorizontal(ship)) {
+                cells[row][col].setFill(noseH);
             } else {
-                cells[point.row][point.col].setFill(noseV);
+                cells[row][col].setFill(noseV);
             }
         } else {
-            if(ship.horizontal) {
-                cells[point.row][point.col].setFill(bodyH);
+            if(board.isShipHorizontal(ship)) {
+                cells[row][col].setFill(bodyH);
             } else {
-                cells[point.row][point.col].setFill(bodyV);
+                cells[row][col].setFill(bodyV);
             }
         }
     }
@@ -1072,33 +1259,35 @@ public class BoardGUI extends Application {
     /**
      * Sets the player board gui element to a specific board array.
      * @param newBoard The board array to use for the new gui.
-     * @param pos The position of any new shots. This will be null in any case where shots were not made.
+     * @param shots The positions of any new shots.
      */
-    private void setEnemyBoard(char[][] newBoard, Point pos) {
+    private void setEnemyBoard(char[][] newBoard, Point[] shots) {
         for (int i = 0; i < newBoard.length; i++) {
             for (int j = 0; j < newBoard[i].length; j++ ) {
-                chooseImage(newBoard, pos, i, j, enemyShips, enemyCells);
+                chooseImage(newBoard, shots, i, j, enemyBoard, enemyCells);
             }
         }
     }
 
     /**
-     * Handles messages sent by the game server.
+     * Handles messages sent by the game server. Called on the thread reading them, which reuses the message for the
+     * next one, so anything needed on the FX thread is copied out first.
      * @param message The message to handle.
      */
-    public void handle(String message) {
+    public void handle(Message message) {
         if(client == null) {
             return;
         }
-        switch (message.substring(0, 5)) {
-            case "info;" -> {
-                switch (message.substring(5)) {
+        switch (message.getOpcode()) {
+            case INFO -> {
+                switch (message.getText()) {
                     case "Name registered" -> {
                         this.username = userText.getText();
+                        this.playerId = message.getPlayer();
                         if (host) {
-                            client.sendPacket("host;" + username + ";");
-                        } else {
-                            client.sendPacket("join;" + username + ";");
+                            client.sendPacket(new Message(Opcode.HOST, playerId, 0).setSalvo(salvo));
+                        } else { // Hosts a game in this mode if there is none to join
+                            client.sendPacket(new Message(Opcode.JOIN, playerId, 0).setSalvo(salvo));
                         }
 
                         online = true; // Once we are acknowledged by the server, switch to online state
@@ -1114,7 +1303,7 @@ public class BoardGUI extends Application {
                         stage.setTitle("Battleship - Host");
                         hostScene();
                     });
-                    case "server offline;" -> Platform.runLater(() -> {
+                    case "server offline" -> Platform.runLater(() -> {
                         Alert alert = new Alert(Alert.AlertType.INFORMATION);
                         alert.setContentText("The server is offline! Returning to the main menu.");
                         client = null;
@@ -1122,72 +1311,117 @@ public class BoardGUI extends Application {
                         alert.setOnCloseRequest((event) -> stage.setScene(menuScene));
                         alert.showAndWait();
                     });
+                    default -> {
+                    }
                 }
             } // Break this case of the switch statement
-            case "list;" -> Platform.runLater(() -> {
-                stage.setTitle("Battleship - Client");
-                shotReady = false;
-                joinScene(message);
-            });
-            case "join;" -> Platform.runLater(() -> {
-                String[] info = message.split(";");
-                chatArea.appendText(info[1] + " joined " + info[2] + "'s game.\n");
-                if (shotReady) {
-                    chatArea.appendText("You have the first shot.\n");
-                } else {
-                    chatArea.appendText("Your opponent has the first shot.\n");
-                }
-                placementScene();
-            });
-            case "rmch;" -> Platform.runLater(() -> {
-                String[] info = message.split(";");
-                chatArea.appendText(info[1] + " and " + info[2] + " started a rematch!\n");
-                if (shotReady) {
-                    chatArea.appendText("You have the first shot.\n");
-                } else {
-                    chatArea.appendText("Your opponent has the first shot.\n");
+            case LIST -> {
+                int[] hostIds = new int[message.getNumHosts()];
+                String[] hostNames = new String[message.getNumHosts()];
+                boolean[] hostSalvos = new boolean[message.getNumHosts()];
+                for (int i = 0; i < hostIds.length; i++) {
+                    hostIds[i] = message.getHostId(i);
+                    hostNames[i] = message.getHostName(i);
+                    hostSalvos[i] = message.isHostSalvo(i);
                 }
-                reset();
-                placementScene();
-            });
-            case "strt;" -> {
-                client.sendPacket("rqst;" + username + ";board");
+                Platform.runLater(() -> {
+                    stage.setTitle("Battleship - Client");
+                    shotReady = false;
+                    joinScene(hostIds, hostNames, hostSalvos);
+                });
+            }
+            case JOIN -> {
+                String joiner = message.getName();
+                String hostName = message.getOtherName();
+                boolean mode = message.isSalvo();
+                Platform.runLater(() -> {
+                    salvo = mode; // The server's word, so both players play the same game
+                    salvoBox.setSelected(mode);
+                    chatArea.appendText(joiner + " joined " + hostName + "'s " + (mode ? "salvo " : "") + "game.\n");
+                    if (shotReady) {
+                        chatArea.appendText("You have the first shot.\n");
+                    } else {
+                        chatArea.appendText("Your opponent has the first shot.\n");
+                    }
+                    placementScene();
+                });
+            }
+            case REMATCH -> {
+                String joiner = message.getName();
+                String hostName = message.getOtherName();
+                Platform.runLater(() -> {
+                    chatArea.appendText(joiner + " and " + hostName + " started a rematch!\n");
+                    if (shotReady) {
+                        chatArea.appendText("You have the first shot.\n");
+                    } else {
+                        chatArea.appendText("Your opponent has the first shot.\n");
+                    }
+                    reset();
+                    placementScene();
+                });
+            }
+            case START -> {
+                client.sendPacket(new Message(Opcode.REQUEST, playerId, 0));
                 Platform.runLater(() -> {
                     playSetup();
                     gameReady = true;
                 });
             }
-            case "rqst;" -> client.sendPacket("rspn;" + username + ";" + serializeBoard());
-            case "rspn;" -> Platform.runLater(() -> parseResponse(message));
-            case "move;" -> Platform.runLater(() -> {
-                String[] moveInfo = message.split(";");
-                int row = Integer.parseInt(moveInfo[2]);
-                int col = Integer.parseInt(moveInfo[3]);
-                playerBoard.tryShot(row, col);
-                shotReady = true;
-            });
-            case "chat;" -> Platform.runLater(() -> {
-                String[] info = message.split(";");
-                String name = info[1];
-                String chat = info[2];
-                chatArea.appendText(name + ": " + chat + "\n");
-            });
-            case "dsct;" -> Platform.runLater(() -> {
-                String[] info = message.split(";");
-                chatArea.appendText(info[1] + " left the game.\n");
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                if ((!playerBoard.gameOver() && !enemyBoard.gameOver()) || !gameReady) { // Game is still running
-                    alert.setContentText("Your opponent has disconnected. Switching opposing player to AI.");
-                } else {
-                    alert.setContentText("Your opponent has disconnected. Returning to the main menu.");
-                }
-                alert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
-                alert.setOnCloseRequest((event) -> handleDisconnect());
-                Optional<ButtonType> result = alert.showAndWait();
-                if (result.isPresent() && result.get() == ButtonType.OK) {
-                    handleDisconnect();
+            case REQUEST -> client.sendPacket(new Message(Opcode.RESPONSE, playerId, 0).setFleet(playerBoard));
+            case RESPONSE -> {
+                long[] fleet = message.getFleet();
+                Platform.runLater(() -> parseResponse(fleet));
+            }
+            case MOVE -> {
+                boolean single = message.getNumCells() == 1;
+                int cell = message.getCell(0);
+                Platform.runLater(() -> {
+                    if (!salvo && single && playerBoard.tryShot(cell)) {
+                        shotReady = true;
+                    } else {
+                        ignoreShot();
+                    }
+                });
+            }
+            case SALVO -> {
+                int[] cells = new int[message.getNumCells()];
+                for (int i = 0; i < cells.length; i++) {
+                    cells[i] = message.getCell(i);
                 }
-            });
+                Platform.runLater(() -> {
+                    if (salvo && cells.length == Math.min(opponentShipsAfloat(), playerBoard.getOpenCells())
+                            && playerBoard.tryShots(cells) != ShotResult.SALVO_INVALID) {
+                        shotReady = true;
+                    } else {
+                        ignoreShot();
+                    }
+                });
+            }
+            case CHAT -> {
+                String name = message.getName();
+                String chat = message.getText();
+                Platform.runLater(() -> chatArea.appendText(name + ": " + chat + "\n"));
+            }
+            case DISCONNECT -> {
+                String name = message.getName();
+                Platform.runLater(() -> {
+                    chatArea.appendText(name + " left the game.\n");
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    if ((!playerBoard.gameOver() && !enemyBoard.gameOver()) || !gameReady) { // Game is still running
+                        alert.setContentText("Your opponent has disconnected. Switching opposing player to AI.");
+                    } else {
+                        alert.setContentText("Your opponent has disconnected. Returning to the main menu.");
+                    }
+                    alert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
+                    alert.setOnCloseRequest((event) -> handleDisconnect());
+                    Optional<ButtonType> result = alert.showAndWait();
+                    if (result.isPresent() && result.get() == ButtonType.OK) {
+                        handleDisconnect();
+                    }
+                });
+            }
+            default -> {
+            }
         }
     }
 
@@ -1198,14 +1432,16 @@ public class BoardGUI extends Application {
         if(client == null) {
             return;
         }
-        client.disconnect(username);
+        client.disconnect(playerId);
         client = null;
         chatWindow.close();
         online = false;
         if(!playerBoard.gameOver() && !enemyBoard.gameOver()) { // Game is still running
             updateBoard(playerBoard.getBoard(), playerBoard, null);
+            computerPlayer.cancel();
             computerPlayer = new ComputerPlayer();
-            computerPlayer.setStrategy(new RandomAI());
+            setComputerStrategy("random");
+            computerStrategy = null; // The other player made the earlier shots, so the game can't be replayed
             if(gameReady) {
                 playSetup();
             }
@@ -1219,38 +1455,27 @@ public class BoardGUI extends Application {
     }
 
     /**
-     * Creates a string representation of this player's board to send to the other player.
-     * @return A string representation of the board.
+     * Tells the player the opponent's shot was ignored, being the wrong kind for the game, the wrong number of shots, or
+     * at a used cell. It stays the opponent's turn, and a well behaved client never gets here.
      */
-    private String serializeBoard() {
-        StringBuilder message = new StringBuilder();
-        HashSet<Ship> used = new HashSet<>();
-        for(Ship ship : ships.values()) {
-            if(!used.contains(ship)) {
-                message.append(ship.nose).append(",");
-                message.append(ship.positions.size()).append(",");
-                message.append(ship.horizontal).append(",");
-                message.append(";");
-                used.add(ship);
-            }
-        }
-        return message.toString();
+    private void ignoreShot() {
+        chatArea.appendText("Your opponent's shot doesn't fit the game, so it was ignored.\n");
     }
 
     /**
-     * Reads in the text representation from the request for the board
-     * @param response The response from the other player to read in.
+     * Returns the number of ships the opponent has afloat, which is the number of shots in their salvo. Until their
+     * fleet arrives none of it has been seen sunk, so that is the whole fleet.
      */
-    private void parseResponse(String response) {
-        String[] tokens = response.split(";");
-        for(int i = 2; i < tokens.length; i++) {
-            String[] shipInfo = tokens[i].split(",");
-            Point nose = new Point(Integer.parseInt(shipInfo[0].split(" ")[0]), Integer.parseInt(shipInfo[0].split(" ")[1]));
-            int len = Integer.parseInt(shipInfo[1]);
-            boolean horiz = Boolean.parseBoolean(shipInfo[2]);
-            enemyBoard.placeShip(horiz, len, nose.row, nose.col);
-            addShip(horiz, len, nose.row, nose.col, enemyShips);
-        }
+    private int opponentShipsAfloat() {
+        return enemyBoard.getNumShips() == 0 ? Board.FLEET.length : enemyBoard.getShipsAfloat();
+    }
+
+    /**
+     * Places the other player's fleet, sent in response to the request for their board.
+     * @param fleet The fleet masks from the response, see {@link Message#getFleet()}.
+     */
+    private void parseResponse(long[] fleet) {
+        Message.placeFleet(fleet, enemyBoard);
         gameReady = true;
     }
 
@@ -1259,6 +1484,9 @@ public class BoardGUI extends Application {
      */
     private void reset() {
         gameReady = false;
+        if (computerPlayer != null) {
+            computerPlayer.cancel(); // Don't let a move for the last game land on this one
+        }
         computerPlayer = new ComputerPlayer();
         shipLens = new HashMap<>();
         shipLens.put(5, 1);
@@ -1272,63 +1500,9 @@ public class BoardGUI extends Application {
         horizontal = true;
         currRow = -1;
         currCol = -1;
+        salvoCount = 0;
 
         playerBoard = new Board(this);
         enemyBoard = new Board(this);
-
-        ships = new HashMap<>();
-        enemyShips = new HashMap<>();
-    }
-
-    /**
-     * Represents a ship on the board. Used in a hashmap to quickly get the needed info about a position, if it has a
-     * ship.
-     */
-    private static class Ship {
-        Point nose;
-        ArrayList<Point> positions;
-        Board board;
-        boolean horizontal;
-
-        /**
-         * Creates a new ship with the given information.
-         * @param nose The location of this ship's nose.
-         * @param positions The positions this ship occupies.
-         * @param sourceBoard The board this ship is located on.
-         * @param horizontal The orientation of this ship. True means horizontal, false means vertical.
-         */
-        public Ship(Point nose, ArrayList<Point> positions, Board sourceBoard, boolean horizontal) {
-            this.nose = nose;
-            this.positions = positions;
-            this.board = sourceBoard;
-            this.horizontal = horizontal;
-        }
-
-        /**
-         * Returns if every position of this ship has been hit.
-         * @return True if all locations of this ship have been hit, false otherwise.
-         */
-        public boolean sunk() {
-            char[][] boardVal = board.getBoard();
-            for(Point point : positions) {
-                if(boardVal[point.row][point.col] == 'S') {
-                    return false;
-                }
-            }
-            return true;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if(!(o instanceof Ship oShip)) {
-                return false;
-            }
-            return nose.equals(oShip.nose) && positions.equals(oShip.positions) && board == oShip.board && horizontal == oShip.horizontal;
-        }
-
-        @Override
-        public int hashCode() {
-            return positions.hashCode();
-        }
     }
-}
\ No newline at end of file
+}